@@ -28,8 +28,11 @@
 
 package org.opennms.core.cache;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
+import java.util.function.BiPredicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +87,34 @@ public class Cache<K, V> {
         }
     }
 
+    /**
+     * Returns the values of all given keys which are currently cached, without loading the absent ones.
+     */
+    public Map<K, V> getAllPresent(Iterable<? extends K> keys) {
+        Objects.requireNonNull(keys);
+        if (delegate != null) {
+            return delegate.getAllPresent(keys);
+        }
+        return Collections.emptyMap();
+    }
+
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        Objects.requireNonNull(entries);
+        if (delegate != null) {
+            delegate.putAll(entries);
+        }
+    }
+
+    /**
+     * Discards all cached entries which match the given predicate.
+     */
+    public void invalidateIf(BiPredicate<? super K, ? super V> predicate) {
+        Objects.requireNonNull(predicate);
+        if (delegate != null) {
+            delegate.asMap().entrySet().removeIf(e -> predicate.test(e.getKey(), e.getValue()));
+        }
+    }
+
     public void invalidateAll() {
         if (delegate != null) {
             delegate.invalidateAll();
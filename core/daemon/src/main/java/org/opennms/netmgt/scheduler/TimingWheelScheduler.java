@@ -0,0 +1,504 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A scheduler based on a hierarchical timing wheel.
+ *
+ * Scheduled runnables are placed in the bucket of the wheel covering their
+ * deadline, so scheduling is O(1) regardless of the number of scheduled
+ * runnables. The lowest wheel advances by one tick at a time and hands the
+ * runnables of the expired bucket to the thread pool. Runnables due further
+ * in the future than the lowest wheel covers are kept in coarser wheels and
+ * cascade down as their deadline approaches.
+ *
+ * Like the {@link LegacyScheduler}, runnables are only executed once their
+ * deadline passed and {@link ReadyRunnable#isReady()} returns true. Runnables
+ * which are not ready are checked again after {@link #NOT_READY_RETRY_MS}.
+ *
+ * Runnables scheduled with {@link #scheduleStart(ReadyRunnable)} can optionally
+ * be delayed by a random jitter, which spreads the initial executions of many
+ * runnables scheduled at once (i.e. on start-up) over time. Later executions
+ * keep their interval.
+ *
+ * The delay between the deadline of a runnable and the time it was handed to
+ * the thread pool is tracked by the <code>lag</code> histogram, which is
+ * exposed via JMX in the <code>org.opennms.netmgt.scheduler</code> domain.
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    public static final long DEFAULT_TICK_MS = 100;
+
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * Number of wheels. Using the default tick and wheel size, the wheels
+     * cover more than 200 years.
+     */
+    private static final int NUM_WHEELS = 4;
+
+    /**
+     * Delay after which a runnable which was not ready is checked again.
+     */
+    public static final long NOT_READY_RETRY_MS = 1000;
+
+    private final String m_name;
+
+    private final long m_tickMs;
+
+    private final int m_wheelSize;
+
+    /**
+     * The duration of a tick for each of the wheels.
+     */
+    private final long[] m_wheelTickMs = new long[NUM_WHEELS];
+
+    /**
+     * The buckets of each of the wheels.
+     */
+    private final Bucket[][] m_wheels = new Bucket[NUM_WHEELS][];
+
+    /**
+     * The start of the current tick of the lowest wheel. All runnables with a
+     * deadline before the end of the tick are in the current bucket.
+     */
+    private long m_currentTime;
+
+    private volatile long m_startJitterMs = 0;
+
+    private volatile int m_scheduled;
+
+    private final ExecutorService m_runner;
+
+    private volatile int m_status;
+
+    private volatile Thread m_worker;
+
+    private volatile long m_numTasksExecuted = 0;
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+
+    private final Histogram m_lag;
+
+    private final Meter m_notReady;
+
+    private JmxReporter m_reporter;
+
+    /**
+     * Constructs a new instance of the scheduler. The runnables are executed
+     * by a pool with the given number of threads.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickMs
+     *            The resolution of the scheduler.
+     * @param wheelSize
+     *            The number of buckets per wheel.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickMs, final int wheelSize) {
+        Assert.isTrue(tickMs > 0, "The tick must be positive");
+        Assert.isTrue(wheelSize > 1, "The wheel must have more than one bucket");
+
+        m_name = parent;
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_tickMs = tickMs;
+        m_wheelSize = wheelSize;
+
+        long wheelTickMs = tickMs;
+        for (int i = 0; i < NUM_WHEELS; i++) {
+            m_wheelTickMs[i] = wheelTickMs;
+            m_wheels[i] = new Bucket[wheelSize];
+            for (int j = 0; j < wheelSize; j++) {
+                m_wheels[i][j] = new Bucket();
+            }
+            wheelTickMs *= wheelSize;
+        }
+
+        m_currentTime = getCurrentTime() / tickMs * tickMs;
+
+        m_lag = m_metrics.histogram(MetricRegistry.name(parent, "lag"));
+        m_notReady = m_metrics.meter(MetricRegistry.name(parent, "not-ready"));
+        m_metrics.register(MetricRegistry.name(parent, "scheduled"), (Gauge<Integer>) () -> m_scheduled);
+    }
+
+    /**
+     * Sets the maximum random delay added to runnables scheduled with {@link #scheduleStart(ReadyRunnable)}.
+     *
+     * @param startJitterMs the maximum jitter in milliseconds, or 0 to disable
+     */
+    public void setStartJitter(final long startJitterMs) {
+        m_startJitterMs = startJitterMs;
+    }
+
+    /**
+     * Schedules the first execution of the runnable, delayed by the start jitter if any.
+     *
+     * @param runnable the runnable to schedule
+     */
+    public void scheduleStart(final ReadyRunnable runnable) {
+        schedule(m_startJitterMs > 0 ? ThreadLocalRandom.current().nextLong(m_startJitterMs) : 0, runnable);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+
+        final Entry entry = new Entry(runnable, getCurrentTime() + Math.max(0, interval));
+        synchronized (this) {
+            add(entry);
+            m_scheduled++;
+        }
+    }
+
+    /**
+     * Places the entry in the lowest wheel which covers its deadline.
+     */
+    private void add(final Entry entry) {
+        for (int i = 0; i < NUM_WHEELS; i++) {
+            final long wheelTickMs = m_wheelTickMs[i];
+            // Number of ticks of this wheel until the deadline is reached
+            final long ticks = entry.m_deadline / wheelTickMs - m_currentTime / wheelTickMs;
+            if (ticks < m_wheelSize) {
+                // Overdue entries go into the current bucket of the lowest wheel
+                final long slot = Math.max(ticks, 0) + m_currentTime / wheelTickMs;
+                m_wheels[i][(int) (slot % m_wheelSize)].add(entry);
+                return;
+            }
+        }
+
+        // Beyond the range of the wheels, keep it in the last bucket of the
+        // coarsest wheel and re-add it once that bucket expires
+        final long wheelTickMs = m_wheelTickMs[NUM_WHEELS - 1];
+        final long slot = m_currentTime / wheelTickMs + m_wheelSize - 1;
+        m_wheels[NUM_WHEELS - 1][(int) (slot % m_wheelSize)].add(entry);
+    }
+
+    /**
+     * Advances the wheels up to the given time, returning the entries which expired.
+     */
+    private List<Entry> advance(final long now) {
+        final List<Entry> expired = new ArrayList<>();
+        while (m_currentTime + m_tickMs <= now) {
+            // All entries of the current bucket have reached their deadline
+            m_wheels[0][(int) ((m_currentTime / m_tickMs) % m_wheelSize)].drainTo(expired);
+            m_currentTime += m_tickMs;
+
+            // Cascade the entries of the coarser wheels whose tick started,
+            // starting with the coarsest so entries can cascade multiple levels
+            for (int i = NUM_WHEELS - 1; i > 0; i--) {
+                final long wheelTickMs = m_wheelTickMs[i];
+                if (m_currentTime % wheelTickMs == 0) {
+                    final List<Entry> cascaded = new ArrayList<>();
+                    m_wheels[i][(int) ((m_currentTime / wheelTickMs) % m_wheelSize)].drainTo(cascaded);
+                    cascaded.forEach(this::add);
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_reporter = JmxReporter.forRegistry(m_metrics)
+                .inDomain(TimingWheelScheduler.class.getPackage().getName())
+                .build();
+        m_reporter.start();
+
+        m_status = STARTING;
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        if (m_reporter != null) {
+            m_reporter.stop();
+            m_reporter = null;
+        }
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_name + "-Scheduler";
+    }
+
+    /**
+     * Returns total number of elements currently scheduled.
+     *
+     * @return the number of runnables waiting for their deadline
+     */
+    public int getScheduled() {
+        return m_scheduled;
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /**
+     * Returns the metrics of the scheduler, including the <code>lag</code> histogram.
+     *
+     * @return the metric registry
+     */
+    public MetricRegistry getMetrics() {
+        return m_metrics;
+    }
+
+    /**
+     * The main method of the scheduler. This method advances the wheels once
+     * per tick and enqueues the expired runnables into the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            // Don't override a pause requested while starting
+            if (m_status == STARTING) {
+                m_status = RUNNING;
+            }
+        }
+
+        LOG.debug("run: scheduler running");
+
+        try {
+            for (;;) {
+                final List<Entry> expired;
+                synchronized (this) {
+                    if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                        LOG.debug("run: status = {}, time to exit", m_status);
+                        break;
+                    }
+
+                    // if paused or pause pending then block
+                    while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                        if (m_status == PAUSE_PENDING) {
+                            LOG.debug("run: pausing.");
+                        }
+                        m_status = PAUSED;
+                        wait();
+                    }
+
+                    if (m_status == RESUME_PENDING) {
+                        LOG.debug("run: resuming.");
+                        m_status = RUNNING;
+                    }
+
+                    // Wait for the end of the current tick
+                    final long wait = m_currentTime + m_tickMs - getCurrentTime();
+                    if (wait > 0) {
+                        TimeUnit.MILLISECONDS.timedWait(this, wait);
+                        continue;
+                    }
+
+                    expired = advance(getCurrentTime());
+                    m_scheduled -= expired.size();
+                }
+
+                final long now = getCurrentTime();
+                for (final Entry entry : expired) {
+                    if (entry.m_runnable.isReady()) {
+                        LOG.debug("run: found ready runnable {}", entry.m_runnable);
+                        m_lag.update(now - entry.m_deadline);
+                        m_runner.execute(entry.m_runnable);
+                        ++m_numTasksExecuted;
+                    } else {
+                        // Check again later
+                        m_notReady.mark();
+                        synchronized (this) {
+                            add(new Entry(entry.m_runnable, now + NOT_READY_RETRY_MS));
+                            m_scheduled++;
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.debug("run: scheduler interrupted");
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted;
+    }
+
+    private static class Entry {
+        private final ReadyRunnable m_runnable;
+        private final long m_deadline;
+
+        private Entry(final ReadyRunnable runnable, final long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+        }
+    }
+
+    /**
+     * The runnables of a single tick of a wheel.
+     */
+    private static class Bucket {
+        private final List<Entry> m_entries = new ArrayList<>();
+
+        private void add(final Entry entry) {
+            m_entries.add(entry);
+        }
+
+        private void drainTo(final List<Entry> entries) {
+            if (!m_entries.isEmpty()) {
+                entries.addAll(m_entries);
+                m_entries.clear();
+            }
+        }
+    }
+}
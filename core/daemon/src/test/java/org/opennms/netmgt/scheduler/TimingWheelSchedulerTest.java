@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.fiber.PausableFiber;
+
+public class TimingWheelSchedulerTest {
+
+    private static final long TICK_MS = 10;
+
+    private TimingWheelScheduler m_scheduler;
+
+    @Before
+    public void setUp() {
+        // Use a small wheel, so that most of the runnables cascade through the coarser wheels
+        m_scheduler = new TimingWheelScheduler("Test", 4, TICK_MS, 8);
+        m_scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.stop();
+    }
+
+    @Test
+    public void testRunsAfterDeadline() throws Exception {
+        final long[] delays = new long[] { 0, 5, 50, 79, 80, 300, 700, 1500 };
+        final Map<Long, Long> ranAt = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(delays.length);
+
+        final long start = System.currentTimeMillis();
+        for (final long delay : delays) {
+            m_scheduler.schedule(delay, new Ready(() -> {
+                ranAt.put(delay, System.currentTimeMillis() - start);
+                latch.countDown();
+            }));
+        }
+        assertEquals(delays.length, m_scheduler.getScheduled());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (final long delay : delays) {
+            final long elapsed = ranAt.get(delay);
+            assertTrue("Runnable with delay " + delay + " ran too early: " + elapsed, elapsed >= delay);
+            assertTrue("Runnable with delay " + delay + " ran too late: " + elapsed, elapsed < delay + 250);
+        }
+
+        assertEquals(0, m_scheduler.getScheduled());
+        assertEquals(delays.length, m_scheduler.getNumTasksExecuted());
+        assertEquals(delays.length, m_scheduler.getMetrics().histogram("Test.lag").getCount());
+    }
+
+    @Test
+    public void testWaitsUntilReady() throws Exception {
+        final AtomicBoolean ready = new AtomicBoolean(false);
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return ready.get();
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        assertTrue(!latch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, m_scheduler.getScheduled());
+
+        ready.set(true);
+        assertTrue(latch.await(TimingWheelScheduler.NOT_READY_RETRY_MS * 2, TimeUnit.MILLISECONDS));
+        assertTrue(m_scheduler.getMetrics().meter("Test.not-ready").getCount() > 0);
+    }
+
+    @Test
+    public void testStartJitter() throws Exception {
+        m_scheduler.setStartJitter(500);
+
+        final int count = 50;
+        final long[] ranAt = new long[count];
+        final CountDownLatch latch = new CountDownLatch(count);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            m_scheduler.scheduleStart(new Ready(() -> {
+                ranAt[index] = System.currentTimeMillis() - start;
+                latch.countDown();
+            }));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        // The runnables should have been spread instead of all running immediately
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (long elapsed : ranAt) {
+            min = Math.min(min, elapsed);
+            max = Math.max(max, elapsed);
+        }
+        assertTrue(max - min >= 100);
+        assertTrue(max < 500 + 250);
+    }
+
+    @Test
+    public void testStartJitterIsNotAppliedToReschedules() throws Exception {
+        m_scheduler.setStartJitter(60000);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new Ready(latch::countDown));
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPauseAndResume() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        m_scheduler.pause();
+        m_scheduler.schedule(0, new Ready(latch::countDown));
+        assertTrue(!latch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(PausableFiber.PAUSED, m_scheduler.getStatus());
+
+        m_scheduler.resume();
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(PausableFiber.RUNNING, m_scheduler.getStatus());
+    }
+
+    private static class Ready implements ReadyRunnable {
+        private final Runnable m_runnable;
+
+        private Ready(Runnable runnable) {
+            m_runnable = runnable;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_runnable.run();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.common.kafka;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeader;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Compresses the payload of individual sink records.
+ *
+ * Compressed records carry a {@link KafkaSinkConstants#COMPRESSION_HEADER} header,
+ * so consumers can handle compressed and uncompressed records alike.
+ */
+public class KafkaSinkCompression {
+
+    public static final String GZIP = "gzip";
+
+    private static final Header GZIP_HEADER = new RecordHeader(KafkaSinkConstants.COMPRESSION_HEADER, GZIP.getBytes(StandardCharsets.UTF_8));
+
+    private KafkaSinkCompression() {}
+
+    public static Header header() {
+        return GZIP_HEADER;
+    }
+
+    public static byte[] compress(final byte[] payload) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length / 4 + 32);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the payload of the record, decompressing it if required.
+     *
+     * @param headers the headers of the record
+     * @param payload the value of the record
+     * @return the uncompressed payload
+     */
+    public static byte[] decompress(final Headers headers, final byte[] payload) {
+        final Header header = headers.lastHeader(KafkaSinkConstants.COMPRESSION_HEADER);
+        if (header == null) {
+            return payload;
+        }
+
+        final String compression = new String(header.value(), StandardCharsets.UTF_8);
+        if (!GZIP.equals(compression)) {
+            throw new IllegalArgumentException("Unsupported compression: " + compression);
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return ByteStreams.toByteArray(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -37,4 +37,26 @@ public interface KafkaSinkConstants {
 
     String KAFKA_CONFIG_SYS_PROP_PREFIX = KAFKA_CONFIG_PID + ".";
 
+    /**
+     * Properties with this prefix configure the sink dispatcher
+     * and are not passed on to the Kafka producer.
+     */
+    String SINK_OPTION_PREFIX = "sink.";
+
+    /**
+     * Maximum factor by which the batches of aggregating modules may grow under load.
+     */
+    String ADAPTIVE_BATCHING_MAX_FACTOR = SINK_OPTION_PREFIX + "adaptive-batching.max-factor";
+
+    /**
+     * Comma separated list of modules for which the records are compressed.
+     */
+    String COMPRESSED_MODULES = SINK_OPTION_PREFIX + "compressed-modules";
+
+    /**
+     * Header set on compressed records, the value is the used compression.
+     */
+    String COMPRESSION_HEADER = "compression";
+
+
 }
@@ -29,6 +29,9 @@
 package org.opennms.core.ipc.sink.api;
 
 import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
 
 public interface OffHeapQueue {
 
@@ -65,5 +68,32 @@ public interface OffHeapQueue {
      */
     public int getNumOfMessages(String moduleName);
 
+    /**
+     *
+     * Retrieves and removes up to maxMessages from the head of this queue, waiting if necessary
+     * until at least one element becomes available.
+     *
+     * @param moduleName Sink Module Name.
+     * @param maxMessages maximum number of messages to return.
+     * @return list of key, value pairs, empty if no message was available.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    default List<AbstractMap.SimpleImmutableEntry<String, byte[]>> readNextMessages(String moduleName, int maxMessages) throws InterruptedException {
+        final AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = readNextMessage(moduleName);
+        return keyValue == null ? Collections.emptyList() : Collections.singletonList(keyValue);
+    }
+
+    /**
+     *
+     * Registers a callback which is invoked with the keys of the messages that were discarded
+     * in order to make room for new ones. Implementations that never discard messages can ignore it.
+     *
+     * @param moduleName Sink Module Name.
+     * @param handler callback invoked with the key of every discarded message.
+     */
+    default void setEvictionHandler(String moduleName, Consumer<String> handler) {
+        // pass
+    }
+
 
 }
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.aggregation;
+
+import org.opennms.core.ipc.sink.api.AggregationPolicy;
+
+/**
+ * Allows the {@link Aggregator} to adapt the completion size and completion
+ * interval of an {@link AggregationPolicy} to the current load.
+ *
+ * While buckets fill up before the completion interval elapses, both the size
+ * and the interval are doubled, up to the given factor of the values defined
+ * by the policy. Once buckets are flushed by the interval while being less than
+ * half full, both are halved again, down to the values defined by the policy.
+ */
+public class AdaptiveBatching {
+
+    private final int maxFactor;
+
+    public AdaptiveBatching(int maxFactor) {
+        if (maxFactor < 1) {
+            throw new IllegalArgumentException("Maximum factor must be positive: " + maxFactor);
+        }
+        this.maxFactor = maxFactor;
+    }
+
+    /**
+     * @return the maximum factor by which the completion size and interval are grown
+     */
+    public int getMaxFactor() {
+        return maxFactor;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveBatching[maxFactor=" + maxFactor + "]";
+    }
+}
@@ -28,10 +28,13 @@
 
 package org.opennms.core.ipc.sink.aggregation;
 
+import org.opennms.core.ipc.sink.aggregation.Aggregator.Batch;
 import org.opennms.core.ipc.sink.api.AggregationPolicy;
 import org.opennms.core.ipc.sink.api.MessageDispatcher;
 import org.opennms.core.ipc.sink.api.SinkModule;
 
+import com.codahale.metrics.Histogram;
+
 /**
  * A {@link MessageDispatcher} that applies the {@link SinkModule}'s {@link AggregationPolicy}
  * using the {@link Aggregator}.
@@ -42,19 +45,51 @@ public abstract class AggregatingMessageProducer<S, T> implements MessageDispatc
 
     private final Aggregator<S,T> aggregator;
 
+    private Histogram batchSizeHistogram;
+
+    private Histogram batchLatencyHistogram;
+
     public AggregatingMessageProducer(String id, AggregationPolicy<S,T,?> policy) {
-        aggregator = new Aggregator<S,T>(id, policy, this);
+        this(id, policy, null);
+    }
+
+    public AggregatingMessageProducer(String id, AggregationPolicy<S,T,?> policy, AdaptiveBatching adaptiveBatching) {
+        aggregator = new Aggregator<S,T>(id, policy, this, adaptiveBatching);
     }
 
     @Override
     public void send(S message) {
-        final T log = aggregator.aggregate(message);
-        if (log != null) {
+        final Batch<T> batch = aggregator.aggregateBatch(message);
+        if (batch != null) {
             // This log is ready to be dispatched
-            dispatch(log);
+            dispatch(batch);
+        }
+    }
+
+    protected void dispatch(Batch<T> batch) {
+        dispatch(batch.getMessage());
+
+        // Track the number of messages per batch and the time from the first message until the batch was dispatched
+        if (batchSizeHistogram != null) {
+            batchSizeHistogram.update(batch.getCount());
+        }
+        if (batchLatencyHistogram != null) {
+            batchLatencyHistogram.update(System.currentTimeMillis() - batch.getFirstTimeMillis());
         }
     }
 
+    public void setBatchSizeHistogram(Histogram batchSizeHistogram) {
+        this.batchSizeHistogram = batchSizeHistogram;
+    }
+
+    public void setBatchLatencyHistogram(Histogram batchLatencyHistogram) {
+        this.batchLatencyHistogram = batchLatencyHistogram;
+    }
+
+    public Aggregator<S, T> getAggregator() {
+        return aggregator;
+    }
+
     public abstract void dispatch(T message);
 
     @Override
@@ -45,4 +45,8 @@ public abstract class AggregatingSinkMessageProducer<S extends Message, T extend
     public AggregatingSinkMessageProducer(SinkModule<S, T> module) {
         super(module.getId(), module.getAggregationPolicy());
     }
+
+    public AggregatingSinkMessageProducer(SinkModule<S, T> module, AdaptiveBatching adaptiveBatching) {
+        super(module.getId(), module.getAggregationPolicy(), adaptiveBatching);
+    }
 }
@@ -78,9 +78,21 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
 
     private final AggregatingMessageProducer<S,T> messageProducer;
 
-    private final int completionSize;
+    private final int baseCompletionSize;
 
-    private final long completionIntervalMs;
+    private final long baseCompletionIntervalMs;
+
+    private final int maxCompletionSize;
+
+    private final long maxCompletionIntervalMs;
+
+    /**
+     * The current completion size and interval. These only differ from the ones
+     * defined by the policy when using {@link AdaptiveBatching}.
+     */
+    private volatile int completionSize;
+
+    private volatile long completionIntervalMs;
 
     private final Timer flushTimer;
 
@@ -89,10 +101,22 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
     private final Striped<Lock> lockStripes = Striped.lock(NUM_STRIPE_LOCKS);
 
     public Aggregator(String id, AggregationPolicy<S,T,?> policy, AggregatingMessageProducer<S,T> messageProducer) {
+        this(id, policy, messageProducer, null);
+    }
+
+    public Aggregator(String id, AggregationPolicy<S,T,?> policy, AggregatingMessageProducer<S,T> messageProducer, AdaptiveBatching adaptiveBatching) {
         aggregationPolicy = (AggregationPolicy<S,T,Object>)Objects.requireNonNull(policy);
         this.messageProducer = Objects.requireNonNull(messageProducer);
-        completionSize = aggregationPolicy.getCompletionSize();
-        completionIntervalMs = aggregationPolicy.getCompletionIntervalMs();
+        baseCompletionSize = aggregationPolicy.getCompletionSize();
+        baseCompletionIntervalMs = aggregationPolicy.getCompletionIntervalMs();
+
+        // Buckets which are dispatched immediately are never grown
+        final int maxFactor = adaptiveBatching != null && baseCompletionSize > 1 ? adaptiveBatching.getMaxFactor() : 1;
+        maxCompletionSize = baseCompletionSize * maxFactor;
+        maxCompletionIntervalMs = baseCompletionIntervalMs * maxFactor;
+
+        completionSize = baseCompletionSize;
+        completionIntervalMs = baseCompletionIntervalMs;
 
         if (completionIntervalMs > 0) {
             // Periodically verify the buckets, and flush those that are older than completionIntervalMs
@@ -108,7 +132,7 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
                         LOG.error("An error occurred while flushing one or more aggregates in module '{}'.", id, t);
                     }
                 }
-            }, completionIntervalMs, completionIntervalMs);
+            }, baseCompletionIntervalMs, baseCompletionIntervalMs);
         } else {
             flushTimer = null;
         }
@@ -123,6 +147,11 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
      * if nothing is ready to be dispatched
      */
     public T aggregate(S message) {
+        final Batch<T> batch = aggregateBatch(message);
+        return batch != null ? batch.getMessage() : null;
+    }
+
+    protected Batch<T> aggregateBatch(S message) {
         // Compute the key
         final Object key = aggregationPolicy.key(message);
         // Lock the bucket
@@ -137,11 +166,11 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
             }
 
             // Accumulate into the bucket
-            T accumulator = bucket.accumulate(message);
-            if (accumulator != null) {
+            Batch<T> batch = bucket.accumulate(message);
+            if (batch != null) {
                 // The bucket is ready to be dispatched
                 buckets.remove(key);
-                return accumulator;
+                return batch;
             } else {
                 // The bucket is NOT ready to be dispatched
                 return null;
@@ -153,7 +182,7 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
 
     @Override
     public void run() {
-        final List<T> messagesReadyForDispatch = new LinkedList<>();
+        final List<Batch<T>> messagesReadyForDispatch = new LinkedList<>();
         // Grab a copy of all the current bucket keys
         final Set<Object> keys = new HashSet<>(buckets.keySet());
         // NMS-9114: As we iterate over the keys to add them to set above,
@@ -176,8 +205,13 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
                 // the keys, and the time we obtained the lock, so we make sure
                 // it's non-null before accessing it's properties
                 if (bucket != null && bucket.getFirstTimeMillis() != null && bucket.getFirstTimeMillis() <= cutOff) {
-                    messagesReadyForDispatch.add(bucket.getValue());
+                    messagesReadyForDispatch.add(bucket.getBatch());
                     buckets.remove(key);
+
+                    if (bucket.getCount() < completionSize / 2) {
+                        // The bucket was not even half full, so we're not under load
+                        shrink();
+                    }
                 }
             }
         } finally {
@@ -185,8 +219,36 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
         }
 
         // Dispatch!
-        for (T message : messagesReadyForDispatch) {
-            messageProducer.dispatch(message);
+        for (Batch<T> batch : messagesReadyForDispatch) {
+            messageProducer.dispatch(batch);
+        }
+    }
+
+    public int getCompletionSize() {
+        return completionSize;
+    }
+
+    public long getCompletionIntervalMs() {
+        return completionIntervalMs;
+    }
+
+    /**
+     * Doubles the completion size and interval, up to their maximum.
+     */
+    private void grow() {
+        if (completionSize < maxCompletionSize) {
+            completionSize = Math.min(maxCompletionSize, completionSize * 2);
+            completionIntervalMs = Math.min(maxCompletionIntervalMs, completionIntervalMs * 2);
+        }
+    }
+
+    /**
+     * Halves the completion size and interval, down to the ones defined by the policy.
+     */
+    private void shrink() {
+        if (completionSize > baseCompletionSize) {
+            completionSize = Math.max(baseCompletionSize, completionSize / 2);
+            completionIntervalMs = Math.max(baseCompletionIntervalMs, completionIntervalMs / 2);
         }
     }
 
@@ -202,20 +264,20 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
         private int count = 0;
         private Long firstTimeMillis;
 
-        public T accumulate(S message) {
+        public Batch<T> accumulate(S message) {
             accumulator = aggregationPolicy.aggregate(accumulator, message);
             count++;
+            final long now = System.currentTimeMillis();
+            if (firstTimeMillis == null) {
+                firstTimeMillis = now;
+            }
             if (count >= completionSize) {
+                // We're ready, and filled the bucket before the interval elapsed
+                grow();
+                return getBatch();
+            } else if (completionIntervalMs > 0 && now - firstTimeMillis >= completionIntervalMs) {
                 // We're ready!
-                return aggregationPolicy.build(accumulator);
-            } else if (completionIntervalMs > 0) {
-                final long now = System.currentTimeMillis();
-                if (firstTimeMillis == null) {
-                    firstTimeMillis = now;
-                } else if (now - firstTimeMillis >= completionIntervalMs) {
-                    // We're ready!
-                    return aggregationPolicy.build(accumulator);
-                }
+                return getBatch();
             }
             // We're NOT ready yet...
             return null;
@@ -225,9 +287,49 @@ public class Aggregator<S, T> implements AutoCloseable, Runnable {
             return aggregationPolicy.build(accumulator);
         }
 
+        public Batch<T> getBatch() {
+            return new Batch<>(getValue(), count, firstTimeMillis);
+        }
+
+        public int getCount() {
+            return count;
+        }
+
         public Long getFirstTimeMillis() {
             return firstTimeMillis;
         }
     }
-    
+
+    /**
+     * An aggregated message, which is ready to be dispatched.
+     */
+    public static class Batch<T> {
+        private final T message;
+        private final int count;
+        private final long firstTimeMillis;
+
+        public Batch(T message, int count, long firstTimeMillis) {
+            this.message = message;
+            this.count = count;
+            this.firstTimeMillis = firstTimeMillis;
+        }
+
+        public T getMessage() {
+            return message;
+        }
+
+        /**
+         * @return the number of messages aggregated in the batch
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the time at which the first message was added to the batch
+         */
+        public long getFirstTimeMillis() {
+            return firstTimeMillis;
+        }
+    }
 }
@@ -32,6 +32,7 @@ import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.Objects;
 
+import org.opennms.core.ipc.sink.aggregation.AdaptiveBatching;
 import org.opennms.core.ipc.sink.aggregation.AggregatingSinkMessageProducer;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
 import org.opennms.core.ipc.sink.api.Message;
@@ -95,6 +96,16 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
         return null;
     }
 
+    /**
+     * Optionally allow the aggregation of the module to adapt to the load.
+     *
+     * @param module
+     * @return the adaptive batching to use, or <code>null</code> to strictly follow the module's aggregation policy
+     */
+    public <S extends Message, T extends Message> AdaptiveBatching getAdaptiveBatching(SinkModule<S, T> module) {
+        return null;
+    }
+
     @Override
     public <S extends Message, T extends Message> SyncDispatcher<S> createSyncDispatcher(SinkModule<S, T> module) {
         Objects.requireNonNull(module, "module cannot be null");
@@ -115,7 +126,7 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
         final SinkModule<S,T> module = state.getModule();
         if (module.getAggregationPolicy() != null) {
             // Aggregate the message before dispatching them
-            return new AggregatingSinkMessageProducer<S,T>(module) {
+            final AggregatingSinkMessageProducer<S,T> producer = new AggregatingSinkMessageProducer<S,T>(module, getAdaptiveBatching(module)) {
                 @Override
                 public void dispatch(T message) {
                     AbstractMessageDispatcherFactory.this.timedDispatch(state, message);
@@ -126,6 +137,9 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
                     state.close();
                 }
             };
+            producer.setBatchSizeHistogram(metrics.histogram(MetricRegistry.name(module.getId(), "batch-size")));
+            producer.setBatchLatencyHistogram(metrics.histogram(MetricRegistry.name(module.getId(), "batch-latency")));
+            return producer;
         } else {
             // No aggregation strategy is set, dispatch directly to reduce overhead
             return new DirectDispatcher<>(state);
@@ -29,6 +29,7 @@
 package org.opennms.core.ipc.sink.common;
 
 import java.util.AbstractMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
@@ -66,6 +67,8 @@ import com.swrve.ratelimitedlogger.RateLimitedLog;
 public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implements AsyncDispatcher<S> {
 
     private static final Logger LOG = LoggerFactory.getLogger(AsyncDispatcherImpl.class);
+    // Maximum number of messages moved from the OffHeapQueue to the executor queue at once.
+    private static final int OFFHEAP_READ_BATCH_SIZE = 100;
     private final SyncDispatcher<S> syncDispatcher;
     private OffHeapAdapter offHeapAdapter;
     private ExecutorService offHeapAdapterExecutor = Executors.newSingleThreadExecutor();
@@ -136,6 +139,15 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 new LogPreservingThreadFactory(SystemInfoUtils.DEFAULT_INSTANCE_ID + ".Sink.AsyncDispatcher." + state.getModule().getId(), Integer.MAX_VALUE),
                 rejectedExecutionHandler
             );
+
+        // Drain the messages that were left in the OffHeapQueue by a previous run, if any.
+        if (useOffHeap && offHeapQueue.getNumOfMessages(sinkModule.getId()) > 0) {
+            LOG.info("Found {} offheap messages for {}, starting drain thread",
+                    offHeapQueue.getNumOfMessages(sinkModule.getId()), sinkModule.getId());
+            offHeapAdapter = new OffHeapAdapter();
+            offHeapAdapter.startDraining();
+            offHeapAdapterExecutor.execute(offHeapAdapter);
+        }
     }
 
     /**
@@ -236,6 +248,13 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                     return offHeapQueue.getNumOfMessages(sinkModule.getId());
                 }
             });
+            // Fail the futures of the messages which were discarded to make room for new ones.
+            offHeapQueue.setEvictionHandler(sinkModule.getId(), key -> {
+                CompletableFuture<S> future = offHeapFutureMap.remove(key);
+                if (future != null) {
+                    future.completeExceptionally(new WriteFailedException("Message evicted from OffHeap storage"));
+                }
+            });
         }
 
         /** This is drain thread which polls data from OffHeapQueue, when data is available, it will push the data to the executor queue.
@@ -247,18 +266,19 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 try {
                     // Wait till atleast one write call to OffHeapQueue.
                     firstWrite.await();
-                    //retrieve key,value entry from top of queue.
-                    AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = offHeapQueue
-                            .readNextMessage(sinkModule.getId());
-                    if (keyValue != null) {
+                    //retrieve the next batch of key,value entries from top of queue.
+                    List<AbstractMap.SimpleImmutableEntry<String, byte[]>> keyValues = offHeapQueue
+                            .readNextMessages(sinkModule.getId(), OFFHEAP_READ_BATCH_SIZE);
+                    for (AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue : keyValues) {
                         queue.put(() -> {
                             S message = sinkModule.unmarshalSingleMessage(keyValue.getValue());
                             syncDispatcher.send(message);
-                            CompletableFuture<S> future = offHeapFutureMap.get(keyValue.getKey());
-                            future.complete(message);
-                            offHeapFutureMap.remove(keyValue.getKey());
+                            // Messages recovered from a previous run have no future.
+                            CompletableFuture<S> future = offHeapFutureMap.remove(keyValue.getKey());
+                            if (future != null) {
+                                future.complete(message);
+                            }
                         });
-
                     }
                 } catch (InterruptedException e) {
                    LOG.warn("Interrupted while retrieving OffHeap Message for {} ", sinkModule.getId(), e);
@@ -272,14 +292,23 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
             byte[] bytes = sinkModule.marshalSingleMessage(message);
             String uuid = UUID.randomUUID().toString();
             offHeapFutureMap.put(uuid, future);
-            offHeapQueue.writeMessage(bytes, sinkModule.getId(), uuid);
+            try {
+                offHeapQueue.writeMessage(bytes, sinkModule.getId(), uuid);
+            } catch (WriteFailedException e) {
+                offHeapFutureMap.remove(uuid);
+                throw e;
+            }
             firstWrite.countDown();
             return future;
             
         }
         
         public boolean isOffHeapEmpty() {
-            return offHeapFutureMap.isEmpty();
+            return offHeapFutureMap.isEmpty() && offHeapQueue.getNumOfMessages(sinkModule.getId()) == 0;
+        }
+
+        public void startDraining() {
+            firstWrite.countDown();
         }
         
         public void shutdown() {
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.core.ipc.sink.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.SystemInfoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Hands items over to a fixed number of worker threads, each of which owns
+ * a bounded queue. Items are assigned to a worker by hashing their key, so
+ * that items with the same key are always handled in the order in which
+ * they were submitted. Each worker hands the items it has queued up over
+ * to the handler in batches.
+ *
+ * The following metrics are registered under the given name:
+ * <ul>
+ *   <li><code>queue-wait</code>: time spent by the items in the queues</li>
+ *   <li><code>handle</code>: time spent handling a batch of items</li>
+ *   <li><code>batch-size</code>: number of items in the batches</li>
+ *   <li><code>queue-size</code>: number of items queued in all the partitions</li>
+ *   <li><code>max-partition-queue-size</code>: number of items queued in the busiest partition</li>
+ * </ul>
+ *
+ * @param <T> type of the items
+ */
+public class PartitionedExecutor<T> implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedExecutor.class);
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final String name;
+    private final MetricRegistry metrics;
+    private final Consumer<List<T>> handler;
+    private final int maxBatchSize;
+
+    private final List<BlockingQueue<Entry<T>>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final Timer queueWaitTimer;
+    private final Timer handleTimer;
+    private final Histogram batchSizes;
+
+    private volatile boolean running = true;
+
+    /**
+     * Held for reading while an item is queued and for writing while closing, so that
+     * no item is queued once the workers may have seen that the executor is closed.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    public PartitionedExecutor(final String name, final int numPartitions, final int queueSize, final int maxBatchSize,
+                               final Consumer<List<T>> handler, final MetricRegistry metrics) {
+        if (numPartitions < 1) {
+            throw new IllegalArgumentException("At least one partition is required.");
+        }
+        this.name = Objects.requireNonNull(name);
+        this.handler = Objects.requireNonNull(handler);
+        this.metrics = Objects.requireNonNull(metrics);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+
+        queueWaitTimer = metrics.timer(MetricRegistry.name(name, "queue-wait"));
+        handleTimer = metrics.timer(MetricRegistry.name(name, "handle"));
+        batchSizes = metrics.histogram(MetricRegistry.name(name, "batch-size"));
+        metrics.register(MetricRegistry.name(name, "queue-size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return queues.stream().mapToInt(BlockingQueue::size).sum();
+            }
+        });
+        metrics.register(MetricRegistry.name(name, "max-partition-queue-size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return queues.stream().mapToInt(BlockingQueue::size).max().orElse(0);
+            }
+        });
+
+        final LogPreservingThreadFactory threadFactory = new LogPreservingThreadFactory(SystemInfoUtils.DEFAULT_INSTANCE_ID + "." + name, numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            final BlockingQueue<Entry<T>> queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+            queues.add(queue);
+            workers.add(threadFactory.newThread(() -> work(queue)));
+        }
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Queues the given item on the partition of the given key, blocking while the queue is full.
+     *
+     * @throws IllegalStateException if the executor is closed or closing
+     */
+    public void execute(final Object key, final T item) throws InterruptedException {
+        closeLock.readLock().lockInterruptibly();
+        try {
+            if (!running) {
+                throw new IllegalStateException("The executor " + name + " is closed.");
+            }
+            final BlockingQueue<Entry<T>> queue = queues.get(Math.floorMod(Objects.hashCode(key), queues.size()));
+            queue.put(new Entry<>(item));
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    public int getNumPartitions() {
+        return queues.size();
+    }
+
+    private void work(final BlockingQueue<Entry<T>> queue) {
+        final List<Entry<T>> entries = new ArrayList<>(maxBatchSize);
+        // Keep going until the remaining items are handled once closed
+        while (running || !queue.isEmpty()) {
+            try {
+                final Entry<T> first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                entries.add(first);
+                queue.drainTo(entries, maxBatchSize - 1);
+            } catch (final InterruptedException e) {
+                LOG.warn("Interrupted while waiting for items of {}, {} items left.", name, queue.size());
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            final long now = System.nanoTime();
+            final List<T> batch = new ArrayList<>(entries.size());
+            for (final Entry<T> entry : entries) {
+                queueWaitTimer.update(now - entry.queuedAt, TimeUnit.NANOSECONDS);
+                batch.add(entry.item);
+            }
+            entries.clear();
+            batchSizes.update(batch.size());
+
+            try (Timer.Context ctx = handleTimer.time()) {
+                handler.accept(batch);
+            } catch (final Throwable t) {
+                LOG.error("Unexpected error while handling a batch of {} items of {}.", batch.size(), name, t);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting items and waits for the queued ones to be handled.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        // Wait for the items being queued, the workers keep draining the queues meanwhile
+        closeLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        metrics.removeMatching((metricName, metric) -> metricName.startsWith(name + "."));
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long queuedAt = System.nanoTime();
+
+        private Entry(final T item) {
+            this.item = item;
+        }
+    }
+}
@@ -56,6 +56,8 @@ import org.opennms.core.ipc.sink.common.AbstractMessageDispatcherFactory;
 import org.opennms.core.test.MockLogAppender;
 import org.osgi.framework.BundleContext;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.UniformReservoir;
 import com.google.common.util.concurrent.RateLimiter;
 
 public class AggregationTest {
@@ -193,6 +195,50 @@ public class AggregationTest {
         }
     }
 
+    @Test
+    public void aggregateAdaptively() throws Exception {
+        final Histogram batchSizes = new Histogram(new UniformReservoir());
+        final AggregatingMessageProducer<UDPPacket, UDPPacketLog> producer = new AggregatingMessageProducer<UDPPacket, UDPPacketLog>("adaptive",
+                new SinkModuleWithAggregateAndInterval().getAggregationPolicy(), new AdaptiveBatching(4)) {
+            @Override
+            public void dispatch(UDPPacketLog message) {
+                synchronized (dispatchedMessages) {
+                    dispatchedMessages.add(message);
+                }
+            }
+        };
+        producer.setBatchSizeHistogram(batchSizes);
+
+        try {
+            final Aggregator<UDPPacket, UDPPacketLog> aggregator = producer.getAggregator();
+            assertEquals(COMPLETION_SIZE, aggregator.getCompletionSize());
+
+            // Full buckets grow the batches, up to the maximum factor
+            int expectedSize = COMPLETION_SIZE;
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < expectedSize; j++) {
+                    producer.send(new UDPPacket(localhost, ByteBuffer.wrap(new byte[]{(byte)j})));
+                }
+                assertThat(dispatchedMessages, hasSize(i + 1));
+                assertThat(((UDPPacketLog) dispatchedMessages.get(i)).getPackets(), hasSize(expectedSize));
+                expectedSize = Math.min(expectedSize * 2, 4 * COMPLETION_SIZE);
+            }
+            assertEquals(4 * COMPLETION_SIZE, aggregator.getCompletionSize());
+            assertEquals(4 * COMPLETION_INTERVAL_MS, aggregator.getCompletionIntervalMs());
+            assertEquals(3, batchSizes.getCount());
+
+            // A nearly empty bucket flushed by the interval shrinks them again
+            producer.send(new UDPPacket(localhost, ByteBuffer.wrap(new byte[]{(byte)42})));
+            await().atMost(12 * COMPLETION_INTERVAL_MS, MILLISECONDS)
+                .pollDelay(50, MILLISECONDS)
+                .until(() -> dispatchedMessages, hasSize(4));
+            assertEquals(2 * COMPLETION_SIZE, aggregator.getCompletionSize());
+            assertEquals(2 * COMPLETION_INTERVAL_MS, aggregator.getCompletionIntervalMs());
+        } finally {
+            producer.close();
+        }
+    }
+
     public static class UDPPacket implements Message {
         private final InetAddress source;
         private final ByteBuffer bytes;
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.core.ipc.sink.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class PartitionedExecutorTest {
+
+    private static final int NUM_KEYS = 10;
+    private static final int NUM_ITEMS = 10000;
+
+    @Test(timeout=60000)
+    public void testKeepsOrderPerKey() throws Exception {
+        final Map<Integer, List<Integer>> handled = new ConcurrentHashMap<>();
+        final Map<Integer, Set<String>> threadsByKey = new ConcurrentHashMap<>();
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final MetricRegistry metrics = new MetricRegistry();
+
+        final PartitionedExecutor<int[]> executor = new PartitionedExecutor<>("test", 4, 10, 5, batch -> {
+            batchSizes.add(batch.size());
+            for (final int[] item : batch) {
+                handled.computeIfAbsent(item[0], k -> Collections.synchronizedList(new ArrayList<>())).add(item[1]);
+                threadsByKey.computeIfAbsent(item[0], k -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+            }
+        }, metrics);
+        assertEquals(4, executor.getNumPartitions());
+
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            executor.execute(i % NUM_KEYS, new int[] { i % NUM_KEYS, i });
+        }
+        executor.close();
+
+        assertEquals(NUM_KEYS, handled.size());
+        for (final Map.Entry<Integer, List<Integer>> entry : handled.entrySet()) {
+            final List<Integer> items = entry.getValue();
+            assertEquals(NUM_ITEMS / NUM_KEYS, items.size());
+            for (int i = 0; i < items.size(); i++) {
+                assertEquals(entry.getKey() + i * NUM_KEYS, items.get(i).intValue());
+            }
+        }
+        // Items of the same key are always handled by the same thread
+        assertTrue(threadsByKey.values().stream().allMatch(threads -> threads.size() == 1));
+        assertTrue(batchSizes.stream().allMatch(size -> size >= 1 && size <= 5));
+        assertEquals(NUM_ITEMS, batchSizes.stream().mapToInt(Integer::intValue).sum());
+
+        // The metrics are removed once closed
+        assertTrue(metrics.getNames().isEmpty());
+    }
+
+    @Test(timeout=60000)
+    public void testBatchesQueuedItems() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final MetricRegistry metrics = new MetricRegistry();
+
+        final PartitionedExecutor<Integer> executor = new PartitionedExecutor<>("test", 1, 100, 50, batch -> {
+            batchSizes.add(batch.size());
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, metrics);
+
+        executor.execute("key", 0);
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        // Queue items while the worker is busy
+        for (int i = 1; i <= 80; i++) {
+            executor.execute("key", i);
+        }
+        assertEquals(80, metrics.getGauges().get("test.queue-size").getValue());
+        assertEquals(80, metrics.getGauges().get("test.max-partition-queue-size").getValue());
+
+        release.countDown();
+        executor.close();
+
+        assertEquals(3, batchSizes.size());
+        assertEquals(1, batchSizes.get(0).intValue());
+        assertEquals(50, batchSizes.get(1).intValue());
+        assertEquals(30, batchSizes.get(2).intValue());
+    }
+
+    @Test(timeout=60000)
+    public void testHandlesAllItemsAcceptedWhileClosing() throws Exception {
+        final AtomicInteger handled = new AtomicInteger();
+        final AtomicInteger accepted = new AtomicInteger();
+        // Small queues, so that the producers are blocked on full queues when closing
+        final PartitionedExecutor<Integer> executor = new PartitionedExecutor<>("test", 2, 4, 2,
+                batch -> handled.addAndGet(batch.size()), new MetricRegistry());
+
+        final CountDownLatch started = new CountDownLatch(4);
+        final List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int producer = i;
+            producers.add(new Thread(() -> {
+                started.countDown();
+                try {
+                    for (int n = 0; ; n++) {
+                        executor.execute(producer * 31 + n, n);
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException e) {
+                    // Closed
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        executor.close();
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue(accepted.get() > 0);
+        assertEquals(accepted.get(), handled.get());
+    }
+}
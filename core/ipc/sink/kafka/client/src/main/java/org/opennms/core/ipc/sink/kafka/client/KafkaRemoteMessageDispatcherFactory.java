@@ -29,7 +29,9 @@
 package org.opennms.core.ipc.sink.kafka.client;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -40,9 +42,11 @@ import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.opennms.core.camel.JmsQueueNameFactory;
 import org.opennms.core.ipc.common.kafka.KafkaConfigProvider;
+import org.opennms.core.ipc.common.kafka.KafkaSinkCompression;
 import org.opennms.core.ipc.common.kafka.KafkaSinkConstants;
 import org.opennms.core.ipc.common.kafka.OsgiKafkaConfigProvider;
 import org.opennms.core.ipc.common.kafka.Utils;
+import org.opennms.core.ipc.sink.aggregation.AdaptiveBatching;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.MessageConsumerManager;
 import org.opennms.core.ipc.sink.api.SinkModule;
@@ -54,6 +58,11 @@ import org.osgi.service.cm.ConfigurationAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+
 public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatcherFactory<String> {
     private static final Logger LOG = LoggerFactory.getLogger(KafkaRemoteMessageDispatcherFactory.class);
 
@@ -65,6 +74,10 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
 
     private KafkaProducer<String,byte[]> producer;
 
+    private AdaptiveBatching adaptiveBatching;
+
+    private Set<String> compressedModules = Collections.emptySet();
+
     @Override
     public <S extends Message, T extends Message> String getModuleMetadata(final SinkModule<S, T> module) {
         final JmsQueueNameFactory topicNameFactory = new JmsQueueNameFactory(KafkaSinkConstants.KAFKA_TOPIC_PREFIX, module.getId());
@@ -75,7 +88,15 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
     public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, String topic, T message) {
         try (MDCCloseable mdc = Logging.withPrefixCloseable(MessageConsumerManager.LOG_PREFIX)) {
             LOG.trace("dispatch({}): sending message {}", topic, message);
-            final ProducerRecord<String,byte[]> record = new ProducerRecord<>(topic, module.marshal(message));
+            final ProducerRecord<String,byte[]> record;
+            if (compressedModules.contains(module.getId())) {
+                final byte[] payload = module.marshal(message);
+                final byte[] compressed = KafkaSinkCompression.compress(payload);
+                getCompressionRatioHistogram(module).update(payload.length > 0 ? compressed.length * 100 / payload.length : 100);
+                record = new ProducerRecord<>(topic, null, null, compressed, Collections.singleton(KafkaSinkCompression.header()));
+            } else {
+                record = new ProducerRecord<>(topic, module.marshal(message));
+            }
             // Keep sending record till it delivers successfully.
             while(true) {
                 try {
@@ -95,6 +116,15 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
         }
     }
 
+    @Override
+    public <S extends Message, T extends Message> AdaptiveBatching getAdaptiveBatching(SinkModule<S, T> module) {
+        return adaptiveBatching;
+    }
+
+    private Histogram getCompressionRatioHistogram(SinkModule<?, ?> module) {
+        return getMetrics().histogram(MetricRegistry.name(module.getId(), "compression-ratio"));
+    }
+
     public void init() throws IOException {
         try (MDCCloseable mdc = Logging.withPrefixCloseable(MessageConsumerManager.LOG_PREFIX)) {
             // Defaults
@@ -104,12 +134,42 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
             // Retrieve all of the properties from org.opennms.core.ipc.sink.kafka.cfg
             KafkaConfigProvider configProvider = new OsgiKafkaConfigProvider(KafkaSinkConstants.KAFKA_CONFIG_PID, configAdmin);
             kafkaConfig.putAll(configProvider.getProperties());
+            applySinkOptions(kafkaConfig);
             LOG.info("KafkaRemoteMessageDispatcherFactory: initializing the Kafka producer with: {}", kafkaConfig);
             producer = Utils.runWithGivenClassLoader(() -> new KafkaProducer<>(kafkaConfig), KafkaProducer.class.getClassLoader());
             onInit();
         }
     }
 
+    /**
+     * Removes the options of the dispatcher from the given properties,
+     * leaving only the properties of the Kafka producer.
+     */
+    private void applySinkOptions(Properties config) {
+        final Object maxFactor = config.remove(KafkaSinkConstants.ADAPTIVE_BATCHING_MAX_FACTOR);
+        if (maxFactor != null && Integer.parseInt(maxFactor.toString().trim()) > 1) {
+            adaptiveBatching = new AdaptiveBatching(Integer.parseInt(maxFactor.toString().trim()));
+        } else {
+            adaptiveBatching = null;
+        }
+
+        final Object modules = config.remove(KafkaSinkConstants.COMPRESSED_MODULES);
+        if (modules != null) {
+            compressedModules = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(modules.toString()));
+        } else {
+            compressedModules = Collections.emptySet();
+        }
+
+        config.stringPropertyNames().stream()
+                .filter(key -> key.startsWith(KafkaSinkConstants.SINK_OPTION_PREFIX))
+                .forEach(key -> {
+                    LOG.warn("Ignoring unknown sink option: {}", key);
+                    config.remove(key);
+                });
+
+        LOG.info("KafkaRemoteMessageDispatcherFactory: using {} and compressing the modules: {}", adaptiveBatching, compressedModules);
+    }
+
     public void destroy() {
         onDestroy();
         if (producer != null) {
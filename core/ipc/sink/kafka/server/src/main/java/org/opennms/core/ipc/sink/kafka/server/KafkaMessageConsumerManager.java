@@ -51,6 +51,7 @@ import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.MessageConsumerManager;
 import org.opennms.core.ipc.sink.api.SinkModule;
 import org.opennms.core.ipc.sink.common.AbstractMessageConsumerManager;
+import org.opennms.core.ipc.common.kafka.KafkaSinkCompression;
 import org.opennms.core.ipc.common.kafka.KafkaSinkConstants;
 import org.opennms.core.ipc.common.kafka.KafkaConfigProvider;
 import org.opennms.core.ipc.common.kafka.OnmsKafkaConfigProvider;
@@ -101,7 +102,7 @@ public class KafkaMessageConsumerManager extends AbstractMessageConsumerManager
                     ConsumerRecords<String, byte[]> records = consumer.poll(100);
                     for (ConsumerRecord<String, byte[]> record : records) {
                         try {
-                            dispatch(module, module.unmarshal(record.value()));
+                            dispatch(module, module.unmarshal(KafkaSinkCompression.decompress(record.headers(), record.value())));
                         } catch (RuntimeException e) {
                             LOG.warn("Unexpected exception while dispatching message", e);
                         }
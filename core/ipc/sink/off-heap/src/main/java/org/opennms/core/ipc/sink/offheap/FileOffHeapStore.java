@@ -0,0 +1,635 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.opennms.core.ipc.sink.api.OffHeapQueue;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+
+/**
+ * Disk backed {@link OffHeapQueue}.
+ *
+ * Messages are appended to segmented, memory-mapped files, one directory per module,
+ * so that buffered messages survive restarts. The total size of the segments is bounded
+ * by offHeapSize: when the store runs out of space, the oldest segment across all of the
+ * modules is discarded to make room for the new messages.
+ */
+public class FileOffHeapStore implements OffHeapQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileOffHeapStore.class);
+    private static final String OFFHEAP_CONFIG = "org.opennms.core.ipc.sink.offheap";
+    private final static String OFFHEAP_SIZE = "offHeapSize";
+    private final static String OFFHEAP_FILE_PATH = "offHeapFilePath";
+    private final static String OFFHEAP_SEGMENT_SIZE = "offHeapSegmentSize";
+    private final static String DEFAULT_OFFHEAP_SIZE = "10MB";
+    private final static int MIN_SEGMENT_SIZE = 64 * 1024;
+    private final static int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private final static String SEGMENT_SUFFIX = ".seg";
+    // Default wait time for each poll is 1000msec.
+    private final static long DEFAULT_WAIT_FOR_POLL = 1000L;
+
+    private JmxReporter reporter = null;
+    private MetricRegistry offheapMetrics = new MetricRegistry();
+    private Counter evictedMessages;
+    private final ConfigurationAdmin configAdmin;
+    private Path directory;
+    private long maxSizeInBytes;
+    private int segmentSize;
+    // Total size of all of the segments on disk.
+    private final AtomicLong sizeInBytes = new AtomicLong(0);
+    // Segment ids are shared by all of the modules, so they also order the segments of different modules
+    private final AtomicLong nextSegmentId = new AtomicLong(0);
+    // Map of ModuleName and corresponding queue.
+    private final Map<String, ModuleQueue> queueMap = new ConcurrentHashMap<>();
+
+    public FileOffHeapStore(ConfigurationAdmin configAdmin) {
+        this.configAdmin = configAdmin;
+    }
+
+    public void init() throws IOException {
+        Dictionary<String, Object> properties = configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties();
+        maxSizeInBytes = H2OffHeapStore.convertByteSizes(getProperty(properties, OFFHEAP_SIZE, DEFAULT_OFFHEAP_SIZE));
+        String segmentSizeProperty = getProperty(properties, OFFHEAP_SEGMENT_SIZE, null);
+        if (segmentSizeProperty != null) {
+            segmentSize = (int) Math.min(Integer.MAX_VALUE, H2OffHeapStore.convertByteSizes(segmentSizeProperty));
+        } else {
+            // Default to segments which are small enough for the oldest-first eviction to be fine grained
+            segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxSizeInBytes / 8));
+        }
+        directory = Paths.get(getProperty(properties, OFFHEAP_FILE_PATH,
+                Paths.get(System.getProperty("karaf.data", System.getProperty("java.io.tmpdir")), "offheap").toString()));
+        Files.createDirectories(directory);
+
+        // Recover the messages that were left behind by a previous run
+        try (DirectoryStream<Path> moduleDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path moduleDirectory : moduleDirectories) {
+                final String moduleName = moduleDirectory.getFileName().toString();
+                final ModuleQueue queue = new ModuleQueue(moduleName, moduleDirectory);
+                queue.recover();
+                queueMap.put(moduleName, queue);
+                LOG.info("recovered {} messages for module : {} ", queue.numOfMessages, moduleName);
+            }
+        }
+
+        reporter = JmxReporter.forRegistry(offheapMetrics).inDomain(this.getClass().getPackage().getName()).build();
+        offheapMetrics.register(MetricRegistry.name("offHeapSize"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getSize();
+
+            }
+        });
+        evictedMessages = offheapMetrics.counter(MetricRegistry.name("evictedMessages"));
+        reporter.start();
+        LOG.info("initializing file OffHeapStore in {} with max size : {} and segment size : {}", directory, maxSizeInBytes, segmentSize);
+    }
+
+    private static String getProperty(Dictionary<String, Object> properties, String key, String defaultValue) {
+        if (properties != null && properties.get(key) instanceof String) {
+            return (String) properties.get(key);
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public boolean writeMessage(byte[] message, String moduleName, String key) throws WriteFailedException {
+        if (message == null || Strings.isNullOrEmpty(moduleName)) {
+            throw new WriteFailedException("Invalid message");
+        }
+        ModuleQueue queue = queueMap.get(moduleName);
+        if (queue == null) {
+            queue = queueMap.computeIfAbsent(moduleName, m -> new ModuleQueue(m, directory.resolve(m)));
+        }
+        queue.write(key.getBytes(StandardCharsets.UTF_8), message);
+        return true;
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<String, byte[]> readNextMessage(String moduleName)
+            throws InterruptedException {
+        final List<AbstractMap.SimpleImmutableEntry<String, byte[]>> messages = readNextMessages(moduleName, 1);
+        return messages.isEmpty() ? null : messages.get(0);
+    }
+
+    @Override
+    public List<AbstractMap.SimpleImmutableEntry<String, byte[]>> readNextMessages(String moduleName, int maxMessages)
+            throws InterruptedException {
+        ModuleQueue queue = queueMap.get(moduleName);
+        if (queue == null) {
+            LOG.warn("No data was ever written for this module {}", moduleName);
+            return Collections.emptyList();
+        }
+        return queue.read(maxMessages);
+    }
+
+    @Override
+    public void setEvictionHandler(String moduleName, Consumer<String> handler) {
+        queueMap.computeIfAbsent(moduleName, m -> new ModuleQueue(m, directory.resolve(m))).evictionHandler = handler;
+    }
+
+    public void destroy() {
+        queueMap.forEach((module, queue) -> queue.close());
+        LOG.info("closing file OffHeapStore, size = {} ", getSize());
+        reporter.stop();
+    }
+
+    @Override
+    public long getSize() {
+        return sizeInBytes.get();
+    }
+
+    @Override
+    public int getNumOfMessages(String moduleName) {
+        ModuleQueue queue = queueMap.get(moduleName);
+        if (queue != null) {
+            return queue.numOfMessages;
+        }
+        return 0;
+    }
+
+    /**
+     * Reserves room for a new segment, evicting the oldest segments of any of the queues if necessary.
+     *
+     * Must not be called while holding the lock of a queue.
+     */
+    private void reserve(int capacity) throws WriteFailedException {
+        if (capacity > maxSizeInBytes) {
+            throw new WriteFailedException("Offheap storage exhausted, size = " + maxSizeInBytes);
+        }
+        while (true) {
+            final long currentSize = sizeInBytes.get();
+            if (currentSize + capacity <= maxSizeInBytes) {
+                if (sizeInBytes.compareAndSet(currentSize, currentSize + capacity)) {
+                    return;
+                }
+                continue;
+            }
+            if (!evictOldestSegment()) {
+                throw new WriteFailedException("Offheap storage exhausted, size = " + maxSizeInBytes);
+            }
+        }
+    }
+
+    /**
+     * Discards the oldest segment of all of the queues.
+     *
+     * @return false if there was no segment to discard
+     */
+    private boolean evictOldestSegment() {
+        ModuleQueue oldestQueue = null;
+        long oldestSegmentId = Long.MAX_VALUE;
+        for (ModuleQueue queue : queueMap.values()) {
+            final long segmentId = queue.oldestSegmentId;
+            if (segmentId < oldestSegmentId) {
+                oldestQueue = queue;
+                oldestSegmentId = segmentId;
+            }
+        }
+        if (oldestQueue == null) {
+            return false;
+        }
+        // The segment may have been released in the meantime, in which case the caller
+        // checks the available space again before evicting the next one
+        oldestQueue.evictOldestSegment();
+        return true;
+    }
+
+    /**
+     * The segments of a single module, ordered from oldest to newest.
+     * Messages are appended to the newest segment and read from the oldest one.
+     */
+    private class ModuleQueue {
+        private final String moduleName;
+        private final Path moduleDirectory;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Deque<Segment> segments = new ArrayDeque<>();
+        // Id of the oldest segment, or Long.MAX_VALUE if there are none
+        private volatile long oldestSegmentId = Long.MAX_VALUE;
+        private volatile int numOfMessages = 0;
+        private volatile Consumer<String> evictionHandler;
+
+        private ModuleQueue(String moduleName, Path moduleDirectory) {
+            this.moduleName = moduleName;
+            this.moduleDirectory = moduleDirectory;
+        }
+
+        private void recover() throws IOException {
+            final List<Path> segmentFiles = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(moduleDirectory, "*" + SEGMENT_SUFFIX)) {
+                files.forEach(segmentFiles::add);
+            }
+            // Segment file names are zero padded, so they sort in the order in which they were created
+            Collections.sort(segmentFiles);
+            for (Path segmentFile : segmentFiles) {
+                final String fileName = segmentFile.getFileName().toString();
+                final long segmentId = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+                try {
+                    final Segment segment = Segment.open(segmentFile, segmentId);
+                    segments.addLast(segment);
+                    sizeInBytes.addAndGet(segment.capacity);
+                    numOfMessages += segment.countUnread();
+                } catch (IOException e) {
+                    LOG.warn("Discarding unreadable segment {}", segmentFile, e);
+                    Files.deleteIfExists(segmentFile);
+                }
+                nextSegmentId.accumulateAndGet(segmentId + 1, Math::max);
+            }
+            segmentsChanged();
+        }
+
+        private void write(byte[] key, byte[] message) throws WriteFailedException {
+            lock.lock();
+            try {
+                final Segment tail = segments.peekLast();
+                if (tail != null && tail.append(key, message)) {
+                    messageAdded();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // Making room for a new segment may evict the segments of other queues, so it is done
+            // without holding the lock of this one
+            final int capacity = Math.max(segmentSize, Segment.HEADER_SIZE + Segment.RECORD_HEADER_SIZE + Segment.KEY_LENGTH_SIZE + key.length + message.length);
+            reserve(capacity);
+
+            lock.lock();
+            try {
+                Segment tail = segments.peekLast();
+                if (tail != null && tail.append(key, message)) {
+                    // Another writer added a segment in the meantime
+                    sizeInBytes.addAndGet(-capacity);
+                } else {
+                    final long segmentId = nextSegmentId.getAndIncrement();
+                    try {
+                        Files.createDirectories(moduleDirectory);
+                        tail = Segment.create(moduleDirectory.resolve(String.format("%020d%s", segmentId, SEGMENT_SUFFIX)), segmentId, capacity);
+                    } catch (IOException e) {
+                        sizeInBytes.addAndGet(-capacity);
+                        LOG.error("Failed to create a new segment for module {}", moduleName, e);
+                        throw new WriteFailedException("Failed to create a new segment: " + e.getMessage());
+                    }
+                    segments.addLast(tail);
+                    tail.append(key, message);
+                    releaseConsumedSegments();
+                }
+                messageAdded();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void messageAdded() {
+            numOfMessages++;
+            notEmpty.signal();
+        }
+
+        /**
+         * Must be called whenever segments are added or removed, with the lock held.
+         */
+        private void segmentsChanged() {
+            final Segment oldest = segments.peekFirst();
+            oldestSegmentId = oldest == null ? Long.MAX_VALUE : oldest.id;
+        }
+
+        private List<AbstractMap.SimpleImmutableEntry<String, byte[]>> read(int maxMessages) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                // Poll for an item to be available, max wait is 1 second.
+                long nanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WAIT_FOR_POLL);
+                while (numOfMessages == 0) {
+                    if (nanos <= 0) {
+                        return Collections.emptyList();
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+
+                final List<AbstractMap.SimpleImmutableEntry<String, byte[]>> messages = new ArrayList<>(Math.min(maxMessages, numOfMessages));
+                while (messages.size() < maxMessages && numOfMessages > 0) {
+                    final AbstractMap.SimpleImmutableEntry<String, byte[]> message = segments.peekFirst().read();
+                    if (message == null) {
+                        // The oldest segment was fully read, move on to the next one
+                        if (segments.size() <= 1) {
+                            break;
+                        }
+                        delete(segments.removeFirst());
+                        segmentsChanged();
+                        continue;
+                    }
+                    messages.add(message);
+                    numOfMessages--;
+                }
+                releaseConsumedSegments();
+                return messages;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Discards the oldest segment, along with the messages that were not read yet.
+         *
+         * @return false if there was no segment to discard
+         */
+        private boolean evictOldestSegment() {
+            final List<String> evictedKeys = new ArrayList<>();
+            lock.lock();
+            try {
+                final Segment oldest = segments.pollFirst();
+                if (oldest == null) {
+                    return false;
+                }
+                oldest.readUnreadKeys(evictedKeys);
+                numOfMessages -= evictedKeys.size();
+                evictedMessages.inc(evictedKeys.size());
+                LOG.warn("Offheap storage exhausted, discarded {} messages of module {}", evictedKeys.size(), moduleName);
+                delete(oldest);
+                segmentsChanged();
+            } finally {
+                lock.unlock();
+            }
+            notifyEvicted(evictedKeys);
+            return true;
+        }
+
+        /**
+         * Deletes the segments which were fully read, and won't be written to anymore.
+         */
+        private void releaseConsumedSegments() {
+            while (segments.size() > 1 && segments.peekFirst().isFullyRead()) {
+                delete(segments.removeFirst());
+            }
+            segmentsChanged();
+        }
+
+        private void delete(Segment segment) {
+            sizeInBytes.addAndGet(-segment.capacity);
+            segment.unmap();
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                LOG.warn("Failed to delete segment {}", segment.path, e);
+            }
+        }
+
+        private void notifyEvicted(List<String> evictedKeys) {
+            final Consumer<String> handler = evictionHandler;
+            if (handler != null) {
+                evictedKeys.forEach(handler);
+            }
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                segments.forEach(Segment::flush);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A memory-mapped, append-only file.
+     *
+     * The file starts with a header holding a magic number and the position of the next
+     * record to read, followed by the records: the length of the record body, the CRC32
+     * of the body, and the body itself (the key length, the key and the message).
+     * A zero length marks the end of the records.
+     */
+    private static class Segment {
+        private static final int MAGIC = 0x4f484653;
+        private static final int READ_POSITION_OFFSET = 4;
+        private static final int HEADER_SIZE = 8;
+        // The length and CRC32 of the record body
+        private static final int RECORD_HEADER_SIZE = 8;
+        // The key length at the start of the body
+        private static final int KEY_LENGTH_SIZE = 2;
+
+        private final Path path;
+        private final long id;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int readPosition;
+        private int writePosition;
+
+        private Segment(Path path, long id, MappedByteBuffer buffer, int readPosition, int writePosition) {
+            this.path = path;
+            this.id = id;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+            this.readPosition = readPosition;
+            this.writePosition = writePosition;
+        }
+
+        private static Segment create(Path path, long id, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+                return new Segment(path, id, buffer, HEADER_SIZE, HEADER_SIZE);
+            }
+        }
+
+        private static Segment open(Path path, long id) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final long size = channel.size();
+                if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid segment size: " + size);
+                }
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Invalid segment header");
+                }
+                final int readPosition = buffer.getInt(READ_POSITION_OFFSET);
+                if (readPosition < HEADER_SIZE || readPosition > size) {
+                    throw new IOException("Invalid read position: " + readPosition);
+                }
+                final Segment segment = new Segment(path, id, buffer, readPosition, readPosition);
+                // Skip over the records that were completely written before the restart
+                int position = readPosition;
+                while (segment.isValidRecord(position)) {
+                    position += RECORD_HEADER_SIZE + buffer.getInt(position);
+                }
+                segment.writePosition = position;
+                return segment;
+            }
+        }
+
+        private boolean isValidRecord(int position) {
+            if (position + RECORD_HEADER_SIZE > capacity) {
+                return false;
+            }
+            final int length = buffer.getInt(position);
+            if (length < KEY_LENGTH_SIZE || position + RECORD_HEADER_SIZE + length > capacity) {
+                return false;
+            }
+            return buffer.getInt(position + 4) == crc(position + RECORD_HEADER_SIZE, length);
+        }
+
+        private int crc(int offset, int length) {
+            final CRC32 crc = new CRC32();
+            final ByteBuffer body = buffer.duplicate();
+            body.position(offset);
+            body.limit(offset + length);
+            crc.update(body);
+            return (int) crc.getValue();
+        }
+
+        private boolean append(byte[] key, byte[] message) {
+            final int length = KEY_LENGTH_SIZE + key.length + message.length;
+            if (writePosition + RECORD_HEADER_SIZE + length > capacity) {
+                return false;
+            }
+            final int bodyOffset = writePosition + RECORD_HEADER_SIZE;
+            buffer.putShort(bodyOffset, (short) key.length);
+            for (int i = 0; i < key.length; i++) {
+                buffer.put(bodyOffset + KEY_LENGTH_SIZE + i, key[i]);
+            }
+            final ByteBuffer body = buffer.duplicate();
+            body.position(bodyOffset + KEY_LENGTH_SIZE + key.length);
+            body.put(message);
+            buffer.putInt(writePosition + 4, crc(bodyOffset, length));
+            // Write the length last, the record is only visible once it is set
+            buffer.putInt(writePosition, length);
+            writePosition += RECORD_HEADER_SIZE + length;
+            return true;
+        }
+
+        private AbstractMap.SimpleImmutableEntry<String, byte[]> read() {
+            if (readPosition >= writePosition) {
+                return null;
+            }
+            final int length = buffer.getInt(readPosition);
+            final int bodyOffset = readPosition + RECORD_HEADER_SIZE;
+            final int keyLength = buffer.getShort(bodyOffset) & 0xffff;
+            final byte[] key = new byte[keyLength];
+            final byte[] message = new byte[length - KEY_LENGTH_SIZE - keyLength];
+            final ByteBuffer body = buffer.duplicate();
+            body.position(bodyOffset + KEY_LENGTH_SIZE);
+            body.get(key);
+            body.get(message);
+            readPosition += RECORD_HEADER_SIZE + length;
+            buffer.putInt(READ_POSITION_OFFSET, readPosition);
+            return new AbstractMap.SimpleImmutableEntry<>(new String(key, StandardCharsets.UTF_8), message);
+        }
+
+        private int countUnread() {
+            int count = 0;
+            for (int position = readPosition; position < writePosition; position += RECORD_HEADER_SIZE + buffer.getInt(position)) {
+                count++;
+            }
+            return count;
+        }
+
+        private void readUnreadKeys(List<String> keys) {
+            for (int position = readPosition; position < writePosition; position += RECORD_HEADER_SIZE + buffer.getInt(position)) {
+                final int keyLength = buffer.getShort(position + RECORD_HEADER_SIZE) & 0xffff;
+                final byte[] key = new byte[keyLength];
+                final ByteBuffer body = buffer.duplicate();
+                body.position(position + RECORD_HEADER_SIZE + KEY_LENGTH_SIZE);
+                body.get(key);
+                keys.add(new String(key, StandardCharsets.UTF_8));
+            }
+        }
+
+        private boolean isFullyRead() {
+            return readPosition >= writePosition;
+        }
+
+        private void flush() {
+            buffer.force();
+        }
+
+        /**
+         * Releases the mapping right away instead of waiting for the buffer to be garbage collected,
+         * which also allows the file to be deleted on Windows. The segment must not be used afterwards.
+         */
+        private void unmap() {
+            try {
+                try {
+                    // Java 9 and later
+                    final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                    final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                    final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                    theUnsafe.setAccessible(true);
+                    invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                } catch (NoSuchMethodException e) {
+                    // Java 8
+                    final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    final Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (Exception e) {
+                LOG.debug("Failed to unmap segment {}, it will be unmapped once garbage collected", path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import java.io.IOException;
+import java.util.Dictionary;
+
+import org.opennms.core.ipc.sink.api.OffHeapQueue;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link OffHeapQueue} implementation selected by the offHeapStore property:
+ * "h2" (default) for the in-memory H2 store, or "file" for the disk backed store.
+ */
+public class OffHeapQueueFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapQueueFactory.class);
+    private static final String OFFHEAP_CONFIG = "org.opennms.core.ipc.sink.offheap";
+    private final static String OFFHEAP_STORE = "offHeapStore";
+    private final static String FILE_STORE = "file";
+    private final static String H2_STORE = "h2";
+
+    public static OffHeapQueue create(ConfigurationAdmin configAdmin) throws IOException {
+        final Dictionary<String, Object> properties = configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties();
+        String storeType = H2_STORE;
+        if (properties != null && properties.get(OFFHEAP_STORE) instanceof String) {
+            storeType = ((String) properties.get(OFFHEAP_STORE)).trim();
+        }
+        if (FILE_STORE.equalsIgnoreCase(storeType)) {
+            return new FileOffHeapStore(configAdmin);
+        } else if (!H2_STORE.equalsIgnoreCase(storeType)) {
+            LOG.warn("Unknown offheap store '{}', using {}", storeType, H2_STORE);
+        }
+        return new H2OffHeapStore(configAdmin);
+    }
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.ipc.sink.offheap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.ipc.sink.api.OffHeapQueue;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FileOffHeapStoreTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileOffHeapStoreTest.class);
+    private final static String OFFHEAP_SIZE = "offHeapSize";
+    private final static String OFFHEAP_FILE_PATH = "offHeapFilePath";
+    private final static String OFFHEAP_SEGMENT_SIZE = "offHeapSegmentSize";
+    public static final String OFFHEAP_CONFIG = "org.opennms.core.ipc.sink.offheap";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private FileOffHeapStore queue;
+
+    @Before
+    public void setup() throws IOException {
+        queue = createStore("1MB");
+    }
+
+    private FileOffHeapStore createStore(String size) throws IOException {
+        Hashtable<String, Object> configProperties = new Hashtable<>();
+        configProperties.put(OFFHEAP_SIZE, size);
+        configProperties.put(OFFHEAP_SEGMENT_SIZE, "64KB");
+        configProperties.put(OFFHEAP_FILE_PATH, tempFolder.getRoot().getAbsolutePath());
+        ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        when(configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties()).thenReturn(configProperties);
+        FileOffHeapStore store = new FileOffHeapStore(configAdmin);
+        store.init();
+        return store;
+    }
+
+    @Test
+    public void testFileDataStore() throws InterruptedException, WriteFailedException {
+        long beforeWrite = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            queue.writeMessage(("This is " + i + " trap message").getBytes(), "traps-test", Integer.toString(i));
+            queue.writeMessage(("This is " + i + " syslog message").getBytes(), "syslog-test", Integer.toString(i));
+        }
+        assertEquals(10000, queue.getNumOfMessages("traps-test"));
+        assertEquals(10000, queue.getNumOfMessages("syslog-test"));
+
+        long afterWrite = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("traps-test");
+            assertEquals(Integer.toString(i), keyValue.getKey());
+            assertEquals("This is " + i + " trap message", new String(keyValue.getValue()));
+        }
+        for (int i = 0; i < 10000; i++) {
+            AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("syslog-test");
+            assertEquals(Integer.toString(i), keyValue.getKey());
+            assertEquals("This is " + i + " syslog message", new String(keyValue.getValue()));
+        }
+        long afterRead = System.currentTimeMillis();
+        assertEquals(0, queue.getNumOfMessages("traps-test"));
+        assertNull(queue.readNextMessage("traps-test"));
+        LOG.info("Total Write time  " + (afterWrite - beforeWrite));
+        LOG.info("Total read time  " + (afterRead - afterWrite));
+    }
+
+    @Test
+    public void testBatchRead() throws InterruptedException, WriteFailedException {
+        for (int i = 0; i < 250; i++) {
+            queue.writeMessage(("message " + i).getBytes(), "events-test", Integer.toString(i));
+        }
+        List<AbstractMap.SimpleImmutableEntry<String, byte[]>> messages = new ArrayList<>();
+        messages.addAll(queue.readNextMessages("events-test", 100));
+        assertEquals(100, messages.size());
+        messages.addAll(queue.readNextMessages("events-test", 100));
+        messages.addAll(queue.readNextMessages("events-test", 100));
+        assertEquals(250, messages.size());
+        for (int i = 0; i < 250; i++) {
+            assertEquals("message " + i, new String(messages.get(i).getValue()));
+        }
+        assertTrue(queue.readNextMessages("events-test", 100).isEmpty());
+    }
+
+    @Test
+    public void testMessagesSurviveRestart() throws Exception {
+        for (int i = 0; i < 5000; i++) {
+            queue.writeMessage(("message " + i).getBytes(), "events-test", Integer.toString(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            queue.readNextMessage("events-test");
+        }
+        queue.destroy();
+
+        queue = createStore("1MB");
+        assertEquals(4000, queue.getNumOfMessages("events-test"));
+        for (int i = 1000; i < 5000; i++) {
+            AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("events-test");
+            assertEquals(Integer.toString(i), keyValue.getKey());
+            assertEquals("message " + i, new String(keyValue.getValue()));
+        }
+        assertEquals(0, queue.getNumOfMessages("events-test"));
+    }
+
+    @Test
+    public void testOldestMessagesAreEvictedWhenFull() throws Exception {
+        final List<String> evictedKeys = new ArrayList<>();
+        queue.setEvictionHandler("events-test", evictedKeys::add);
+        final byte[] message = new byte[1000];
+        for (int i = 0; i < 5000; i++) {
+            queue.writeMessage(message, "events-test", Integer.toString(i));
+        }
+        assertTrue(queue.getSize() <= 1024 * 1024);
+        assertEquals(5000, evictedKeys.size() + queue.getNumOfMessages("events-test"));
+        assertTrue(evictedKeys.size() > 0);
+        // The oldest messages are discarded first
+        for (int i = 0; i < evictedKeys.size(); i++) {
+            assertEquals(Integer.toString(i), evictedKeys.get(i));
+        }
+        assertEquals(Integer.toString(evictedKeys.size()), queue.readNextMessage("events-test").getKey());
+    }
+
+    @Test
+    public void testOldestSegmentOfAnyModuleIsEvicted() throws Exception {
+        final List<String> evictedTraps = new ArrayList<>();
+        final List<String> evictedSyslogs = new ArrayList<>();
+        queue.setEvictionHandler("traps-test", evictedTraps::add);
+        queue.setEvictionHandler("syslog-test", evictedSyslogs::add);
+        final byte[] message = new byte[1000];
+        // Fill most of the store with the messages of a single module
+        for (int i = 0; i < 950; i++) {
+            queue.writeMessage(message, "traps-test", Integer.toString(i));
+        }
+        assertTrue(evictedTraps.isEmpty());
+
+        // Another module with no queued messages can still write, at the expense of the oldest messages
+        for (int i = 0; i < 200; i++) {
+            queue.writeMessage(message, "syslog-test", Integer.toString(i));
+        }
+        assertTrue(queue.getSize() <= 1024 * 1024);
+        assertTrue(evictedTraps.size() > 0);
+        assertTrue(evictedSyslogs.isEmpty());
+        assertEquals(200, queue.getNumOfMessages("syslog-test"));
+        for (int i = 0; i < evictedTraps.size(); i++) {
+            assertEquals(Integer.toString(i), evictedTraps.get(i));
+        }
+        assertEquals(Integer.toString(evictedTraps.size()), queue.readNextMessage("traps-test").getKey());
+        assertEquals("0", queue.readNextMessage("syslog-test").getKey());
+    }
+
+    @Test
+    public void testThroughputComparedToH2() throws Exception {
+        final int numMessages = 50000;
+        final byte[] message = new byte[256];
+
+        final Hashtable<String, Object> h2Properties = new Hashtable<>();
+        h2Properties.put(OFFHEAP_SIZE, "64MB");
+        final ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        when(configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties()).thenReturn(h2Properties);
+        final H2OffHeapStore h2Store = new H2OffHeapStore(configAdmin);
+        h2Store.init();
+        final FileOffHeapStore fileStore = createStore("64MB");
+        try {
+            // Warm up both of the stores before measuring them
+            measureThroughput(h2Store, "warmup", numMessages / 10, message);
+            measureThroughput(fileStore, "warmup", numMessages / 10, message);
+
+            final long h2Nanos = measureThroughput(h2Store, "events-test", numMessages, message);
+            final long fileNanos = measureThroughput(fileStore, "events-test", numMessages, message);
+            LOG.info("Wrote and read {} messages: H2 {} msgs/s, file {} msgs/s", numMessages,
+                    numMessages * TimeUnit.SECONDS.toNanos(1) / h2Nanos,
+                    numMessages * TimeUnit.SECONDS.toNanos(1) / fileNanos);
+        } finally {
+            h2Store.destroy();
+            fileStore.destroy();
+        }
+    }
+
+    private static long measureThroughput(OffHeapQueue store, String moduleName, int numMessages, byte[] message) throws Exception {
+        final long start = System.nanoTime();
+        for (int i = 0; i < numMessages; i++) {
+            store.writeMessage(message, moduleName, Integer.toString(i));
+        }
+        for (int i = 0; i < numMessages; i++) {
+            assertEquals(Integer.toString(i), store.readNextMessage(moduleName).getKey());
+        }
+        final long elapsed = System.nanoTime() - start;
+        assertEquals(0, store.getNumOfMessages(moduleName));
+        return elapsed;
+    }
+
+    @Test(expected = WriteFailedException.class)
+    public void testMessageLargerThanStore() throws Exception {
+        queue.writeMessage(new byte[2 * 1024 * 1024], "events-test", "0");
+    }
+
+    @After
+    public void destroy() throws InterruptedException {
+        queue.destroy();
+    }
+
+}
@@ -149,6 +149,16 @@ public class TimeoutTracker {
 
     }
 
+    /**
+     * Returns the number of nanoseconds {@link #startAttempt()} would sleep for, which
+     * is zero unless strict timeouts are used.
+     *
+     * @return a long.
+     */
+    public long getNanosUntilNextAttempt() {
+        return m_strictTimeouts ? Math.max(0L, m_nextRetryTimeNanos - System.nanoTime()) : 0L;
+    }
+
     private void sleep(long nanos) {
         long millis = nanos / 1000000L;
         int remainingNanos = (int)(nanos % 1000000L);
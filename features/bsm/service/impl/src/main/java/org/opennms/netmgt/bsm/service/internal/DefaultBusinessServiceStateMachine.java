@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -44,6 +45,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -83,16 +85,31 @@ import edu.uci.ics.jung.algorithms.layout.KKLayout;
 import edu.uci.ics.jung.algorithms.layout.Layout;
 import edu.uci.ics.jung.visualization.VisualizationImageServer;
 
+/**
+ * Maintains the operational status of the business services.
+ *
+ * Status changes are propagated incrementally: only the ancestors of the vertices
+ * that changed are reduced, in order of decreasing level, so that every affected
+ * vertex is reduced once per update, after all of its children. Updates are
+ * serialized by the write lock, while the operational status of the vertices
+ * can be read without locking.
+ */
 public class DefaultBusinessServiceStateMachine implements BusinessServiceStateMachine {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultBusinessServiceStateMachine.class);
     public static final Status MIN_SEVERITY = Status.NORMAL;
 
+    /**
+     * Orders the vertices from the bottom of the hierarchy to the top.
+     * Children always have a greater level than their parents.
+     */
+    private static final Comparator<GraphVertex> DESCENDING_LEVEL = Comparator.comparingInt(GraphVertex::getLevel).reversed();
+
     @Autowired
     private AlarmProvider m_alarmProvider;
 
     private final List<BusinessServiceStateChangeHandler> m_handlers = Lists.newArrayList();
     private final ReadWriteLock m_rwLock = new ReentrantReadWriteLock();
-    private BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
+    private volatile BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
 
     @Override
     public void setBusinessServices(List<BusinessService> businessServices) {
@@ -104,10 +121,11 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             // Prime the graph with the state from the previous graph and
             // keep track of the new reductions keys
             Set<String> reductionsKeysToLookup = Sets.newHashSet();
+            Map<GraphVertex, Status> statusesByVertex = new LinkedHashMap<>();
             for (String reductionKey : g.getReductionKeys()) {
                 GraphVertex reductionKeyVertex = m_g.getVertexByReductionKey(reductionKey);
                 if (reductionKeyVertex != null) {
-                    updateAndPropagateVertex(g, g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
+                    statusesByVertex.put(g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
                 } else {
                     reductionsKeysToLookup.add(reductionKey);
                 }
@@ -122,10 +140,11 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 if (reductionsKeysToLookup.size() > 0) {
                     final Map<String, AlarmWrapper> lookup = m_alarmProvider.lookup(reductionsKeysToLookup);
                     for (Entry<String, AlarmWrapper> eachEntry : lookup.entrySet()) {
-                        updateAndPropagateVertex(g, g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
+                        statusesByVertex.put(g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
                     }
                 }
             }
+            updateAndPropagateVertices(g, statusesByVertex);
             m_g = g;
         } finally {
             m_rwLock.writeLock().unlock();
@@ -136,8 +155,8 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     public void handleNewOrUpdatedAlarm(AlarmWrapper alarm) {
         m_rwLock.writeLock().lock();
         try {
-            // Recursively propagate the status
-            updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+            // Propagate the status
+            updateAndPropagateVertices(m_g, Collections.singletonMap(m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus()));
         } finally {
             m_rwLock.writeLock().unlock();
         }
@@ -148,9 +167,10 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
         final Set<String> reductionKeysFromGivenAlarms = new HashSet<>(alarms.size());
         m_rwLock.writeLock().lock();
         try {
+            final Map<GraphVertex, Status> statusesByVertex = new LinkedHashMap<>();
             for (AlarmWrapper alarm : alarms) {
-                // Recursively propagate the status for all of the given alarms
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+                // Gather the status for all of the given alarms
+                statusesByVertex.put(m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
                 // Keep track of the reduction keys that have been processed
                 reductionKeysFromGivenAlarms.add(alarm.getReductionKey());
             }
@@ -158,14 +178,40 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             for (String missingReductionKey : Sets.difference(m_g.getReductionKeys(), reductionKeysFromGivenAlarms)) {
                 // There is a vertex on the graph that corresponds to this reduction key
                 // but no alarm with this reduction key exists
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
+                statusesByVertex.put(m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
             }
+
+            // Propagate all of the changes at once
+            updateAndPropagateVertices(m_g, statusesByVertex);
         } finally {
             m_rwLock.writeLock().unlock();
         }
     }
 
-    private void updateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus) {
+    /**
+     * Updates the status of the given vertices and propagates the changes up the hierarchy.
+     *
+     * Only the ancestors of the vertices which changed are reduced. These are visited
+     * from the bottom of the hierarchy to the top, so that each of them is reduced once,
+     * after the statuses of all of its children are known.
+     */
+    private void updateAndPropagateVertices(BusinessServiceGraph graph, Map<GraphVertex, Status> statusesByVertex) {
+        final PriorityQueue<GraphVertex> verticesToReduce = new PriorityQueue<>(DESCENDING_LEVEL);
+        final Set<GraphVertex> queuedVertices = new HashSet<>();
+
+        for (Entry<GraphVertex, Status> entry : statusesByVertex.entrySet()) {
+            updateVertex(graph, entry.getKey(), entry.getValue(), verticesToReduce, queuedVertices);
+        }
+
+        GraphVertex vertex;
+        while ((vertex = verticesToReduce.poll()) != null) {
+            queuedVertices.remove(vertex);
+            updateVertex(graph, vertex, reduce(graph, vertex), verticesToReduce, queuedVertices);
+        }
+    }
+
+    private void updateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus,
+            PriorityQueue<GraphVertex> verticesToReduce, Set<GraphVertex> queuedVertices) {
         if (vertex == null) {
             // Nothing to do here
             return;
@@ -186,7 +232,6 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
         onStatusUpdated(graph, vertex, previousStatus);
 
         // Update the edges with the mapped status
-        List<GraphEdge> updatedEges = Lists.newArrayList();
         for (GraphEdge edge : graph.getInEdges(vertex)) {
             Status mappedStatus = newStatus;
             if (newStatus.isGreaterThan(MIN_SEVERITY)) {
@@ -201,38 +246,26 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 continue;
             }
 
-            // Update the status and add it to the list of edges to propagate
+            // Update the status and schedule the parent to be reduced
             edge.setStatus(mappedStatus);
-            updatedEges.add(edge);
-        }
-
-        // Propagate once all of the edges have been updated
-        for (GraphEdge edge : updatedEges) {
-            reduceUpdateAndPropagateVertex(graph, graph.getOpposite(vertex, edge));
+            final GraphVertex parent = graph.getOpposite(vertex, edge);
+            if (parent != null && queuedVertices.add(parent)) {
+                verticesToReduce.add(parent);
+            }
         }
     }
 
-    private void reduceUpdateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex) {
-        if (vertex == null) {
-            // Nothing to do here
-            return;
-        }
-
+    private static Status reduce(BusinessServiceGraph graph, GraphVertex vertex) {
         // Calculate the weighed statuses from the child edges
         List<StatusWithIndex> statuses = weighEdges(graph.getOutEdges(vertex));
 
         // Reduce
         Optional<StatusWithIndices> reducedStatus = vertex.getReductionFunction().reduce(statuses);
-
-        Status newStatus;
         if (reducedStatus.isPresent()) {
-            newStatus = reducedStatus.get().getStatus();
+            return reducedStatus.get().getStatus();
         } else {
-            newStatus = MIN_SEVERITY;
+            return MIN_SEVERITY;
         }
-
-        // Update and propagate
-        updateAndPropagateVertex(graph, vertex, newStatus);
     }
 
     public static List<StatusWithIndex> weighEdges(Collection<GraphEdge> edges) {
@@ -297,58 +330,42 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     @Override
     public Status getOperationalStatus(BusinessService businessService) {
         Objects.requireNonNull(businessService);
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByBusinessServiceId(businessService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
+        // The graph and the statuses are published without holding the lock
+        GraphVertex vertex = m_g.getVertexByBusinessServiceId(businessService.getId());
+        if (vertex != null) {
+            return vertex.getStatus();
         }
+        return null;
     }
 
     @Override
     public Status getOperationalStatus(IpService ipService) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByIpServiceId(ipService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
+        // The graph and the statuses are published without holding the lock
+        GraphVertex vertex = m_g.getVertexByIpServiceId(ipService.getId());
+        if (vertex != null) {
+            return vertex.getStatus();
         }
+        return null;
     }
 
     @Override
     public Status getOperationalStatus(String reductionKey) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByReductionKey(reductionKey);
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
+        // The graph and the statuses are published without holding the lock
+        GraphVertex vertex = m_g.getVertexByReductionKey(reductionKey);
+        if (vertex != null) {
+            return vertex.getStatus();
         }
+        return null;
     }
 
     @Override
     public Status getOperationalStatus(Edge edge) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByEdgeId(edge.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
+        // The graph and the statuses are published without holding the lock
+        GraphVertex vertex = m_g.getVertexByEdgeId(edge.getId());
+        if (vertex != null) {
+            return vertex.getStatus();
         }
+        return null;
     }
 
     public void setAlarmProvider(AlarmProvider alarmProvider) {
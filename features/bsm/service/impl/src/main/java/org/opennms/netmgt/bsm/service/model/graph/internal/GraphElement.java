@@ -32,7 +32,7 @@ import org.opennms.netmgt.bsm.service.model.Status;
 
 public abstract class GraphElement {
 
-    private Status m_status = Status.NORMAL;
+    private volatile Status m_status = Status.NORMAL;
 
     public Status getStatus() {
         return m_status;
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.bsm.service.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.opennms.netmgt.bsm.mock.MockAlarmWrapper;
+import org.opennms.netmgt.bsm.mock.MockBusinessServiceHierarchy;
+import org.opennms.netmgt.bsm.mock.MockBusinessServiceHierarchy.HierarchyBuilder.BusinessServiceBuilder;
+import org.opennms.netmgt.bsm.service.BusinessServiceStateMachine;
+import org.opennms.netmgt.bsm.service.model.BusinessService;
+import org.opennms.netmgt.bsm.service.model.Status;
+import org.opennms.netmgt.bsm.service.model.functions.reduce.HighestSeverity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class StatePropagationBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(StatePropagationBenchmarkTest.class);
+
+    private static final int FAN_OUT = 10;
+    private static final int NUMBER_OF_REDUCTION_KEYS_PER_LEAF = 49;
+    private static final int NUMBER_OF_ALARMS = 100000;
+    private static final int NUMBER_OF_READERS = 4;
+
+    private static final Status[] STATUSES = new Status[] {
+            Status.NORMAL, Status.WARNING, Status.MINOR, Status.MAJOR, Status.CRITICAL
+    };
+
+    /**
+     * Feeds a high rate of alarms to a hierarchy of ~50k vertices (root -> 10 -> 100 -> 1000
+     * business services, with 49 reduction keys on each of the leaves), while other threads
+     * continuously read the operational status of the business services.
+     *
+     * Verifies that the incrementally propagated statuses match the ones calculated
+     * from scratch.
+     */
+    @Test(timeout=60000)
+    public void canEfficientlyPropagateStatusInLargeHierarchies() throws InterruptedException {
+        final HighestSeverity highestSeverity = new HighestSeverity();
+        final List<String> reductionKeys = new ArrayList<>();
+        final List<Long> leafIds = new ArrayList<>();
+
+        long nextBusinessServiceId = 1;
+        long nextEdgeId = 1000000;
+        final BusinessServiceBuilder root = MockBusinessServiceHierarchy.builder()
+                .withBusinessService(nextBusinessServiceId++)
+                .withName("root")
+                .withReductionFunction(highestSeverity);
+        for (int i = 0; i < FAN_OUT; i++) {
+            final long l1Id = nextBusinessServiceId++;
+            final BusinessServiceBuilder l1 = root.withBusinessService(l1Id)
+                    .withName("b" + l1Id)
+                    .withReductionFunction(highestSeverity);
+            for (int j = 0; j < FAN_OUT; j++) {
+                final long l2Id = nextBusinessServiceId++;
+                final BusinessServiceBuilder l2 = l1.withBusinessService(l2Id)
+                        .withName("b" + l2Id)
+                        .withReductionFunction(highestSeverity);
+                for (int k = 0; k < FAN_OUT; k++) {
+                    final long l3Id = nextBusinessServiceId++;
+                    final BusinessServiceBuilder l3 = l2.withBusinessService(l3Id)
+                            .withName("b" + l3Id)
+                            .withReductionFunction(highestSeverity);
+                    for (int r = 0; r < NUMBER_OF_REDUCTION_KEYS_PER_LEAF; r++) {
+                        final String reductionKey = "b" + l3Id + "-a" + r;
+                        l3.withReductionKey(nextEdgeId++, reductionKey);
+                        reductionKeys.add(reductionKey);
+                    }
+                    l3.commit();
+                    leafIds.add(l3Id);
+                }
+                l2.commit();
+            }
+            l1.commit();
+        }
+        final MockBusinessServiceHierarchy h = root.commit().build();
+        final BusinessService rootService = h.getBusinessServiceById(1);
+
+        // Setup the state machine
+        final DefaultBusinessServiceStateMachine stateMachine = new DefaultBusinessServiceStateMachine();
+        stateMachine.setBusinessServices(h.getBusinessServices());
+        assertEquals(1 + FAN_OUT + FAN_OUT * FAN_OUT + leafIds.size() + reductionKeys.size(),
+                stateMachine.getGraph().getVertices().size());
+
+        // Continuously read the status while the alarms are being processed
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_READERS; i++) {
+            final Random random = new Random(i);
+            final Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    stateMachine.getOperationalStatus(rootService);
+                    stateMachine.getOperationalStatus(h.getBusinessServiceById(leafIds.get(random.nextInt(leafIds.size()))));
+                    reads.addAndGet(2);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // Send the alarms, keeping track of the last status for every reduction key
+        final Random random = new Random(42);
+        final Map<String, Status> statusByReductionKey = new HashMap<>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_ALARMS; i++) {
+            final String reductionKey = reductionKeys.get(random.nextInt(reductionKeys.size()));
+            final Status status = STATUSES[random.nextInt(STATUSES.length)];
+            stateMachine.handleNewOrUpdatedAlarm(new MockAlarmWrapper(reductionKey, status));
+            statusByReductionKey.put(reductionKey, status);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        LOG.info("Processed {} alarms in {}ms ({} alarms/s) with {} concurrent status reads.",
+                NUMBER_OF_ALARMS, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                NUMBER_OF_ALARMS * TimeUnit.SECONDS.toNanos(1) / elapsed, reads.get());
+
+        // The root should have the highest severity of all the alarms
+        final Status highestStatus = statusByReductionKey.values().stream()
+                .reduce(Status.NORMAL, (a, b) -> a.isGreaterThan(b) ? a : b);
+        assertEquals(highestStatus, stateMachine.getOperationalStatus(rootService));
+
+        // Compare against a state machine which calculates the statuses from scratch
+        final BusinessServiceStateMachine reference = stateMachine.clone(true);
+        for (BusinessService businessService : h.getBusinessServices()) {
+            assertEquals(reference.getOperationalStatus(businessService), stateMachine.getOperationalStatus(businessService));
+        }
+    }
+}
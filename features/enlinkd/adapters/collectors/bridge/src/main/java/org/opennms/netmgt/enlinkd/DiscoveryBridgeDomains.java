@@ -33,42 +33,62 @@ import java.util.ConcurrentModificationException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.opennms.netmgt.enlinkd.service.api.BridgeForwardingTableEntry;
 import org.opennms.netmgt.enlinkd.service.api.BridgeTopologyException;
 import org.opennms.netmgt.enlinkd.service.api.BridgeTopologyService;
 import org.opennms.netmgt.enlinkd.service.api.BroadcastDomain;
 import org.opennms.netmgt.enlinkd.service.api.DiscoveryBridgeTopology;
+import org.opennms.netmgt.enlinkd.service.api.MacAddressSet;
 import org.opennms.netmgt.events.api.EventForwarder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 public class DiscoveryBridgeDomains extends Discovery {
 
     private static final Logger LOG = LoggerFactory.getLogger(DiscoveryBridgeDomains.class);
     private final int m_maxthreads;
     private final BridgeTopologyService m_bridgeTopologyService;
+    private final Timer m_runTimer;
+    private final Timer m_calculateTimer;
+    private final Timer m_storeTimer;
 
     public DiscoveryBridgeDomains(EventForwarder eventforwarder, BridgeTopologyService bridgeTopologyService, long interval, long initialsleeptime, int maxthreads) {
+        this(eventforwarder, bridgeTopologyService, interval, initialsleeptime, maxthreads, new MetricRegistry());
+    }
+
+    public DiscoveryBridgeDomains(EventForwarder eventforwarder, BridgeTopologyService bridgeTopologyService, long interval, long initialsleeptime, int maxthreads, MetricRegistry metrics) {
         super(eventforwarder, interval, initialsleeptime);
         m_maxthreads=maxthreads;
         m_bridgeTopologyService = bridgeTopologyService;
+        m_runTimer = metrics.timer(MetricRegistry.name("bridgeDomains", "run"));
+        m_calculateTimer = metrics.timer(MetricRegistry.name("bridgeDomains", "calculate"));
+        m_storeTimer = metrics.timer(MetricRegistry.name("bridgeDomains", "store"));
     }
             
-    private BroadcastDomain find(Set<Integer> nodes, Set<String> setA) throws BridgeTopologyException {
+    /**
+     * @param domainMacs the macs of the domains, computed once per run and removed when
+     *                   a domain is changed
+     */
+    private BroadcastDomain find(Set<Integer> nodes, MacAddressSet setA, Map<BroadcastDomain, MacAddressSet> domainMacs) throws BridgeTopologyException {
         
         BroadcastDomain domain = null;
         
         for (BroadcastDomain curBDomain : m_bridgeTopologyService.findAll()) {
-            if (BroadcastDomain.checkMacSets(setA, curBDomain.getMacsOnSegments())) {
+            MacAddressSet setB = domainMacs.computeIfAbsent(curBDomain, BroadcastDomain::getMacAddressSet);
+            if (BroadcastDomain.checkMacSets(setA, setB)) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("find: node:{}, domain:{}",
                              nodes, 
@@ -96,6 +116,7 @@ public class DiscoveryBridgeDomains extends Discovery {
                 continue;
             }
             m_bridgeTopologyService.reconcile(olddomain, nodeid);
+            domainMacs.remove(olddomain);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("find: node:[{}]. Removed from Old Domain \n{}", 
                      nodeid, olddomain.printTopology());
@@ -108,14 +129,21 @@ public class DiscoveryBridgeDomains extends Discovery {
     @Override
     public void runDiscovery() {
         LOG.info("run: calculate topology on broadcast domains. Start");
+        try (Timer.Context ctx = m_runTimer.time()) {
+            calculateBroadcastDomains();
+        }
+        LOG.info("run: calculate topology on broadcast domains. End");
+    }
+
+    private void calculateBroadcastDomains() {
         
         Map<Integer, Map<Integer, Set<BridgeForwardingTableEntry>>> nodeondomainbft 
             = new HashMap<Integer, Map<Integer, Set<BridgeForwardingTableEntry>>>();
 
         Map<Integer, Set<BridgeForwardingTableEntry>> nodeBft 
             = new HashMap<Integer, Set<BridgeForwardingTableEntry>>();
-        Map<Integer, Set<String>> nodeMacs 
-        = new HashMap<Integer, Set<String>>();
+        Map<Integer, MacAddressSet> nodeMacs 
+        = new HashMap<Integer, MacAddressSet>();
 
         Set<Integer> nodeids 
         = new HashSet<Integer>(
@@ -131,10 +159,10 @@ public class DiscoveryBridgeDomains extends Discovery {
                 continue;
             }
             nodeBft.put(nodeid, links);
-            Set<String> macs = new HashSet<String>();
-            for (BridgeForwardingTableEntry link : links) {
-                macs.add(link.getMacAddress());
-            }
+            // Keep the macs in a compact form, these are held for all of the updated nodes
+            MacAddressSet macs = MacAddressSet.of(links.stream()
+                    .map(BridgeForwardingTableEntry::getMacAddress)
+                    .collect(Collectors.toList()));
             LOG.debug("run: node:[{}]. macs:{}", nodeid, macs);
             nodeMacs.put(nodeid, macs);
         }
@@ -162,12 +190,16 @@ public class DiscoveryBridgeDomains extends Discovery {
             }
         }
 
+        // The domains are only calculated once all of them are found, until then their
+        // macs only change when bridges are moved between them
+        Map<BroadcastDomain, MacAddressSet> domainMacs = new IdentityHashMap<BroadcastDomain, MacAddressSet>();
         List<Callable<String>> taskList = new ArrayList<Callable<String>>();
         for (Integer nodeid : nodeondomainbft.keySet()) {
             LOG.debug("run: nodes are on same domain {}",nodeondomainbft.get(nodeid).keySet());
             try {
                 BroadcastDomain domain = find(nodeondomainbft.get(nodeid).keySet(),
-                                              nodeMacs.get(nodeid));
+                                              nodeMacs.get(nodeid), domainMacs);
+                domainMacs.remove(domain);
                 DiscoveryBridgeTopology nodebridgetopology = new DiscoveryBridgeTopology(domain);
                 
                 synchronized (domain) {
@@ -179,14 +211,17 @@ public class DiscoveryBridgeDomains extends Discovery {
                 }
                                 
                 Callable<String> task = () -> {
+                    final long calculateMs;
+                    final long storeMs;
                     synchronized (domain) {
                         
                         Date now = new Date();
                         LOG.debug("run: calculate start"); 
-                        nodebridgetopology.calculate();
+                        calculateMs = time(m_calculateTimer, nodebridgetopology::calculate);
                         LOG.debug("run: calculate end"); 
                     
                         LOG.debug("run: save start");
+                        final long storeStart = System.nanoTime();
                         try {
                             m_bridgeTopologyService.store(domain, now);
                         } catch (BridgeTopologyException e) {
@@ -198,9 +233,11 @@ public class DiscoveryBridgeDomains extends Discovery {
                                       e.getMessage(),
                                       domain.printTopology());
                         }
+                        storeMs = update(m_storeTimer, storeStart);
                         LOG.debug("run: save end");
                     }
-                    return "executed Task: " + nodebridgetopology.getInfo();
+                    return "executed Task: " + nodebridgetopology.getInfo()
+                        + ", calculated in " + calculateMs + "ms, stored in " + storeMs + "ms";
                 };
                 taskList.add(task);
                 LOG.info("run: added Task {}", nodebridgetopology.getInfo());
@@ -217,23 +254,64 @@ public class DiscoveryBridgeDomains extends Discovery {
         }
 
         if (n > 0) {
-            LOG.debug("run: creating executorService with {} Threads", n);
-            ExecutorService executorService = Executors.newFixedThreadPool(n);
-            LOG.debug("run: created executorService with {} Threads", n);
+            // The broadcast domains are independent, and can be calculated in parallel
+            LOG.debug("run: creating ForkJoinPool with parallelism {}", n);
+            ForkJoinPool executorService = new ForkJoinPool(n);
+            LOG.debug("run: created ForkJoinPool with parallelism {}", n);
 
             try {
-                for (Future<String> future : executorService.invokeAll(taskList)) {
-                    LOG.info("run: {}", future.get());
-                }
-            } catch (InterruptedException | ExecutionException e) {
-                LOG.error("run: executing task {}", e.getMessage(), e);
+                executorService.invoke(new CalculateDomains(taskList, 0, taskList.size()));
+            } finally {
+                executorService.shutdown();
             }
-            executorService.shutdown();
         } else {
             LOG.info("run: no updates on broadcast domains");
         }
-        LOG.info("run: calculate topology on broadcast domains. End");
+    }
+
+    /**
+     * Splits the tasks in halves, which are forked until a single domain
+     * is left, so that idle workers can steal the remaining domains.
+     */
+    private static class CalculateDomains extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Callable<String>> m_tasks;
+        private final int m_from;
+        private final int m_to;
+
+        private CalculateDomains(List<Callable<String>> tasks, int from, int to) {
+            m_tasks = tasks;
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (m_to - m_from > 1) {
+                final int middle = (m_from + m_to) >>> 1;
+                invokeAll(new CalculateDomains(m_tasks, m_from, middle),
+                          new CalculateDomains(m_tasks, middle, m_to));
+                return;
+            }
+            try {
+                LOG.info("run: {}", m_tasks.get(m_from).call());
+            } catch (Exception e) {
+                LOG.error("run: executing task {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private static long time(Timer timer, Runnable runnable) {
+        final long start = System.nanoTime();
+        runnable.run();
+        return update(timer, start);
+    }
 
+    private static long update(Timer timer, long start) {
+        final long elapsed = System.nanoTime() - start;
+        timer.update(elapsed, TimeUnit.NANOSECONDS);
+        return TimeUnit.NANOSECONDS.toMillis(elapsed);
     }
 
     @Override
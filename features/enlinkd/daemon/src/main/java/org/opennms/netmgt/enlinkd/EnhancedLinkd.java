@@ -55,6 +55,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.Assert;
 
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * <p>
  * Linkd class.
@@ -109,6 +111,8 @@ public class EnhancedLinkd extends AbstractServiceDaemon {
 
     private DiscoveryBridgeDomains m_discoveryBridgeDomains;
 
+    private MetricRegistry m_metricRegistry = new MetricRegistry();
+
     /**
      * <p>
      * Constructor for EnhancedLinkd.
@@ -166,7 +170,8 @@ public class EnhancedLinkd extends AbstractServiceDaemon {
                                                getBridgeTopologyService(),
                                                getBridgeTopologyInterval(),
                                                getBridgeTopologyInterval()+getInitialSleepTime(),
-                                               getDiscoveryBridgeThreads());
+                                               getDiscoveryBridgeThreads(),
+                                               getMetricRegistry());
             LOG.debug("scheduleDiscoveryBridgeDomain: Scheduling {}",
                      m_discoveryBridgeDomains.getInfo());
             m_discoveryBridgeDomains.setScheduler(m_scheduler);
@@ -524,6 +529,14 @@ public class EnhancedLinkd extends AbstractServiceDaemon {
         m_bridgeTopologyService = bridgeTopologyService;
     }
 
+    public MetricRegistry getMetricRegistry() {
+        return m_metricRegistry;
+    }
+
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        m_metricRegistry = metricRegistry;
+    }
+
     public CdpTopologyService getCdpTopologyService() {
         return m_cdpTopologyService;
     }
@@ -54,6 +54,18 @@ public class CdpLinkTopologyEntity {
         this.cdpCacheDevicePort = cdpCacheDevicePort;
     }
 
+    public static CdpLinkTopologyEntity create(CdpLink link) {
+        return new CdpLinkTopologyEntity(
+                link.getId()
+                , link.getNode().getId()
+                , link.getCdpCacheIfIndex()
+                , link.getCdpInterfaceName()
+                , link.getCdpCacheAddress()
+                , link.getCdpCacheDeviceId()
+                , link.getCdpCacheDevicePort()
+        );
+    }
+
     public Integer getId() {
         return id;
     }
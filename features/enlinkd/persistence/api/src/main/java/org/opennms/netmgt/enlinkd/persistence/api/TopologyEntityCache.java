@@ -57,6 +57,25 @@ public interface TopologyEntityCache {
     List<LldpElementTopologyEntity> getLldpElementTopologyEntities();
     List<SnmpInterfaceTopologyEntity> getSnmpInterfaceTopologyEntities();
     List<IpInterfaceTopologyEntity> getIpInterfaceTopologyEntities();
+
+    /**
+     * Applies a link written by enlinkd to the cached links, without reloading them.
+     */
+    void updateLldpLink(LldpLinkTopologyEntity link);
+
+    /**
+     * Replaces the cached links of the given node with the given ones, without reloading the links of the other nodes.
+     */
+    void updateLldpLinks(int nodeId, List<LldpLinkTopologyEntity> links);
+
+    void updateCdpLink(CdpLinkTopologyEntity link);
+
+    void updateCdpLinks(int nodeId, List<CdpLinkTopologyEntity> links);
+
+    /**
+     * Reloads the cached entities. The LLDP and CDP links are kept up to date by the updates above,
+     * and are only reloaded once they expire.
+     */
     void refresh();
 
 }
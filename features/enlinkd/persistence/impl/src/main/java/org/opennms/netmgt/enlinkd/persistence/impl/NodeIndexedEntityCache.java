@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd.persistence.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caches a list of entities, indexed by node and by id, so that the entities of a single node
+ * can be updated without reloading all of them.
+ *
+ * The entities are reloaded once they expire. In between, the list returned to the readers is
+ * only rebuilt from the index when it has been updated.
+ */
+class NodeIndexedEntityCache<E> {
+
+    private final Supplier<List<E>> m_loader;
+    private final Function<E, Integer> m_nodeId;
+    private final Function<E, Integer> m_id;
+    private final long m_durationNanos;
+
+    // Guarded by this
+    private Map<Integer, Map<Integer, E>> m_entitiesByNode;
+
+    private volatile long m_loadedAt;
+    private volatile List<E> m_entities;
+
+    NodeIndexedEntityCache(Supplier<List<E>> loader, Function<E, Integer> nodeId, Function<E, Integer> id, long durationSeconds) {
+        m_loader = loader;
+        m_nodeId = nodeId;
+        m_id = id;
+        m_durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+    }
+
+    List<E> get() {
+        final List<E> entities = m_entities;
+        if (entities != null && !isExpired()) {
+            return entities;
+        }
+        synchronized (this) {
+            if (m_entitiesByNode == null || isExpired()) {
+                load();
+            }
+            if (m_entities == null) {
+                final List<E> rebuilt = new ArrayList<>();
+                m_entitiesByNode.values().forEach(e -> rebuilt.addAll(e.values()));
+                m_entities = Collections.unmodifiableList(rebuilt);
+            }
+            return m_entities;
+        }
+    }
+
+    synchronized void put(E entity) {
+        if (m_entitiesByNode == null) {
+            // Not loaded yet, the entity will be part of the next load
+            return;
+        }
+        m_entitiesByNode.computeIfAbsent(m_nodeId.apply(entity), k -> new LinkedHashMap<>())
+                .put(m_id.apply(entity), entity);
+        m_entities = null;
+    }
+
+    synchronized void replace(int nodeId, Collection<E> entities) {
+        if (m_entitiesByNode == null) {
+            return;
+        }
+        if (entities.isEmpty()) {
+            m_entitiesByNode.remove(nodeId);
+        } else {
+            final Map<Integer, E> entitiesById = new LinkedHashMap<>();
+            entities.forEach(e -> entitiesById.put(m_id.apply(e), e));
+            m_entitiesByNode.put(nodeId, entitiesById);
+        }
+        m_entities = null;
+    }
+
+    /**
+     * Reloads the entities now, dropping the updates applied since the last load.
+     */
+    synchronized void refresh() {
+        load();
+    }
+
+    synchronized void invalidate() {
+        m_entitiesByNode = null;
+        m_entities = null;
+    }
+
+    private boolean isExpired() {
+        return System.nanoTime() - m_loadedAt > m_durationNanos;
+    }
+
+    private void load() {
+        final Map<Integer, Map<Integer, E>> entitiesByNode = new HashMap<>();
+        for (E entity : m_loader.get()) {
+            entitiesByNode.computeIfAbsent(m_nodeId.apply(entity), k -> new LinkedHashMap<>())
+                    .put(m_id.apply(entity), entity);
+        }
+        m_entitiesByNode = entitiesByNode;
+        m_loadedAt = System.nanoTime();
+        m_entities = null;
+    }
+}
@@ -59,8 +59,10 @@ public class TopologyEntityCacheImpl implements TopologyEntityCache {
     private final LoadingCache<String, List<NodeTopologyEntity>> nodeTopologyEntities = createCache(
             () -> topologyEntityDao.getNodeTopologyEntities());
 
-    private final LoadingCache<String, List<CdpLinkTopologyEntity>> cdpLinkTopologyEntities = createCache(
-            () -> topologyEntityDao.getCdpLinkTopologyEntities());
+    // The LLDP and CDP links are updated incrementally, with the links written by enlinkd
+    private final NodeIndexedEntityCache<CdpLinkTopologyEntity> cdpLinkTopologyEntities = new NodeIndexedEntityCache<>(
+            () -> topologyEntityDao.getCdpLinkTopologyEntities(),
+            CdpLinkTopologyEntity::getNodeId, CdpLinkTopologyEntity::getId, getCacheDuration());
 
     private final LoadingCache<String, List<IsIsLinkTopologyEntity>> isIsLinkTopologyEntities = createCache(
             ()-> topologyEntityDao.getIsIsLinkTopologyEntities());
@@ -68,8 +70,9 @@ public class TopologyEntityCacheImpl implements TopologyEntityCache {
     private final LoadingCache<String, List<OspfLinkTopologyEntity>> ospfLinkTopologyEntities = createCache (
             () -> topologyEntityDao.getOspfLinkTopologyEntities());
 
-    private final LoadingCache<String, List<LldpLinkTopologyEntity>> lldpLinkTopologyEntities = createCache (
-            () -> topologyEntityDao.getLldpLinkTopologyEntities());
+    private final NodeIndexedEntityCache<LldpLinkTopologyEntity> lldpLinkTopologyEntities = new NodeIndexedEntityCache<>(
+            () -> topologyEntityDao.getLldpLinkTopologyEntities(),
+            LldpLinkTopologyEntity::getNodeId, LldpLinkTopologyEntity::getId, getCacheDuration());
 
     private final LoadingCache<String, List<CdpElementTopologyEntity>> cdpElementTopologyEntities = createCache(
             () ->  topologyEntityDao.getCdpElementTopologyEntities());
@@ -106,7 +109,7 @@ public class TopologyEntityCacheImpl implements TopologyEntityCache {
 
     @Override
     public List<CdpLinkTopologyEntity> getCdpLinkTopologyEntities() {
-        return this.cdpLinkTopologyEntities.getUnchecked(CACHE_KEY);
+        return this.cdpLinkTopologyEntities.get();
     }
 
     @Override
@@ -121,7 +124,7 @@ public class TopologyEntityCacheImpl implements TopologyEntityCache {
 
     @Override
     public List<LldpLinkTopologyEntity> getLldpLinkTopologyEntities() {
-        return this.lldpLinkTopologyEntities.getUnchecked(CACHE_KEY);
+        return this.lldpLinkTopologyEntities.get();
     }
 
     @Override
@@ -149,12 +152,32 @@ public class TopologyEntityCacheImpl implements TopologyEntityCache {
         return this.ipInterfaceTopologyEntities.getUnchecked(CACHE_KEY);
     }
 
+    @Override
+    public void updateLldpLink(LldpLinkTopologyEntity link) {
+        lldpLinkTopologyEntities.put(link);
+    }
+
+    @Override
+    public void updateLldpLinks(int nodeId, List<LldpLinkTopologyEntity> links) {
+        lldpLinkTopologyEntities.replace(nodeId, links);
+    }
+
+    @Override
+    public void updateCdpLink(CdpLinkTopologyEntity link) {
+        cdpLinkTopologyEntities.put(link);
+    }
+
+    @Override
+    public void updateCdpLinks(int nodeId, List<CdpLinkTopologyEntity> links) {
+        cdpLinkTopologyEntities.replace(nodeId, links);
+    }
+
     @Override
     public void refresh(){
         nodeTopologyEntities.refresh(CACHE_KEY);
-        cdpLinkTopologyEntities.refresh(CACHE_KEY);
+        cdpLinkTopologyEntities.refresh();
         isIsLinkTopologyEntities.refresh(CACHE_KEY);
-        lldpLinkTopologyEntities.refresh(CACHE_KEY);
+        lldpLinkTopologyEntities.refresh();
         cdpElementTopologyEntities.refresh(CACHE_KEY);
         isIsElementTopologyEntities.refresh(CACHE_KEY);
         lldpElementTopologyEntities.refresh(CACHE_KEY);
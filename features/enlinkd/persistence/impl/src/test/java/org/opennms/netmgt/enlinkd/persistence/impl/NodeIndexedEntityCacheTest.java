@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd.persistence.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.netmgt.enlinkd.model.CdpLinkTopologyEntity;
+
+public class NodeIndexedEntityCacheTest {
+
+    @Test
+    public void canUpdateLinksWithoutReloading() {
+        final AtomicInteger loads = new AtomicInteger();
+        final NodeIndexedEntityCache<CdpLinkTopologyEntity> cache = new NodeIndexedEntityCache<>(() -> {
+            loads.incrementAndGet();
+            return Arrays.asList(link(1, 1), link(2, 1), link(3, 2));
+        }, CdpLinkTopologyEntity::getNodeId, CdpLinkTopologyEntity::getId, 300);
+
+        assertEquals(Arrays.asList(1, 2, 3), ids(cache.get()));
+        assertEquals(1, loads.get());
+
+        // The list is reused until it is updated
+        assertSame(cache.get(), cache.get());
+
+        // Add a link to node 2 and update another one of node 1
+        cache.put(link(4, 2));
+        cache.put(link(1, 1));
+        assertEquals(Arrays.asList(1, 2, 3, 4), ids(cache.get()));
+
+        // Replace the links of node 1
+        cache.replace(1, Collections.singletonList(link(5, 1)));
+        assertEquals(Arrays.asList(5, 3, 4), ids(cache.get()));
+
+        // Remove the links of node 2
+        cache.replace(2, Collections.emptyList());
+        assertEquals(Arrays.asList(5), ids(cache.get()));
+        assertEquals(1, loads.get());
+
+        // Reload once invalidated
+        cache.invalidate();
+        assertEquals(Arrays.asList(1, 2, 3), ids(cache.get()));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void canReloadExpiredLinks() {
+        final AtomicInteger loads = new AtomicInteger();
+        final NodeIndexedEntityCache<CdpLinkTopologyEntity> cache = new NodeIndexedEntityCache<>(() -> {
+            loads.incrementAndGet();
+            return Collections.singletonList(link(1, 1));
+        }, CdpLinkTopologyEntity::getNodeId, CdpLinkTopologyEntity::getId, 0);
+
+        // Updates before the first load are part of the load
+        cache.put(link(2, 1));
+        assertEquals(Arrays.asList(1), ids(cache.get()));
+        assertEquals(Arrays.asList(1), ids(cache.get()));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void canRefreshLinks() {
+        final AtomicInteger loads = new AtomicInteger();
+        final NodeIndexedEntityCache<CdpLinkTopologyEntity> cache = new NodeIndexedEntityCache<>(() -> {
+            loads.incrementAndGet();
+            return Arrays.asList(link(1, 1), link(2, loads.get()));
+        }, CdpLinkTopologyEntity::getNodeId, CdpLinkTopologyEntity::getId, 300);
+
+        assertEquals(Arrays.asList(1, 2), ids(cache.get()));
+        cache.put(link(3, 1));
+        assertEquals(Arrays.asList(1, 2, 3), ids(cache.get()));
+
+        // The links are reloaded right away, and the updates are dropped
+        cache.refresh();
+        assertEquals(2, loads.get());
+        assertEquals(Arrays.asList(1, 2), ids(cache.get()));
+        assertEquals(2, cache.get().get(1).getNodeId().intValue());
+        assertEquals(2, loads.get());
+    }
+
+    private static CdpLinkTopologyEntity link(int id, int nodeId) {
+        return new CdpLinkTopologyEntity(id, nodeId, 1, "eth0", "10.0.0.1", "device", "port");
+    }
+
+    private static List<Integer> ids(List<CdpLinkTopologyEntity> links) {
+        return links.stream().map(CdpLinkTopologyEntity::getId).collect(Collectors.toList());
+    }
+}
@@ -55,10 +55,18 @@ public class BroadcastDomain implements Topology {
     public static boolean checkMacSets(Set<String> setA, Set<String> setB) {
         Set<String>retainedSet = new HashSet<String>(setB);
         retainedSet.retainAll(setA);
+        return checkMacSets(retainedSet.size(), setA.size(), setB.size());
+    }
+
+    public static boolean checkMacSets(MacAddressSet setA, MacAddressSet setB) {
+        return checkMacSets(setA.intersectionSize(setB), setA.size(), setB.size());
+    }
+
+    private static boolean checkMacSets(int retained, int sizeA, int sizeB) {
         // should contain at list 20 or 50% of the all size
-        if (retainedSet.size() > DOMAIN_MATCH_MIN_SIZE
-            || retainedSet.size() > setA.size() * DOMAIN_MATCH_MIN_RATIO
-            || retainedSet.size() > setB.size() * DOMAIN_MATCH_MIN_RATIO
+        if (retained > DOMAIN_MATCH_MIN_SIZE
+            || retained > sizeA * DOMAIN_MATCH_MIN_RATIO
+            || retained > sizeB * DOMAIN_MATCH_MIN_RATIO
                 ) {
             return true;
         }
@@ -540,6 +548,13 @@ public class BroadcastDomain implements Topology {
             macs.addAll(segment.getMacsOnSegment());
         return macs;
     }
+
+    /**
+     * Returns a snapshot of the macs on the shared segments in compact form.
+     */
+    public MacAddressSet getMacAddressSet() {
+        return MacAddressSet.of(getMacsOnSegments());
+    }
         
     public List<SharedSegment> getSharedSegments(Integer bridgeId) {
         List<SharedSegment> segmentsOnBridge = new ArrayList<SharedSegment>();
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd.service.api;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An immutable set of mac addresses, encoded as primitive longs.
+ *
+ * The mac addresses are kept in a sorted array, which takes a fraction of
+ * the memory of a set of strings, and allows the intersection of two sets
+ * to be counted with a single pass over both of them. Mac addresses which
+ * cannot be encoded are kept as is.
+ */
+public final class MacAddressSet {
+
+    public static final MacAddressSet EMPTY = new MacAddressSet(new long[0], new String[0]);
+
+    private static final int MAC_ADDRESS_LENGTH = 12;
+
+    private final long[] m_macs;
+    private final String[] m_others;
+
+    private MacAddressSet(long[] macs, String[] others) {
+        m_macs = macs;
+        m_others = others;
+    }
+
+    public static MacAddressSet of(Collection<String> macs) {
+        Objects.requireNonNull(macs);
+        if (macs.isEmpty()) {
+            return EMPTY;
+        }
+
+        long[] encoded = new long[macs.size()];
+        int n = 0;
+        TreeSet<String> others = null;
+        for (String mac : macs) {
+            final long value = encode(mac);
+            if (value < 0) {
+                if (others == null) {
+                    others = new TreeSet<>();
+                }
+                others.add(mac);
+                continue;
+            }
+            encoded[n++] = value;
+        }
+
+        // Sort and remove the duplicates
+        Arrays.sort(encoded, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || encoded[distinct - 1] != encoded[i]) {
+                encoded[distinct++] = encoded[i];
+            }
+        }
+        if (distinct < encoded.length) {
+            encoded = Arrays.copyOf(encoded, distinct);
+        }
+
+        return new MacAddressSet(encoded, others == null ? EMPTY.m_others : others.toArray(new String[0]));
+    }
+
+    /**
+     * Encodes the given mac address in the lower 48 bits of a long.
+     *
+     * @return the encoded mac address, or -1 if the given string is not a mac address
+     */
+    public static long encode(String mac) {
+        if (mac == null) {
+            return -1;
+        }
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < mac.length(); i++) {
+            final char c = mac.charAt(i);
+            if (c == ':' || c == '-' || c == '.') {
+                continue;
+            }
+            final int digit = Character.digit(c, 16);
+            if (digit < 0 || ++digits > MAC_ADDRESS_LENGTH) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return digits == MAC_ADDRESS_LENGTH ? value : -1;
+    }
+
+    public static String decode(long mac) {
+        final String hex = Long.toHexString(mac);
+        final StringBuilder sb = new StringBuilder(MAC_ADDRESS_LENGTH);
+        for (int i = hex.length(); i < MAC_ADDRESS_LENGTH; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+
+    public int size() {
+        return m_macs.length + m_others.length;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(String mac) {
+        final long value = encode(mac);
+        if (value < 0) {
+            return Arrays.binarySearch(m_others, mac) >= 0;
+        }
+        return Arrays.binarySearch(m_macs, value) >= 0;
+    }
+
+    /**
+     * Counts the mac addresses which are contained in both sets.
+     */
+    public int intersectionSize(MacAddressSet other) {
+        return countCommon(m_macs, other.m_macs) + countCommon(m_others, other.m_others);
+    }
+
+    private static int countCommon(long[] a, long[] b) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private static int countCommon(String[] a, String[] b) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            final int cmp = a[i].compareTo(b[j]);
+            if (cmp < 0) {
+                i++;
+            } else if (cmp > 0) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return Stream.concat(Arrays.stream(m_macs).mapToObj(MacAddressSet::decode), Arrays.stream(m_others))
+                .collect(Collectors.joining(", ", "[", "]"));
+    }
+}
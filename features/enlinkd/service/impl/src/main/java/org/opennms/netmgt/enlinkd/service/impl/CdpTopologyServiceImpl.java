@@ -28,13 +28,17 @@
 
 package org.opennms.netmgt.enlinkd.service.impl;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.stream.Collectors;
 
 import org.opennms.netmgt.dao.support.UpsertTemplate;
 import org.opennms.netmgt.enlinkd.model.CdpElement;
 import org.opennms.netmgt.enlinkd.model.CdpLink;
+import org.opennms.netmgt.enlinkd.model.CdpLinkTopologyEntity;
 import org.opennms.netmgt.enlinkd.persistence.api.CdpElementDao;
 import org.opennms.netmgt.enlinkd.persistence.api.CdpLinkDao;
+import org.opennms.netmgt.enlinkd.persistence.api.TopologyEntityCache;
 import org.opennms.netmgt.enlinkd.service.api.CdpTopologyService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,6 +52,7 @@ public class CdpTopologyServiceImpl implements CdpTopologyService {
     
     private CdpLinkDao m_cdpLinkDao;
     private CdpElementDao m_cdpElementDao;
+    private TopologyEntityCache m_topologyEntityCache;
 
     public CdpTopologyServiceImpl() {
     }
@@ -58,6 +63,9 @@ public class CdpTopologyServiceImpl implements CdpTopologyService {
         m_cdpLinkDao.deleteByNodeId(nodeid);
         m_cdpElementDao.flush();
         m_cdpLinkDao.flush();        
+        if (m_topologyEntityCache != null) {
+            m_topologyEntityCache.updateCdpLinks(nodeid, Collections.emptyList());
+        }
     }
 
     @Override
@@ -70,6 +78,11 @@ public class CdpTopologyServiceImpl implements CdpTopologyService {
         }
         m_cdpLinkDao.deleteByNodeIdOlderThen(nodeId, now);
         m_cdpLinkDao.flush();
+        if (m_topologyEntityCache != null) {
+            m_topologyEntityCache.updateCdpLinks(nodeId, m_cdpLinkDao.findByNodeId(nodeId).stream()
+                    .map(CdpLinkTopologyEntity::create)
+                    .collect(Collectors.toList()));
+        }
     }
 
     @Override
@@ -105,7 +118,7 @@ public class CdpTopologyServiceImpl implements CdpTopologyService {
     
     @Transactional
     protected void saveCdpLink(final int nodeId, final CdpLink saveMe) {
-        new UpsertTemplate<CdpLink, CdpLinkDao>(m_transactionManager,
+        final CdpLink saved = new UpsertTemplate<CdpLink, CdpLinkDao>(m_transactionManager,
                                                 m_cdpLinkDao) {
 
             @Override
@@ -134,6 +147,9 @@ public class CdpTopologyServiceImpl implements CdpTopologyService {
             }
 
         }.execute();
+        if (m_topologyEntityCache != null && saved != null) {
+            m_topologyEntityCache.updateCdpLink(CdpLinkTopologyEntity.create(saved));
+        }
     }
 
     public CdpLinkDao getCdpLinkDao() {
@@ -152,4 +168,12 @@ public class CdpTopologyServiceImpl implements CdpTopologyService {
         m_cdpElementDao = cdpElementDao;
     }
 
+    public TopologyEntityCache getTopologyEntityCache() {
+        return m_topologyEntityCache;
+    }
+
+    public void setTopologyEntityCache(TopologyEntityCache topologyEntityCache) {
+        m_topologyEntityCache = topologyEntityCache;
+    }
+
 }
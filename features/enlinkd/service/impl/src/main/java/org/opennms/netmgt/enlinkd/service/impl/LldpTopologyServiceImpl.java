@@ -28,13 +28,17 @@
 
 package org.opennms.netmgt.enlinkd.service.impl;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.stream.Collectors;
 
 import org.opennms.netmgt.dao.support.UpsertTemplate;
 import org.opennms.netmgt.enlinkd.model.LldpElement;
 import org.opennms.netmgt.enlinkd.model.LldpLink;
+import org.opennms.netmgt.enlinkd.model.LldpLinkTopologyEntity;
 import org.opennms.netmgt.enlinkd.persistence.api.LldpElementDao;
 import org.opennms.netmgt.enlinkd.persistence.api.LldpLinkDao;
+import org.opennms.netmgt.enlinkd.persistence.api.TopologyEntityCache;
 import org.opennms.netmgt.enlinkd.service.api.LldpTopologyService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,6 +52,7 @@ public class LldpTopologyServiceImpl implements LldpTopologyService {
 
     private LldpLinkDao m_lldpLinkDao;
     private LldpElementDao m_lldpElementDao;
+    private TopologyEntityCache m_topologyEntityCache;
 
     public LldpTopologyServiceImpl() {
     }
@@ -58,6 +63,9 @@ public class LldpTopologyServiceImpl implements LldpTopologyService {
         m_lldpLinkDao.deleteByNodeId(nodeid);
         m_lldpElementDao.flush();
         m_lldpLinkDao.flush();
+        if (m_topologyEntityCache != null) {
+            m_topologyEntityCache.updateLldpLinks(nodeid, Collections.emptyList());
+        }
     }
 
     @Override
@@ -70,6 +78,11 @@ public class LldpTopologyServiceImpl implements LldpTopologyService {
         }
         m_lldpLinkDao.deleteByNodeIdOlderThen(nodeId, now);
         m_lldpLinkDao.flush();
+        if (m_topologyEntityCache != null) {
+            m_topologyEntityCache.updateLldpLinks(nodeId, m_lldpLinkDao.findByNodeId(nodeId).stream()
+                    .map(LldpLinkTopologyEntity::create)
+                    .collect(Collectors.toList()));
+        }
     }
 
     @Override
@@ -81,7 +94,7 @@ public class LldpTopologyServiceImpl implements LldpTopologyService {
 
     @Transactional
     protected void saveLldpLink(final int nodeId, final LldpLink saveMe) {
-        new UpsertTemplate<LldpLink, LldpLinkDao>(m_transactionManager,
+        final LldpLink saved = new UpsertTemplate<LldpLink, LldpLinkDao>(m_transactionManager,
                                                   m_lldpLinkDao) {
 
             @Override
@@ -109,6 +122,9 @@ public class LldpTopologyServiceImpl implements LldpTopologyService {
             }
 
         }.execute();
+        if (m_topologyEntityCache != null && saved != null) {
+            m_topologyEntityCache.updateLldpLink(LldpLinkTopologyEntity.create(saved));
+        }
     }
 
     @Override
@@ -149,4 +165,12 @@ public class LldpTopologyServiceImpl implements LldpTopologyService {
         m_lldpElementDao = lldpElementDao;
     }
 
+    public TopologyEntityCache getTopologyEntityCache() {
+        return m_topologyEntityCache;
+    }
+
+    public void setTopologyEntityCache(TopologyEntityCache topologyEntityCache) {
+        m_topologyEntityCache = topologyEntityCache;
+    }
+
 }
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.opennms.netmgt.enlinkd.service.api.Bridge;
+import org.opennms.netmgt.enlinkd.service.api.BridgePort;
+import org.opennms.netmgt.enlinkd.service.api.BridgePortWithMacs;
+import org.opennms.netmgt.enlinkd.service.api.BroadcastDomain;
+import org.opennms.netmgt.enlinkd.service.api.MacAddressSet;
+import org.opennms.netmgt.enlinkd.service.api.SharedSegment;
+
+import com.google.common.collect.Sets;
+
+public class MacAddressSetTest {
+
+    @Test
+    public void canEncodeMacAddresses() {
+        assertEquals(0x001122aabbccL, MacAddressSet.encode("001122aabbcc"));
+        assertEquals(0x001122aabbccL, MacAddressSet.encode("00:11:22:AA:BB:CC"));
+        assertEquals(-1, MacAddressSet.encode("001122aabb"));
+        assertEquals(-1, MacAddressSet.encode("001122aabbccdd"));
+        assertEquals(-1, MacAddressSet.encode("00112zaabbcc"));
+        assertEquals("001122aabbcc", MacAddressSet.decode(0x001122aabbccL));
+    }
+
+    @Test
+    public void canIntersectMacAddressSets() {
+        MacAddressSet a = MacAddressSet.of(Sets.newHashSet("001122aabbcc", "001122aabbcd", "001122aabbce", "not-a-mac"));
+        MacAddressSet b = MacAddressSet.of(Sets.newHashSet("001122aabbcd", "001122aabbce", "001122aabbcf", "not-a-mac"));
+
+        assertEquals(4, a.size());
+        assertTrue(a.contains("001122aabbcc"));
+        assertTrue(a.contains("not-a-mac"));
+        assertFalse(a.contains("001122aabbcf"));
+        assertEquals(3, a.intersectionSize(b));
+        assertEquals(0, a.intersectionSize(MacAddressSet.EMPTY));
+    }
+
+    @Test
+    public void canCheckMacSetsLikeStringSets() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            Set<String> setA = randomMacs(random, random.nextInt(60));
+            Set<String> setB = randomMacs(random, random.nextInt(60));
+            assertEquals(BroadcastDomain.checkMacSets(setA, setB),
+                         BroadcastDomain.checkMacSets(MacAddressSet.of(setA), MacAddressSet.of(setB)));
+        }
+    }
+
+    @Test
+    public void reflectsTheMacsOfADomain() throws Exception {
+        BroadcastDomain domain = new BroadcastDomain();
+        Bridge.createRootBridge(domain, 1);
+        BridgePort bridgePort = new BridgePort();
+        bridgePort.setNodeId(1);
+        bridgePort.setBridgePort(1);
+        BridgePortWithMacs port = BridgePortWithMacs.create(bridgePort, Sets.newHashSet("001122aabbcc", "001122aabbcd"));
+        assertTrue(domain.getMacAddressSet().isEmpty());
+
+        SharedSegment segment = SharedSegment.createAndAddToBroadcastDomain(domain, port);
+        assertEquals(2, domain.getMacAddressSet().size());
+
+        // Direct changes to the segments are seen
+        segment.getMacsOnSegment().add("001122aabbce");
+        assertEquals(3, domain.getMacAddressSet().size());
+        assertTrue(domain.getMacAddressSet().contains("001122aabbce"));
+
+        domain.clearTopology();
+        assertTrue(domain.getMacAddressSet().isEmpty());
+    }
+
+    private static Set<String> randomMacs(Random random, int count) {
+        final Set<String> macs = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            // Pick from a small range, so that the sets overlap
+            macs.add(MacAddressSet.decode(0x000c29000000L + random.nextInt(100)));
+        }
+        return macs;
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.events.api;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Optional interface which can be implemented by event listeners in order
+ * to receive the events that have queued up for them in batches, rather than
+ * one at a time.
+ *
+ * Events are delivered in the order in which they were broadcast. When the
+ * listener also implements {@link ThreadAwareEventListener}, each thread
+ * drains its own batches.
+ */
+public interface BatchEventListener extends EventListener {
+
+    /**
+     * Process a batch of sent events.
+     *
+     * @param events the events, never empty
+     */
+    void onEvents(List<Event> events);
+
+    /**
+     * @return the maximum number of events delivered in a single call to {@link #onEvents(List)}
+     */
+    default int getMaxBatchSize() {
+        return 100;
+    }
+
+    @Override
+    default void onEvent(Event e) {
+        onEvents(Collections.singletonList(e));
+    }
+}
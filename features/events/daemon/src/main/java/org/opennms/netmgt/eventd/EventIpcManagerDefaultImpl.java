@@ -32,12 +32,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -47,6 +49,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.events.api.BatchEventListener;
 import org.opennms.netmgt.events.api.EventHandler;
 import org.opennms.netmgt.events.api.EventIpcBroadcaster;
 import org.opennms.netmgt.events.api.EventIpcManager;
@@ -62,8 +65,11 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 /**
  * An implementation of the EventIpcManager interface that can be used to
@@ -101,19 +107,11 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     }
 
     /**
-     * Hash table of list of event listeners keyed by event UEI
+     * The current listener routing table. The table is immutable and is replaced
+     * as a whole whenever listeners are added or removed, so that events can be
+     * broadcast without taking any locks.
      */
-    private Map<String, List<EventListener>> m_ueiListeners = new HashMap<String, List<EventListener>>();
-
-    /**
-     * The list of event listeners interested in all events
-     */
-    private List<EventListener> m_listeners = new ArrayList<EventListener>();
-
-    /**
-     * Hash table of event listener threads keyed by the listener's id
-     */
-    private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
+    private volatile RoutingTable m_routingTable = RoutingTable.EMPTY;
 
     /**
      * The thread pool handling the events
@@ -128,11 +126,137 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
     private final MetricRegistry m_registry;
 
+    /**
+     * An immutable snapshot of the registered listeners.
+     */
+    private static class RoutingTable {
+        private static final RoutingTable EMPTY = new RoutingTable(Collections.emptyMap(), Collections.emptyList(), Collections.emptyMap());
+
+        /**
+         * Upper bound on the number of distinct UEIs for which the resolved listeners are cached
+         */
+        private static final int MAX_CACHED_UEIS = 10000;
+
+        /**
+         * Map of event listeners keyed by event UEI
+         */
+        private final Map<String, List<EventListener>> m_ueiListeners;
+
+        /**
+         * The list of event listeners interested in all events
+         */
+        private final List<EventListener> m_listeners;
+
+        /**
+         * Map of event listener threads keyed by the listener's id
+         */
+        private final Map<String, EventListenerExecutor> m_listenerThreads;
+
+        /**
+         * The UEI specific listeners, including the ones registered for partial
+         * wild card "directory" matches, resolved for the UEIs seen so far.
+         */
+        private final Map<String, List<EventListener>> m_resolvedUeiListeners = new ConcurrentHashMap<>();
+
+        private RoutingTable(Map<String, List<EventListener>> ueiListeners, List<EventListener> listeners, Map<String, EventListenerExecutor> listenerThreads) {
+            m_ueiListeners = ueiListeners;
+            m_listeners = listeners;
+            m_listenerThreads = listenerThreads;
+        }
+
+        private List<EventListener> getListenersForUei(String uei) {
+            final List<EventListener> resolved = m_resolvedUeiListeners.get(uei);
+            if (resolved != null) {
+                return resolved;
+            }
+            final List<EventListener> listeners = resolveListenersForUei(uei);
+            if (m_resolvedUeiListeners.size() < MAX_CACHED_UEIS) {
+                m_resolvedUeiListeners.put(uei, listeners);
+            }
+            return listeners;
+        }
+
+        /**
+         * Loop to attempt partial wild card "directory" matches.
+         */
+        private List<EventListener> resolveListenersForUei(final String eventUei) {
+            final Set<EventListener> listeners = new LinkedHashSet<>();
+            for (String uei = eventUei; uei.length() > 0; ) {
+                final List<EventListener> ueiListeners = m_ueiListeners.get(uei);
+                if (ueiListeners != null) {
+                    listeners.addAll(ueiListeners);
+                }
+
+                // Try wild cards: Find / before last character
+                int i = uei.lastIndexOf("/", uei.length() - 2);
+                if (i > 0) {
+                    // Split at "/", including the /
+                    uei = uei.substring (0, i + 1);
+                } else {
+                    // No more wild cards to match
+                    break;
+                }
+            }
+            return listeners.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(listeners));
+        }
+    }
+
+    /**
+     * A mutable copy of a {@link RoutingTable} used to build the next snapshot.
+     */
+    private static class RoutingTableBuilder {
+        private final Map<String, List<EventListener>> m_ueiListeners = new HashMap<>();
+        private final List<EventListener> m_listeners;
+        private final Map<String, EventListenerExecutor> m_listenerThreads;
+
+        private RoutingTableBuilder(RoutingTable table) {
+            table.m_ueiListeners.forEach((uei, listeners) -> m_ueiListeners.put(uei, new ArrayList<>(listeners)));
+            m_listeners = new ArrayList<>(table.m_listeners);
+            m_listenerThreads = new HashMap<>(table.m_listenerThreads);
+        }
+
+        private RoutingTable build() {
+            final Map<String, List<EventListener>> ueiListeners = new HashMap<>();
+            m_ueiListeners.forEach((uei, listeners) -> {
+                if (!listeners.isEmpty()) {
+                    ueiListeners.put(uei, Collections.unmodifiableList(listeners));
+                }
+            });
+            return new RoutingTable(Collections.unmodifiableMap(ueiListeners),
+                    Collections.unmodifiableList(m_listeners),
+                    Collections.unmodifiableMap(m_listenerThreads));
+        }
+    }
+
+    /**
+     * An event queued for delivery to a listener.
+     */
+    private static class ListenerTask implements Runnable {
+        private final EventListenerExecutor m_executor;
+        private final Event m_event;
+        private final long m_queuedAt = System.nanoTime();
+        private final CompletableFuture<Void> m_future = new CompletableFuture<>();
+
+        private ListenerTask(EventListenerExecutor executor, Event event) {
+            m_executor = executor;
+            m_event = event;
+        }
+
+        @Override
+        public void run() {
+            m_executor.dispatch(this);
+        }
+    }
+
     /**
      * A thread dedicated to each listener. The events meant for each listener
      * is added to an execution queue when the 'sendNow()' is called. The
      * ListenerThread reads events off of this queue and sends them to the
      * appropriate listener.
+     *
+     * Listeners implementing {@link BatchEventListener} are handed all of the
+     * events that have queued up for them, up to their maximum batch size, on
+     * every wakeup.
      */
     private static class EventListenerExecutor {
         /**
@@ -143,13 +267,33 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         /**
          * The thread that is running this runnable.
          */
-        private final ExecutorService m_delegateThread;
+        private final ThreadPoolExecutor m_delegateThread;
+
+        private final MetricRegistry m_registry;
+
+        private final String m_metricPrefix;
+
+        /**
+         * Number of events that were discarded because the queue was full
+         */
+        private final Counter m_dropped;
+
+        /**
+         * Time spent by the events in the queue before being handed to the listener
+         */
+        private final Timer m_lag;
+
+        /**
+         * Number of events handed to the listener per callback
+         */
+        private final Histogram m_batchSize;
 
         /**
          * Constructor
          */
-        EventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
+        EventListenerExecutor(EventListener listener, Integer handlerQueueLength, MetricRegistry registry) {
             m_listener = listener;
+            m_registry = registry;
 
             int numThreads = 1;
             if (m_listener instanceof ThreadAwareEventListener) {
@@ -170,31 +314,104 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
                     new RejectedExecutionHandler() {
                         @Override
                         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                            LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                            if (executor.isShutdown()) {
+                                LOG.warn("Listener {} is stopped, discarding event", m_listener.getName());
+                            } else {
+                                LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                            }
+                            m_dropped.inc();
+                            // Don't leave anyone waiting on the event
+                            ((ListenerTask)r).m_future.complete(null);
                         }
                     }
             );
+
+            m_metricPrefix = MetricRegistry.name("eventlisteners", m_listener.getName());
+            final BlockingQueue<Runnable> queue = m_delegateThread.getQueue();
+            m_registry.remove(MetricRegistry.name(m_metricPrefix, "queued"));
+            m_registry.register(MetricRegistry.name(m_metricPrefix, "queued"), new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return queue.size();
+                }
+            });
+            m_dropped = m_registry.counter(MetricRegistry.name(m_metricPrefix, "dropped"));
+            m_lag = m_registry.timer(MetricRegistry.name(m_metricPrefix, "lag"));
+            m_batchSize = m_registry.histogram(MetricRegistry.name(m_metricPrefix, "batch-size"));
         }
 
         public CompletableFuture<Void> addEvent(final Event event) {
-            return CompletableFuture.runAsync(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                         if (LOG.isDebugEnabled()) LOG.debug("run: calling onEvent on {} for event {}", m_listener.getName(), event.toStringSimple());
-
-                        // Make sure we restore our log4j logging prefix after onEvent is called
-                        Map<String,String> mdc = Logging.getCopyOfContextMap();
-                        try {
-                            m_listener.onEvent(event);
-                        } finally {
-                            Logging.setContextMap(mdc);
-                        }
-                    } catch (Throwable t) {
-                        LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
-                    }
+            final ListenerTask task = new ListenerTask(this, event);
+            // Rejected tasks are completed by the executor's handler
+            m_delegateThread.execute(task);
+            return task.m_future;
+        }
+
+        private void dispatch(ListenerTask task) {
+            if (m_listener instanceof BatchEventListener) {
+                dispatchBatch(task);
+                return;
+            }
+
+            m_lag.update(System.nanoTime() - task.m_queuedAt, TimeUnit.NANOSECONDS);
+            m_batchSize.update(1);
+            try {
+                 if (LOG.isDebugEnabled()) LOG.debug("run: calling onEvent on {} for event {}", m_listener.getName(), task.m_event.toStringSimple());
+
+                // Make sure we restore our log4j logging prefix after onEvent is called
+                Map<String,String> mdc = Logging.getCopyOfContextMap();
+                try {
+                    m_listener.onEvent(task.m_event);
+                } finally {
+                    Logging.setContextMap(mdc);
+                }
+            } catch (Throwable t) {
+                LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+            } finally {
+                task.m_future.complete(null);
+            }
+        }
+
+        private void dispatchBatch(ListenerTask first) {
+            final BatchEventListener listener = (BatchEventListener)m_listener;
+            final int maxBatchSize = Math.max(1, listener.getMaxBatchSize());
+
+            // Drain the events that have queued up behind this one
+            final List<ListenerTask> tasks = new ArrayList<>(Math.min(maxBatchSize, m_delegateThread.getQueue().size() + 1));
+            tasks.add(first);
+            while (tasks.size() < maxBatchSize) {
+                final ListenerTask next = (ListenerTask)m_delegateThread.getQueue().poll();
+                if (next == null) {
+                    break;
+                }
+                tasks.add(next);
+            }
+
+            final long now = System.nanoTime();
+            final List<Event> events = new ArrayList<>(tasks.size());
+            for (ListenerTask task : tasks) {
+                m_lag.update(now - task.m_queuedAt, TimeUnit.NANOSECONDS);
+                events.add(task.m_event);
+            }
+            m_batchSize.update(events.size());
+
+            try {
+                if (LOG.isDebugEnabled()) LOG.debug("run: calling onEvents on {} for {} events", m_listener.getName(), events.size());
+
+                // Make sure we restore our log4j logging prefix after onEvents is called
+                Map<String,String> mdc = Logging.getCopyOfContextMap();
+                try {
+                    listener.onEvents(events);
+                } finally {
+                    Logging.setContextMap(mdc);
                 }
-            }, m_delegateThread);
+            } catch (Throwable t) {
+                LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+            } finally {
+                for (ListenerTask task : tasks) {
+                    task.m_future.complete(null);
+                }
+            }
         }
 
         /**
@@ -202,6 +419,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
          */
         public void stop() {
             m_delegateThread.shutdown();
+            m_registry.removeMatching((name, metric) -> name.startsWith(m_metricPrefix + "."));
         }
     }
 
@@ -296,15 +514,18 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
         }
 
-        if (LOG.isDebugEnabled() && m_listeners.isEmpty()) {
+        // Use the same snapshot of the routing table for the whole broadcast
+        final RoutingTable routingTable = m_routingTable;
+
+        if (LOG.isDebugEnabled() && routingTable.m_listeners.isEmpty()) {
             LOG.debug("No listeners interested in all events");
         }
 
         List<CompletableFuture<Void>> listenerFutures = new ArrayList<>();
 
         // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            listenerFutures.add(queueEventToListener(event, listener));
+        for (EventListener listener : routingTable.m_listeners) {
+            listenerFutures.add(queueEventToListener(routingTable, event, listener));
         }
 
         if (event.getUei() == null) {
@@ -316,31 +537,13 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         /*
          * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
          */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        listenerFutures.add(queueEventToListener(event, listener));
-                        sentToListeners.add(listener);
-                    }
-                }
-            }
-            
-            // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
-            if (i > 0) {
-                // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
-            } else {
-                // No more wild cards to match
-                break;
-            }
+        final List<EventListener> ueiListeners = routingTable.getListenersForUei(event.getUei());
+        for (EventListener listener : ueiListeners) {
+            listenerFutures.add(queueEventToListener(routingTable, event, listener));
         }
         
-        if (sentToListeners.isEmpty()) {
+        if (ueiListeners.isEmpty()) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
             }
@@ -353,8 +556,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
     }
 
-    private CompletableFuture<Void> queueEventToListener(Event event, EventListener listener) {
-        return m_listenerThreads.get(listener.getName()).addEvent(event);
+    private static CompletableFuture<Void> queueEventToListener(RoutingTable routingTable, Event event, EventListener listener) {
+        return routingTable.m_listenerThreads.get(listener.getName()).addEvent(event);
     }
 
     /**
@@ -367,14 +570,18 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     public synchronized void addEventListener(EventListener listener) {
         Assert.notNull(listener, "listener argument cannot be null");
 
-        createListenerThread(listener);
+        final RoutingTableBuilder routes = new RoutingTableBuilder(m_routingTable);
 
-        addMatchAllForListener(listener);
+        createListenerThread(routes, listener);
+
+        addMatchAllForListener(routes, listener);
 
         // Since we have a match-all listener, remove any specific UEIs
-        for (String uei : m_ueiListeners.keySet()) {
-            removeUeiForListener(uei, listener);
+        for (String uei : routes.m_ueiListeners.keySet()) {
+            removeUeiForListener(routes, uei, listener);
         }
+
+        m_routingTable = routes.build();
     }
 
     /**
@@ -396,14 +603,18 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             LOG.debug("Adding event listener {} for UEIs: {}", listener.getName(), StringUtils.collectionToCommaDelimitedString(ueis));
         }
 
-        createListenerThread(listener);
+        final RoutingTableBuilder routes = new RoutingTableBuilder(m_routingTable);
+
+        createListenerThread(routes, listener);
 
         for (String uei : ueis) {
-            addUeiForListener(uei, listener);
+            addUeiForListener(routes, uei, listener);
         }
 
         // Since we have a UEI-specific listener, remove the match-all listener
-        removeMatchAllForListener(listener);
+        removeMatchAllForListener(routes, listener);
+
+        m_routingTable = routes.build();
     }
 
     /**
@@ -435,9 +646,13 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(listener, "listener argument cannot be null");
         Assert.notNull(ueis, "ueilist argument cannot be null");
 
+        final RoutingTableBuilder routes = new RoutingTableBuilder(m_routingTable);
+
         for (String uei : ueis) {
-            removeUeiForListener(uei, listener);
+            removeUeiForListener(routes, uei, listener);
         }
+
+        m_routingTable = routes.build();
     }
 
     /**
@@ -456,7 +671,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(listener, "listener argument cannot be null");
         Assert.notNull(uei, "uei argument cannot be null");
 
-        removeUeiForListener(uei, listener);
+        removeEventListener(listener, Collections.singletonList(uei));
     }
 
     /**
@@ -470,18 +685,23 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     @Override
     public synchronized void removeEventListener(EventListener listener) {
         Assert.notNull(listener, "listener argument cannot be null");
-        
-        removeMatchAllForListener(listener);
 
-        for (String uei : m_ueiListeners.keySet()) {
-            removeUeiForListener(uei, listener);
+        final RoutingTableBuilder routes = new RoutingTableBuilder(m_routingTable);
+
+        removeMatchAllForListener(routes, listener);
+
+        for (String uei : routes.m_ueiListeners.keySet()) {
+            removeUeiForListener(routes, uei, listener);
         }
 
-        // stop and remove the listener thread for this listener
-        if (m_listenerThreads.containsKey(listener.getName())) {
-            m_listenerThreads.get(listener.getName()).stop();
+        // remove the listener thread for this listener
+        final EventListenerExecutor listenerThread = routes.m_listenerThreads.remove(listener.getName());
+
+        m_routingTable = routes.build();
 
-            m_listenerThreads.remove(listener.getName());
+        // and stop it once it can no longer be reached
+        if (listenerThread != null) {
+            listenerThread.stop();
         }
     }
 
@@ -489,25 +709,25 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
      * Create a new queue and listener thread for this listener if one does not
      * already exist.
      */
-    private void createListenerThread(EventListener listener) {
-        if (m_listenerThreads.containsKey(listener.getName())) {
+    private void createListenerThread(RoutingTableBuilder routes, EventListener listener) {
+        if (routes.m_listenerThreads.containsKey(listener.getName())) {
             return;
         }
         
-        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
-        m_listenerThreads.put(listener.getName(), listenerThread);
+        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength, m_registry);
+        routes.m_listenerThreads.put(listener.getName(), listenerThread);
     }
 
     /**
      * Add to uei listeners.
      */
-    private void addUeiForListener(String uei, EventListener listener) {
+    private static void addUeiForListener(RoutingTableBuilder routes, String uei, EventListener listener) {
         // Ensure there is a list for this UEI
-        if (!m_ueiListeners.containsKey(uei)) {
-            m_ueiListeners.put(uei, new ArrayList<EventListener>());
+        if (!routes.m_ueiListeners.containsKey(uei)) {
+            routes.m_ueiListeners.put(uei, new ArrayList<EventListener>());
         }
         
-        List<EventListener> listenersList = m_ueiListeners.get(uei);
+        List<EventListener> listenersList = routes.m_ueiListeners.get(uei);
         if (!listenersList.contains(listener)) {
             listenersList.add(listener);
         }
@@ -516,24 +736,24 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     /**
      * Remove UEI for this listener.
      */
-    private void removeUeiForListener(String uei, EventListener listener) {
-        if (m_ueiListeners.containsKey(uei)) {
-            m_ueiListeners.get(uei).remove(listener);
+    private static void removeUeiForListener(RoutingTableBuilder routes, String uei, EventListener listener) {
+        if (routes.m_ueiListeners.containsKey(uei)) {
+            routes.m_ueiListeners.get(uei).remove(listener);
         }
     }
 
     /**
      * Add listener to list of listeners listening for all events.
      */
-    private boolean addMatchAllForListener(EventListener listener) {
-        return m_listeners.add(listener);
+    private static boolean addMatchAllForListener(RoutingTableBuilder routes, EventListener listener) {
+        return routes.m_listeners.add(listener);
     }
 
     /**
      * Remove from list of listeners listening for all events.
      */
-    private boolean removeMatchAllForListener(EventListener listener) {
-        return m_listeners.remove(listener);
+    private static boolean removeMatchAllForListener(RoutingTableBuilder routes, EventListener listener) {
+        return routes.m_listeners.remove(listener);
     }
 
     /**
@@ -636,10 +856,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
     @Override
     public boolean hasEventListener(final String uei) {
-        if (this.m_ueiListeners.containsKey(uei)) {
-            return this.m_ueiListeners.get(uei).size() > 0;
-        } else {
-            return false;
-        }
+        final List<EventListener> listeners = m_routingTable.m_ueiListeners.get(uei);
+        return listeners != null && listeners.size() > 0;
     }
 }
@@ -32,6 +32,12 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -63,6 +69,8 @@ import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.util.Assert;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
@@ -86,6 +94,14 @@ import com.codahale.metrics.Timer.Context;
  * @see org.opennms.netmgt.events.api.EventDatabaseConstants#DB_ATTRIB_DELIM
  * @see org.opennms.netmgt.events.api.EventDatabaseConstants#NAME_VAL_DELIM
  *
+ * When group commit is enabled, the logs received by the concurrent handler threads
+ * are queued and written by a single thread, which collects them for up to
+ * {@link #setMaxBatchDelay(long)} ms or {@link #setMaxBatchSize(int)} events and
+ * persists them in a single transaction. Each caller blocks until the transaction
+ * holding its events is committed, so the database IDs are set on the events when
+ * {@link #process(Log)} returns, as they are otherwise. Callers give up after
+ * {@link #setCommitTimeout(long)} ms.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -97,6 +113,15 @@ public class HibernateEventWriter implements EventWriter {
     public static final String LOG_MSG_DEST_LOG_AND_DISPLAY = "logndisplay";
     public static final String LOG_MSG_DEST_LOG_ONLY = "logonly";
     public static final String LOG_MSG_DEST_DISPLAY_ONLY = "displayonly";
+
+    public static final String GROUP_COMMIT_SYS_PROP = "org.opennms.eventd.groupCommit";
+    public static final String GROUP_COMMIT_MAX_BATCH_SIZE_SYS_PROP = "org.opennms.eventd.groupCommit.maxBatchSize";
+    public static final String GROUP_COMMIT_MAX_BATCH_DELAY_SYS_PROP = "org.opennms.eventd.groupCommit.maxBatchDelay";
+    public static final String GROUP_COMMIT_TIMEOUT_SYS_PROP = "org.opennms.eventd.groupCommit.timeout";
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    public static final long DEFAULT_MAX_BATCH_DELAY_MS = 10;
+    public static final long DEFAULT_COMMIT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
     
     @Autowired
     private TransactionOperations m_transactionManager;
@@ -121,8 +146,42 @@ public class HibernateEventWriter implements EventWriter {
 
     private final Timer writeTimer;
 
+    private final Timer commitTimer;
+
+    private final Histogram batchSizeHistogram;
+
+    private boolean m_groupCommit = Boolean.getBoolean(GROUP_COMMIT_SYS_PROP);
+
+    private int m_maxBatchSize = Integer.getInteger(GROUP_COMMIT_MAX_BATCH_SIZE_SYS_PROP, DEFAULT_MAX_BATCH_SIZE);
+
+    private long m_maxBatchDelay = Long.getLong(GROUP_COMMIT_MAX_BATCH_DELAY_SYS_PROP, DEFAULT_MAX_BATCH_DELAY_MS);
+
+    private long m_commitTimeout = Long.getLong(GROUP_COMMIT_TIMEOUT_SYS_PROP, DEFAULT_COMMIT_TIMEOUT_MS);
+
+    private final BlockingQueue<PendingLog> m_pendingLogs = new LinkedBlockingQueue<>();
+
+    private Thread m_committer;
+
+    /**
+     * The persistable events of a log, waiting to be written by the committer.
+     */
+    private static class PendingLog {
+        private final Header header;
+        private final List<Event> events;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingLog(Header header, List<Event> events) {
+            this.header = header;
+            this.events = events;
+        }
+    }
+
     public HibernateEventWriter(MetricRegistry registry) {
-        writeTimer = Objects.requireNonNull(registry).timer("eventlogs.process.write");
+        Objects.requireNonNull(registry);
+        writeTimer = registry.timer("eventlogs.process.write");
+        commitTimer = registry.timer("eventlogs.process.write.commit");
+        batchSizeHistogram = registry.histogram("eventlogs.process.write.batchsize");
+        registry.register("eventlogs.process.write.pending", (Gauge<Integer>) m_pendingLogs::size);
     }
 
     /**
@@ -181,25 +240,169 @@ public class HibernateEventWriter implements EventWriter {
 
             // Time the transaction and insertions
             try (Context context = writeTimer.time()) {
-                final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+                if (m_groupCommit) {
+                    enqueueAndWait(new PendingLog(eventLog.getHeader(), eventsToPersist));
+                } else {
+                    write(eventLog.getHeader(), eventsToPersist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists the given events in their own transaction.
+     */
+    private void write(final Header header, final List<Event> events) throws EventProcessorException {
+        final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+
+        m_transactionManager.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                for (Event eachEvent : events) {
+                    try {
+                        process(header, eachEvent);
+                    } catch (EventProcessorException e) {
+                        exception.set(e);
+                        return;
+                    }
+                }
+            }
+        });
+
+        if (exception.get() != null) {
+            throw exception.get();
+        }
+    }
+
+    private void enqueueAndWait(final PendingLog pendingLog) throws EventProcessorException {
+        // Queue the log before making sure that a committer is running: a committer which
+        // is stopping fails all of the logs queued before it is replaced
+        m_pendingLogs.add(pendingLog);
+        startCommitter();
+
+        try {
+            pendingLog.future.get(m_commitTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for events to be persisted", e);
+        } catch (TimeoutException e) {
+            if (m_pendingLogs.remove(pendingLog)) {
+                throw new EventProcessorException("Timed out waiting for events to be persisted, events were not persisted", e);
+            }
+            // The log is part of the batch being committed
+            throw new EventProcessorException("Timed out waiting for events to be persisted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EventProcessorException) {
+                throw (EventProcessorException)e.getCause();
+            }
+            throw new EventProcessorException("Unexpected exception while storing events", e.getCause());
+        }
+    }
 
-                m_transactionManager.execute(new TransactionCallbackWithoutResult() {
-                    @Override
-                    protected void doInTransactionWithoutResult(TransactionStatus status) {
-                        for (Event eachEvent : eventsToPersist) {
+    private synchronized void startCommitter() {
+        if (m_committer == null) {
+            m_committer = new Thread(this::commitPendingLogs, "Eventd-GroupCommit");
+            m_committer.setDaemon(true);
+            m_committer.start();
+        }
+    }
+
+    /**
+     * Stops the committer thread, if it was started. Events which are still queued are not persisted.
+     */
+    public synchronized void destroy() {
+        if (m_committer != null) {
+            m_committer.interrupt();
+            m_committer = null;
+        }
+    }
+
+    private void commitPendingLogs() {
+        final List<PendingLog> batch = new ArrayList<>();
+        EventProcessorException failure = new EventProcessorException("Eventd is stopping, events were not persisted");
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // Wait for a first log, and then gather more until the batch is full or the delay elapsed
+                PendingLog pendingLog = m_pendingLogs.take();
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_maxBatchDelay);
+                int batchSize = 0;
+                do {
+                    batch.add(pendingLog);
+                    batchSize += pendingLog.events.size();
+                    if (batchSize >= m_maxBatchSize) {
+                        break;
+                    }
+                    pendingLog = m_pendingLogs.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } while (pendingLog != null);
+
+                batchSizeHistogram.update(batchSize);
+                commit(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            LOG.info("Group commit interrupted, stopping.");
+        } catch (RuntimeException | Error e) {
+            LOG.error("Group commit failed unexpectedly, a new committer will be started for the next events.", e);
+            failure = new EventProcessorException("Unexpected exception while storing events", e);
+        } finally {
+            // Take the logs which are waiting, and let the next log start a new committer. Both are done while
+            // holding the lock used to start committers, so that no log is left behind without a committer.
+            synchronized (this) {
+                m_pendingLogs.drainTo(batch);
+                if (m_committer == Thread.currentThread()) {
+                    m_committer = null;
+                }
+            }
+            for (PendingLog pendingLog : batch) {
+                pendingLog.future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Persists the events of all the given logs in a single transaction.
+     *
+     * If this fails, the logs are retried in a transaction of their own, so
+     * that an event which can not be persisted does not affect the others.
+     */
+    private void commit(final List<PendingLog> batch) {
+        try (Context context = commitTimer.time()) {
+            final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+
+            m_transactionManager.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (PendingLog pendingLog : batch) {
+                        for (Event eachEvent : pendingLog.events) {
                             try {
-                                process(eventLog.getHeader(), eachEvent);
+                                process(pendingLog.header, eachEvent);
                             } catch (EventProcessorException e) {
                                 exception.set(e);
+                                status.setRollbackOnly();
                                 return;
                             }
                         }
                     }
-                });
-
-                if (exception.get() != null) {
-                    throw exception.get();
                 }
+            });
+
+            if (exception.get() == null) {
+                batch.forEach(p -> p.future.complete(null));
+                return;
+            }
+            LOG.warn("Failed to persist a batch of {} event logs, persisting them individually.", batch.size(), exception.get());
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to commit a batch of {} event logs, persisting them individually.", batch.size(), e);
+        }
+
+        for (PendingLog pendingLog : batch) {
+            try {
+                write(pendingLog.header, pendingLog.events);
+                pendingLog.future.complete(null);
+            } catch (EventProcessorException e) {
+                pendingLog.future.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                pendingLog.future.completeExceptionally(new EventProcessorException("Unexpected exception while storing events", e));
             }
         }
     }
@@ -405,4 +608,20 @@ public class HibernateEventWriter implements EventWriter {
     public void setTransactionManager(TransactionOperations transactionManager) {
         m_transactionManager = transactionManager;
     }
+
+    public void setGroupCommit(boolean groupCommit) {
+        m_groupCommit = groupCommit;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        m_maxBatchSize = maxBatchSize;
+    }
+
+    public void setMaxBatchDelay(long maxBatchDelay) {
+        m_maxBatchDelay = maxBatchDelay;
+    }
+
+    public void setCommitTimeout(long commitTimeout) {
+        m_commitTimeout = commitTimeout;
+    }
 }
@@ -40,6 +40,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
@@ -48,6 +49,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
+import org.opennms.netmgt.events.api.BatchEventListener;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.events.api.EventHandler;
 import org.opennms.netmgt.events.api.EventListener;
@@ -825,4 +827,100 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         // Release
         locker.release();
     }
+
+    private static class MockBatchEventListener implements BatchEventListener {
+        private final CountDownLatch m_firstBatchLatch = new CountDownLatch(1);
+        private final List<List<Event>> m_batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String getName() {
+            return getClass().getCanonicalName();
+        }
+
+        @Override
+        public void onEvents(List<Event> events) {
+            m_batches.add(new ArrayList<>(events));
+            try {
+                // Hold the first batch until the test releases it
+                m_firstBatchLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return 5;
+        }
+    }
+
+    /**
+     * Verify that an event listener that implements the {@link BatchEventListener} interface
+     * receives the events that queued up while it was busy in batches, in order.
+     */
+    @Test
+    public void testBatchEventListener() throws Exception {
+        MockBatchEventListener batchListener = new MockBatchEventListener();
+        m_manager.addEventListener(batchListener);
+
+        List<Event> events = new ArrayList<>();
+        for (int k = 0; k < 11; k++) {
+            EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testBatchEventListener");
+            bldr.setParam("k", k);
+            events.add(bldr.getEvent());
+        }
+
+        // The first event is delivered on its own and blocks the listener
+        m_manager.broadcastNow(events.get(0), false);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> batchListener.m_batches.size(), equalTo(1));
+
+        // The remaining events queue up behind it
+        for (Event e : events.subList(1, events.size())) {
+            m_manager.broadcastNow(e, false);
+        }
+        assertEquals(10, m_registry.getGauges().get("eventlisteners." + batchListener.getName() + ".queued").getValue());
+
+        batchListener.m_firstBatchLatch.countDown();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> batchListener.m_batches.stream().mapToInt(List::size).sum(), equalTo(11));
+
+        // 1 + 5 + 5
+        assertEquals(3, batchListener.m_batches.size());
+        List<Event> received = new ArrayList<>();
+        batchListener.m_batches.forEach(received::addAll);
+        assertEquals(events, received);
+        assertEquals(3, m_registry.histogram("eventlisteners." + batchListener.getName() + ".batch-size").getCount());
+
+        // The metrics are removed along with the listener
+        m_manager.removeEventListener(batchListener);
+        assertFalse(m_registry.getGauges().containsKey("eventlisteners." + batchListener.getName() + ".queued"));
+    }
+
+    /**
+     * Verify that events which are discarded because a listener's queue is full are
+     * counted, and that synchronous broadcasts don't wait on them forever.
+     */
+    @Test
+    public void testDroppedEventsAreCounted() throws Exception {
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl(m_registry);
+        manager.setEventHandler(m_eventHandler);
+        manager.setHandlerPoolSize(1);
+        manager.setHandlerQueueLength(1);
+        manager.afterPropertiesSet();
+
+        ThreadLocker locker = new ThreadLocker();
+        MultiThreadedEventListener listener = new MultiThreadedEventListener(1, locker);
+        manager.addEventListener(listener);
+        CompletableFuture<Integer> lockedFuture = locker.waitForThreads(1);
+
+        // One event is being handled, one is queued and the last one is discarded
+        for (int k = 0; k < 3; k++) {
+            EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testDroppedEventsAreCounted");
+            manager.broadcastNow(bldr.getEvent(), false);
+        }
+        lockedFuture.get();
+        assertEquals(1, m_registry.counter("eventlisteners." + listener.getName() + ".dropped").getCount());
+
+        locker.release();
+        manager.removeEventListener(listener);
+    }
 }
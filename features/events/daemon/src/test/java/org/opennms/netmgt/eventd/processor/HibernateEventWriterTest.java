@@ -28,13 +28,24 @@
 
 package org.opennms.netmgt.eventd.processor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.netmgt.events.api.EventProcessorException;
@@ -63,6 +74,11 @@ public class HibernateEventWriterTest {
         eventWriter.setTransactionManager(transactionManager);
     }
 
+    @After
+    public void tearDown() {
+        eventWriter.destroy();
+    }
+
     /**
      * Verifies that no transaction is opened when none of the events
      * in the event log need to be persisted.
@@ -116,4 +132,108 @@ public class HibernateEventWriterTest {
         eventWriter.process(log);
         verify(transactionManager, times(1)).execute(any());
     }
+
+    /**
+     * Verifies that the logs processed concurrently are persisted in
+     * a single transaction when group commit is enabled.
+     */
+    @Test
+    public void testGroupCommit() throws Exception {
+        eventWriter.setGroupCommit(true);
+        eventWriter.setMaxBatchSize(10);
+        eventWriter.setMaxBatchDelay(5000);
+
+        assertEquals(10, processConcurrently(10));
+        verify(transactionManager, times(1)).execute(any());
+    }
+
+    /**
+     * Verifies that the logs are persisted individually when the
+     * transaction of the batch fails.
+     */
+    @Test
+    public void testGroupCommitFallsBackToIndividualTransactions() throws Exception {
+        eventWriter.setGroupCommit(true);
+        eventWriter.setMaxBatchSize(5);
+        eventWriter.setMaxBatchDelay(5000);
+        when(transactionManager.execute(any())).thenThrow(new RuntimeException("batch failed")).thenReturn(null);
+
+        assertEquals(5, processConcurrently(5));
+        verify(transactionManager, times(6)).execute(any());
+    }
+
+    /**
+     * Verifies that a committer which dies fails the logs it was holding,
+     * and that the next logs are persisted by a new committer.
+     */
+    @Test
+    public void testGroupCommitRecoversFromUnexpectedErrors() throws Exception {
+        eventWriter.setGroupCommit(true);
+        eventWriter.setMaxBatchSize(1);
+        eventWriter.setCommitTimeout(5000);
+        when(transactionManager.execute(any())).thenThrow(new StackOverflowError("commit failed")).thenReturn(null);
+
+        final EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+        try {
+            eventWriter.process(bldr.getLog());
+            fail("The events of the failed batch should not have been persisted");
+        } catch (EventProcessorException e) {
+            // Expected
+        }
+
+        eventWriter.process(bldr.getLog());
+        verify(transactionManager, times(2)).execute(any());
+    }
+
+    /**
+     * Verifies that callers stop waiting for a commit which does not complete.
+     */
+    @Test(timeout = 10000)
+    public void testGroupCommitTimeout() throws Exception {
+        eventWriter.setGroupCommit(true);
+        eventWriter.setMaxBatchSize(1);
+        eventWriter.setCommitTimeout(100);
+        final CountDownLatch committed = new CountDownLatch(1);
+        when(transactionManager.execute(any())).thenAnswer(invocation -> {
+            committed.await();
+            return null;
+        });
+
+        final EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+        try {
+            eventWriter.process(bldr.getLog());
+            fail("The commit should have timed out");
+        } catch (EventProcessorException e) {
+            // Expected
+        } finally {
+            committed.countDown();
+        }
+    }
+
+    private int processConcurrently(int numLogs) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(numLogs);
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numLogs; i++) {
+                futures.add(executor.submit(() -> {
+                    final EventBuilder bldr = new EventBuilder("testUei", "testSource");
+                    bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+                    latch.await();
+                    eventWriter.process(bldr.getLog());
+                    return null;
+                }));
+            }
+            latch.countDown();
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return futures.size();
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
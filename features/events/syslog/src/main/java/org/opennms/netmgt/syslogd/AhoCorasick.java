@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Finds all occurrences of a set of strings in a text with a single pass over the text.
+ *
+ * See A. V. Aho and M. J. Corasick, "Efficient string matching: an aid to bibliographic search".
+ */
+final class AhoCorasick {
+
+    private static final int[] NONE = new int[0];
+
+    // Sorted transitions of each state
+    private final char[][] m_keys;
+    private final int[][] m_targets;
+
+    private final int[] m_fail;
+
+    // Patterns ending at each state, including the ones of the fail states
+    private final int[][] m_outputs;
+
+    /**
+     * @param patterns the strings to search for, identified by their index in the list
+     */
+    AhoCorasick(List<String> patterns) {
+        // Build the trie
+        final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        final List<List<Integer>> outputs = new ArrayList<>();
+        children.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+        for (int i = 0; i < patterns.size(); i++) {
+            final String pattern = patterns.get(i);
+            int state = 0;
+            for (int k = 0; k < pattern.length(); k++) {
+                Integer next = children.get(state).get(pattern.charAt(k));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                    children.get(state).put(pattern.charAt(k), next);
+                }
+                state = next;
+            }
+            outputs.get(state).add(i);
+        }
+
+        final int n = children.size();
+        m_keys = new char[n][];
+        m_targets = new int[n][];
+        for (int state = 0; state < n; state++) {
+            final TreeMap<Character, Integer> c = children.get(state);
+            m_keys[state] = new char[c.size()];
+            m_targets[state] = new int[c.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> e : c.entrySet()) {
+                m_keys[state][k] = e.getKey();
+                m_targets[state][k] = e.getValue();
+                k++;
+            }
+        }
+
+        // Compute the fail links breadth first, so that the outputs of the
+        // fail state are complete before they are merged
+        m_fail = new int[n];
+        m_outputs = new int[n][];
+        m_outputs[0] = toArray(outputs.get(0));
+        final Queue<Integer> queue = new ArrayDeque<>();
+        for (int target : m_targets[0]) {
+            m_fail[target] = 0;
+            queue.add(target);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            final List<Integer> out = outputs.get(state);
+            for (int o : m_outputs[m_fail[state]]) {
+                out.add(o);
+            }
+            m_outputs[state] = toArray(out);
+
+            for (int k = 0; k < m_keys[state].length; k++) {
+                final char c = m_keys[state][k];
+                final int target = m_targets[state][k];
+                int fail = m_fail[state];
+                while (fail != 0 && next(fail, c) < 0) {
+                    fail = m_fail[fail];
+                }
+                final int next = next(fail, c);
+                m_fail[target] = next >= 0 ? next : 0;
+                queue.add(target);
+            }
+        }
+    }
+
+    /**
+     * Calls the given consumer with the index of every pattern found in the text.
+     * A pattern found several times may be reported more than once.
+     */
+    void search(CharSequence text, IntConsumer consumer) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            int next;
+            while ((next = next(state, c)) < 0 && state != 0) {
+                state = m_fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            for (int o : m_outputs[state]) {
+                consumer.accept(o);
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        final int k = Arrays.binarySearch(m_keys[state], c);
+        return k >= 0 ? m_targets[state][k] : -1;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.isEmpty() ? NONE : list.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -82,6 +82,15 @@ public class ConvertToEvent {
     /** Constant <code>HIDDEN_MESSAGE="The message logged has been removed due"{trunked}</code> */
     protected static final String HIDDEN_MESSAGE = "The message logged has been removed due to configuration of Syslogd; it may contain sensitive data.";
 
+    /**
+     * Whether the uei-match and hide-match rules are compiled into matchers which
+     * avoid trying every rule, see {@link UeiMatcher} and {@link HideMatcher}.
+     */
+    static final boolean COMPILE_MATCHES = Boolean.parseBoolean(System.getProperty("org.opennms.syslogd.compileMatches", "true"));
+
+    private static volatile UeiMatcher s_ueiMatcher;
+    private static volatile HideMatcher s_hideMatcher;
+
     private final Event m_event;
 
     private static final LoadingCache<String,Pattern> CACHED_PATTERNS = CacheBuilder.newBuilder().build(
@@ -314,9 +323,6 @@ public class ConvertToEvent {
             message.setHostName(addr.getHostAddress());
         }
 
-        final String priorityTxt = message.getSeverity().toString();
-        final String facilityTxt = message.getFacility().toString();
-
         // Post-process the message based on the SyslogdConfig
 
         // We will also here find out if, the host needs to
@@ -341,24 +347,10 @@ public class ConvertToEvent {
         EventBuilder bldr = toEventBuilder(message, systemId, location, receivedTimestamp);
 
         final List<UeiMatch> ueiMatch = (config.getUeiList() == null ? Collections.emptyList() : config.getUeiList());
-        for (final UeiMatch uei : ueiMatch) {
-            final boolean messageMatchesUeiListEntry = containsIgnoreCase(uei.getFacilities(), facilityTxt) &&
-                                              containsIgnoreCase(uei.getSeverities(), priorityTxt) &&
-                                              matchProcess(uei.getProcessMatch().orElse(null), message.getProcessName()) &&
-                                              matchHostname(uei.getHostnameMatch().orElse(null), message.getHostName()) &&
-                                              matchHostAddr(uei.getHostaddrMatch().orElse(null), str(message.getHostAddress()));
-
-            if (messageMatchesUeiListEntry) {
-                if (uei.getMatch().getType().equals("substr")) {
-                    if (matchSubstring(message.getMessage(), uei, bldr, config.getDiscardUei())) {
-                        break;
-                    }
-                } else if ((uei.getMatch().getType().startsWith("regex"))) {
-                    if (matchRegex(message.getMessage(), uei, bldr, config.getDiscardUei())) {
-                        break;
-                    }
-                }
-            }
+        if (COMPILE_MATCHES) {
+            getUeiMatcher(ueiMatch, config.getMatchesGeneration()).apply(message, bldr, config.getDiscardUei());
+        } else {
+            matchUeiList(ueiMatch, message, bldr, config.getDiscardUei());
         }
 
         // Time to verify if we need to hide the message
@@ -368,24 +360,28 @@ public class ConvertToEvent {
             // Match this regex against the full string of the message
             final String fullText = message.asRfc3164Message();
 
-            for (final HideMatch hide : hideMatch) {
-                if (hide.getMatch().getType().equals("substr")) {
-                    if (fullText.contains(hide.getMatch().getExpression())) {
-                        // We should hide the message based on this match
-                        doHide = true;
-                        break;
-                    }
-                } else if (hide.getMatch().getType().equals("regex")) {
-                    try {
-                        Pattern msgPat = getPattern(hide.getMatch().getExpression());
-                        Matcher msgMat = msgPat.matcher(fullText);
-                        if (msgMat.find()) {
+            if (COMPILE_MATCHES) {
+                doHide = getHideMatcher(hideMatch, config.getMatchesGeneration()).matches(fullText);
+            } else {
+                for (final HideMatch hide : hideMatch) {
+                    if (hide.getMatch().getType().equals("substr")) {
+                        if (fullText.contains(hide.getMatch().getExpression())) {
                             // We should hide the message based on this match
                             doHide = true;
                             break;
                         }
-                    } catch (PatternSyntaxException pse) {
-                        LOG.warn("Failed to compile hide-match regex pattern '{}'", hide.getMatch().getExpression(), pse);
+                    } else if (hide.getMatch().getType().equals("regex")) {
+                        try {
+                            Pattern msgPat = getPattern(hide.getMatch().getExpression());
+                            Matcher msgMat = msgPat.matcher(fullText);
+                            if (msgMat.find()) {
+                                // We should hide the message based on this match
+                                doHide = true;
+                                break;
+                            }
+                        } catch (PatternSyntaxException pse) {
+                            LOG.warn("Failed to compile hide-match regex pattern '{}'", hide.getMatch().getExpression(), pse);
+                        }
                     }
                 }
             }
@@ -400,6 +396,57 @@ public class ConvertToEvent {
         m_event = bldr.getEvent();
     }
 
+    /**
+     * Applies the first of the given rules matching the message to the event,
+     * trying each rule in turn.
+     *
+     * @return whether a rule matched the message
+     * @throws MessageDiscardedException if the matching rule uses the discard UEI
+     */
+    static boolean matchUeiList(final List<UeiMatch> ueiMatch, final SyslogMessage message, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+        final String priorityTxt = message.getSeverity().toString();
+        final String facilityTxt = message.getFacility().toString();
+        for (final UeiMatch uei : ueiMatch) {
+            final boolean messageMatchesUeiListEntry = containsIgnoreCase(uei.getFacilities(), facilityTxt) &&
+                                              containsIgnoreCase(uei.getSeverities(), priorityTxt) &&
+                                              matchProcess(uei.getProcessMatch().orElse(null), message.getProcessName()) &&
+                                              matchHostname(uei.getHostnameMatch().orElse(null), message.getHostName()) &&
+                                              matchHostAddr(uei.getHostaddrMatch().orElse(null), str(message.getHostAddress()));
+
+            if (messageMatchesUeiListEntry) {
+                if (uei.getMatch().getType().equals("substr")) {
+                    if (matchSubstring(message.getMessage(), uei, bldr, discardUei)) {
+                        return true;
+                    }
+                } else if ((uei.getMatch().getType().startsWith("regex"))) {
+                    if (matchRegex(message.getMessage(), uei, bldr, discardUei)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static UeiMatcher getUeiMatcher(final List<UeiMatch> ueiMatch, final long generation) {
+        UeiMatcher matcher = s_ueiMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(ueiMatch, generation)) {
+            // The configuration was (re)loaded
+            matcher = UeiMatcher.compile(ueiMatch, generation);
+            s_ueiMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    private static HideMatcher getHideMatcher(final List<HideMatch> hideMatch, final long generation) {
+        HideMatcher matcher = s_hideMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(hideMatch, generation)) {
+            matcher = HideMatcher.compile(hideMatch, generation);
+            s_hideMatcher = matcher;
+        }
+        return matcher;
+    }
+
     private static boolean matchFind(final String expression, final String input, final String context) {
         if (input == null) {
             return false;
@@ -418,12 +465,12 @@ public class ConvertToEvent {
         }
     }
 
-    private static boolean matchHostAddr(final HostaddrMatch hostaddrMatch, final String hostAddress) {
+    static boolean matchHostAddr(final HostaddrMatch hostaddrMatch, final String hostAddress) {
         if (hostaddrMatch == null) return true;
         return matchFind(hostaddrMatch.getExpression(), hostAddress, "hostaddr-match");
     }
 
-    private static boolean matchHostname(final HostnameMatch hostnameMatch, final String hostName) {
+    static boolean matchHostname(final HostnameMatch hostnameMatch, final String hostName) {
         if (hostnameMatch == null) return true;
         return matchFind(hostnameMatch.getExpression(), hostName, "hostname-match");
     }
@@ -441,7 +488,7 @@ public class ConvertToEvent {
          return false;
     }
 
-    private static Pattern getPattern(final String expression) {
+    static Pattern getPattern(final String expression) {
         return CACHED_PATTERNS.getUnchecked(expression);
     }
 
@@ -457,7 +504,7 @@ public class ConvertToEvent {
      * @return
      * @throws MessageDiscardedException
      */
-    private static boolean matchSubstring(String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+    static boolean matchSubstring(String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
         final boolean traceEnabled = LOG.isTraceEnabled();
         if (message.contains(uei.getMatch().getExpression())) {
             if (discardUei.equals(uei.getUei())) {
@@ -487,7 +534,7 @@ public class ConvertToEvent {
      * @return
      * @throws MessageDiscardedException
      */
-    private static boolean matchRegex(final String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+    static boolean matchRegex(final String message, final UeiMatch uei, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
         final boolean traceEnabled = LOG.isTraceEnabled();
         final String expression = uei.getMatch().getExpression();
         final Pattern msgPat = getPattern(expression);
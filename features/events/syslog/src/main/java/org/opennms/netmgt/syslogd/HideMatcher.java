@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.opennms.netmgt.config.syslogd.HideMatch;
+
+/**
+ * Checks whether a syslog message matches any of a list of {@link HideMatch} rules,
+ * searching for all of the substrings, and for a literal required by each of the
+ * regex rules, with a single pass over the message.
+ */
+final class HideMatcher {
+
+    private final List<HideMatch> m_source;
+    private final long m_generation;
+
+    private final Pattern[] m_patterns;
+    private final boolean[] m_substring;
+
+    private final BitSet m_unfiltered = new BitSet();
+    private final AhoCorasick m_literals;
+    private final int[][] m_rulesByLiteral;
+
+    private HideMatcher(final List<HideMatch> hideMatches, final long generation) {
+        m_source = hideMatches;
+        m_generation = generation;
+        m_patterns = new Pattern[hideMatches.size()];
+        m_substring = new boolean[hideMatches.size()];
+
+        final Map<String, List<Integer>> rulesByLiteral = new LinkedHashMap<>();
+        for (int i = 0; i < hideMatches.size(); i++) {
+            final HideMatch hide = hideMatches.get(i);
+            final String type = hide.getMatch().getType();
+            final String expression = hide.getMatch().getExpression();
+
+            final String literal;
+            if (type.equals("substr")) {
+                m_substring[i] = true;
+                literal = expression;
+            } else if (type.equals("regex")) {
+                if (!UeiMatcher.isValid(expression)) {
+                    continue;
+                }
+                m_patterns[i] = ConvertToEvent.getPattern(expression);
+                literal = RegexLiterals.requiredLiteral(expression);
+            } else {
+                continue;
+            }
+
+            if (literal == null || literal.isEmpty()) {
+                m_unfiltered.set(i);
+            } else {
+                rulesByLiteral.computeIfAbsent(literal, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        m_literals = new AhoCorasick(new ArrayList<>(rulesByLiteral.keySet()));
+        m_rulesByLiteral = rulesByLiteral.values().stream()
+                .map(rules -> rules.stream().mapToInt(Integer::intValue).toArray())
+                .toArray(int[][]::new);
+    }
+
+    static HideMatcher compile(final List<HideMatch> hideMatches, final long generation) {
+        return new HideMatcher(hideMatches, generation);
+    }
+
+    boolean isCompiledFrom(final List<HideMatch> hideMatches, final long generation) {
+        return m_source == hideMatches && m_generation == generation;
+    }
+
+    boolean matches(final String fullText) {
+        final BitSet candidates = (BitSet)m_unfiltered.clone();
+        m_literals.search(fullText, literal -> {
+            for (int rule : m_rulesByLiteral[literal]) {
+                candidates.set(rule);
+            }
+        });
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (m_substring[i] || m_patterns[i].matcher(fullText).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+/**
+ * Extracts a literal which must be contained in any text matched by a regular expression,
+ * so that the expressions which cannot match a text can be skipped without running them.
+ *
+ * The analysis is conservative: only the top level of the expression is considered, and
+ * expressions using alternations, flags or escapes which are not understood yield no literal.
+ */
+final class RegexLiterals {
+
+    static final int MIN_LITERAL_LENGTH = 2;
+
+    private RegexLiterals() {
+    }
+
+    /**
+     * @return the longest literal required by the given expression, or null if there is none
+     */
+    static String requiredLiteral(final String regex) {
+        String best = "";
+        final StringBuilder run = new StringBuilder();
+        // Whether the last character of the run can be made optional by a following quantifier
+        boolean lastIsLiteral = false;
+
+        int i = 0;
+        final int n = regex.length();
+        while (i < n) {
+            final char c = regex.charAt(i);
+            switch (c) {
+                case '\\': {
+                    if (i + 1 >= n) {
+                        return null;
+                    }
+                    final char e = regex.charAt(i + 1);
+                    if (Character.isLetterOrDigit(e)) {
+                        if ("xu0ckpPNQE".indexOf(e) >= 0) {
+                            // Escapes spanning several characters, give up
+                            return null;
+                        }
+                        // Character classes, boundaries and back references
+                        best = longest(best, run);
+                        lastIsLiteral = false;
+                    } else {
+                        run.append(e);
+                        lastIsLiteral = true;
+                    }
+                    i += 2;
+                    break;
+                }
+                case '?':
+                case '*':
+                case '{': {
+                    // The preceding character may not be part of the match
+                    if (lastIsLiteral) {
+                        run.setLength(run.length() - 1);
+                    }
+                    best = longest(best, run);
+                    lastIsLiteral = false;
+                    if (c == '{') {
+                        final int end = regex.indexOf('}', i);
+                        if (end < 0) {
+                            return null;
+                        }
+                        i = end + 1;
+                    } else {
+                        i++;
+                    }
+                    i = skipQuantifierModifier(regex, i);
+                    break;
+                }
+                case '+': {
+                    best = longest(best, run);
+                    lastIsLiteral = false;
+                    i = skipQuantifierModifier(regex, i + 1);
+                    break;
+                }
+                case '[': {
+                    best = longest(best, run);
+                    lastIsLiteral = false;
+                    i = skipClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+                }
+                case '(': {
+                    if (i + 2 < n && regex.charAt(i + 1) == '?'
+                            && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                        // Embedded flags may change how the literals are matched
+                        return null;
+                    }
+                    best = longest(best, run);
+                    lastIsLiteral = false;
+                    i = skipGroup(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+                }
+                case '|':
+                case ')':
+                    return null;
+                case '.':
+                case '^':
+                case '$':
+                    best = longest(best, run);
+                    lastIsLiteral = false;
+                    i++;
+                    break;
+                default:
+                    run.append(c);
+                    lastIsLiteral = true;
+                    i++;
+            }
+        }
+        best = longest(best, run);
+        return best.length() >= MIN_LITERAL_LENGTH ? best : null;
+    }
+
+    private static String longest(final String best, final StringBuilder run) {
+        final String literal = run.length() > best.length() ? run.toString() : best;
+        run.setLength(0);
+        return literal;
+    }
+
+    private static int skipQuantifierModifier(final String regex, final int i) {
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            return i + 1;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index following the character class starting at the given index, or -1 if it is not terminated
+     */
+    private static int skipClass(final String regex, int i) {
+        i++;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index following the group starting at the given index, or -1 if it is not terminated
+     */
+    private static int skipGroup(final String regex, int i) {
+        int depth = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+}
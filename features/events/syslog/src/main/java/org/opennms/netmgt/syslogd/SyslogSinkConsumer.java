@@ -34,6 +34,7 @@ import java.util.List;
 
 import org.opennms.core.ipc.sink.api.MessageConsumer;
 import org.opennms.core.ipc.sink.api.MessageConsumerManager;
+import org.opennms.core.ipc.sink.common.PartitionedExecutor;
 import org.opennms.core.logging.Logging;
 import org.opennms.core.logging.Logging.MDCCloseable;
 import org.opennms.core.utils.InetAddressUtils;
@@ -51,6 +52,7 @@ import org.opennms.netmgt.xml.event.Log;
 import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -58,10 +60,18 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
 
-public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, SyslogMessageLogDTO>, InitializingBean {
+public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, SyslogMessageLogDTO>, InitializingBean, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(SyslogSinkConsumer.class);
 
+    /**
+     * Number of threads converting the messages to events, or 0 to convert
+     * them on the thread consuming them.
+     */
+    private static final int DEFAULT_CONVERSION_THREADS = Integer.getInteger("org.opennms.syslogd.conversionThreads", 0);
+    private static final int DEFAULT_CONVERSION_QUEUE_SIZE = Integer.getInteger("org.opennms.syslogd.conversionQueueSize", 1000);
+    private static final int DEFAULT_CONVERSION_BATCH_SIZE = Integer.getInteger("org.opennms.syslogd.conversionBatchSize", 100);
+
     @Autowired
     private MessageConsumerManager messageConsumerManager;
 
@@ -75,11 +85,18 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
     private EventForwarder eventForwarder;
 
     private final String localAddr;
+    private final MetricRegistry registry;
     private final Timer consumerTimer;
     private final Timer toEventTimer;
     private final Timer broadcastTimer;
 
+    private int conversionThreads = DEFAULT_CONVERSION_THREADS;
+    private int conversionQueueSize = DEFAULT_CONVERSION_QUEUE_SIZE;
+    private int conversionBatchSize = DEFAULT_CONVERSION_BATCH_SIZE;
+    private PartitionedExecutor<SyslogMessageLogDTO> conversionExecutor;
+
     public SyslogSinkConsumer(MetricRegistry registry) {
+        this.registry = registry;
         consumerTimer = registry.timer("consumer");
         toEventTimer = registry.timer("consumer.toevent");
         broadcastTimer = registry.timer("consumer.broadcast");
@@ -93,6 +110,17 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
 
     @Override
     public void handleMessage(SyslogMessageLogDTO syslogDTO) {
+        if (conversionExecutor != null) {
+            // Messages of the same source are converted by the same thread, in order
+            try {
+                conversionExecutor.execute(syslogDTO.getSourceAddress(), syslogDTO);
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while queueing {} syslog messages for conversion.", syslogDTO.getMessages().size());
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
         try (Context consumerCtx = consumerTimer.time()) {
             try (MDCCloseable mdc = Logging.withPrefixCloseable(Syslogd.LOG4J_CATEGORY)) {
                 // Convert the Syslog UDP messages to Events
@@ -108,10 +136,34 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
         }
     }
 
+    private void handleMessages(List<SyslogMessageLogDTO> syslogDTOs) {
+        try (Context consumerCtx = consumerTimer.time()) {
+            try (MDCCloseable mdc = Logging.withPrefixCloseable(Syslogd.LOG4J_CATEGORY)) {
+                // Convert the messages of all the batches to Events
+                final Log eventLog = new Log();
+                eventLog.setEvents(new Events());
+                try (Context toEventCtx = toEventTimer.time()) {
+                    for (SyslogMessageLogDTO syslogDTO : syslogDTOs) {
+                        toEvents(syslogDTO, eventLog.getEvents());
+                    }
+                }
+                // Broadcast the Events to the event bus at once
+                try (Context broadCastCtx = broadcastTimer.time()) {
+                    broadcast(eventLog);
+                }
+            }
+        }
+    }
+
     public Log toEventLog(SyslogMessageLogDTO messageLog) {
         final Log elog = new Log();
         final Events events = new Events();
         elog.setEvents(events);
+        toEvents(messageLog, events);
+        return elog;
+    }
+
+    private void toEvents(SyslogMessageLogDTO messageLog, Events events) {
         for (SyslogMessageDTO message : messageLog.getMessages()) {
             try {
                 LOG.debug("Converting syslog message into event.");
@@ -131,7 +183,6 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
                 LOG.error("Unexpected exception while processing SyslogConnection", e);
             }
         }
-        return elog;
     }
 
     private void broadcast(Log eventLog)  {
@@ -183,10 +234,25 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        if (conversionThreads > 0) {
+            LOG.info("Converting syslog messages to events using {} threads.", conversionThreads);
+            conversionExecutor = new PartitionedExecutor<>("consumer.conversion", conversionThreads,
+                    conversionQueueSize, conversionBatchSize, this::handleMessages, registry);
+        }
         // Automatically register the consumer on initialization
         messageConsumerManager.registerConsumer(this);
     }
 
+    @Override
+    public void destroy() throws Exception {
+        // Stop receiving messages before the threads converting them are stopped
+        messageConsumerManager.unregisterConsumer(this);
+        if (conversionExecutor != null) {
+            conversionExecutor.close();
+            conversionExecutor = null;
+        }
+    }
+
     public void setEventForwarder(EventForwarder eventForwarder) {
         this.eventForwarder = eventForwarder;
     }
@@ -202,4 +268,27 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
     public void setDistPollerDao(DistPollerDao distPollerDao) {
         this.distPollerDao = distPollerDao;
     }
+
+    /**
+     * Sets the number of threads converting the messages to events, the messages of
+     * a given source always being converted by the same thread. When 0, messages are
+     * converted on the thread consuming them.
+     */
+    public void setConversionThreads(int conversionThreads) {
+        this.conversionThreads = conversionThreads;
+    }
+
+    /**
+     * Sets the number of message batches which can be queued for each conversion thread.
+     */
+    public void setConversionQueueSize(int conversionQueueSize) {
+        this.conversionQueueSize = conversionQueueSize;
+    }
+
+    /**
+     * Sets the maximum number of queued message batches converted and forwarded at once.
+     */
+    public void setConversionBatchSize(int conversionBatchSize) {
+        this.conversionBatchSize = conversionBatchSize;
+    }
 }
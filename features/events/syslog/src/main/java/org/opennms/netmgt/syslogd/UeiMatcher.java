@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.ProcessMatch;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches syslog messages against a list of {@link UeiMatch} rules, without trying every rule.
+ *
+ * The rules are indexed by facility, severity and process name. The substrings of the
+ * substring rules, and a literal required by each of the regex rules, are searched for
+ * with a single pass over the message. Only the rules left are then tried, in order, so
+ * the first matching rule wins, like when trying all of them.
+ */
+final class UeiMatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UeiMatcher.class);
+
+    private static final int MAX_CACHED_PROCESS_NAMES = 1024;
+
+    private final List<UeiMatch> m_source;
+    private final long m_generation;
+
+    private final UeiMatch[] m_rules;
+    private final boolean[] m_substring;
+
+    // Rules matching any facility, severity or process name
+    private final BitSet m_anyFacility = new BitSet();
+    private final BitSet m_anySeverity = new BitSet();
+    private final BitSet m_anyProcess = new BitSet();
+
+    // Rules matching a given facility or severity, including the ones matching any of them
+    private final Map<String, BitSet> m_rulesByFacility = new HashMap<>();
+    private final Map<String, BitSet> m_rulesBySeverity = new HashMap<>();
+
+    private final Pattern[] m_processPatterns;
+    private final Map<String, BitSet> m_rulesByProcess = new ConcurrentHashMap<>();
+
+    // Rules which must be tried whatever the text of the message is
+    private final BitSet m_unfiltered = new BitSet();
+    private final AhoCorasick m_literals;
+    private final int[][] m_rulesByLiteral;
+
+    private UeiMatcher(final List<UeiMatch> ueiMatches, final long generation) {
+        m_source = ueiMatches;
+        m_generation = generation;
+        m_rules = ueiMatches.toArray(new UeiMatch[0]);
+        m_substring = new boolean[m_rules.length];
+        m_processPatterns = new Pattern[m_rules.length];
+
+        final Map<String, List<Integer>> rulesByLiteral = new LinkedHashMap<>();
+        for (int i = 0; i < m_rules.length; i++) {
+            final UeiMatch rule = m_rules[i];
+            final String type = rule.getMatch().getType();
+            final String expression = rule.getMatch().getExpression();
+
+            final String literal;
+            if (type.equals("substr")) {
+                m_substring[i] = true;
+                literal = expression;
+            } else if (type.startsWith("regex")) {
+                if (!isValid(expression)) {
+                    // The rule can never match
+                    continue;
+                }
+                literal = RegexLiterals.requiredLiteral(expression);
+            } else {
+                // Unknown types are ignored
+                continue;
+            }
+
+            if (literal == null || literal.isEmpty()) {
+                m_unfiltered.set(i);
+            } else {
+                rulesByLiteral.computeIfAbsent(literal, k -> new ArrayList<>()).add(i);
+            }
+
+            index(i, rule.getFacilities(), m_anyFacility, m_rulesByFacility);
+            index(i, rule.getSeverities(), m_anySeverity, m_rulesBySeverity);
+
+            final ProcessMatch processMatch = rule.getProcessMatch().orElse(null);
+            if (processMatch == null) {
+                m_anyProcess.set(i);
+            } else if (isValid(processMatch.getExpression())) {
+                m_processPatterns[i] = ConvertToEvent.getPattern(processMatch.getExpression());
+            }
+        }
+
+        // Rules matching any facility or severity also match the listed ones
+        m_rulesByFacility.values().forEach(rules -> rules.or(m_anyFacility));
+        m_rulesBySeverity.values().forEach(rules -> rules.or(m_anySeverity));
+
+        m_literals = new AhoCorasick(new ArrayList<>(rulesByLiteral.keySet()));
+        m_rulesByLiteral = rulesByLiteral.values().stream()
+                .map(rules -> rules.stream().mapToInt(Integer::intValue).toArray())
+                .toArray(int[][]::new);
+    }
+
+    /**
+     * @param generation the generation of the rules, see {@link org.opennms.netmgt.config.SyslogdConfig#getMatchesGeneration()}
+     */
+    static UeiMatcher compile(final List<UeiMatch> ueiMatches, final long generation) {
+        return new UeiMatcher(ueiMatches, generation);
+    }
+
+    /**
+     * @return whether this matcher was compiled from the given rules, in the given generation
+     */
+    boolean isCompiledFrom(final List<UeiMatch> ueiMatches, final long generation) {
+        return m_source == ueiMatches && m_generation == generation;
+    }
+
+    /**
+     * Applies the first rule matching the given message to the event.
+     *
+     * @return whether a rule matched the message
+     * @throws MessageDiscardedException if the matching rule uses the discard UEI
+     */
+    boolean apply(final SyslogMessage message, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+        final BitSet candidates = (BitSet)m_rulesByFacility.getOrDefault(lower(message.getFacility().toString()), m_anyFacility).clone();
+        candidates.and(m_rulesBySeverity.getOrDefault(lower(message.getSeverity().toString()), m_anySeverity));
+        candidates.and(getRulesByProcess(message.getProcessName()));
+        if (candidates.isEmpty()) {
+            return false;
+        }
+
+        final String text = message.getMessage() == null ? "" : message.getMessage();
+        final BitSet matching = (BitSet)m_unfiltered.clone();
+        m_literals.search(text, literal -> {
+            for (int rule : m_rulesByLiteral[literal]) {
+                matching.set(rule);
+            }
+        });
+        candidates.and(matching);
+
+        final String hostAddress = str(message.getHostAddress());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final UeiMatch rule = m_rules[i];
+            if (!ConvertToEvent.matchHostname(rule.getHostnameMatch().orElse(null), message.getHostName())
+                    || !ConvertToEvent.matchHostAddr(rule.getHostaddrMatch().orElse(null), hostAddress)) {
+                continue;
+            }
+            if (m_substring[i]) {
+                if (ConvertToEvent.matchSubstring(text, rule, bldr, discardUei)) {
+                    return true;
+                }
+            } else if (ConvertToEvent.matchRegex(text, rule, bldr, discardUei)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BitSet getRulesByProcess(final String processName) {
+        if (processName == null) {
+            return m_anyProcess;
+        }
+        final BitSet cached = m_rulesByProcess.get(processName);
+        if (cached != null) {
+            return cached;
+        }
+
+        final BitSet rules = (BitSet)m_anyProcess.clone();
+        for (int i = 0; i < m_processPatterns.length; i++) {
+            if (m_processPatterns[i] != null && m_processPatterns[i].matcher(processName).find()) {
+                rules.set(i);
+            }
+        }
+        if (m_rulesByProcess.size() < MAX_CACHED_PROCESS_NAMES) {
+            m_rulesByProcess.put(processName, rules);
+        }
+        return rules;
+    }
+
+    private static void index(final int rule, final List<String> values, final BitSet any, final Map<String, BitSet> rulesByValue) {
+        if (values.isEmpty()) {
+            any.set(rule);
+            return;
+        }
+        for (final String value : values) {
+            rulesByValue.computeIfAbsent(lower(value), k -> new BitSet()).set(rule);
+        }
+    }
+
+    private static String lower(final String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    static boolean isValid(final String expression) {
+        try {
+            Pattern.compile(expression, Pattern.MULTILINE);
+            return true;
+        } catch (final PatternSyntaxException e) {
+            LOG.warn("Failed to compile regex pattern '{}'", expression, e);
+            return false;
+        }
+    }
+}
@@ -62,6 +62,8 @@ import org.opennms.core.test.ConfigurationTestUtils;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.SyslogdConfig;
 import org.opennms.netmgt.config.SyslogdConfigFactory;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
 import org.opennms.netmgt.dao.api.AbstractInterfaceToNodeCache;
 import org.opennms.netmgt.dao.api.DistPollerDao;
 import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
@@ -398,6 +400,40 @@ public class ConvertToEventTest {
         assertEquals(3, middleByteTrimmed.remaining());
     }
 
+    /**
+     * Make sure that the uei-match rules are compiled again when they are
+     * reloaded, even if the same list was edited in place.
+     */
+    @Test
+    public void testUeiMatchesAreRecompiledOnReload() {
+        final List<UeiMatch> ueiMatches = new ArrayList<>();
+        ueiMatches.add(ueiMatch("uei.opennms.org/tests/before"));
+        final SyslogdConfig config = Mockito.mock(SyslogdConfig.class);
+        when(config.getParser()).thenReturn(radixConfig.getParser());
+        when(config.getDiscardUei()).thenReturn(radixConfig.getDiscardUei());
+        when(config.getUeiList()).thenReturn(ueiMatches);
+        when(config.getHideMessages()).thenReturn(new ArrayList<>());
+        when(config.getMatchesGeneration()).thenReturn(1L);
+
+        final String syslogMessage = "<11>Mar 22 14:24:49 testhost last message repeated 30 times";
+        assertEquals("uei.opennms.org/tests/before", parseSyslog("testUeiMatchesAreRecompiledOnReload", config, syslogMessage).getUei());
+
+        // Same list, same size
+        ueiMatches.set(0, ueiMatch("uei.opennms.org/tests/after"));
+        when(config.getMatchesGeneration()).thenReturn(2L);
+        assertEquals("uei.opennms.org/tests/after", parseSyslog("testUeiMatchesAreRecompiledOnReload", config, syslogMessage).getUei());
+    }
+
+    private static UeiMatch ueiMatch(final String uei) {
+        final Match match = new Match();
+        match.setType("substr");
+        match.setExpression("message repeated");
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setUei(uei);
+        ueiMatch.setMatch(match);
+        return ueiMatch;
+    }
+
     /**
      * Make sure that a syslog message with no host provided uses the source
      * address of the message log and that the node is correctly populated as a result.
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.opennms.core.ipc.sink.api.MessageConsumerManager;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.dao.api.MonitoringLocationDao;
+import org.opennms.netmgt.dao.hibernate.InterfaceToNodeCacheDaoImpl;
+import org.opennms.netmgt.dao.mock.MockInterfaceToNodeCache;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.syslogd.api.SyslogMessageDTO;
+import org.opennms.netmgt.syslogd.api.SyslogMessageLogDTO;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class SyslogSinkConsumerTest {
+
+    /**
+     * Converts the messages of several sources on partitioned threads, and
+     * verifies that the events of each source are forwarded in order.
+     */
+    @Test(timeout=60000)
+    public void canConvertMessagesOnPartitionedThreads() throws Exception {
+        InterfaceToNodeCacheDaoImpl.setInstance(new MockInterfaceToNodeCache());
+
+        final int numSources = 4;
+        final int numBatches = 50;
+        final Map<String, List<String>> messagesByHost = Collections.synchronizedMap(new HashMap<>());
+        final CountDownLatch forwarded = new CountDownLatch(numSources * numBatches);
+
+        final EventForwarder eventForwarder = mock(EventForwarder.class);
+        doAnswer(invocation -> {
+            final Log eventLog = (Log)invocation.getArguments()[0];
+            for (final Event event : eventLog.getEvents().getEventCollection()) {
+                messagesByHost.computeIfAbsent(event.getParm("hostname").getValue().getContent(), k -> new ArrayList<>())
+                        .add(event.getParm("syslogmessage").getValue().getContent());
+                forwarded.countDown();
+            }
+            return null;
+        }).when(eventForwarder).sendNowSync(any(Log.class));
+        final MessageConsumerManager messageConsumerManager = mock(MessageConsumerManager.class);
+
+        final SyslogConfigBean config = new SyslogConfigBean();
+        config.setParser(RadixTreeSyslogParser.class.getName());
+        config.setDiscardUei("DISCARD-MATCHING-MESSAGES");
+
+        final SyslogSinkConsumer consumer = new SyslogSinkConsumer(new MetricRegistry());
+        consumer.setSyslogdConfig(config);
+        consumer.setEventForwarder(eventForwarder);
+        consumer.setMessageConsumerManager(messageConsumerManager);
+        consumer.setConversionThreads(2);
+        consumer.setConversionQueueSize(10);
+        consumer.setConversionBatchSize(5);
+        consumer.afterPropertiesSet();
+
+        for (int i = 0; i < numBatches; i++) {
+            for (int source = 0; source < numSources; source++) {
+                final String message = "<11>Mar 22 14:24:49 host" + source + " last message repeated " + i + " times";
+                final SyslogMessageLogDTO messageLog = new SyslogMessageLogDTO(MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID,
+                        DistPollerDao.DEFAULT_DIST_POLLER_ID, new InetSocketAddress("127.0.0." + (source + 1), 514),
+                        Collections.singletonList(new SyslogMessageDTO(SyslogdTestUtils.toByteBuffer(message))));
+                consumer.handleMessage(messageLog);
+            }
+        }
+        forwarded.await(30, TimeUnit.SECONDS);
+
+        assertEquals(numSources, messagesByHost.size());
+        for (int source = 0; source < numSources; source++) {
+            final List<String> expected = new ArrayList<>();
+            for (int i = 0; i < numBatches; i++) {
+                expected.add("last message repeated " + i + " times");
+            }
+            assertEquals(expected, messagesByHost.get("host" + source));
+        }
+
+        consumer.destroy();
+        final InOrder inOrder = inOrder(messageConsumerManager);
+        inOrder.verify(messageConsumerManager).registerConsumer(consumer);
+        inOrder.verify(messageConsumerManager).unregisterConsumer(consumer);
+    }
+}
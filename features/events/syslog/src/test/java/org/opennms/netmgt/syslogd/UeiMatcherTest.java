@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.ProcessMatch;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies that the compiled {@link UeiMatcher} and {@link HideMatcher} behave
+ * exactly as trying each of the rules in turn.
+ */
+public class UeiMatcherTest {
+    private static final Logger LOG = LoggerFactory.getLogger(UeiMatcherTest.class);
+
+    private static final String DISCARD_UEI = "DISCARD-MATCHING-MESSAGES";
+
+    private static final String[] WORDS = {
+            "link", "down", "up", "interface", "GigabitEthernet0/1", "changed", "state", "to", "%LINK-3-UPDOWN",
+            "%SYS-5-CONFIG_I", "Configured", "from", "console", "by", "admin", "failed", "password", "for", "root",
+            "session", "opened", "closed", "user", "port", "22", "ssh2", "error", "disk", "full", "temperature"
+    };
+
+    private static final String[] PROCESSES = { "sshd", "kernel", "cron", "su", "postfix/smtpd", "sudo" };
+
+    @Test
+    public void testRequiredLiteral() {
+        assertEquals("%LINK-3-UPDOWN: Interface ", RegexLiterals.requiredLiteral("%LINK-3-UPDOWN: Interface (.*), changed state to (\\w+)"));
+        assertEquals("Failed password for ", RegexLiterals.requiredLiteral("^Failed password for (\\S+) from"));
+        assertEquals("session opene", RegexLiterals.requiredLiteral("session opened?"));
+        assertEquals("a.b", RegexLiterals.requiredLiteral("x+a\\.b"));
+        assertNull(RegexLiterals.requiredLiteral("foo|bar"));
+        assertNull(RegexLiterals.requiredLiteral("(?i)error"));
+        assertNull(RegexLiterals.requiredLiteral("\\d+ [a-z]+"));
+    }
+
+    @Test
+    public void testAhoCorasick() {
+        final AhoCorasick ac = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+        final List<Integer> found = new ArrayList<>();
+        ac.search("ushers", found::add);
+        Collections.sort(found);
+        assertEquals(Arrays.asList(0, 1, 3), found);
+
+        found.clear();
+        ac.search("nothing to see", found::add);
+        assertTrue(found.isEmpty());
+    }
+
+    @Test
+    public void testMatchesLikeLinearScan() throws Exception {
+        final Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            final List<UeiMatch> rules = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                rules.add(randomRule(random, i));
+            }
+            final UeiMatcher matcher = UeiMatcher.compile(rules, round);
+            assertTrue(matcher.isCompiledFrom(rules, round));
+            assertFalse(matcher.isCompiledFrom(rules, round + 1));
+
+            for (int i = 0; i < 500; i++) {
+                final SyslogMessage message = randomMessage(random);
+                assertEquals(message.getMessage(), applyLinear(rules, message), apply(matcher, message));
+            }
+        }
+    }
+
+    @Test
+    public void testHideMatches() {
+        final List<HideMatch> hides = Arrays.asList(hide("substr", "secret"), hide("regex", "[Pp]ass(word)?:\\s*\\S+"), hide("regex", "[broken"));
+        final HideMatcher matcher = HideMatcher.compile(hides, 0);
+        assertTrue(matcher.matches("the secret is out"));
+        assertTrue(matcher.matches("login with Password: hunter2"));
+        assertFalse(matcher.matches("nothing to hide here"));
+        assertFalse(matcher.matches("[broken"));
+    }
+
+    /**
+     * Applies a realistic number of rules to a large number of messages,
+     * most of which do not match any of the rules.
+     */
+    @Test(timeout=60000)
+    public void testManyRules() throws Exception {
+        final Random random = new Random(7);
+        final List<UeiMatch> rules = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rules.add(randomRule(random, i));
+        }
+        final List<SyslogMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            messages.add(randomMessage(random));
+        }
+
+        final UeiMatcher matcher = UeiMatcher.compile(rules, 0);
+
+        // The prefiltered matcher must return the same matches as the linear scan
+        int expectedMatches = 0;
+        for (final SyslogMessage message : messages) {
+            final String expected = applyLinear(rules, message);
+            assertEquals(message.toString(), expected, apply(matcher, message));
+            if (expected != null) {
+                expectedMatches++;
+            }
+        }
+        // Ensure the rules are actually matching
+        assertTrue(expectedMatches > 0);
+
+        final int iterations = 100;
+        long matched = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (final SyslogMessage message : messages) {
+                if (apply(matcher, message) != null) {
+                    matched++;
+                }
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        assertEquals(iterations * expectedMatches, matched);
+        LOG.info("Matched {} of {} messages against {} rules in {}ms", matched, iterations * messages.size(), rules.size(), elapsed / 1000000);
+    }
+
+    private static String apply(final UeiMatcher matcher, final SyslogMessage message) {
+        final EventBuilder bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        try {
+            if (!matcher.apply(message, bldr, DISCARD_UEI)) {
+                return null;
+            }
+        } catch (MessageDiscardedException e) {
+            return DISCARD_UEI;
+        }
+        return describe(bldr.getEvent());
+    }
+
+    private static String applyLinear(final List<UeiMatch> rules, final SyslogMessage message) {
+        final EventBuilder bldr = new EventBuilder("uei.opennms.org/syslogd/default", "syslogd");
+        try {
+            if (!ConvertToEvent.matchUeiList(rules, message, bldr, DISCARD_UEI)) {
+                return null;
+            }
+        } catch (MessageDiscardedException e) {
+            return DISCARD_UEI;
+        }
+        return describe(bldr.getEvent());
+    }
+
+    private static String describe(final Event event) {
+        return event.getUei() + " " + event.getParmCollection().stream()
+                .map(parm -> parm.getParmName() + "=" + parm.getValue().getContent())
+                .collect(Collectors.joining(","));
+    }
+
+    private static UeiMatch randomRule(final Random random, final int index) {
+        final UeiMatch rule = new UeiMatch();
+        rule.setUei(random.nextInt(20) == 0 ? DISCARD_UEI : "uei.opennms.org/tests/rule" + index);
+        if (random.nextInt(4) == 0) {
+            rule.addFacility(randomOf(random, SyslogFacility.values()).toString());
+        }
+        if (random.nextInt(4) == 0) {
+            rule.addSeverity(randomOf(random, SyslogSeverity.values()).toString().toUpperCase());
+        }
+        if (random.nextInt(4) == 0) {
+            final ProcessMatch processMatch = new ProcessMatch();
+            processMatch.setExpression("^" + randomOf(random, PROCESSES) + "$");
+            rule.setProcessMatch(processMatch);
+        }
+
+        final Match match = new Match();
+        final String word = randomOf(random, WORDS);
+        final String other = randomOf(random, WORDS);
+        switch (random.nextInt(5)) {
+        case 0:
+            match.setType("substr");
+            match.setExpression(word + " " + other);
+            break;
+        case 1:
+            match.setType("substr");
+            match.setExpression(word);
+            break;
+        case 2:
+            match.setType("regex");
+            match.setExpression(word.replace(".", "\\.") + "\\s+(\\S+)");
+            break;
+        case 3:
+            match.setType("regex");
+            match.setExpression("^(\\S+) " + other + "|" + word);
+            break;
+        default:
+            match.setType("regex");
+            match.setExpression("(\\w+) " + word + "s? (\\S+)");
+            break;
+        }
+        match.setDefaultParameterMapping(random.nextBoolean());
+        rule.setMatch(match);
+
+        if (match.getType().equals("regex") && random.nextBoolean()) {
+            final ParameterAssignment assignment = new ParameterAssignment();
+            assignment.setParameterName("first");
+            assignment.setMatchingGroup(1);
+            rule.addParameterAssignment(assignment);
+        }
+        return rule;
+    }
+
+    private static SyslogMessage randomMessage(final Random random) {
+        final SyslogMessage message = new SyslogMessage();
+        message.setFacility(randomOf(random, SyslogFacility.values()));
+        message.setSeverity(randomOf(random, SyslogSeverity.values()));
+        message.setHostName("10.0.0." + random.nextInt(4));
+        if (random.nextInt(5) != 0) {
+            message.setProcessName(randomOf(random, PROCESSES));
+        }
+        final StringBuilder text = new StringBuilder();
+        final int words = 3 + random.nextInt(10);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(randomOf(random, WORDS));
+        }
+        message.setMessage(text.toString());
+        return message;
+    }
+
+    private static HideMatch hide(final String type, final String expression) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final HideMatch hide = new HideMatch();
+        hide.setMatch(match);
+        return hide;
+    }
+
+    private static <T> T randomOf(final Random random, final T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -30,11 +30,15 @@ package org.opennms.netmgt.trapd;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
+import java.util.List;
+
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.opennms.core.ipc.sink.api.MessageConsumer;
 import org.opennms.core.ipc.sink.api.MessageConsumerManager;
 import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.common.PartitionedExecutor;
 import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.TrapdConfig;
@@ -54,6 +58,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
 public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper, TrapLogDTO> {
 
 	public static final TrapdInstrumentation trapdInstrumentation = new TrapdInstrumentation();
@@ -65,6 +73,14 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 	 */
 	private static final String LOCALHOST_ADDRESS = InetAddressUtils.getLocalHostName();
 
+	/**
+	 * Number of threads converting the traps to events, or 0 to convert
+	 * them on the thread consuming them.
+	 */
+	private static final int DEFAULT_CONVERSION_THREADS = Integer.getInteger("org.opennms.trapd.conversionThreads", 0);
+	private static final int DEFAULT_CONVERSION_QUEUE_SIZE = Integer.getInteger("org.opennms.trapd.conversionQueueSize", 1000);
+	private static final int DEFAULT_CONVERSION_BATCH_SIZE = Integer.getInteger("org.opennms.trapd.conversionBatchSize", 100);
+
 	@Autowired
 	private MessageConsumerManager messageConsumerManager;
 
@@ -86,10 +102,46 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 
 	private EventCreator eventCreator;
 
+	private final MetricRegistry registry;
+	private final Timer consumerTimer;
+	private final Timer toEventTimer;
+	private final Timer broadcastTimer;
+
+	private int conversionThreads = DEFAULT_CONVERSION_THREADS;
+	private int conversionQueueSize = DEFAULT_CONVERSION_QUEUE_SIZE;
+	private int conversionBatchSize = DEFAULT_CONVERSION_BATCH_SIZE;
+	private PartitionedExecutor<TrapLogDTO> conversionExecutor;
+
+	public TrapSinkConsumer() {
+		this(new MetricRegistry());
+	}
+
+	public TrapSinkConsumer(MetricRegistry registry) {
+		this.registry = registry;
+		consumerTimer = registry.timer("consumer");
+		toEventTimer = registry.timer("consumer.toevent");
+		broadcastTimer = registry.timer("consumer.broadcast");
+	}
+
 	@PostConstruct
 	public void init() throws Exception {
-		messageConsumerManager.registerConsumer(this);
 		eventCreator = new EventCreator(interfaceToNodeCache, eventConfDao);
+		if (conversionThreads > 0) {
+			LOG.info("Converting traps to events using {} threads.", conversionThreads);
+			conversionExecutor = new PartitionedExecutor<>("consumer.conversion", conversionThreads,
+					conversionQueueSize, conversionBatchSize, this::handleMessages, registry);
+		}
+		messageConsumerManager.registerConsumer(this);
+	}
+
+	@PreDestroy
+	public void destroy() throws Exception {
+		// Stop receiving traps before the threads converting them are stopped
+		messageConsumerManager.unregisterConsumer(this);
+		if (conversionExecutor != null) {
+			conversionExecutor.close();
+			conversionExecutor = null;
+		}
 	}
 
 	@Override
@@ -99,28 +151,69 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 
 	@Override
 	public void handleMessage(TrapLogDTO messageLog) {
-		try (Logging.MDCCloseable mdc = Logging.withPrefixCloseable(Trapd.LOG4J_CATEGORY)) {
-			final Log eventLog = toLog(messageLog);
-
-			eventForwarder.sendNowSync(eventLog);
-
-			// If configured, also send events for new suspects
-			if (config.getNewSuspectOnTrap()) {
-				eventLog.getEvents().getEventCollection().stream()
-						.filter(e -> !e.hasNodeid())
-						.forEach(e -> {
-							sendNewSuspectEvent(e.getInterface(), e.getDistPoller());
-							LOG.debug("Sent newSuspectEvent for interface {}", e.getInterface());
-						});
+		if (conversionExecutor != null) {
+			// Traps of the same agent are converted by the same thread, in order
+			try {
+				conversionExecutor.execute(messageLog.getTrapAddress(), messageLog);
+			} catch (InterruptedException e) {
+				LOG.warn("Interrupted while queueing {} traps for conversion.", messageLog.getMessages().size());
+				Thread.currentThread().interrupt();
+			}
+			return;
+		}
+
+		try (Context consumerCtx = consumerTimer.time();
+			 Logging.MDCCloseable mdc = Logging.withPrefixCloseable(Trapd.LOG4J_CATEGORY)) {
+			final Log eventLog;
+			try (Context toEventCtx = toEventTimer.time()) {
+				eventLog = toLog(messageLog);
+			}
+			try (Context broadcastCtx = broadcastTimer.time()) {
+				broadcast(eventLog);
 			}
 		}
 	}
 
+	private void handleMessages(List<TrapLogDTO> messageLogs) {
+		try (Context consumerCtx = consumerTimer.time();
+			 Logging.MDCCloseable mdc = Logging.withPrefixCloseable(Trapd.LOG4J_CATEGORY)) {
+			// Convert the traps of all the batches and forward the events at once
+			final Log eventLog = new Log();
+			eventLog.setEvents(new Events());
+			try (Context toEventCtx = toEventTimer.time()) {
+				for (TrapLogDTO messageLog : messageLogs) {
+					toEvents(messageLog, eventLog.getEvents());
+				}
+			}
+			try (Context broadcastCtx = broadcastTimer.time()) {
+				broadcast(eventLog);
+			}
+		}
+	}
+
+	private void broadcast(Log eventLog) {
+		eventForwarder.sendNowSync(eventLog);
+
+		// If configured, also send events for new suspects
+		if (config.getNewSuspectOnTrap()) {
+			eventLog.getEvents().getEventCollection().stream()
+					.filter(e -> !e.hasNodeid())
+					.forEach(e -> {
+						sendNewSuspectEvent(e.getInterface(), e.getDistPoller());
+						LOG.debug("Sent newSuspectEvent for interface {}", e.getInterface());
+					});
+		}
+	}
+
 	private Log toLog(TrapLogDTO messageLog) {
 		final Log log = new Log();
 		final Events events = new Events();
 		log.setEvents(events);
+		toEvents(messageLog, events);
+		return log;
+	}
 
+	private void toEvents(TrapLogDTO messageLog, Events events) {
 		for (TrapDTO eachMessage : messageLog.getMessages()) {
 			try {
 				final Event event = eventCreator.createEventFrom(
@@ -142,7 +235,6 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 				trapdInstrumentation.incErrorCount();
 			}
 		}
-		return log;
 	}
 
 	private void sendNewSuspectEvent(String trapInterface, String distPoller) {
@@ -156,6 +248,29 @@ public class TrapSinkConsumer implements MessageConsumer<TrapInformationWrapper,
 		eventForwarder.sendNow(bldr.getEvent());
 	}
 
+	/**
+	 * Sets the number of threads converting the traps to events, the traps of
+	 * a given agent always being converted by the same thread. When 0, traps are
+	 * converted on the thread consuming them.
+	 */
+	public void setConversionThreads(int conversionThreads) {
+		this.conversionThreads = conversionThreads;
+	}
+
+	/**
+	 * Sets the number of trap batches which can be queued for each conversion thread.
+	 */
+	public void setConversionQueueSize(int conversionQueueSize) {
+		this.conversionQueueSize = conversionQueueSize;
+	}
+
+	/**
+	 * Sets the maximum number of queued trap batches converted and forwarded at once.
+	 */
+	public void setConversionBatchSize(int conversionBatchSize) {
+		this.conversionBatchSize = conversionBatchSize;
+	}
+
 	private boolean shouldDiscard(Event event) {
 		org.opennms.netmgt.xml.eventconf.Event econf = eventConfDao.findByEvent(event);
 		if (econf != null) {
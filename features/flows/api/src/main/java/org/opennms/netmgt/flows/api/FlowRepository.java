@@ -41,6 +41,17 @@ public interface FlowRepository {
 
     void persist(Collection<Flow> packets, FlowSource source) throws FlowException;
 
+    /**
+     * Prepares the given flows for persisting, i.e. by enriching them, without persisting them yet.
+     *
+     * This allows callers to overlap the preparation of one batch of flows with persisting another one.
+     *
+     * @return the prepared flows, which are persisted by calling {@link PreparedFlows#persist()}
+     */
+    default PreparedFlows prepare(Collection<Flow> packets, FlowSource source) throws FlowException {
+        return () -> persist(packets, source);
+    }
+
     CompletableFuture<Long> getFlowCount(List<Filter> filters);
 
     CompletableFuture<List<TrafficSummary<String>>> getTopNApplications(int N, boolean includeOther, List<Filter> filters);
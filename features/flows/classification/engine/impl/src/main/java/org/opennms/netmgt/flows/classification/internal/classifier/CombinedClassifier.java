@@ -59,15 +59,16 @@ public class CombinedClassifier implements Classifier {
         if (ruleDefinition.hasSrcPortDefinition()) {
             matchers.add(new SrcPortMatcher(ruleDefinition.getSrcPort()));
         }
+        if (ruleDefinition.hasDstPortDefinition()) {
+            matchers.add(new DstPortMatcher(ruleDefinition.getDstPort()));
+        }
+        // Ports are cheaper to match than addresses, so verify them first
         if (ruleDefinition.hasSrcAddressDefinition()) {
             matchers.add(new SrcAddressMatcher(ruleDefinition.getSrcAddress()));
         }
         if (ruleDefinition.hasDstAddressDefinition()) {
             matchers.add(new DstAddressMatcher(ruleDefinition.getDstAddress()));
         }
-        if (ruleDefinition.hasDstPortDefinition()) {
-            matchers.add(new DstPortMatcher(ruleDefinition.getDstPort()));
-        }
         if (ruleDefinition.hasExportFilterDefinition()) {
             matchers.add(new FilterMatcher(ruleDefinition.getExporterFilter(), filterService));
         }
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An address prefix used to index the address criteria of rules.
+ *
+ * Address criteria are either a concrete address, which must be equal to the address of the flow, or an IPLIKE
+ * expression. This class derives a set of prefixes from these criteria, which contains all addresses the criteria
+ * can match. The prefixes may contain more addresses than the criteria actually matches, so each candidate rule
+ * must still be evaluated.
+ */
+public class AddressPrefix {
+
+    // Maximum number of prefixes a single IPLIKE expression is expanded to
+    private static final int MAX_EXPANSION = 32;
+
+    private final byte[] address;
+    private final int length;
+
+    public AddressPrefix(final byte[] address, final int length) {
+        this.address = Objects.requireNonNull(address);
+        this.length = length;
+    }
+
+    public byte[] getAddress() {
+        return this.address;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final AddressPrefix that = (AddressPrefix) o;
+        return this.length == that.length && Arrays.equals(this.address, that.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Arrays.hashCode(this.address), this.length);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.address) + "/" + this.length;
+    }
+
+    /**
+     * Parses a fully written IPv4 (four decimal fields) or IPv6 (eight hexadecimal fields) address.
+     *
+     * Only these forms are understood by IPLIKE, so all other forms (including compressed IPv6 addresses, scoped
+     * addresses and host names) are rejected.
+     *
+     * @return the address or {@code null} if the input is not a fully written address
+     */
+    public static byte[] parseAddress(final String input) {
+        if (input == null) {
+            return null;
+        }
+
+        final Family family = Family.of(input);
+        if (family == null) {
+            return null;
+        }
+
+        final String[] fields = family.split(input);
+        if (fields.length != family.fields) {
+            return null;
+        }
+
+        final byte[] address = new byte[family.bytes()];
+        for (int i = 0; i < fields.length; i++) {
+            final int value = family.parseField(fields[i]);
+            if (value < 0) {
+                return null;
+            }
+            setBits(address, i * family.width, family.width, value);
+        }
+        return address;
+    }
+
+    /**
+     * Checks if the given address criteria can match a fully written address.
+     *
+     * Criteria without wildcards must be equal to the address, so they can only match a fully written address if
+     * they are one themselves.
+     */
+    public static boolean matchesFullyWrittenAddresses(final String criteria) {
+        if (criteria == null || criteria.isEmpty() || criteria.contains("*")) {
+            return true;
+        }
+        return parseAddress(criteria) != null;
+    }
+
+    /**
+     * Determines the prefixes containing all addresses matched by the given address criteria.
+     *
+     * @return the prefixes, or an empty list if the criteria can not be narrowed down
+     */
+    public static List<AddressPrefix> of(final String criteria) {
+        if (criteria == null || criteria.isEmpty() || "*".equals(criteria)) {
+            return Collections.emptyList();
+        }
+
+        // Without wildcards, the address must match exactly
+        if (!criteria.contains("*")) {
+            final byte[] address = parseAddress(criteria);
+            if (address == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new AddressPrefix(address, address.length * 8));
+        }
+
+        final Family family = Family.of(criteria);
+        if (family == null || criteria.indexOf('%') != -1) {
+            return Collections.emptyList();
+        }
+
+        final String[] fields = family.split(criteria);
+        if (fields.length != family.fields) {
+            return Collections.emptyList();
+        }
+
+        // Use all leading fields which are concrete values
+        final byte[] address = new byte[family.bytes()];
+        int field = 0;
+        while (field < fields.length) {
+            final int value = family.parseField(fields[field]);
+            if (value < 0) {
+                break;
+            }
+            setBits(address, field * family.width, family.width, value);
+            field++;
+        }
+
+        final int length = field * family.width;
+        if (field == fields.length) {
+            return Collections.singletonList(new AddressPrefix(address, length));
+        }
+
+        // Expand the lists and ranges of the first field which is not a concrete value
+        final List<AddressPrefix> expanded = expand(family, address, length, fields[field]);
+        if (expanded != null) {
+            return expanded;
+        }
+
+        if (length == 0) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new AddressPrefix(address, length));
+    }
+
+    private static List<AddressPrefix> expand(final Family family, final byte[] address, final int offset, final String field) {
+        final List<AddressPrefix> prefixes = new ArrayList<>();
+        for (final String element : field.split(",", 0)) {
+            final String[] range = element.split("-", -1);
+            if (range.length > 2) {
+                // Never matches
+                continue;
+            }
+
+            int start = family.parseField(range[0]);
+            int end = range.length == 2 ? family.parseField(range[1]) : start;
+            if (start < 0 || end < 0) {
+                // Wildcards or invalid values
+                return null;
+            }
+
+            // Split the range in aligned blocks
+            while (start <= end) {
+                int size = start == 0 ? 1 << family.width : Integer.lowestOneBit(start);
+                while (start + size - 1 > end) {
+                    size >>= 1;
+                }
+
+                final byte[] prefix = Arrays.copyOf(address, address.length);
+                setBits(prefix, offset, family.width, start);
+                prefixes.add(new AddressPrefix(prefix, offset + family.width - Integer.numberOfTrailingZeros(size)));
+
+                if (prefixes.size() > MAX_EXPANSION) {
+                    return null;
+                }
+
+                start += size;
+            }
+        }
+        return prefixes;
+    }
+
+    private static void setBits(final byte[] address, final int offset, final int width, final int value) {
+        for (int i = 0; i < width; i++) {
+            if ((value & (1 << (width - 1 - i))) != 0) {
+                address[(offset + i) / 8] |= (byte) (0x80 >>> ((offset + i) % 8));
+            }
+        }
+    }
+
+    private enum Family {
+        IPv4(4, 8, 10, 3, "\\."),
+        IPv6(8, 16, 16, 4, "\\:");
+
+        private final int fields;
+        private final int width;
+        private final int radix;
+        private final int digits;
+        private final String separator;
+
+        Family(final int fields, final int width, final int radix, final int digits, final String separator) {
+            this.fields = fields;
+            this.width = width;
+            this.radix = radix;
+            this.digits = digits;
+            this.separator = separator;
+        }
+
+        private static Family of(final String input) {
+            if (input.indexOf(':') != -1) {
+                return IPv6;
+            }
+            if (input.indexOf('.') != -1) {
+                return IPv4;
+            }
+            return null;
+        }
+
+        private int bytes() {
+            return this.fields * this.width / 8;
+        }
+
+        private String[] split(final String input) {
+            return input.split(this.separator, 0);
+        }
+
+        // Returns the value of the field or -1 if the field is not a concrete value
+        private int parseField(final String field) {
+            if (field.isEmpty() || field.length() > this.digits) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = 0; i < field.length(); i++) {
+                final int digit = Character.digit(field.charAt(i), this.radix);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = value * this.radix + digit;
+            }
+            return value < (1 << this.width) ? value : -1;
+        }
+    }
+}
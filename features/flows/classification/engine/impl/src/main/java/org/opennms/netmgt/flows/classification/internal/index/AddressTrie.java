@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A binary radix trie mapping address prefixes to the ranks of the rules using them.
+ *
+ * Chains of nodes with a single child are collapsed into one node, so the trie contains at most two nodes per
+ * prefix. IPv4 and IPv6 prefixes are kept in separate tries.
+ *
+ * The trie is not thread-safe while being built, but can be shared after all prefixes have been added.
+ */
+public class AddressTrie {
+
+    private static class Node {
+        private final byte[] key;
+        private final int length;
+
+        private final Node[] children = new Node[2];
+
+        private int[] ranks = EMPTY;
+        private int size = 0;
+
+        private Node(final byte[] key, final int length) {
+            this.key = key;
+            this.length = length;
+        }
+
+        private void add(final int rank) {
+            if (this.size == this.ranks.length) {
+                this.ranks = Arrays.copyOf(this.ranks, Math.max(4, this.size * 2));
+            }
+            this.ranks[this.size++] = rank;
+        }
+
+        private void compact() {
+            if (this.size != this.ranks.length) {
+                this.ranks = Arrays.copyOf(this.ranks, this.size);
+            }
+            Arrays.sort(this.ranks);
+            for (final Node child : this.children) {
+                if (child != null) {
+                    child.compact();
+                }
+            }
+        }
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Node ipv4 = new Node(new byte[4], 0);
+    private final Node ipv6 = new Node(new byte[16], 0);
+
+    public void add(final AddressPrefix prefix, final int rank) {
+        final byte[] key = prefix.getAddress();
+        final int length = prefix.getLength();
+
+        Node node = root(key);
+        while (true) {
+            if (node.length == length) {
+                node.add(rank);
+                return;
+            }
+
+            final int bit = bit(key, node.length);
+            final Node child = node.children[bit];
+            if (child == null) {
+                final Node leaf = new Node(key, length);
+                leaf.add(rank);
+                node.children[bit] = leaf;
+                return;
+            }
+
+            final int common = commonPrefixLength(child.key, key, Math.min(child.length, length));
+            if (common == child.length) {
+                node = child;
+                continue;
+            }
+
+            // Split the child at the first differing bit
+            final Node split = new Node(key, common);
+            split.children[bit(child.key, common)] = child;
+            node.children[bit] = split;
+
+            if (common == length) {
+                split.add(rank);
+            } else {
+                final Node leaf = new Node(key, length);
+                leaf.add(rank);
+                split.children[bit(key, common)] = leaf;
+            }
+            return;
+        }
+    }
+
+    /**
+     * Sorts the ranks of all nodes. Must be called after all prefixes have been added.
+     */
+    public void compact() {
+        this.ipv4.compact();
+        this.ipv6.compact();
+    }
+
+    /**
+     * Collects the ranks of all prefixes containing the given address.
+     * Each element added to the result is sorted ascending.
+     */
+    public void lookup(final byte[] address, final List<int[]> result) {
+        Node node = root(address);
+        while (node != null) {
+            if (node.length > 0 && commonPrefixLength(node.key, address, node.length) != node.length) {
+                return;
+            }
+            if (node.size > 0) {
+                result.add(node.ranks);
+            }
+            if (node.length == address.length * 8) {
+                return;
+            }
+            node = node.children[bit(address, node.length)];
+        }
+    }
+
+    private Node root(final byte[] address) {
+        return address.length == 4 ? this.ipv4 : this.ipv6;
+    }
+
+    private static int bit(final byte[] address, final int index) {
+        return (address[index / 8] >>> (7 - index % 8)) & 1;
+    }
+
+    private static int commonPrefixLength(final byte[] a, final byte[] b, final int length) {
+        int i = 0;
+        // Compare whole bytes first
+        while (i + 8 <= length && a[i / 8] == b[i / 8]) {
+            i += 8;
+        }
+        while (i < length && bit(a, i) == bit(b, i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.opennms.netmgt.flows.classification.ClassificationRequest;
+import org.opennms.netmgt.flows.classification.FilterService;
+import org.opennms.netmgt.flows.classification.internal.classifier.Classifier;
+import org.opennms.netmgt.flows.classification.internal.classifier.CombinedClassifier;
+import org.opennms.netmgt.flows.classification.internal.value.PortValue;
+import org.opennms.netmgt.flows.classification.persistence.api.Rule;
+
+/**
+ * An immutable index over a list of rules ordered by priority.
+ *
+ * Each rule is indexed by exactly one of its criteria: the source address, the destination address, the destination
+ * port or the source port, in this order of preference. Rules which can not be indexed by any of these are always
+ * considered. Classifying a flow looks up the candidate rules in all indices, merges them by priority and returns
+ * the first candidate which actually matches the flow.
+ */
+public class ClassificationIndex {
+
+    private final Classifier[] classifiers;
+
+    private final AddressTrie srcAddresses = new AddressTrie();
+    private final AddressTrie dstAddresses = new AddressTrie();
+
+    private final PortIndex srcPorts = new PortIndex();
+    private final PortIndex dstPorts = new PortIndex();
+
+    private final int[] unindexed;
+
+    /**
+     * @param rules the rules, ordered by priority (highest priority first)
+     */
+    public ClassificationIndex(final List<Rule> rules, final FilterService filterService) {
+        Objects.requireNonNull(filterService);
+
+        this.classifiers = new Classifier[rules.size()];
+
+        final List<Integer> unindexed = new ArrayList<>();
+        for (int rank = 0; rank < rules.size(); rank++) {
+            final Rule rule = rules.get(rank);
+            this.classifiers[rank] = new CombinedClassifier(rule, filterService);
+
+            // Only found when evaluating all rules for addresses which are not fully written
+            if (!AddressPrefix.matchesFullyWrittenAddresses(rule.getSrcAddress())
+                    || !AddressPrefix.matchesFullyWrittenAddresses(rule.getDstAddress())) {
+                continue;
+            }
+
+            final List<AddressPrefix> srcPrefixes = AddressPrefix.of(rule.getSrcAddress());
+            if (!srcPrefixes.isEmpty()) {
+                for (final AddressPrefix prefix : srcPrefixes) {
+                    this.srcAddresses.add(prefix, rank);
+                }
+                continue;
+            }
+
+            final List<AddressPrefix> dstPrefixes = AddressPrefix.of(rule.getDstAddress());
+            if (!dstPrefixes.isEmpty()) {
+                for (final AddressPrefix prefix : dstPrefixes) {
+                    this.dstAddresses.add(prefix, rank);
+                }
+                continue;
+            }
+
+            if (rule.hasDstPortDefinition()) {
+                this.dstPorts.add(new PortValue(rule.getDstPort()).getPorts(), rank);
+                continue;
+            }
+
+            if (rule.hasSrcPortDefinition()) {
+                this.srcPorts.add(new PortValue(rule.getSrcPort()).getPorts(), rank);
+                continue;
+            }
+
+            unindexed.add(rank);
+        }
+
+        this.srcAddresses.compact();
+        this.dstAddresses.compact();
+        this.srcPorts.compact();
+        this.dstPorts.compact();
+
+        this.unindexed = unindexed.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public String classify(final ClassificationRequest request) {
+        final byte[] srcAddress = AddressPrefix.parseAddress(request.getSrcAddress());
+        final byte[] dstAddress = AddressPrefix.parseAddress(request.getDstAddress());
+
+        // Addresses which are not fully written out can only be matched by evaluating all rules
+        if ((srcAddress == null && request.getSrcAddress() != null)
+                || (dstAddress == null && request.getDstAddress() != null)) {
+            for (final Classifier classifier : this.classifiers) {
+                final String result = classifier.classify(request);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        final List<int[]> candidates = new ArrayList<>();
+        if (srcAddress != null) {
+            this.srcAddresses.lookup(srcAddress, candidates);
+        }
+        if (dstAddress != null) {
+            this.dstAddresses.lookup(dstAddress, candidates);
+        }
+        this.srcPorts.lookup(request.getSrcPort(), candidates);
+        this.dstPorts.lookup(request.getDstPort(), candidates);
+        if (this.unindexed.length > 0) {
+            candidates.add(this.unindexed);
+        }
+
+        // Evaluate the candidates by priority, merging the sorted lists
+        final int[] positions = new int[candidates.size()];
+        int previous = -1;
+        while (true) {
+            int next = -1;
+            int list = -1;
+            for (int i = 0; i < positions.length; i++) {
+                final int[] ranks = candidates.get(i);
+                if (positions[i] < ranks.length && (next == -1 || ranks[positions[i]] < next)) {
+                    next = ranks[positions[i]];
+                    list = i;
+                }
+            }
+
+            if (next == -1) {
+                return null;
+            }
+            positions[list]++;
+
+            // The same rule may be found using multiple prefixes
+            if (next == previous) {
+                continue;
+            }
+            previous = next;
+
+            final String result = this.classifiers[next].classify(request);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import org.opennms.netmgt.flows.classification.persistence.api.Rule;
+
+/**
+ * Maps each port to the ranks of the rules using it.
+ *
+ * The ports of each rule are stored as ranges, so ports which are used by the same rules share the same array
+ * of ranks.
+ */
+public class PortIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    // Pairs of (port, rank) where the rank becomes active (positive) or inactive (negative, offset by one)
+    private final List<int[]> events = new ArrayList<>();
+
+    private int[][] ports;
+
+    public void add(final Set<Integer> ports, final int rank) {
+        final int[] sorted = ports.stream().mapToInt(Integer::intValue).sorted().toArray();
+
+        int i = 0;
+        while (i < sorted.length) {
+            final int start = sorted[i];
+            while (i + 1 < sorted.length && sorted[i + 1] == sorted[i] + 1) {
+                i++;
+            }
+            this.events.add(new int[]{start, rank});
+            this.events.add(new int[]{sorted[i] + 1, -rank - 1});
+            i++;
+        }
+    }
+
+    /**
+     * Builds the index. Must be called after all ports have been added.
+     */
+    public void compact() {
+        this.events.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        this.ports = new int[Rule.MAX_PORT_VALUE][];
+        Arrays.fill(this.ports, EMPTY);
+
+        final BitSet active = new BitSet();
+        int i = 0;
+        while (i < this.events.size()) {
+            final int port = this.events.get(i)[0];
+            while (i < this.events.size() && this.events.get(i)[0] == port) {
+                final int rank = this.events.get(i)[1];
+                if (rank >= 0) {
+                    active.set(rank);
+                } else {
+                    active.clear(-rank - 1);
+                }
+                i++;
+            }
+
+            final int from = Math.max(port, Rule.MIN_PORT_VALUE);
+            final int to = Math.min(i < this.events.size() ? this.events.get(i)[0] : Rule.MAX_PORT_VALUE, Rule.MAX_PORT_VALUE);
+            if (from < to && !active.isEmpty()) {
+                Arrays.fill(this.ports, from, to, active.stream().toArray());
+            }
+        }
+
+        this.events.clear();
+    }
+
+    /**
+     * Adds the ranks of the rules using the given port to the result.
+     */
+    public void lookup(final Integer port, final List<int[]> result) {
+        if (port == null || port < Rule.MIN_PORT_VALUE || port >= Rule.MAX_PORT_VALUE) {
+            return;
+        }
+
+        final int[] ranks = this.ports[port];
+        if (ranks.length > 0) {
+            result.add(ranks);
+        }
+    }
+}
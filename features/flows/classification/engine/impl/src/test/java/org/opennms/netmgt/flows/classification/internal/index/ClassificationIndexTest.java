@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal.index;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.netmgt.flows.classification.ClassificationRequest;
+import org.opennms.netmgt.flows.classification.ClassificationRequestBuilder;
+import org.opennms.netmgt.flows.classification.FilterService;
+import org.opennms.netmgt.flows.classification.internal.classifier.Classifier;
+import org.opennms.netmgt.flows.classification.internal.classifier.CombinedClassifier;
+import org.opennms.netmgt.flows.classification.persistence.api.ProtocolType;
+import org.opennms.netmgt.flows.classification.persistence.api.Rule;
+import org.opennms.netmgt.flows.classification.persistence.api.RuleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ClassificationIndexTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClassificationIndexTest.class);
+
+    @Test
+    public void verifyAddressPrefixes() {
+        assertThat(AddressPrefix.of(null), empty());
+        assertThat(AddressPrefix.of("*"), empty());
+        assertThat(AddressPrefix.of("*.1.1.1"), empty());
+        assertThat(AddressPrefix.of("::1"), empty());
+        assertThat(AddressPrefix.of("localhost"), empty());
+
+        assertThat(AddressPrefix.of("10.0.0.1"), contains(prefix(new byte[]{10, 0, 0, 1}, 32)));
+        assertThat(AddressPrefix.of("10.1.*.*"), contains(prefix(new byte[]{10, 1, 0, 0}, 16)));
+        assertThat(AddressPrefix.of("10.1.*.5"), contains(prefix(new byte[]{10, 1, 0, 0}, 16)));
+        assertThat(AddressPrefix.of("192.168.4-7.*"), contains(prefix(new byte[]{(byte) 192, (byte) 168, 4, 0}, 22)));
+        assertThat(AddressPrefix.of("192.168.1-2,8.*"), contains(
+                prefix(new byte[]{(byte) 192, (byte) 168, 1, 0}, 24),
+                prefix(new byte[]{(byte) 192, (byte) 168, 2, 0}, 24),
+                prefix(new byte[]{(byte) 192, (byte) 168, 8, 0}, 24)));
+        assertThat(AddressPrefix.of("fe80:0:0:0:*:*:*:*"), contains(
+                prefix(new byte[]{(byte) 0xfe, (byte) 0x80, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, 64)));
+    }
+
+    @Test
+    public void verifyIndexMatchesEvaluationOfAllRules() {
+        final Random random = new Random(42);
+
+        final List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rules.add(new RuleBuilder()
+                    .withName("rule" + i)
+                    .withSrcAddress(randomAddressCriteria(random))
+                    .withDstAddress(randomAddressCriteria(random))
+                    .withSrcPort(random.nextInt(4) == 0 ? randomPortCriteria(random) : null)
+                    .withDstPort(random.nextInt(2) == 0 ? randomPortCriteria(random) : null)
+                    .withProtocol(random.nextInt(4) == 0 ? "tcp" : null)
+                    .build());
+        }
+
+        final ClassificationIndex index = new ClassificationIndex(rules, FilterService.NOOP);
+        final List<Classifier> classifiers = rules.stream()
+                .map(rule -> new CombinedClassifier(rule, FilterService.NOOP))
+                .collect(Collectors.toList());
+
+        int classified = 0;
+        for (int i = 0; i < 20000; i++) {
+            final ClassificationRequest request = new ClassificationRequestBuilder()
+                    .withLocation("Default")
+                    .withProtocol(random.nextBoolean() ? ProtocolType.TCP : ProtocolType.UDP)
+                    .withSrcAddress(randomAddress(random))
+                    .withSrcPort(random.nextInt(100))
+                    .withDstAddress(randomAddress(random))
+                    .withDstPort(random.nextInt(100))
+                    .build();
+
+            final String expected = classify(classifiers, request);
+            assertEquals(expected, index.classify(request));
+
+            if (expected != null) {
+                classified++;
+            }
+        }
+
+        // Ensure the rules are actually matching
+        assertThat(classified > 1000, org.hamcrest.Matchers.is(true));
+    }
+
+    @Test
+    public void benchmark() {
+        final Random random = new Random(42);
+
+        // 10k rules for distinct subnets and services
+        final List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            final String subnet = String.format("10.%d.%d", i / 250, i % 250);
+            final RuleBuilder rule = new RuleBuilder().withName("rule" + i);
+            switch (i % 4) {
+                case 0: rule.withSrcAddress(subnet + ".*"); break;
+                case 1: rule.withDstAddress(subnet + ".*").withDstPort(random.nextInt(1024)); break;
+                case 2: rule.withDstAddress(subnet + "." + random.nextInt(256)); break;
+                default: rule.withSrcAddress(String.format("10.%d.%d-%d.*", i / 250, i % 250, i % 250 + 3)).withProtocol("tcp"); break;
+            }
+            rules.add(rule.build());
+        }
+
+        final ClassificationIndex index = new ClassificationIndex(rules, FilterService.NOOP);
+        final List<Classifier> classifiers = rules.stream()
+                .map(rule -> new CombinedClassifier(rule, FilterService.NOOP))
+                .collect(Collectors.toList());
+
+        final List<ClassificationRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            requests.add(new ClassificationRequestBuilder()
+                    .withLocation("Default")
+                    .withProtocol(ProtocolType.TCP)
+                    .withSrcAddress(String.format("10.%d.%d.%d", random.nextInt(48), random.nextInt(250), random.nextInt(256)))
+                    .withSrcPort(1024 + random.nextInt(60000))
+                    .withDstAddress(String.format("10.%d.%d.%d", random.nextInt(48), random.nextInt(250), random.nextInt(256)))
+                    .withDstPort(random.nextInt(1024))
+                    .build());
+        }
+
+        // Warm up, verifying that both agree
+        for (final ClassificationRequest request : requests) {
+            assertEquals(classify(classifiers, request), index.classify(request));
+        }
+
+        final int rounds = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (final ClassificationRequest request : requests) {
+                index.classify(request);
+            }
+        }
+        final long indexed = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (final ClassificationRequest request : requests) {
+            classify(classifiers, request);
+        }
+        final long linear = (System.nanoTime() - start) * rounds;
+
+        LOG.info("{} rules: indexed: {} ns/flow, linear: {} ns/flow",
+                rules.size(),
+                indexed / rounds / requests.size(),
+                linear / rounds / requests.size());
+    }
+
+    private static String classify(final List<Classifier> classifiers, final ClassificationRequest request) {
+        for (final Classifier classifier : classifiers) {
+            final String result = classifier.classify(request);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static AddressPrefix prefix(final byte[] address, final int length) {
+        return new AddressPrefix(address, length);
+    }
+
+    private static String randomAddress(final Random random) {
+        return String.format("10.%d.%d.%d", random.nextInt(4), random.nextInt(8), random.nextInt(8));
+    }
+
+    private static String randomAddressCriteria(final Random random) {
+        switch (random.nextInt(8)) {
+            case 0: return randomAddress(random);
+            case 1: return String.format("10.%d.*.*", random.nextInt(4));
+            case 2: return String.format("10.%d.%d.*", random.nextInt(4), random.nextInt(8));
+            case 3: return String.format("10.%d.%d-%d.*", random.nextInt(4), random.nextInt(4), 4 + random.nextInt(4));
+            case 4: return String.format("10.*.%d.%d,%d", random.nextInt(8), random.nextInt(8), random.nextInt(8));
+            case 5: return String.format("10.%d.%d.%d-%d", random.nextInt(4), random.nextInt(8), random.nextInt(4), 4 + random.nextInt(4));
+            default: return null;
+        }
+    }
+
+    private static String randomPortCriteria(final Random random) {
+        switch (random.nextInt(3)) {
+            case 0: return Integer.toString(random.nextInt(100));
+            case 1: return String.format("%d,%d", random.nextInt(100), random.nextInt(100));
+            default: {
+                final int start = random.nextInt(100);
+                return String.format("%d-%d", start, start + random.nextInt(20) + 1);
+            }
+        }
+    }
+}
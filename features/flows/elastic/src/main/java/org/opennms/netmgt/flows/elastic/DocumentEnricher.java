@@ -29,35 +29,63 @@
 package org.opennms.netmgt.flows.elastic;
 
 import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.opennms.core.cache.Cache;
 import org.opennms.core.cache.CacheBuilder;
 import org.opennms.core.cache.CacheConfig;
+import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
 import org.opennms.netmgt.flows.api.FlowSource;
 import org.opennms.netmgt.flows.classification.ClassificationEngine;
 import org.opennms.netmgt.flows.classification.ClassificationRequest;
 import org.opennms.netmgt.flows.classification.persistence.api.Protocols;
 import org.opennms.netmgt.model.OnmsCategory;
 import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.xml.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.support.TransactionOperations;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 
-public class DocumentEnricher {
+public class DocumentEnricher implements EventListener {
     private static final Logger LOG = LoggerFactory.getLogger(DocumentEnricher.class);
 
+    // Upper bound for the number of node ids bound to a single bulk query
+    private static final int MAX_NODES_PER_QUERY = 500;
+
+    // Provisioning events after which cached node information may be stale
+    private static final List<String> NODE_EVENT_UEIS = ImmutableList.of(
+            EventConstants.NODE_ADDED_EVENT_UEI,
+            EventConstants.NODE_UPDATED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+            EventConstants.INTERFACE_DELETED_EVENT_UEI,
+            EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+            EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI);
+
     private final NodeDao nodeDao;
 
     private final InterfaceToNodeCache interfaceToNodeCache;
@@ -71,6 +99,12 @@ public class DocumentEnricher {
 
     private final Timer nodeLoadTimer;
 
+    private final Meter nodeCacheHits;
+
+    private final Meter nodeCacheMisses;
+
+    private EventSubscriptionService eventSubscriptionService;
+
     public DocumentEnricher(MetricRegistry metricRegistry, NodeDao nodeDao, InterfaceToNodeCache interfaceToNodeCache,
                             TransactionOperations transactionOperations, ClassificationEngine classificationEngine,
                             CacheConfig cacheConfig) {
@@ -84,10 +118,39 @@ public class DocumentEnricher {
                 .withCacheLoader(new CacheLoader<NodeInfoKey, Optional<NodeDocument>>() {
                     @Override
                     public Optional<NodeDocument> load(NodeInfoKey key) {
-                        return getNodeInfo(key.location, key.ipAddress);
+                        return getNodeInfos(Collections.singleton(key)).get(key);
                     }
                 }).build();
         this.nodeLoadTimer = metricRegistry.timer("nodeLoadTime");
+        this.nodeCacheHits = metricRegistry.meter("nodeCacheHits");
+        this.nodeCacheMisses = metricRegistry.meter("nodeCacheMisses");
+    }
+
+    public synchronized void destroy() {
+        if (eventSubscriptionService != null) {
+            eventSubscriptionService.removeEventListener(this, NODE_EVENT_UEIS);
+            eventSubscriptionService = null;
+        }
+    }
+
+    /**
+     * Invalidates the cached node information on node events once the event subscription service
+     * is available. Sentinel does not provide it, so the entries only expire there.
+     */
+    public synchronized void onBind(EventSubscriptionService eventSubscriptionService, Map<String, Object> properties) {
+        LOG.debug("bind called with {}: {}", eventSubscriptionService, properties);
+        if (eventSubscriptionService != null && this.eventSubscriptionService == null) {
+            eventSubscriptionService.addEventListener(this, NODE_EVENT_UEIS);
+            this.eventSubscriptionService = eventSubscriptionService;
+        }
+    }
+
+    public synchronized void onUnbind(EventSubscriptionService eventSubscriptionService, Map<String, Object> properties) {
+        LOG.debug("Unbind called with {}: {}", eventSubscriptionService, properties);
+        if (eventSubscriptionService != null && this.eventSubscriptionService == eventSubscriptionService) {
+            eventSubscriptionService.removeEventListener(this, NODE_EVENT_UEIS);
+            this.eventSubscriptionService = null;
+        }
     }
 
     public void enrich(final List<FlowDocument> documents, final FlowSource source) {
@@ -97,18 +160,31 @@ public class DocumentEnricher {
         }
 
         transactionOperations.execute(callback -> {
+            // Resolve the node data of all distinct addresses of the batch at once
+            final Set<String> ipAddresses = new HashSet<>();
+            ipAddresses.add(source.getSourceAddress());
+            for (final FlowDocument document : documents) {
+                if (document.getDstAddr() != null) {
+                    ipAddresses.add(document.getDstAddr());
+                }
+                if (document.getSrcAddr() != null) {
+                    ipAddresses.add(document.getSrcAddr());
+                }
+            }
+            final Map<String, Optional<NodeDocument>> nodeInfos = getNodeInfosFromCache(source.getLocation(), ipAddresses);
+
             documents.forEach(document -> {
                 // Metadata from message
                 document.setHost(source.getSourceAddress());
                 document.setLocation(source.getLocation());
 
                 // Node data
-                getNodeInfoFromCache(source.getLocation(), source.getSourceAddress()).ifPresent(document::setNodeExporter);
+                nodeInfos.get(source.getSourceAddress()).ifPresent(document::setNodeExporter);
                 if (document.getDstAddr() != null) {
-                    getNodeInfoFromCache(source.getLocation(), document.getDstAddr()).ifPresent(document::setNodeDst);
+                    nodeInfos.get(document.getDstAddr()).ifPresent(document::setNodeDst);
                 }
                 if (document.getSrcAddr() != null) {
-                    getNodeInfoFromCache(source.getLocation(), document.getSrcAddr()).ifPresent(document::setNodeSrc);
+                    nodeInfos.get(document.getSrcAddr()).ifPresent(document::setNodeSrc);
                 }
 
                 // Locality
@@ -140,56 +216,165 @@ public class DocumentEnricher {
         });
     }
 
+    @Override
+    public String getName() {
+        return DocumentEnricher.class.getName();
+    }
+
+    @Override
+    public void onEvent(final Event event) {
+        final Integer nodeId = event.hasNodeid() ? event.getNodeid().intValue() : null;
+        final NodeInfoKey ifaceKey = event.getInterface() != null ? NodeInfoKey.of(null, event.getInterface()) : null;
+
+        // A new node may own any of the addresses which were unknown so far
+        final boolean dropUnknown = EventConstants.NODE_ADDED_EVENT_UEI.equals(event.getUei());
+
+        LOG.debug("Invalidating cached node information for node: {}, interface: {}.", nodeId, event.getInterface());
+        nodeInfoCache.invalidateIf((key, nodeInfo) -> {
+            if (!nodeInfo.isPresent()) {
+                return dropUnknown || (ifaceKey != null && key.sameAddress(ifaceKey));
+            }
+            return (nodeId != null && nodeId.equals(nodeInfo.get().getNodeId()))
+                    || (ifaceKey != null && key.sameAddress(ifaceKey));
+        });
+    }
+
     private static boolean isPrivateAddress(String ipAddress) {
         final InetAddress inetAddress = InetAddressUtils.addr(ipAddress);
         return inetAddress.isLoopbackAddress() || inetAddress.isLinkLocalAddress() || inetAddress.isSiteLocalAddress();
     }
 
-    private Optional<NodeDocument> getNodeInfoFromCache(String location, String ipAddress) {
-        final NodeInfoKey key = new NodeInfoKey(location, ipAddress);
-        try {
-            return nodeInfoCache.get(key);
-        } catch (ExecutionException e) {
-            LOG.error("Error while retrieving NodeDocument from NodeInfoCache: {}.", e.getMessage(), e);
-            throw new RuntimeException(e);
+    private Map<String, Optional<NodeDocument>> getNodeInfosFromCache(final String location, final Set<String> ipAddresses) {
+        final Map<String, NodeInfoKey> keys = Maps.newHashMapWithExpectedSize(ipAddresses.size());
+        for (final String ipAddress : ipAddresses) {
+            keys.put(ipAddress, NodeInfoKey.of(location, ipAddress));
         }
-    }
 
-    private Optional<NodeDocument> getNodeInfo(String location, String ipAddress) {
-        return getNodeInfo(location, InetAddressUtils.addr(ipAddress));
+        final Set<NodeInfoKey> distinctKeys = keys.values().stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        final Map<NodeInfoKey, Optional<NodeDocument>> nodeInfos = new HashMap<>(nodeInfoCache.getAllPresent(distinctKeys));
+        nodeCacheHits.mark(nodeInfos.size());
+
+        final Set<NodeInfoKey> missingKeys = distinctKeys.stream()
+                .filter(key -> !nodeInfos.containsKey(key))
+                .collect(Collectors.toSet());
+        if (!missingKeys.isEmpty()) {
+            nodeCacheMisses.mark(missingKeys.size());
+
+            final Map<NodeInfoKey, Optional<NodeDocument>> loadedNodeInfos = getNodeInfos(missingKeys);
+            nodeInfoCache.putAll(loadedNodeInfos);
+            nodeInfos.putAll(loadedNodeInfos);
+        }
+
+        return Maps.transformValues(keys, key -> key != null ? nodeInfos.get(key) : Optional.empty());
     }
 
-    private Optional<NodeDocument> getNodeInfo(String location, InetAddress ipAddress) {
-        final Optional<Integer> nodeId = interfaceToNodeCache.getFirstNodeId(location, ipAddress);
-        if (nodeId.isPresent()) {
+    private Map<NodeInfoKey, Optional<NodeDocument>> getNodeInfos(final Collection<NodeInfoKey> keys) {
+        final Map<NodeInfoKey, Integer> nodeIds = Maps.newHashMapWithExpectedSize(keys.size());
+        for (final NodeInfoKey key : keys) {
+            interfaceToNodeCache.getFirstNodeId(key.location, key.getInetAddress())
+                    .ifPresent(nodeId -> nodeIds.put(key, nodeId));
+        }
+
+        // Load all referenced nodes using as few queries as possible
+        final Map<Integer, NodeDocument> nodes = new HashMap<>();
+        if (!nodeIds.isEmpty()) {
             try (Timer.Context ctx = nodeLoadTimer.time()) {
-                final OnmsNode onmsNode = nodeDao.get(nodeId.get());
-                if (onmsNode != null) {
-                    final NodeDocument nodeInfo = new NodeDocument();
-                    nodeInfo.setForeignSource(onmsNode.getForeignSource());
-                    nodeInfo.setForeignId(onmsNode.getForeignId());
-                    nodeInfo.setNodeId(nodeId.get());
-                    nodeInfo.setCategories(onmsNode.getCategories().stream().map(OnmsCategory::getName).collect(Collectors.toList()));
-
-                    return Optional.of(nodeInfo);
-                } else {
-                    LOG.warn("Node with id: {} at location: {} with IP address: {} is in the interface to node cache, but wasn't found in the database.");
+                for (final List<Integer> ids : Iterables.partition(new HashSet<>(nodeIds.values()), MAX_NODES_PER_QUERY)) {
+                    final List<OnmsNode> onmsNodes = nodeDao.findMatching(new CriteriaBuilder(OnmsNode.class)
+                            .in("id", ids)
+                            .fetch("categories")
+                            .toCriteria());
+                    for (final OnmsNode onmsNode : onmsNodes) {
+                        final NodeDocument nodeInfo = new NodeDocument();
+                        nodeInfo.setForeignSource(onmsNode.getForeignSource());
+                        nodeInfo.setForeignId(onmsNode.getForeignId());
+                        nodeInfo.setNodeId(onmsNode.getId());
+                        nodeInfo.setCategories(onmsNode.getCategories().stream().map(OnmsCategory::getName).collect(Collectors.toList()));
+
+                        nodes.put(onmsNode.getId(), nodeInfo);
+                    }
                 }
             }
         }
-        return Optional.empty();
+
+        final Map<NodeInfoKey, Optional<NodeDocument>> nodeInfos = Maps.newHashMapWithExpectedSize(keys.size());
+        for (final NodeInfoKey key : keys) {
+            final Integer nodeId = nodeIds.get(key);
+            if (nodeId != null && !nodes.containsKey(nodeId)) {
+                LOG.warn("Node with id: {} at location: {} with IP address: {} is in the interface to node cache, but wasn't found in the database.",
+                        nodeId, key.location, InetAddressUtils.str(key.getInetAddress()));
+            }
+            nodeInfos.put(key, Optional.ofNullable(nodeId != null ? nodes.get(nodeId) : null));
+        }
+        return nodeInfos;
     }
 
-    // Key class, which is used to cache NodeDocument objects
+    // Key class, which is used to cache NodeDocument objects. The address is held as two longs, IPv4 addresses are
+    // stored in their IPv4-mapped IPv6 form.
     private static class NodeInfoKey {
 
         public final String location;
 
-        public final String ipAddress;
+        private final long high;
+
+        private final long low;
 
-        private NodeInfoKey(String location, String ipAddress) {
+        private final int hashCode;
+
+        private NodeInfoKey(String location, long high, long low) {
             this.location = location;
-            this.ipAddress = ipAddress;
+            this.high = high;
+            this.low = low;
+            this.hashCode = 31 * Objects.hashCode(location) + Long.hashCode(high * 31 + low);
+        }
+
+        private static NodeInfoKey of(String location, String ipAddress) {
+            final InetAddress inetAddress = InetAddressUtils.addr(ipAddress);
+            if (inetAddress == null) {
+                return null;
+            }
+
+            final byte[] bytes = inetAddress.getAddress();
+            if (bytes.length == 4) {
+                return new NodeInfoKey(location, 0L, 0xFFFF00000000L | (toLong(bytes, 0, 4) & 0xFFFFFFFFL));
+            }
+            return new NodeInfoKey(location, toLong(bytes, 0, 8), toLong(bytes, 8, 8));
+        }
+
+        private static long toLong(byte[] bytes, int offset, int length) {
+            long value = 0;
+            for (int i = offset; i < offset + length; i++) {
+                value = (value << 8) | (bytes[i] & 0xFF);
+            }
+            return value;
+        }
+
+        private InetAddress getInetAddress() {
+            final byte[] bytes;
+            if (high == 0L && (low >>> 32) == 0xFFFFL) {
+                bytes = new byte[4];
+                for (int i = 0; i < 4; i++) {
+                    bytes[i] = (byte) (low >>> (24 - 8 * i));
+                }
+            } else {
+                bytes = new byte[16];
+                for (int i = 0; i < 8; i++) {
+                    bytes[i] = (byte) (high >>> (56 - 8 * i));
+                    bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+                }
+            }
+            try {
+                return InetAddress.getByAddress(bytes);
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private boolean sameAddress(NodeInfoKey other) {
+            return high == other.high && low == other.low;
         }
 
         @Override
@@ -197,13 +382,14 @@ public class DocumentEnricher {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             final NodeInfoKey that = (NodeInfoKey) o;
-            return Objects.equals(location, that.location) &&
-                   Objects.equals(ipAddress, that.ipAddress);
+            return high == that.high &&
+                   low == that.low &&
+                   Objects.equals(location, that.location);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(location, ipAddress);
+            return hashCode;
         }
     }
 
@@ -52,12 +52,15 @@ import org.opennms.netmgt.flows.api.Flow;
 import org.opennms.netmgt.flows.api.FlowException;
 import org.opennms.netmgt.flows.api.FlowRepository;
 import org.opennms.netmgt.flows.api.FlowSource;
+import org.opennms.netmgt.flows.api.PreparedFlows;
 import org.opennms.netmgt.flows.api.TrafficSummary;
 import org.opennms.netmgt.flows.classification.ClassificationEngine;
 import org.opennms.netmgt.flows.classification.ClassificationRequest;
 import org.opennms.netmgt.flows.classification.persistence.api.Protocol;
 import org.opennms.netmgt.flows.classification.persistence.api.Protocols;
 import org.opennms.netmgt.flows.elastic.index.IndexSelector;
+import org.opennms.netmgt.flows.elastic.rollup.FlowRollups;
+import org.opennms.netmgt.flows.elastic.rollup.Rollup;
 import org.opennms.netmgt.flows.filter.api.Filter;
 import org.opennms.netmgt.flows.filter.api.TimeRangeFilter;
 import org.opennms.netmgt.model.OnmsNode;
@@ -70,6 +73,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.support.TransactionOperations;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
@@ -142,6 +146,20 @@ public class ElasticFlowRepository implements FlowRepository {
      */
     private final Histogram flowsPerLog;
 
+    /**
+     * Time taken to roll up the flows in a log and persist completed rollups
+     */
+    private final Timer logRollupTimer;
+
+    /**
+     * Rollup documents/second throughput
+     */
+    private final Meter rollupsPersistedMeter;
+
+    private final MetricRegistry metricRegistry;
+
+    private FlowRollups rollups = new FlowRollups(null, 0, 0);
+
     private final IndexSelector indexSelector;
 
     private final TransactionOperations transactionOperations;
@@ -176,6 +194,9 @@ public class ElasticFlowRepository implements FlowRepository {
         logPersistingTimer = metricRegistry.timer("logPersisting");
         logMarkingTimer = metricRegistry.timer("logMarking");
         flowsPerLog = metricRegistry.histogram("flowsPerLog");
+        logRollupTimer = metricRegistry.timer("logRollup");
+        rollupsPersistedMeter = metricRegistry.meter("rollupsPersisted");
+        this.metricRegistry = metricRegistry;
 
         // Pre-populate marker cache with values from DB
         this.transactionOperations.execute(cb -> {
@@ -191,6 +212,11 @@ public class ElasticFlowRepository implements FlowRepository {
 
     @Override
     public void persist(final Collection<Flow> flows, final FlowSource source) throws FlowException {
+        prepare(flows, source).persist();
+    }
+
+    @Override
+    public PreparedFlows prepare(final Collection<Flow> flows, final FlowSource source) throws FlowException {
         LOG.debug("Converting {} flows from {} to flow documents.", flows.size(), source);
         final List<FlowDocument> documents;
         try (final Timer.Context ctx = logConversionTimer.time()) {
@@ -198,16 +224,20 @@ public class ElasticFlowRepository implements FlowRepository {
                     .map(FlowDocument::from)
                     .collect(Collectors.toList());
         }
-        enrichAndPersistFlows(documents, source);
+        return enrichFlows(documents, source);
     }
 
     public void enrichAndPersistFlows(final List<FlowDocument> flowDocuments, FlowSource source) throws FlowException {
+        enrichFlows(flowDocuments, source).persist();
+    }
+
+    private PreparedFlows enrichFlows(final List<FlowDocument> flowDocuments, FlowSource source) {
         // Track the number of flows per call
         flowsPerLog.update(flowDocuments.size());
 
         if (flowDocuments.isEmpty()) {
             LOG.info("Received empty flows. Nothing to do.");
-            return;
+            return () -> {};
         }
 
         LOG.debug("Enriching {} flow documents.", flowDocuments.size());
@@ -215,6 +245,10 @@ public class ElasticFlowRepository implements FlowRepository {
             documentEnricher.enrich(flowDocuments, source);
         }
 
+        return () -> persistFlows(flowDocuments);
+    }
+
+    private void persistFlows(final List<FlowDocument> flowDocuments) throws FlowException {
         LOG.debug("Persisting {} flow documents.", flowDocuments.size());
         try (final Timer.Context ctx = logPersistingTimer.time()) {
             final BulkRequest<FlowDocument> bulkRequest = new BulkRequest<>(client, flowDocuments, (documents) -> {
@@ -240,6 +274,16 @@ public class ElasticFlowRepository implements FlowRepository {
             flowsPersistedMeter.mark(flowDocuments.size());
         }
 
+        // Update the rollups and persist the completed intervals
+        if (rollups.isEnabled()) {
+            try (final Timer.Context ctx = logRollupTimer.time()) {
+                rollups.aggregate(flowDocuments);
+                for (final Map.Entry<Rollup, List<FlowDocument>> e : rollups.flush(System.currentTimeMillis()).entrySet()) {
+                    persistRollups(e.getKey(), e.getValue());
+                }
+            }
+        }
+
         // Mark nodes and interfaces as having associated flows
         try (final Timer.Context ctx = logMarkingTimer.time()) {
             final List<Integer> nodesToUpdate = Lists.newArrayListWithExpectedSize(flowDocuments.size());
@@ -285,6 +329,56 @@ public class ElasticFlowRepository implements FlowRepository {
         }
     }
 
+    private void persistRollups(final Rollup rollup, final List<FlowDocument> rollupDocuments) {
+        if (rollupDocuments.isEmpty()) {
+            return;
+        }
+
+        LOG.debug("Persisting {} {} rollup documents.", rollupDocuments.size(), rollup.getIndexPrefix());
+        final BulkRequest<FlowDocument> bulkRequest = new BulkRequest<>(client, rollupDocuments, (documents) -> {
+            final Bulk.Builder bulkBuilder = new Bulk.Builder();
+            for (FlowDocument rollupDocument : documents) {
+                final String index = indexStrategy.getIndex(rollup.getIndexPrefix(), Instant.ofEpochMilli(rollupDocument.getTimestamp()));
+                final Index.Builder indexBuilder = new Index.Builder(rollupDocument)
+                        .index(index)
+                        .type(FlowRollups.TYPE);
+                bulkBuilder.addAction(indexBuilder.build());
+            }
+            return new BulkWrapper(bulkBuilder);
+        }, bulkRetryCount);
+        try {
+            bulkRequest.execute();
+            rollupsPersistedMeter.mark(rollupDocuments.size());
+        } catch (BulkException ex) {
+            // The raw flows have been persisted already, so do not fail the whole log because of the rollups
+            LOG.error("Failed to persist {} of {} {} rollup documents: {}", ex.getBulkResult().getFailedDocuments().size(),
+                    rollupDocuments.size(), rollup.getIndexPrefix(), ex.getMessage(), ex);
+        } catch (IOException ex) {
+            LOG.error("An error occurred while persisting {} rollup documents: {}", rollup.getIndexPrefix(), ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Persists the summaries of the intervals which have not been flushed yet.
+     */
+    public void destroy() {
+        if (rollups.isEnabled()) {
+            for (final Map.Entry<Rollup, List<FlowDocument>> e : rollups.flushAll().entrySet()) {
+                persistRollups(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Configures the rollups which are updated on persist and used for Top N queries over aligned time ranges.
+     */
+    public void setRollups(final FlowRollups rollups) {
+        this.rollups = Objects.requireNonNull(rollups);
+        for (final Rollup rollup : rollups.getRollups()) {
+            metricRegistry.register(MetricRegistry.name("rollup", rollup.getIndexPrefix(), "entries"), (Gauge<Integer>) rollup::size);
+        }
+    }
+
     @Override
     public CompletableFuture<Long> getFlowCount(List<Filter> filters) {
         final String query = searchQueryProvider.getFlowCountQuery(filters);
@@ -324,7 +418,8 @@ public class ElasticFlowRepository implements FlowRepository {
         }));
     }
 
-    private CompletableFuture<List<String>> getTopN(int N, String groupByTerm, String keyForMissingTerm, List<Filter> filters) {
+    private CompletableFuture<List<String>> getTopN(int N, String groupByTerm, String keyForMissingTerm, List<Filter> filters,
+                                                  Rollup rollup) {
         if (N < 1) {
             // Avoid a query and return an empty list
             return CompletableFuture.completedFuture(Collections.emptyList());
@@ -334,7 +429,7 @@ public class ElasticFlowRepository implements FlowRepository {
         // See https://www.elastic.co/guide/en/elasticsearch/reference/current/search-aggregations-bucket-terms-aggregation.html#_size
         final int multiplier = 2;
         final String query = searchQueryProvider.getTopNQuery(multiplier*N, groupByTerm, keyForMissingTerm, filters);
-        return searchAsync(query, extractTimeRangeFilter(filters))
+        return searchAsync(query, extractTimeRangeFilter(filters), rollup)
                 .thenApply(res -> {
                     final TermsAggregation groupedBy = res.getAggregations().getTermsAggregation("grouped_by");
                     if (groupedBy == null) {
@@ -350,7 +445,8 @@ public class ElasticFlowRepository implements FlowRepository {
 
     private CompletableFuture<Table<Directional<String>, Long, Double>> getSeriesFromTopN(List<String> topN, long step, String groupByTerm,
                                                                                           String keyForMissingTerm,
-                                                                                          boolean includeOther, List<Filter> filters) {
+                                                                                          boolean includeOther, List<Filter> filters,
+                                                                                          Rollup rollup) {
         final TimeRangeFilter timeRangeFilter = getRequiredTimeRangeFilter(filters);
         final ImmutableTable.Builder<Directional<String>, Long, Double> builder = ImmutableTable.builder();
         CompletableFuture<Void> seriesFuture;
@@ -360,7 +456,7 @@ public class ElasticFlowRepository implements FlowRepository {
         } else {
             final String seriesFromTopNQuery = searchQueryProvider.getSeriesFromTopNQuery(topN, step, timeRangeFilter.getStart(),
                     timeRangeFilter.getEnd(), groupByTerm, filters);
-            seriesFuture = searchAsync(seriesFromTopNQuery, timeRangeFilter)
+            seriesFuture = searchAsync(seriesFromTopNQuery, timeRangeFilter, rollup)
                     .thenApply(res -> {
                         toTable(builder, res);
                         return null;
@@ -373,7 +469,7 @@ public class ElasticFlowRepository implements FlowRepository {
             final String seriesFromMissingQuery = searchQueryProvider.getSeriesFromMissingQuery(step,
                     timeRangeFilter.getStart(), timeRangeFilter.getEnd(), groupByTerm, keyForMissingTerm, filters);
             seriesFuture = seriesFuture
-                    .thenCombine(searchAsync(seriesFromMissingQuery, extractTimeRangeFilter(filters)), (ignored,res) -> {
+                    .thenCombine(searchAsync(seriesFromMissingQuery, extractTimeRangeFilter(filters), rollup), (ignored,res) -> {
                 toTable(builder, res);
                 return null;
             });
@@ -383,7 +479,7 @@ public class ElasticFlowRepository implements FlowRepository {
             // We also want to gather series for terms not part of the Top N
             final String seriesFromOthersQuery = searchQueryProvider.getSeriesFromOthersQuery(topN, step,
                     timeRangeFilter.getStart(), timeRangeFilter.getEnd(), groupByTerm, missingTermIncludedInTopN, filters);
-            seriesFuture = seriesFuture.thenCombine(searchAsync(seriesFromOthersQuery, timeRangeFilter), (ignored,res) -> {
+            seriesFuture = seriesFuture.thenCombine(searchAsync(seriesFromOthersQuery, timeRangeFilter, rollup), (ignored,res) -> {
                 final MetricAggregation aggs = res.getAggregations();
                 final TermsAggregation directionAgg = aggs.getTermsAggregation("direction");
                 for (TermsAggregation.Entry directionBucket : directionAgg.getBuckets()) {
@@ -419,13 +515,19 @@ public class ElasticFlowRepository implements FlowRepository {
     private CompletableFuture<Table<Directional<String>, Long, Double>> getSeriesFromTopN(int N, long step, String groupByTerm,
                                                                                           String keyForMissingTerm, boolean includeOther,
                                                                                           List<Filter> filters) {
-        return getTopN(N, groupByTerm, keyForMissingTerm, filters)
-                .thenCompose((topN) -> getSeriesFromTopN(topN, step, groupByTerm, keyForMissingTerm, includeOther, filters));
+        // Use the coarsest rollup which fits the requested time range and step, if any
+        final TimeRangeFilter timeRangeFilter = extractTimeRangeFilter(filters);
+        final Rollup rollup = timeRangeFilter != null
+                ? rollups.select(groupByTerm, timeRangeFilter.getStart(), timeRangeFilter.getEnd(), step).orElse(null)
+                : null;
+        return getTopN(N, groupByTerm, keyForMissingTerm, filters, rollup)
+                .thenCompose((topN) -> getSeriesFromTopN(topN, step, groupByTerm, keyForMissingTerm, includeOther, filters, rollup));
     }
 
     private CompletableFuture<List<TrafficSummary<String>>> getTotalBytesFromTopN(List<String> topN, String groupByTerm,
                                                                                   String keyForMissingTerm,
-                                                                                  boolean includeOther, List<Filter> filters) {
+                                                                                  boolean includeOther, List<Filter> filters,
+                                                                                  Rollup rollup) {
         final TimeRangeFilter timeRangeFilter = getRequiredTimeRangeFilter(filters);
         final long start = timeRangeFilter.getStart();
         // Remove 1 from the end to make sure we have a single bucket
@@ -439,7 +541,7 @@ public class ElasticFlowRepository implements FlowRepository {
             summariesFuture = CompletableFuture.completedFuture(new LinkedHashMap<>());
         } else {
             final String bytesFromTopNQuery = searchQueryProvider.getSeriesFromTopNQuery(topN, step, start, end, groupByTerm, filters);
-            summariesFuture = searchAsync(bytesFromTopNQuery, timeRangeFilter).thenApply(ElasticFlowRepository::toTrafficSummaries);
+            summariesFuture = searchAsync(bytesFromTopNQuery, timeRangeFilter, rollup).thenApply(ElasticFlowRepository::toTrafficSummaries);
         }
 
         final boolean missingTermIncludedInTopN = keyForMissingTerm != null && topN.contains(keyForMissingTerm);
@@ -447,7 +549,7 @@ public class ElasticFlowRepository implements FlowRepository {
             // We also need to query for items with a missing term, this will require a separate query
             final String bytesFromMissingQuery = searchQueryProvider.getSeriesFromMissingQuery(step, start, end,
                     groupByTerm, keyForMissingTerm, filters);
-            summariesFuture = summariesFuture.thenCombine(searchAsync(bytesFromMissingQuery, timeRangeFilter), (summaries,results) -> {
+            summariesFuture = summariesFuture.thenCombine(searchAsync(bytesFromMissingQuery, timeRangeFilter, rollup), (summaries,results) -> {
                 summaries.putAll(toTrafficSummaries(results));
                 return summaries;
             });
@@ -457,7 +559,7 @@ public class ElasticFlowRepository implements FlowRepository {
             // We also want to tally up traffic from other elements not part of the Top N
             final String bytesFromOthersQuery = searchQueryProvider.getSeriesFromOthersQuery(topN, step, start, end,
                     groupByTerm, missingTermIncludedInTopN, filters);
-            summariesFuture = summariesFuture.thenCombine(searchAsync(bytesFromOthersQuery, timeRangeFilter), (summaries,results) -> {
+            summariesFuture = summariesFuture.thenCombine(searchAsync(bytesFromOthersQuery, timeRangeFilter, rollup), (summaries,results) -> {
                 final MetricAggregation aggs = results.getAggregations();
                 final TrafficSummary<String> trafficSummary = new TrafficSummary<>(OTHER_APPLICATION_NAME);
                 final TermsAggregation directionAgg = aggs.getTermsAggregation("direction");
@@ -525,8 +627,14 @@ public class ElasticFlowRepository implements FlowRepository {
     }
 
     private CompletableFuture<List<TrafficSummary<String>>> getTotalBytesFromTopN(int N, String groupByTerm, String keyForMissingTerm, boolean includeOther, List<Filter> filters) {
-        return getTopN(N, groupByTerm, keyForMissingTerm, filters)
-                .thenCompose((topN) -> getTotalBytesFromTopN(topN, groupByTerm, keyForMissingTerm, includeOther, filters));
+        // The totals are calculated using a single step spanning the whole time range
+        final TimeRangeFilter timeRangeFilter = extractTimeRangeFilter(filters);
+        final Rollup rollup = timeRangeFilter != null
+                ? rollups.select(groupByTerm, timeRangeFilter.getStart(), timeRangeFilter.getEnd(),
+                                 timeRangeFilter.getEnd() - timeRangeFilter.getStart()).orElse(null)
+                : null;
+        return getTopN(N, groupByTerm, keyForMissingTerm, filters, rollup)
+                .thenCompose((topN) -> getTotalBytesFromTopN(topN, groupByTerm, keyForMissingTerm, includeOther, filters, rollup));
     }
 
     /**
@@ -569,6 +677,28 @@ public class ElasticFlowRepository implements FlowRepository {
         return classificationEngine.classify(request);
     }
 
+    private CompletableFuture<SearchResult> searchAsync(String query, TimeRangeFilter timeRangeFilter, Rollup rollup) {
+        if (rollup == null) {
+            return searchAsync(query, timeRangeFilter);
+        }
+
+        Search.Builder builder = new Search.Builder(query)
+                .addType(FlowRollups.TYPE);
+        if (timeRangeFilter != null) {
+            // Summaries never extend beyond their interval
+            final IndexSelector rollupIndexSelector = new IndexSelector(rollup.getIndexPrefix(), indexStrategy, rollup.getInterval());
+            final List<String> indices = rollupIndexSelector.getIndexNames(timeRangeFilter);
+            builder.addIndices(indices);
+            builder.setParameter("ignore_unavailable", "true"); // ignore unknown index
+
+            LOG.debug("Executing asynchronous query on {}: {}", indices, query);
+        } else {
+            builder.addIndex(rollup.getIndexPrefix() + "-*");
+            LOG.debug("Executing asynchronous query on all {} indices: {}", rollup.getIndexPrefix(), query);
+        }
+        return executeAsync(builder.build());
+    }
+
     private CompletableFuture<SearchResult> searchAsync(String query, TimeRangeFilter timeRangeFilter) {
         Search.Builder builder = new Search.Builder(query)
                 .addType(TYPE);
@@ -39,6 +39,7 @@ import org.opennms.netmgt.flows.api.Flow;
 import org.opennms.netmgt.flows.api.FlowException;
 import org.opennms.netmgt.flows.api.FlowRepository;
 import org.opennms.netmgt.flows.api.FlowSource;
+import org.opennms.netmgt.flows.api.PreparedFlows;
 import org.opennms.netmgt.flows.api.TrafficSummary;
 import org.opennms.netmgt.flows.filter.api.Filter;
 import org.opennms.plugins.elasticsearch.rest.template.IndexSettings;
@@ -76,6 +77,12 @@ public class InitializingFlowRepository implements FlowRepository {
         delegate.persist(flows, source);
     }
 
+    @Override
+    public PreparedFlows prepare(Collection<Flow> flows, FlowSource source) throws FlowException {
+        ensureInitialized();
+        return delegate.prepare(flows, source);
+    }
+
     @Override
     public CompletableFuture<Long> getFlowCount(List<Filter> filters) {
         return delegate.getFlowCount(filters);
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.flows.elastic.rollup;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.opennms.netmgt.flows.elastic.FlowDocument;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Keeps the application and conversation rollups for all configured intervals.
+ *
+ * Intervals are configured as a comma separated list like {@code 1m,5m,1h}. Rollups are disabled if no interval is
+ * configured.
+ */
+public class FlowRollups {
+
+    /**
+     * Document type used for the summaries.
+     */
+    public static final String TYPE = "rollup";
+
+    private static final Pattern INTERVAL_PATTERN = Pattern.compile("(\\d+)([smhd])");
+
+    // Check for completed intervals at most every 10 seconds
+    private static final long FLUSH_PERIOD_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private final List<Rollup> rollups;
+
+    private final int maxEntries;
+
+    private final long flushDelayMs;
+
+    private final AtomicLong nextFlush = new AtomicLong(0);
+
+    /**
+     * All intervals ending before this time have been flushed.
+     */
+    private volatile long flushedUntil = Long.MIN_VALUE;
+
+    /**
+     * @param intervals the comma separated list of intervals to roll up
+     * @param maxEntries the number of entries per rollup after which all intervals are flushed, regardless of whether
+     *                   they are completed or not
+     * @param flushDelayMs time to wait for late flows after an interval has ended before flushing it
+     */
+    public FlowRollups(final String intervals, final int maxEntries, final long flushDelayMs) {
+        final ImmutableList.Builder<Rollup> rollups = ImmutableList.builder();
+        if (!Strings.isNullOrEmpty(intervals)) {
+            for (final String interval : Splitter.on(',').trimResults().omitEmptyStrings().split(intervals)) {
+                final long millis = parseInterval(interval);
+                for (final Rollup.Kind kind : Rollup.Kind.values()) {
+                    rollups.add(new Rollup(kind, interval, millis));
+                }
+            }
+        }
+        this.rollups = rollups.build();
+        this.maxEntries = maxEntries;
+        this.flushDelayMs = flushDelayMs;
+    }
+
+    public boolean isEnabled() {
+        return !this.rollups.isEmpty();
+    }
+
+    public List<Rollup> getRollups() {
+        return this.rollups;
+    }
+
+    public void aggregate(final Collection<FlowDocument> documents) {
+        for (final Rollup rollup : this.rollups) {
+            for (final FlowDocument document : documents) {
+                rollup.aggregate(document);
+            }
+        }
+    }
+
+    /**
+     * Returns the summaries which are ready to be persisted.
+     *
+     * Intervals are flushed after they have ended and the flush delay has passed. If a rollup grew beyond the maximum
+     * number of entries, all of its intervals are flushed at once.
+     */
+    public Map<Rollup, List<FlowDocument>> flush(final long now) {
+        final long next = this.nextFlush.get();
+        final boolean due = now >= next && this.nextFlush.compareAndSet(next, now + FLUSH_PERIOD_MS);
+
+        final Map<Rollup, List<FlowDocument>> documents = new LinkedHashMap<>();
+        for (final Rollup rollup : this.rollups) {
+            if (rollup.size() > this.maxEntries) {
+                documents.put(rollup, rollup.flush(Long.MAX_VALUE));
+            } else if (due) {
+                documents.put(rollup, rollup.flush(now - this.flushDelayMs));
+            }
+        }
+        if (due) {
+            this.flushedUntil = Math.max(this.flushedUntil, now - this.flushDelayMs);
+        }
+        return documents;
+    }
+
+    /**
+     * Returns the summaries of all intervals, including the ones which have not ended yet.
+     */
+    public Map<Rollup, List<FlowDocument>> flushAll() {
+        final Map<Rollup, List<FlowDocument>> documents = new LinkedHashMap<>();
+        for (final Rollup rollup : this.rollups) {
+            documents.put(rollup, rollup.flush(Long.MAX_VALUE));
+        }
+        return documents;
+    }
+
+    /**
+     * Selects the coarsest rollup grouping by the given term which can answer a query for the given time range
+     * and step exactly.
+     *
+     * The interval of the rollup must evenly divide the step, the range must start and end on interval boundaries
+     * and all intervals in the range must have been flushed. Otherwise, the summaries would cover a different time
+     * range than the raw flows or miss some of them.
+     */
+    public Optional<Rollup> select(final String groupByTerm, final long start, final long end, final long step) {
+        if (end > this.flushedUntil) {
+            return Optional.empty();
+        }
+        return this.rollups.stream()
+                .filter(rollup -> rollup.getKind().getGroupByTerm().equals(groupByTerm))
+                .filter(rollup -> step >= rollup.getInterval() && step % rollup.getInterval() == 0)
+                .filter(rollup -> Math.floorMod(start, rollup.getInterval()) == 0 && Math.floorMod(end, rollup.getInterval()) == 0)
+                .max(Comparator.comparingLong(Rollup::getInterval));
+    }
+
+    protected static long parseInterval(final String interval) {
+        final Matcher matcher = INTERVAL_PATTERN.matcher(interval);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid rollup interval: " + interval);
+        }
+
+        final long value = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "s": return TimeUnit.SECONDS.toMillis(value);
+            case "m": return TimeUnit.MINUTES.toMillis(value);
+            case "h": return TimeUnit.HOURS.toMillis(value);
+            case "d": return TimeUnit.DAYS.toMillis(value);
+            default: throw new IllegalArgumentException("Invalid rollup interval: " + interval);
+        }
+    }
+}
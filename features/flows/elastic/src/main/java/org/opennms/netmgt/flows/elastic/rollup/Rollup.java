@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.flows.elastic.rollup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opennms.netmgt.flows.elastic.Direction;
+import org.opennms.netmgt.flows.elastic.FlowDocument;
+import org.opennms.netmgt.flows.elastic.NodeDocument;
+
+/**
+ * Sums up the bytes of flows per exporter, interface, direction and application or conversation
+ * over fixed time intervals.
+ *
+ * The bytes of a flow are spread across the intervals it spans in proportion to the overlap,
+ * in the same way the proportional_sum aggregation does it for raw flows.
+ *
+ * The summaries are emitted as flow documents which cover the whole interval and use the same
+ * fields as the raw flows. This allows them to be queried and filtered with the same queries.
+ * The bytes are summed up per sampling interval and are not scaled, so that the queries apply
+ * the sampling interval to the summaries in exactly the same way as to the raw flows.
+ * Since the summaries are additive, an interval may be emitted multiple times, i.e. for flows
+ * arriving after it was flushed already.
+ */
+public class Rollup {
+
+    public enum Kind {
+        APPLICATION("application", "netflow.application"),
+        CONVERSATION("conversation", "netflow.convo_key");
+
+        private final String name;
+        private final String groupByTerm;
+
+        Kind(final String name, final String groupByTerm) {
+            this.name = name;
+            this.groupByTerm = groupByTerm;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getGroupByTerm() {
+            return this.groupByTerm;
+        }
+
+        private String getTerm(final FlowDocument document) {
+            switch (this) {
+                case APPLICATION: return document.getApplication();
+                case CONVERSATION: return document.getConvoKey();
+                default: throw new IllegalStateException();
+            }
+        }
+
+        private void setTerm(final FlowDocument document, final String term) {
+            switch (this) {
+                case APPLICATION: document.setApplication(term); break;
+                case CONVERSATION: document.setConvoKey(term); break;
+                default: throw new IllegalStateException();
+            }
+        }
+    }
+
+    private final Kind kind;
+
+    private final String intervalName;
+
+    private final long interval;
+
+    private final ConcurrentMap<Key, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public Rollup(final Kind kind, final String intervalName, final long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        this.kind = Objects.requireNonNull(kind);
+        this.intervalName = Objects.requireNonNull(intervalName);
+        this.interval = interval;
+    }
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    public String getIntervalName() {
+        return this.intervalName;
+    }
+
+    public long getInterval() {
+        return this.interval;
+    }
+
+    public String getIndexPrefix() {
+        return "netflow-rollup-" + this.kind.getName() + "-" + this.intervalName;
+    }
+
+    public int size() {
+        return this.buckets.size();
+    }
+
+    public void aggregate(final FlowDocument document) {
+        if (document.getBytes() == null || document.getDirection() == null) {
+            return;
+        }
+
+        final long first = document.getFirstSwitched() != null ? document.getFirstSwitched() : document.getTimestamp();
+        final long last = document.getLastSwitched() != null ? document.getLastSwitched() : first;
+
+        final double bytes = document.getBytes();
+        final Integer ifIndex = document.getDirection() == Direction.INGRESS ? document.getInputSnmp() : document.getOutputSnmp();
+        final String term = this.kind.getTerm(document);
+
+        if (last <= first) {
+            add(new Key(start(first), document.getLocation(), document.getHost(), document.getDirection(), ifIndex, term,
+                        document.getSamplingInterval()),
+                document.getNodeExporter(), bytes);
+            return;
+        }
+
+        // Spread the bytes across all intervals spanned by the flow
+        final double duration = last - first;
+        for (long start = start(first); start < last; start += this.interval) {
+            final long overlap = Math.min(last, start + this.interval) - Math.max(first, start);
+            add(new Key(start, document.getLocation(), document.getHost(), document.getDirection(), ifIndex, term,
+                        document.getSamplingInterval()),
+                document.getNodeExporter(), bytes * overlap / duration);
+        }
+    }
+
+    /**
+     * Removes and returns the summaries of all intervals which ended before the given time.
+     */
+    public List<FlowDocument> flush(final long before) {
+        final List<FlowDocument> documents = new ArrayList<>();
+        for (final Iterator<Key> it = this.buckets.keySet().iterator(); it.hasNext(); ) {
+            final Key key = it.next();
+            if (key.start + this.interval > before) {
+                continue;
+            }
+
+            final Bucket bucket = this.buckets.remove(key);
+            if (bucket == null) {
+                continue;
+            }
+
+            final long bytes = Math.round(bucket.bytes);
+            if (bytes == 0) {
+                continue;
+            }
+
+            final FlowDocument document = new FlowDocument();
+            document.setTimestamp(key.start);
+            document.setFirstSwitched(key.start);
+            document.setLastSwitched(key.start + this.interval);
+            document.setLocation(key.location);
+            document.setHost(key.host);
+            document.setNodeExporter(bucket.exporter);
+            document.setDirection(key.direction);
+            if (key.direction == Direction.INGRESS) {
+                document.setInputSnmp(key.ifIndex);
+            } else {
+                document.setOutputSnmp(key.ifIndex);
+            }
+            this.kind.setTerm(document, key.term);
+            document.setBytes(bytes);
+            document.setSamplingInterval(key.samplingInterval);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    private long start(final long timestamp) {
+        return timestamp - Math.floorMod(timestamp, this.interval);
+    }
+
+    private void add(final Key key, final NodeDocument exporter, final double bytes) {
+        this.buckets.compute(key, (k, bucket) -> {
+            if (bucket == null) {
+                bucket = new Bucket(exporter);
+            }
+            bucket.bytes += bytes;
+            return bucket;
+        });
+    }
+
+    private static class Bucket {
+        private final NodeDocument exporter;
+
+        private double bytes;
+
+        private Bucket(final NodeDocument exporter) {
+            this.exporter = exporter;
+        }
+    }
+
+    private static class Key {
+        private final long start;
+        private final String location;
+        private final String host;
+        private final Direction direction;
+        private final Integer ifIndex;
+        private final String term;
+        private final Double samplingInterval;
+
+        private final int hashCode;
+
+        private Key(final long start, final String location, final String host, final Direction direction,
+                    final Integer ifIndex, final String term, final Double samplingInterval) {
+            this.start = start;
+            this.location = location;
+            this.host = host;
+            this.direction = direction;
+            this.ifIndex = ifIndex;
+            this.term = term;
+            this.samplingInterval = samplingInterval;
+            this.hashCode = Objects.hash(start, location, host, direction, ifIndex, term, samplingInterval);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key that = (Key) o;
+            return this.start == that.start &&
+                   this.direction == that.direction &&
+                   Objects.equals(this.location, that.location) &&
+                   Objects.equals(this.host, that.host) &&
+                   Objects.equals(this.ifIndex, that.ifIndex) &&
+                   Objects.equals(this.term, that.term) &&
+                   Objects.equals(this.samplingInterval, that.samplingInterval);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
@@ -30,6 +30,7 @@ package org.opennms.netmgt.flows.elastic;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
@@ -40,9 +41,11 @@ import org.junit.Test;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.flows.api.FlowSource;
 import org.opennms.netmgt.flows.classification.ClassificationRequest;
 import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.events.EventBuilder;
 
 import com.google.common.collect.Lists;
 
@@ -50,14 +53,18 @@ public class DocumentEnricherTest {
 
     private DocumentEnricher enricher;
     private AtomicInteger nodeDaoGetCounter;
+    private AtomicInteger nodeDaoFindMatchingCounter;
+    private NodeDao nodeDao;
+    private InterfaceToNodeCache interfaceToNodeCache;
 
     @Before
     public void setUp() {
         final MockDocumentEnricherFactory factory = new MockDocumentEnricherFactory();
         enricher = factory.getEnricher();
-        final NodeDao nodeDao = factory.getNodeDao();
-        final InterfaceToNodeCache interfaceToNodeCache = factory.getInterfaceToNodeCache();
+        nodeDao = factory.getNodeDao();
+        interfaceToNodeCache = factory.getInterfaceToNodeCache();
         nodeDaoGetCounter = factory.getNodeDaoGetCounter();
+        nodeDaoFindMatchingCounter = factory.getNodeDaoFindMatchingCounter();
 
         interfaceToNodeCache.setNodeId("Default", InetAddressUtils.addr("10.0.0.1"), 1);
         interfaceToNodeCache.setNodeId("Default", InetAddressUtils.addr("10.0.0.2"), 2);
@@ -75,8 +82,42 @@ public class DocumentEnricherTest {
         documents.add(createFlowDocument("10.0.0.1", "10.0.0.3"));
         enricher.enrich(documents, new FlowSource("Default", "127.0.0.1"));
 
-        // get is also called for each save, so we account for those as well
-        assertEquals(6, nodeDaoGetCounter.get());
+        // get is only called for each save, all nodes of the batch are loaded using a single query
+        assertEquals(3, nodeDaoGetCounter.get());
+        assertEquals(1, nodeDaoFindMatchingCounter.get());
+
+        // A subsequent batch is served from the cache
+        enricher.enrich(documents, new FlowSource("Default", "127.0.0.1"));
+        assertEquals(3, nodeDaoGetCounter.get());
+        assertEquals(1, nodeDaoFindMatchingCounter.get());
+    }
+
+    @Test
+    public void verifyCacheInvalidation() {
+        final List<FlowDocument> documents = Lists.newArrayList(createFlowDocument("10.0.0.1", "10.0.0.4"));
+        enricher.enrich(documents, new FlowSource("Default", "127.0.0.1"));
+        assertEquals(1, nodeDaoFindMatchingCounter.get());
+        assertEquals("my-requisition", documents.get(0).getNodeSrc().getForeignSource());
+        assertNull(documents.get(0).getNodeDst());
+
+        // Events of unrelated nodes do not affect the cache
+        enricher.onEvent(new EventBuilder(EventConstants.NODE_UPDATED_EVENT_UEI, "test").setNodeid(2).getEvent());
+        enricher.enrich(documents, new FlowSource("Default", "127.0.0.1"));
+        assertEquals(1, nodeDaoFindMatchingCounter.get());
+
+        // The cached node is reloaded after it was updated
+        nodeDao.get(1).setForeignSource("other-requisition");
+        enricher.onEvent(new EventBuilder(EventConstants.NODE_UPDATED_EVENT_UEI, "test").setNodeid(1).getEvent());
+        enricher.enrich(documents, new FlowSource("Default", "127.0.0.1"));
+        assertEquals(2, nodeDaoFindMatchingCounter.get());
+        assertEquals("other-requisition", documents.get(0).getNodeSrc().getForeignSource());
+
+        // The unknown address is resolved once it was added to a node
+        interfaceToNodeCache.setNodeId("Default", InetAddressUtils.addr("10.0.0.4"), 3);
+        enricher.onEvent(new EventBuilder(EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI, "test").setNodeid(3).setInterface(InetAddressUtils.addr("10.0.0.4")).getEvent());
+        enricher.enrich(documents, new FlowSource("Default", "127.0.0.1"));
+        assertEquals(3, nodeDaoFindMatchingCounter.get());
+        assertEquals(Integer.valueOf(3), documents.get(0).getNodeDst().getNodeId());
     }
 
     private static FlowDocument createFlowDocument(String sourceIp, String destIp) {
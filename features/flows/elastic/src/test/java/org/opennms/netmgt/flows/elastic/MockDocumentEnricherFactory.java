@@ -33,6 +33,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mockito.Mockito;
 import org.opennms.core.cache.CacheConfigBuilder;
+import org.opennms.core.criteria.Criteria;
 import org.opennms.core.soa.support.DefaultServiceRegistry;
 import org.opennms.netmgt.dao.api.AssetRecordDao;
 import org.opennms.netmgt.dao.api.CategoryDao;
@@ -64,6 +65,7 @@ public class MockDocumentEnricherFactory {
     private final ClassificationEngine classificationEngine;
 
     private final AtomicInteger nodeDaoGetCounter = new AtomicInteger(0);
+    private final AtomicInteger nodeDaoFindMatchingCounter = new AtomicInteger(0);
 
     public MockDocumentEnricherFactory() {
         nodeDao = createNodeDao();
@@ -116,18 +118,26 @@ public class MockDocumentEnricherFactory {
         return nodeDaoGetCounter;
     }
 
+    public AtomicInteger getNodeDaoFindMatchingCounter() {
+        return nodeDaoFindMatchingCounter;
+    }
+
     public ClassificationEngine getClassificationEngine() {
         return classificationEngine;
     }
 
     private NodeDao createNodeDao() {
-        // Spy on MockNodeDao to count access to get(int)
+        // Spy on MockNodeDao to count access to get(int) and findMatching(Criteria)
         final MockNodeDao dao = new MockNodeDao();
         final NodeDao spyMock = Mockito.spy(dao);
         Mockito.when(spyMock.get(Mockito.anyInt())).then(invocationOnMock -> {
             nodeDaoGetCounter.incrementAndGet();
             return dao.get((int) invocationOnMock.getArguments()[0]);
         });
+        Mockito.doAnswer(invocationOnMock -> {
+            nodeDaoFindMatchingCounter.incrementAndGet();
+            return dao.findMatching((Criteria) invocationOnMock.getArguments()[0]);
+        }).when(spyMock).findMatching(Mockito.any(Criteria.class));
         return spyMock;
     }
 
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.flows.elastic.rollup;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.opennms.netmgt.flows.elastic.Direction;
+import org.opennms.netmgt.flows.elastic.FlowDocument;
+
+public class FlowRollupsTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    @Test
+    public void canSpreadBytesAcrossIntervals() {
+        final Rollup rollup = new Rollup(Rollup.Kind.APPLICATION, "1m", MINUTE);
+
+        // 40s in the first, 60s in the second and 20s in the third interval
+        rollup.aggregate(createFlowDocument("http", Direction.INGRESS, 20_000L, 140_000L, 1200L, null));
+        // Sampled flow without a duration, summed up separately and not scaled
+        rollup.aggregate(createFlowDocument("http", Direction.INGRESS, 150_000L, 150_000L, 100L, 10.0));
+
+        final List<FlowDocument> documents = sort(rollup.flush(Long.MAX_VALUE));
+        assertThat(documents.stream().map(FlowDocument::getTimestamp).collect(Collectors.toList()), contains(0L, MINUTE, 2 * MINUTE, 2 * MINUTE));
+        assertThat(documents.stream().map(FlowDocument::getBytes).collect(Collectors.toList()), contains(400L, 600L, 100L, 200L));
+        assertThat(documents.get(3).getSamplingInterval(), nullValue());
+
+        final FlowDocument document = documents.get(2);
+        assertThat(document.getFirstSwitched(), equalTo(2 * MINUTE));
+        assertThat(document.getLastSwitched(), equalTo(3 * MINUTE));
+        assertThat(document.getSamplingInterval(), equalTo(10.0));
+        assertThat(document.getApplication(), equalTo("http"));
+        assertThat(document.getConvoKey(), nullValue());
+        assertThat(document.getInputSnmp(), equalTo(1));
+        assertThat(document.getOutputSnmp(), nullValue());
+        assertThat(document.getHost(), equalTo("10.0.0.1"));
+
+        assertThat(rollup.size(), equalTo(0));
+    }
+
+    @Test
+    public void canGroupByTermDirectionAndInterface() {
+        final Rollup rollup = new Rollup(Rollup.Kind.APPLICATION, "1m", MINUTE);
+        rollup.aggregate(createFlowDocument("http", Direction.INGRESS, 0L, 0L, 1L, null));
+        rollup.aggregate(createFlowDocument("http", Direction.INGRESS, 0L, 0L, 2L, null));
+        rollup.aggregate(createFlowDocument("http", Direction.EGRESS, 0L, 0L, 4L, null));
+        rollup.aggregate(createFlowDocument("https", Direction.INGRESS, 0L, 0L, 8L, null));
+        rollup.aggregate(createFlowDocument(null, Direction.INGRESS, 0L, 0L, 16L, null));
+
+        final List<FlowDocument> documents = sort(rollup.flush(Long.MAX_VALUE));
+        assertThat(documents.stream().map(FlowDocument::getBytes).collect(Collectors.toList()), contains(1L + 2L, 4L, 8L, 16L));
+        assertThat(documents.get(1).getOutputSnmp(), equalTo(2));
+        assertThat(documents.get(3).getApplication(), nullValue());
+    }
+
+    @Test
+    public void canFlushCompletedIntervals() {
+        final FlowRollups rollups = new FlowRollups("1m", 1000, 30_000L);
+        rollups.aggregate(Arrays.asList(
+                createFlowDocument("http", Direction.INGRESS, 0L, 0L, 1L, null),
+                createFlowDocument("http", Direction.INGRESS, MINUTE, MINUTE, 2L, null)));
+
+        // The first interval is not flushed before the delay has passed
+        assertThat(flushed(rollups.flush(MINUTE + 29_000L)), empty());
+
+        // The next check happens once the flush period has passed
+        assertThat(flushed(rollups.flush(MINUTE + 30_000L)), empty());
+        final List<FlowDocument> documents = flushed(rollups.flush(MINUTE + 40_000L));
+        assertThat(documents, hasSize(2));
+        assertThat(documents.stream().map(FlowDocument::getTimestamp).distinct().collect(Collectors.toList()), contains(0L));
+
+        // Late flows are emitted again
+        rollups.aggregate(Arrays.asList(createFlowDocument("http", Direction.INGRESS, 0L, 0L, 4L, null)));
+        assertThat(flushed(rollups.flush(MINUTE + 50_000L)).stream().map(FlowDocument::getBytes).collect(Collectors.toList()), contains(4L, 4L));
+    }
+
+    @Test
+    public void canFlushEarlyWhenFull() {
+        final FlowRollups rollups = new FlowRollups("1m", 1, 30_000L);
+        rollups.flush(0L);
+
+        rollups.aggregate(Arrays.asList(createFlowDocument("http", Direction.INGRESS, 0L, 0L, 1L, null)));
+        assertThat(flushed(rollups.flush(1000L)), empty());
+
+        // Only the application rollup exceeds its limit, both flows share the same (missing) conversation
+        rollups.aggregate(Arrays.asList(createFlowDocument("https", Direction.INGRESS, 0L, 0L, 1L, null)));
+        assertThat(flushed(rollups.flush(2000L)).stream().map(FlowDocument::getApplication).collect(Collectors.toList()),
+                containsInAnyOrder("http", "https"));
+    }
+
+    @Test
+    public void canSelectCoarsestFittingRollup() {
+        final FlowRollups rollups = new FlowRollups("1m, 5m,1h", 1000, 0L);
+        assertThat(rollups.getRollups(), hasSize(6));
+        rollups.flush(DAY);
+
+        assertThat(interval(rollups.select("netflow.application", 0L, DAY, 30_000L)), equalTo(Optional.empty()));
+        assertThat(interval(rollups.select("netflow.application", 0L, DAY, 90_000L)), equalTo(Optional.empty()));
+        assertThat(interval(rollups.select("netflow.application", 0L, DAY, 2 * MINUTE)), equalTo(Optional.of("1m")));
+        assertThat(interval(rollups.select("netflow.application", 0L, DAY, 10 * MINUTE)), equalTo(Optional.of("5m")));
+        assertThat(interval(rollups.select("netflow.convo_key", 0L, DAY, 120 * MINUTE)), equalTo(Optional.of("1h")));
+        assertThat(rollups.select("netflow.convo_key", 0L, DAY, 120 * MINUTE).get().getIndexPrefix(), equalTo("netflow-rollup-conversation-1h"));
+        assertThat(rollups.select("netflow.dst_port", 0L, DAY, 120 * MINUTE), equalTo(Optional.empty()));
+
+        assertThat(new FlowRollups("", 1000, 0L).isEnabled(), equalTo(false));
+    }
+
+    @Test
+    public void canSelectOnlyAlignedAndFlushedRanges() {
+        final FlowRollups rollups = new FlowRollups("1m,1h", 1000, 30_000L);
+
+        // Nothing has been flushed yet
+        assertThat(interval(rollups.select("netflow.application", 0L, 2 * HOUR, HOUR)), equalTo(Optional.empty()));
+
+        // Intervals ending up to 2h have been flushed
+        rollups.flush(2 * HOUR + 30_000L);
+        assertThat(interval(rollups.select("netflow.application", 0L, 2 * HOUR, HOUR)), equalTo(Optional.of("1h")));
+        assertThat(interval(rollups.select("netflow.application", 0L, 2 * HOUR + MINUTE, HOUR)), equalTo(Optional.empty()));
+
+        // Ranges which are only aligned to the finer interval use the finer rollup
+        assertThat(interval(rollups.select("netflow.application", MINUTE, HOUR + MINUTE, HOUR)), equalTo(Optional.of("1m")));
+        assertThat(interval(rollups.select("netflow.application", 30_000L, HOUR + 30_000L, HOUR)), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void canFlushAllPendingIntervals() {
+        final FlowRollups rollups = new FlowRollups("1m", 1000, 30_000L);
+        rollups.aggregate(Arrays.asList(
+                createFlowDocument("http", Direction.INGRESS, 0L, 0L, 1L, null),
+                createFlowDocument("http", Direction.INGRESS, MINUTE, MINUTE, 2L, null)));
+
+        assertThat(flushed(rollups.flushAll()).stream().map(FlowDocument::getBytes).collect(Collectors.toList()),
+                containsInAnyOrder(1L, 1L, 2L, 2L));
+        assertThat(flushed(rollups.flushAll()), empty());
+
+        // Flushing at shutdown does not make the pending intervals eligible for queries
+        assertThat(rollups.select("netflow.application", 0L, 2 * MINUTE, MINUTE), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void canMatchRawTotalsOverAnyRange() {
+        final FlowRollups rollups = new FlowRollups("1m,5m", Integer.MAX_VALUE, 0L);
+
+        // Flows of different durations and sampling intervals, most of them spanning multiple intervals
+        final Random random = new Random(42);
+        final Double[] samplingIntervals = new Double[]{null, 0.0, 1.0, 10.0};
+        final List<FlowDocument> flows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final long first = random.nextInt((int) (2 * HOUR));
+            final long last = first + (random.nextInt(4) == 0 ? 0 : random.nextInt((int) (10 * MINUTE)));
+            flows.add(createFlowDocument(random.nextBoolean() ? "http" : "https", Direction.INGRESS, first, last,
+                    1 + random.nextInt(100_000), samplingIntervals[random.nextInt(samplingIntervals.length)]));
+        }
+        rollups.aggregate(flows);
+        final Map<Rollup, List<FlowDocument>> summaries = rollups.flush(3 * HOUR);
+
+        // Aligned ranges are served from the rollups
+        final long alignedStart = 10 * MINUTE;
+        final long alignedEnd = 70 * MINUTE;
+        final Rollup rollup = rollups.select("netflow.application", alignedStart, alignedEnd, alignedEnd - alignedStart).get();
+        assertThat(rollup.getIntervalName(), equalTo("5m"));
+        assertThat(totalBytes(summaries.get(rollup), alignedStart, alignedEnd),
+                closeTo(totalBytes(flows, alignedStart, alignedEnd), summaries.get(rollup).size() * 10.0));
+
+        // Unaligned ranges are not, as the rollups would count the traffic of the whole intervals at the edges
+        final long unalignedStart = 10 * MINUTE + 20_000L;
+        final long unalignedEnd = 70 * MINUTE + 40_000L;
+        assertThat(rollups.select("netflow.application", unalignedStart, unalignedEnd, unalignedEnd - unalignedStart), equalTo(Optional.empty()));
+        final Rollup fine = rollups.select("netflow.application", 10 * MINUTE, 71 * MINUTE, 61 * MINUTE).get();
+        assertThat(fine.getIntervalName(), equalTo("1m"));
+        assertThat(Math.abs(totalBytes(summaries.get(fine), unalignedStart, unalignedEnd) - totalBytes(flows, unalignedStart, unalignedEnd)),
+                greaterThan(summaries.get(fine).size() * 10.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsOnInvalidInterval() {
+        new FlowRollups("1w", 1000, 0L);
+    }
+
+    /**
+     * Sums up the bytes of the given documents within the given range like the proportional_sum aggregation.
+     */
+    private static double totalBytes(final List<FlowDocument> documents, final long start, final long end) {
+        double total = 0;
+        for (final FlowDocument document : documents) {
+            double bytes = document.getBytes();
+            if (document.getSamplingInterval() != null && document.getSamplingInterval() > 0) {
+                bytes *= document.getSamplingInterval();
+            }
+
+            final long first = document.getFirstSwitched();
+            final long last = document.getLastSwitched();
+            if (last <= first) {
+                if (first >= start && first < end) {
+                    total += bytes;
+                }
+            } else {
+                final long overlap = Math.min(last, end) - Math.max(first, start);
+                if (overlap > 0) {
+                    total += bytes * overlap / (last - first);
+                }
+            }
+        }
+        return total;
+    }
+
+    private static Optional<String> interval(final Optional<Rollup> rollup) {
+        return rollup.map(Rollup::getIntervalName);
+    }
+
+    private static List<FlowDocument> flushed(final Map<Rollup, List<FlowDocument>> documents) {
+        return documents.values().stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    private static List<FlowDocument> sort(final List<FlowDocument> documents) {
+        documents.sort(Comparator.comparing(FlowDocument::getTimestamp).thenComparing(FlowDocument::getBytes));
+        return documents;
+    }
+
+    private static FlowDocument createFlowDocument(final String application, final Direction direction,
+                                                   final long firstSwitched, final long lastSwitched,
+                                                   final long bytes, final Double samplingInterval) {
+        final FlowDocument document = new FlowDocument();
+        document.setTimestamp(lastSwitched);
+        document.setFirstSwitched(firstSwitched);
+        document.setLastSwitched(lastSwitched);
+        document.setHost("10.0.0.1");
+        document.setLocation("Default");
+        document.setApplication(application);
+        document.setDirection(direction);
+        document.setInputSnmp(1);
+        document.setOutputSnmp(2);
+        document.setBytes(bytes);
+        document.setSamplingInterval(samplingInterval);
+        return document;
+    }
+}
@@ -29,8 +29,18 @@
 package org.opennms.netmgt.measurements.impl;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.jrobin.core.RrdException;
 import org.opennms.netmgt.dao.api.ResourceDao;
@@ -46,20 +56,44 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Used to fetch measurements from RRD files.
  *
+ * The sources are grouped by file, and the files are read in parallel. Recently
+ * read blocks, identified by the file, the data sources and the requested range
+ * and step, are kept in a small cache.
+ *
  * @author Jesse White <jesse@opennms.org>
  */
 public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchStrategy {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractRrdBasedFetchStrategy.class);
 
+    public static final int PARALLELISM = Integer.getInteger("org.opennms.rrd.fetch.parallelism", Runtime.getRuntime().availableProcessors());
+
+    public static final int CACHE_SIZE = Integer.getInteger("org.opennms.rrd.fetch.cache_size", 64);
+
+    public static final long CACHE_TTL_MS = Long.getLong("org.opennms.rrd.fetch.cache_ttl", 60L * 1000L);
+
     @Autowired
     private ResourceDao m_resourceDao;
 
+    private final ExecutorService threadPool = Executors.newFixedThreadPool(Math.max(1, PARALLELISM),
+            new ThreadFactoryBuilder().setNameFormat("RrdFetchStrategy-%d").setDaemon(true).build());
+
+    private final Cache<Block, FetchResults> blockCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_TTL_MS, TimeUnit.MILLISECONDS)
+            .build();
+
     /**
      * {@inheritDoc}
      */
@@ -70,7 +104,10 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
         final Map<String, Object> constants = Maps.newHashMap();
 
         final Map<Source, String> rrdsBySource = Maps.newHashMap();
-        
+
+        // Lookup the resources in parallel, calling the ResourceDao once per resource
+        final Map<Source, ResourceId> resourceIdsBySource = Maps.newLinkedHashMap();
+        final Map<ResourceId, Future<OnmsResource>> resourceFuturesById = Maps.newHashMap();
         for (final Source source : sources) {
             final ResourceId resourceId;
             try {
@@ -81,8 +118,30 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
                 return null;
             }
 
+            resourceIdsBySource.put(source, resourceId);
+            if (!resourceFuturesById.containsKey(resourceId)) {
+                resourceFuturesById.put(resourceId, threadPool.submit(() -> {
+                    final OnmsResource resource = m_resourceDao.getResourceById(resourceId);
+                    if (resource != null) {
+                        // The attributes are typically lazy loaded, so we trigger the load here
+                        // while we're in a threaded context
+                        resource.getAttributes();
+                    }
+                    return resource;
+                }));
+            }
+        }
+
+        for (final Entry<Source, ResourceId> entry : resourceIdsBySource.entrySet()) {
+            final Source source = entry.getKey();
+
             // Grab the resource
-            final OnmsResource resource = m_resourceDao.getResourceById(resourceId);
+            final OnmsResource resource;
+            try {
+                resource = resourceFuturesById.get(entry.getValue()).get();
+            } catch (ExecutionException | InterruptedException e) {
+                throw Throwables.propagate(e);
+            }
             if (resource == null) {
                 if (relaxed) continue;
                 LOG.error("No resource with id: {}", source.getResourceId());
@@ -136,17 +195,164 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
             return Utils.createEmtpyFetchResults(step, constants);
         }
 
-        FetchResults fetchResults = fetchMeasurements(start, end, step, maxrows, rrdsBySource, constants);
+        FetchResults fetchResults = fetchMeasurementsByFile(start, end, step, maxrows, rrdsBySource, constants);
         if (relaxed) {
             Utils.fillMissingValues(fetchResults, sources);
         }
         return fetchResults;
     }
 
+    /**
+     * Retrieves the values of every file separately, in parallel, reading each data source once
+     * and reusing the recently read blocks.
+     *
+     * The values are retrieved from all of the files at once if the files do not yield the same
+     * timestamps, i.e. when they are not consolidated in the same way.
+     */
+    FetchResults fetchMeasurementsByFile(long start, long end, long step, int maxrows,
+            Map<Source, String> rrdsBySource, Map<String, Object> constants) throws RrdException {
+
+        // Group the sources by file, and by data source within each file
+        final Map<String, Map<List<String>, List<Source>>> sourcesByFile = Maps.newHashMap();
+        for (final Entry<Source, String> entry : rrdsBySource.entrySet()) {
+            final Source source = entry.getKey();
+            sourcesByFile.computeIfAbsent(entry.getValue(), f -> Maps.newTreeMap(DATASOURCE_COMPARATOR))
+                    .computeIfAbsent(Arrays.asList(source.getEffectiveDataSource(), source.getAggregation()), ds -> Lists.newArrayList())
+                    .add(source);
+        }
+
+        final Map<Block, Map<List<String>, List<Source>>> sourcesByBlock = Maps.newHashMapWithExpectedSize(sourcesByFile.size());
+        for (final Entry<String, Map<List<String>, List<Source>>> entry : sourcesByFile.entrySet()) {
+            sourcesByBlock.put(new Block(entry.getKey(), ImmutableList.copyOf(entry.getValue().keySet()), start, end, step, maxrows), entry.getValue());
+        }
+
+        // Read the blocks which are not cached, in parallel when there are several of them
+        final Map<Block, FetchResults> resultsByBlock = Maps.newHashMapWithExpectedSize(sourcesByBlock.size());
+        final Map<Block, Future<FetchResults>> futuresByBlock = Maps.newHashMap();
+        for (final Block block : sourcesByBlock.keySet()) {
+            final FetchResults results = blockCache.getIfPresent(block);
+            if (results != null) {
+                resultsByBlock.put(block, results);
+            } else {
+                futuresByBlock.put(block, null);
+            }
+        }
+        if (futuresByBlock.size() > 1 && PARALLELISM > 1 && isParallelFetchSupported()) {
+            for (final Block block : futuresByBlock.keySet()) {
+                futuresByBlock.put(block, threadPool.submit(() -> fetchBlock(block)));
+            }
+            for (final Entry<Block, Future<FetchResults>> entry : futuresByBlock.entrySet()) {
+                try {
+                    resultsByBlock.put(entry.getKey(), entry.getValue().get());
+                } catch (final ExecutionException e) {
+                    Throwables.propagateIfInstanceOf(e.getCause(), RrdException.class);
+                    throw Throwables.propagate(e.getCause());
+                } catch (final InterruptedException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        } else {
+            for (final Block block : futuresByBlock.keySet()) {
+                resultsByBlock.put(block, fetchBlock(block));
+            }
+        }
+
+        // Gather the columns, provided that all of the blocks share the same timestamps
+        long[] timestamps = null;
+        long resultStep = step;
+        final Map<String, double[]> columns = Maps.newHashMapWithExpectedSize(rrdsBySource.size());
+        for (final Entry<Block, Map<List<String>, List<Source>>> entry : sourcesByBlock.entrySet()) {
+            final FetchResults results = resultsByBlock.get(entry.getKey());
+            if (timestamps == null) {
+                timestamps = results.getTimestamps();
+                resultStep = results.getStep();
+            } else if (resultStep != results.getStep() || !Arrays.equals(timestamps, results.getTimestamps())) {
+                LOG.debug("The files yield different timestamps, retrieving the values from all of the files at once.");
+                return fetchMeasurements(start, end, step, maxrows, rrdsBySource, constants);
+            }
+
+            int k = 0;
+            for (final List<Source> sourcesOfDatasource : entry.getValue().values()) {
+                final double[] values = results.getColumns().get(Integer.toString(k++));
+                for (final Source source : sourcesOfDatasource) {
+                    // Copy the values, which are shared with the cache
+                    columns.put(source.getLabel(), values.clone());
+                }
+            }
+        }
+
+        return new FetchResults(timestamps == null ? new long[0] : timestamps.clone(), columns, resultStep, constants);
+    }
+
+    private FetchResults fetchBlock(final Block block) throws RrdException {
+        // Label the data sources by their index
+        final Map<Source, String> rrdsBySource = Maps.newHashMapWithExpectedSize(block.datasources.size());
+        for (int k = 0; k < block.datasources.size(); k++) {
+            final List<String> datasource = block.datasources.get(k);
+            final Source source = new Source(Integer.toString(k), "", datasource.get(0), datasource.get(0), false);
+            source.setAggregation(datasource.get(1));
+            rrdsBySource.put(source, block.file);
+        }
+
+        final FetchResults results = fetchMeasurements(block.start, block.end, block.step, block.maxrows,
+                rrdsBySource, Collections.emptyMap());
+        blockCache.put(block, results);
+        return results;
+    }
+
+    /**
+     * Whether the files can be read by several threads at once.
+     */
+    protected boolean isParallelFetchSupported() {
+        return true;
+    }
+
     /**
      * Performs the actual retrieval of the values from the RRD/JRB files.
      */
     protected abstract FetchResults fetchMeasurements(long start, long end, long step, int maxrows,
             Map<Source, String> rrdsBySource, Map<String, Object> constants) throws RrdException;
 
+    private static final Comparator<List<String>> DATASOURCE_COMPARATOR = Comparator
+            .comparing((List<String> ds) -> ds.get(0), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(ds -> ds.get(1), Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    /**
+     * The values of some data sources of a file, over a given range.
+     */
+    private static final class Block {
+        private final String file;
+        private final List<List<String>> datasources;
+        private final long start;
+        private final long end;
+        private final long step;
+        private final int maxrows;
+
+        private Block(String file, List<List<String>> datasources, long start, long end, long step, int maxrows) {
+            this.file = file;
+            this.datasources = datasources;
+            this.start = start;
+            this.end = end;
+            this.step = step;
+            this.maxrows = maxrows;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Block)) {
+                return false;
+            }
+            final Block other = (Block) obj;
+            return start == other.start && end == other.end && step == other.step && maxrows == other.maxrows
+                    && Objects.equals(file, other.file) && Objects.equals(datasources, other.datasources);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, datasources, start, end, step, maxrows);
+        }
+    }
 }
@@ -0,0 +1,713 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.commons.jexl2.Interpreter;
+import org.apache.commons.jexl2.JexlArithmetic;
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.apache.commons.jexl2.parser.ASTAdditiveNode;
+import org.apache.commons.jexl2.parser.ASTAdditiveOperator;
+import org.apache.commons.jexl2.parser.ASTAndNode;
+import org.apache.commons.jexl2.parser.ASTDivNode;
+import org.apache.commons.jexl2.parser.ASTEQNode;
+import org.apache.commons.jexl2.parser.ASTFalseNode;
+import org.apache.commons.jexl2.parser.ASTFunctionNode;
+import org.apache.commons.jexl2.parser.ASTGENode;
+import org.apache.commons.jexl2.parser.ASTGTNode;
+import org.apache.commons.jexl2.parser.ASTIdentifier;
+import org.apache.commons.jexl2.parser.ASTJexlScript;
+import org.apache.commons.jexl2.parser.ASTLENode;
+import org.apache.commons.jexl2.parser.ASTLTNode;
+import org.apache.commons.jexl2.parser.ASTModNode;
+import org.apache.commons.jexl2.parser.ASTMulNode;
+import org.apache.commons.jexl2.parser.ASTNENode;
+import org.apache.commons.jexl2.parser.ASTNotNode;
+import org.apache.commons.jexl2.parser.ASTNumberLiteral;
+import org.apache.commons.jexl2.parser.ASTOrNode;
+import org.apache.commons.jexl2.parser.ASTReference;
+import org.apache.commons.jexl2.parser.ASTReferenceExpression;
+import org.apache.commons.jexl2.parser.ASTTernaryNode;
+import org.apache.commons.jexl2.parser.ASTTrueNode;
+import org.apache.commons.jexl2.parser.ASTUnaryMinusNode;
+import org.apache.commons.jexl2.parser.JexlNode;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates the expressions of a query over whole columns at once, instead of
+ * evaluating them row by row through a JEXL context.
+ *
+ * Only the subset of JEXL used by graph definitions is supported: numbers, references
+ * to the sources, to the previous expressions, to the timestamp and to numeric constants,
+ * the arithmetic, comparison and logical operators, the ternary operator and the functions
+ * of the <code>math</code> and <code>strictmath</code> namespaces which take and return doubles.
+ * The semantics of JEXL are kept, i.e. a division by zero yields zero and NaN is equal to
+ * itself and lower than any other number.
+ *
+ * {@link #compile} returns null when any of the expressions uses anything else,
+ * in which case the expressions must be evaluated by JEXL.
+ *
+ * @see JEXLExpressionEngine
+ */
+final class ColumnarExpressionEvaluator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarExpressionEvaluator.class);
+
+    /**
+     * Whether the expressions are evaluated by columns when possible.
+     */
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("org.opennms.measurements.columnarExpressions", "true"));
+
+    /**
+     * The properties of {@link Double}, as seen by JEXL.
+     */
+    private static final Set<String> DOUBLE_PROPERTIES = ImmutableSet.of("class", "infinite", "naN", "NaN");
+
+    private static final Map<Class<?>, Map<String, DoubleUnaryOperator>> UNARY_FUNCTIONS = new HashMap<>();
+    private static final Map<Class<?>, Map<String, DoubleBinaryOperator>> BINARY_FUNCTIONS = new HashMap<>();
+
+    static {
+        final Map<String, DoubleUnaryOperator> math = new HashMap<>();
+        math.put("abs", Math::abs);
+        math.put("acos", Math::acos);
+        math.put("asin", Math::asin);
+        math.put("atan", Math::atan);
+        math.put("cbrt", Math::cbrt);
+        math.put("ceil", Math::ceil);
+        math.put("cos", Math::cos);
+        math.put("cosh", Math::cosh);
+        math.put("exp", Math::exp);
+        math.put("expm1", Math::expm1);
+        math.put("floor", Math::floor);
+        math.put("log", Math::log);
+        math.put("log10", Math::log10);
+        math.put("log1p", Math::log1p);
+        math.put("rint", Math::rint);
+        math.put("signum", Math::signum);
+        math.put("sin", Math::sin);
+        math.put("sinh", Math::sinh);
+        math.put("sqrt", Math::sqrt);
+        math.put("tan", Math::tan);
+        math.put("tanh", Math::tanh);
+        math.put("toDegrees", Math::toDegrees);
+        math.put("toRadians", Math::toRadians);
+        UNARY_FUNCTIONS.put(Math.class, math);
+
+        final Map<String, DoubleUnaryOperator> strictMath = new HashMap<>();
+        strictMath.put("abs", StrictMath::abs);
+        strictMath.put("acos", StrictMath::acos);
+        strictMath.put("asin", StrictMath::asin);
+        strictMath.put("atan", StrictMath::atan);
+        strictMath.put("cbrt", StrictMath::cbrt);
+        strictMath.put("ceil", StrictMath::ceil);
+        strictMath.put("cos", StrictMath::cos);
+        strictMath.put("cosh", StrictMath::cosh);
+        strictMath.put("exp", StrictMath::exp);
+        strictMath.put("expm1", StrictMath::expm1);
+        strictMath.put("floor", StrictMath::floor);
+        strictMath.put("log", StrictMath::log);
+        strictMath.put("log10", StrictMath::log10);
+        strictMath.put("log1p", StrictMath::log1p);
+        strictMath.put("rint", StrictMath::rint);
+        strictMath.put("signum", StrictMath::signum);
+        strictMath.put("sin", StrictMath::sin);
+        strictMath.put("sinh", StrictMath::sinh);
+        strictMath.put("sqrt", StrictMath::sqrt);
+        strictMath.put("tan", StrictMath::tan);
+        strictMath.put("tanh", StrictMath::tanh);
+        strictMath.put("toDegrees", StrictMath::toDegrees);
+        strictMath.put("toRadians", StrictMath::toRadians);
+        UNARY_FUNCTIONS.put(StrictMath.class, strictMath);
+
+        final Map<String, DoubleBinaryOperator> math2 = new HashMap<>();
+        math2.put("atan2", Math::atan2);
+        math2.put("hypot", Math::hypot);
+        math2.put("IEEEremainder", Math::IEEEremainder);
+        math2.put("max", Math::max);
+        math2.put("min", Math::min);
+        math2.put("pow", Math::pow);
+        BINARY_FUNCTIONS.put(Math.class, math2);
+
+        final Map<String, DoubleBinaryOperator> strictMath2 = new HashMap<>();
+        strictMath2.put("atan2", StrictMath::atan2);
+        strictMath2.put("hypot", StrictMath::hypot);
+        strictMath2.put("IEEEremainder", StrictMath::IEEEremainder);
+        strictMath2.put("max", StrictMath::max);
+        strictMath2.put("min", StrictMath::min);
+        strictMath2.put("pow", StrictMath::pow);
+        BINARY_FUNCTIONS.put(StrictMath.class, strictMath2);
+    }
+
+    /**
+     * A JEXL engine which gives access to the syntax tree of the expressions.
+     */
+    static class Engine extends JexlEngine {
+        private ASTJexlScript parse(final String expression) {
+            return parse(expression, null, null);
+        }
+
+        private Interpreter interpreter(final JexlContext context) {
+            return createInterpreter(context);
+        }
+    }
+
+    /**
+     * The type of the values of a node, for each row.
+     */
+    private enum Kind {
+        /** Double values */
+        DOUBLE,
+        /** Double or Float values */
+        FLOATING,
+        /** Numbers of any type */
+        NUMBER,
+        /** Boolean values */
+        BOOLEAN;
+
+        private boolean isFloating() {
+            return this == DOUBLE || this == FLOATING;
+        }
+    }
+
+    private static class Unsupported extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private Unsupported(final String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static class Node {
+        private final Kind kind;
+        /** The value of a constant node, null otherwise */
+        private final Object constant;
+        private final Supplier<double[]> numbers;
+        private final Supplier<boolean[]> booleans;
+
+        private Node(final Kind kind, final Object constant, final Supplier<double[]> numbers, final Supplier<boolean[]> booleans) {
+            this.kind = kind;
+            this.constant = constant;
+            this.numbers = numbers;
+            this.booleans = booleans;
+        }
+
+        private boolean isConstant() {
+            return constant != null;
+        }
+    }
+
+    private final Engine jexl;
+    private final JexlArithmetic arithmetic;
+    private final int numRows;
+    private final Map<String, double[]> columns;
+    private final Map<String, Integer> labels = new HashMap<>();
+    private final JexlContext constants;
+    private final double[] timestamps;
+    private final double[] indexes;
+
+    private final List<Expression> expressions;
+    private final Node[] nodes;
+    private final double[][] values;
+
+    private ColumnarExpressionEvaluator(final Engine jexl, final List<Expression> expressions, final FetchResults results, final Map<String, Object> constants) {
+        this.jexl = jexl;
+        this.arithmetic = jexl.getArithmetic();
+        this.numRows = results.getTimestamps().length;
+        this.columns = results.getColumns();
+        this.constants = new MapContext(constants);
+        this.timestamps = Arrays.stream(results.getTimestamps()).asDoubleStream().toArray();
+        this.indexes = new double[numRows];
+        Arrays.setAll(indexes, i -> i);
+        this.expressions = expressions;
+        this.nodes = new Node[expressions.size()];
+        this.values = new double[expressions.size()][];
+    }
+
+    /**
+     * Compiles the given expressions.
+     *
+     * @param constants the constants available to the expressions, by name
+     * @return the evaluator, or null if the expressions must be evaluated by JEXL
+     */
+    static ColumnarExpressionEvaluator compile(final Engine jexl, final List<Expression> expressions, final FetchResults results, final Map<String, Object> constants) {
+        final ColumnarExpressionEvaluator evaluator = new ColumnarExpressionEvaluator(jexl, expressions, results, constants);
+        try {
+            for (int i = 0; i < expressions.size(); i++) {
+                if (evaluator.labels.put(expressions.get(i).getLabel(), i) != null) {
+                    throw new Unsupported("duplicate label " + expressions.get(i).getLabel());
+                }
+            }
+            for (int i = 0; i < expressions.size(); i++) {
+                evaluator.nodes[i] = evaluator.compile(expressions.get(i).getExpression(), i);
+            }
+            return evaluator;
+        } catch (final Unsupported e) {
+            LOG.debug("Evaluating the expressions with JEXL: {}", e.getMessage());
+            return null;
+        } catch (final RuntimeException e) {
+            LOG.debug("Evaluating the expressions with JEXL.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates the expressions and adds the values of the non-transient ones to the columns.
+     */
+    void apply() {
+        for (int i = 0; i < nodes.length; i++) {
+            // Copy the values, which may be those of a column
+            values[i] = Arrays.copyOf(numbers(nodes[i]), numRows);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (!expressions.get(i).getTransient()) {
+                columns.put(expressions.get(i).getLabel(), values[i]);
+            }
+        }
+    }
+
+    private Node compile(final String expression, final int index) throws Unsupported {
+        final ASTJexlScript script = jexl.parse(expression);
+        if (script.jjtGetNumChildren() != 1) {
+            throw new Unsupported("script " + expression);
+        }
+        final Node node = compile(script.jjtGetChild(0), index);
+        if (node.kind == Kind.BOOLEAN) {
+            throw new Unsupported("boolean expression " + expression);
+        }
+        return node;
+    }
+
+    private Node compile(final JexlNode node, final int index) throws Unsupported {
+        if (node instanceof ASTNumberLiteral) {
+            return constant(((ASTNumberLiteral) node).getLiteral());
+        } else if (node instanceof ASTTrueNode) {
+            return constant(Boolean.TRUE);
+        } else if (node instanceof ASTFalseNode) {
+            return constant(Boolean.FALSE);
+        } else if (node instanceof ASTReference) {
+            if (node.jjtGetNumChildren() == 1 && !(node.jjtGetChild(0) instanceof ASTIdentifier)) {
+                return compile(node.jjtGetChild(0), index);
+            }
+            return reference(node, index);
+        } else if (node instanceof ASTReferenceExpression) {
+            if (node.jjtGetNumChildren() != 1) {
+                throw new Unsupported("array access");
+            }
+            return compile(node.jjtGetChild(0), index);
+        } else if (node instanceof ASTAdditiveNode) {
+            Node left = compile(node.jjtGetChild(0), index);
+            for (int c = 2; c < node.jjtGetNumChildren(); c += 2) {
+                final Node right = compile(node.jjtGetChild(c), index);
+                final JexlNode operator = node.jjtGetChild(c - 1);
+                if (!(operator instanceof ASTAdditiveOperator)) {
+                    throw new Unsupported("operator " + operator);
+                }
+                if ("+".equals(operator.image)) {
+                    left = arithmetic(left, right, (l, r) -> l + r, arithmetic::add);
+                } else if ("-".equals(operator.image)) {
+                    left = arithmetic(left, right, (l, r) -> l - r, arithmetic::subtract);
+                } else {
+                    throw new Unsupported("operator " + operator.image);
+                }
+            }
+            return left;
+        }
+
+        final Node[] children = new Node[node.jjtGetNumChildren()];
+        final int first = node instanceof ASTFunctionNode ? 2 : 0;
+        boolean constant = true;
+        for (int c = first; c < children.length; c++) {
+            children[c] = compile(node.jjtGetChild(c), index);
+            constant &= children[c].isConstant();
+        }
+        // Only the functions which are known to be pure are folded, others such as
+        // math:random() must be evaluated for every row
+        if (constant && (!(node instanceof ASTFunctionNode) || isPure(node, children.length - first))) {
+            return fold(node);
+        }
+
+        if (node instanceof ASTMulNode) {
+            return arithmetic(children[0], children[1], (l, r) -> l * r, null);
+        } else if (node instanceof ASTDivNode) {
+            return arithmetic(children[0], children[1], (l, r) -> r == 0.0 ? 0.0 : l / r, null);
+        } else if (node instanceof ASTModNode) {
+            return arithmetic(children[0], children[1], (l, r) -> r == 0.0 ? 0.0 : l % r, null);
+        } else if (node instanceof ASTUnaryMinusNode) {
+            if (children[0].kind != Kind.DOUBLE && children[0].kind != Kind.FLOATING) {
+                throw new Unsupported("negation of " + children[0].kind);
+            }
+            final Node value = children[0];
+            return new Node(value.kind, null, () -> {
+                final double[] v = numbers(value);
+                final double[] result = new double[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    result[i] = -v[i];
+                }
+                return result;
+            }, null);
+        } else if (node instanceof ASTEQNode) {
+            return comparison(children[0], children[1], c -> c == 0);
+        } else if (node instanceof ASTNENode) {
+            return comparison(children[0], children[1], c -> c != 0);
+        } else if (node instanceof ASTLTNode) {
+            return comparison(children[0], children[1], c -> c < 0);
+        } else if (node instanceof ASTGTNode) {
+            return comparison(children[0], children[1], c -> c > 0);
+        } else if (node instanceof ASTLENode) {
+            return comparison(children[0], children[1], c -> c <= 0);
+        } else if (node instanceof ASTGENode) {
+            return comparison(children[0], children[1], c -> c >= 0);
+        } else if (node instanceof ASTAndNode) {
+            final Node left = children[0];
+            final Node right = children[1];
+            return new Node(Kind.BOOLEAN, null, null, () -> {
+                final boolean[] l = booleans(left);
+                final boolean[] r = booleans(right);
+                final boolean[] result = new boolean[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    result[i] = l[i] && r[i];
+                }
+                return result;
+            });
+        } else if (node instanceof ASTOrNode) {
+            final Node left = children[0];
+            final Node right = children[1];
+            return new Node(Kind.BOOLEAN, null, null, () -> {
+                final boolean[] l = booleans(left);
+                final boolean[] r = booleans(right);
+                final boolean[] result = new boolean[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    result[i] = l[i] || r[i];
+                }
+                return result;
+            });
+        } else if (node instanceof ASTNotNode) {
+            final Node value = children[0];
+            return new Node(Kind.BOOLEAN, null, null, () -> {
+                final boolean[] v = booleans(value);
+                final boolean[] result = new boolean[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    result[i] = !v[i];
+                }
+                return result;
+            });
+        } else if (node instanceof ASTTernaryNode) {
+            return ternary(children);
+        } else if (node instanceof ASTFunctionNode) {
+            return function(node, children);
+        }
+        throw new Unsupported(node.getClass().getSimpleName());
+    }
+
+    private Node reference(final JexlNode node, final int index) throws Unsupported {
+        final StringBuilder name = new StringBuilder();
+        for (int c = 0; c < node.jjtGetNumChildren(); c++) {
+            final JexlNode child = node.jjtGetChild(c);
+            if (!(child instanceof ASTIdentifier)) {
+                throw new Unsupported(child.getClass().getSimpleName());
+            }
+            if (c > 0) {
+                // JEXL resolves 'a.b' as the variable named 'a.b' when 'a' is undefined and 'b' is not
+                // a variable, or when 'a' is a number which has no property named 'b'
+                if (isDefined(child.image) || DOUBLE_PROPERTIES.contains(child.image)
+                        || (isDefined(name.toString()) && variable(name.toString(), index).kind != Kind.DOUBLE)) {
+                    throw new Unsupported("property " + child.image + " of " + name);
+                }
+                name.append('.');
+            }
+            name.append(child.image);
+        }
+        return variable(name.toString(), index);
+    }
+
+    private boolean isDefined(final String name) {
+        return columns.containsKey(name) || labels.containsKey(name) || constants.has(name)
+                || "timestamp".equals(name) || "__i".equals(name)
+                || (name.startsWith("__") && columns.containsKey(name.substring(2)));
+    }
+
+    /**
+     * Resolves the variable with the given name, as done when the values are
+     * added to the JEXL context by {@link JEXLExpressionEngine}.
+     */
+    private Node variable(final String name, final int index) throws Unsupported {
+        // The values of the row are added before each expression, over the
+        // values of the previous expressions with the same name
+        final double[] column = columns.get(name);
+        if (column != null) {
+            return new Node(Kind.DOUBLE, null, () -> column, null);
+        }
+        if (name.startsWith("__") && columns.containsKey(name.substring(2))) {
+            throw new Unsupported("samples of " + name.substring(2));
+        }
+        if ("timestamp".equals(name)) {
+            return new Node(Kind.NUMBER, null, () -> timestamps, null);
+        }
+        if ("__i".equals(name)) {
+            return new Node(Kind.NUMBER, null, () -> indexes, null);
+        }
+        // The values of the previous expressions are added over the constants
+        final Integer label = labels.get(name);
+        if (label != null && label < index) {
+            return new Node(Kind.DOUBLE, null, () -> values[label], null);
+        }
+        if (label != null) {
+            // The value is the one of the previous row, or undefined for the first row
+            throw new Unsupported("reference to the following expression " + name);
+        }
+        if (constants.has(name)) {
+            return constant(constants.get(name));
+        }
+        throw new Unsupported("undefined variable " + name);
+    }
+
+    private Node constant(final Object value) throws Unsupported {
+        final Kind kind;
+        if (value instanceof Double) {
+            kind = Kind.DOUBLE;
+        } else if (value instanceof Float) {
+            kind = Kind.FLOATING;
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            kind = Kind.NUMBER;
+        } else if (value instanceof Boolean) {
+            kind = Kind.BOOLEAN;
+        } else {
+            throw new Unsupported("constant " + value);
+        }
+        return new Node(kind, value, null, null);
+    }
+
+    /**
+     * Evaluates a node whose operands are all constants with JEXL.
+     */
+    private Node fold(final JexlNode node) throws Unsupported {
+        return constant(jexl.interpreter(constants).interpret(node));
+    }
+
+    private Node arithmetic(final Node left, final Node right, final DoubleBinaryOperator operator, final ConstantOperator constantOperator) throws Unsupported {
+        if (left.isConstant() && right.isConstant() && constantOperator != null) {
+            return constant(constantOperator.apply(left.constant, right.constant));
+        }
+        if (left.kind == Kind.BOOLEAN || right.kind == Kind.BOOLEAN) {
+            throw new Unsupported("arithmetic on booleans");
+        }
+        // Integers are only converted to doubles when the other operand is a floating point number
+        if (!left.kind.isFloating() && !right.kind.isFloating()) {
+            throw new Unsupported("integer arithmetic");
+        }
+        return new Node(Kind.DOUBLE, null, () -> {
+            final double[] l = numbers(left);
+            final double[] r = numbers(right);
+            final double[] result = new double[numRows];
+            for (int i = 0; i < numRows; i++) {
+                result[i] = operator.applyAsDouble(l[i], r[i]);
+            }
+            return result;
+        }, null);
+    }
+
+    @FunctionalInterface
+    private interface ConstantOperator {
+        Object apply(Object left, Object right);
+    }
+
+    @FunctionalInterface
+    private interface ComparisonPredicate {
+        boolean test(int comparison);
+    }
+
+    private Node comparison(final Node left, final Node right, final ComparisonPredicate predicate) throws Unsupported {
+        if (left.kind == Kind.BOOLEAN || right.kind == Kind.BOOLEAN) {
+            throw new Unsupported("comparison of booleans");
+        }
+        return new Node(Kind.BOOLEAN, null, null, () -> {
+            final double[] l = numbers(left);
+            final double[] r = numbers(right);
+            final boolean[] result = new boolean[numRows];
+            for (int i = 0; i < numRows; i++) {
+                result[i] = predicate.test(compare(l[i], r[i]));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Compares two numbers as {@link JexlArithmetic} does, NaN being lower than any other number.
+     */
+    private static int compare(final double left, final double right) {
+        if (Double.isNaN(left)) {
+            return Double.isNaN(right) ? 0 : -1;
+        } else if (Double.isNaN(right)) {
+            return 1;
+        }
+        return left < right ? -1 : (left > right ? 1 : 0);
+    }
+
+    private Node ternary(final Node[] children) throws Unsupported {
+        if (children.length != 3) {
+            throw new Unsupported("ternary operator without else branch");
+        }
+        final Node condition = children[0];
+        final Node then = children[1];
+        final Node otherwise = children[2];
+        if (then.kind == Kind.BOOLEAN || otherwise.kind == Kind.BOOLEAN) {
+            throw new Unsupported("boolean ternary operator");
+        }
+        final Kind kind;
+        if (then.kind == Kind.DOUBLE && otherwise.kind == Kind.DOUBLE) {
+            kind = Kind.DOUBLE;
+        } else if (then.kind.isFloating() && otherwise.kind.isFloating()) {
+            kind = Kind.FLOATING;
+        } else {
+            kind = Kind.NUMBER;
+        }
+        return new Node(kind, null, () -> {
+            final boolean[] c = booleans(condition);
+            final double[] t = numbers(then);
+            final double[] o = numbers(otherwise);
+            final double[] result = new double[numRows];
+            for (int i = 0; i < numRows; i++) {
+                result[i] = c[i] ? t[i] : o[i];
+            }
+            return result;
+        }, null);
+    }
+
+    private boolean isPure(final JexlNode node, final int numArgs) {
+        final Object namespace = jexl.getFunctions().get(node.jjtGetChild(0).image);
+        final String name = node.jjtGetChild(1).image;
+        if (numArgs == 1) {
+            return UNARY_FUNCTIONS.containsKey(namespace) && UNARY_FUNCTIONS.get(namespace).containsKey(name);
+        } else if (numArgs == 2) {
+            return BINARY_FUNCTIONS.containsKey(namespace) && BINARY_FUNCTIONS.get(namespace).containsKey(name);
+        }
+        return false;
+    }
+
+    private Node function(final JexlNode node, final Node[] children) throws Unsupported {
+        final Object namespace = jexl.getFunctions().get(node.jjtGetChild(0).image);
+        final String name = node.jjtGetChild(1).image;
+        final int numArgs = children.length - 2;
+
+        // Functions are invoked with the arguments converted to doubles, which requires
+        // at least one of them to be a double and the others to be constants
+        boolean hasDouble = false;
+        for (int c = 2; c < children.length; c++) {
+            if (children[c].kind == Kind.DOUBLE) {
+                hasDouble = true;
+            } else if (!children[c].isConstant() || children[c].kind == Kind.BOOLEAN) {
+                throw new Unsupported("argument of " + name + " of type " + children[c].kind);
+            }
+        }
+        if (!hasDouble) {
+            throw new Unsupported("arguments of " + name);
+        }
+
+        if (numArgs == 1 && UNARY_FUNCTIONS.containsKey(namespace) && UNARY_FUNCTIONS.get(namespace).containsKey(name)) {
+            final DoubleUnaryOperator function = UNARY_FUNCTIONS.get(namespace).get(name);
+            final Node arg = children[2];
+            return new Node(Kind.DOUBLE, null, () -> {
+                final double[] a = numbers(arg);
+                final double[] result = new double[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    result[i] = function.applyAsDouble(a[i]);
+                }
+                return result;
+            }, null);
+        } else if (numArgs == 2 && BINARY_FUNCTIONS.containsKey(namespace) && BINARY_FUNCTIONS.get(namespace).containsKey(name)) {
+            final DoubleBinaryOperator function = BINARY_FUNCTIONS.get(namespace).get(name);
+            final Node left = children[2];
+            final Node right = children[3];
+            return new Node(Kind.DOUBLE, null, () -> {
+                final double[] l = arguments(left);
+                final double[] r = arguments(right);
+                final double[] result = new double[numRows];
+                for (int i = 0; i < numRows; i++) {
+                    result[i] = function.applyAsDouble(l[i], r[i]);
+                }
+                return result;
+            }, null);
+        }
+        throw new Unsupported("function " + node.jjtGetChild(0).image + ":" + name);
+    }
+
+    private double[] numbers(final Node node) {
+        if (node.isConstant()) {
+            final double[] result = new double[numRows];
+            Arrays.fill(result, arithmetic.toDouble(node.constant));
+            return result;
+        }
+        return node.numbers.get();
+    }
+
+    /**
+     * Returns the values of a function argument, which are converted to doubles as
+     * done by the JVM, rather than by {@link JexlArithmetic#toDouble(Object)}.
+     */
+    private double[] arguments(final Node node) {
+        if (node.isConstant()) {
+            final double[] result = new double[numRows];
+            Arrays.fill(result, ((Number) node.constant).doubleValue());
+            return result;
+        }
+        return node.numbers.get();
+    }
+
+    private boolean[] booleans(final Node node) {
+        final boolean[] result = new boolean[numRows];
+        if (node.isConstant()) {
+            Arrays.fill(result, arithmetic.toBoolean(node.constant));
+        } else if (node.kind == Kind.BOOLEAN) {
+            return node.booleans.get();
+        } else {
+            final double[] v = node.numbers.get();
+            for (int i = 0; i < numRows; i++) {
+                result[i] = !Double.isNaN(v[i]) && v[i] != 0.0;
+            }
+        }
+        return result;
+    }
+}
@@ -35,7 +35,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 
 import org.apache.commons.jexl2.JexlContext;
-import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.JexlException;
 import org.apache.commons.jexl2.MapContext;
 import org.opennms.netmgt.measurements.api.ExpressionEngine;
@@ -61,7 +60,9 @@ public class JEXLExpressionEngine implements ExpressionEngine {
     /**
      * Use a single instance of the JEXL engine, which is thread-safe.
      */
-    private final JexlEngine jexl = new JexlEngine();
+    private final ColumnarExpressionEvaluator.Engine jexl = new ColumnarExpressionEvaluator.Engine();
+
+    private boolean columnarExpressions = ColumnarExpressionEvaluator.ENABLED;
 
     public JEXLExpressionEngine() {
         // Add additional functions to the engine
@@ -75,6 +76,13 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         jexl.setFunctions(functions);
     }
 
+    /**
+     * Sets whether the expressions are evaluated over whole columns when possible, rather than row by row.
+     */
+    void setColumnarExpressions(boolean columnarExpressions) {
+        this.columnarExpressions = columnarExpressions;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -140,6 +148,15 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         // Calculate the time span
         jexlValues.put("__diff_time", numRows < 1 ? 0d : timestamps[numRows-1] - timestamps[0]);
 
+        // Evaluate the expressions over whole columns when they only use the supported subset of JEXL
+        if (columnarExpressions) {
+            final ColumnarExpressionEvaluator evaluator = ColumnarExpressionEvaluator.compile(jexl, request.getExpressions(), results, jexlValues);
+            if (evaluator != null) {
+                evaluator.apply();
+                return;
+            }
+        }
+
         final double expressionValues[][] = new double[numNonTransientExpression][numRows];
 
         // Iterate through all of the rows, apply the expressions
@@ -46,6 +46,14 @@ public class JRrd2FetchStrategy extends AbstractRrdBasedFetchStrategy {
 
     private JRrd2 jrrd2 = new JRrd2Jni();
 
+    /**
+     * The native library is not known to be safe to call from several threads at once.
+     */
+    @Override
+    protected boolean isParallelFetchSupported() {
+        return false;
+    }
+
     @Override
     protected FetchResults fetchMeasurements(long start, long end, long step,
             int maxrows, Map<Source, String> rrdsBySource,
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.model.Source;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class AbstractRrdBasedFetchStrategyTest {
+
+    /**
+     * Generates the values of the data sources, and records the files which are read.
+     */
+    private static class MockFetchStrategy extends AbstractRrdBasedFetchStrategy {
+        private final Map<String, Long> stepsByFile = Maps.newHashMap();
+        private final List<Map<Source, String>> fetches = Collections.synchronizedList(Lists.newArrayList());
+
+        @Override
+        protected FetchResults fetchMeasurements(long start, long end, long step, int maxrows,
+                Map<Source, String> rrdsBySource, Map<String, Object> constants) {
+            fetches.add(rrdsBySource);
+
+            // Files with a larger step are consolidated using that step
+            long fetchStep = step;
+            for (final String file : rrdsBySource.values()) {
+                fetchStep = Math.max(fetchStep, stepsByFile.getOrDefault(file, step));
+            }
+
+            final int numRows = (int) ((end - start) / fetchStep);
+            final long[] timestamps = new long[numRows];
+            final Map<String, double[]> columns = Maps.newHashMap();
+            for (int i = 0; i < numRows; i++) {
+                timestamps[i] = start + i * fetchStep;
+            }
+            for (final Map.Entry<Source, String> entry : rrdsBySource.entrySet()) {
+                final double[] values = new double[numRows];
+                final int hash = (entry.getValue() + entry.getKey().getEffectiveDataSource() + entry.getKey().getAggregation()).hashCode();
+                for (int i = 0; i < numRows; i++) {
+                    values[i] = hash + timestamps[i];
+                }
+                columns.put(entry.getKey().getLabel(), values);
+            }
+            return new FetchResults(timestamps, columns, fetchStep, constants);
+        }
+    }
+
+    @Test
+    public void canFetchFilesSeparately() throws Exception {
+        final MockFetchStrategy strategy = new MockFetchStrategy();
+        final Map<Source, String> rrdsBySource = rrdsBySource();
+
+        final FetchResults results = strategy.fetchMeasurementsByFile(0, 3000000, 300000, 0, rrdsBySource, Maps.newHashMap());
+
+        // Every file is read once, reading each of its data sources once
+        assertEquals(3, strategy.fetches.size());
+        for (final Map<Source, String> fetch : strategy.fetches) {
+            assertEquals(fetch.values().iterator().next().equals("/a.rrd") ? 2 : 1, fetch.size());
+        }
+
+        assertSameResults(strategy.fetchMeasurements(0, 3000000, 300000, 0, rrdsBySource, Maps.newHashMap()), results);
+    }
+
+    @Test
+    public void canReuseFetchedBlocks() throws Exception {
+        final MockFetchStrategy strategy = new MockFetchStrategy();
+
+        final FetchResults results = strategy.fetchMeasurementsByFile(0, 3000000, 300000, 0, rrdsBySource(), Maps.newHashMap());
+        assertEquals(3, strategy.fetches.size());
+
+        // The same range is served from the cache
+        assertSameResults(results, strategy.fetchMeasurementsByFile(0, 3000000, 300000, 0, rrdsBySource(), Maps.newHashMap()));
+        assertEquals(3, strategy.fetches.size());
+
+        // Other ranges are not
+        strategy.fetchMeasurementsByFile(0, 6000000, 300000, 0, rrdsBySource(), Maps.newHashMap());
+        assertEquals(6, strategy.fetches.size());
+    }
+
+    @Test
+    public void canFetchFilesWithDifferentSteps() throws Exception {
+        final MockFetchStrategy strategy = new MockFetchStrategy();
+        strategy.stepsByFile.put("/c.rrd", 900000L);
+        final Map<Source, String> rrdsBySource = rrdsBySource();
+
+        final FetchResults results = strategy.fetchMeasurementsByFile(0, 3000000, 300000, 0, rrdsBySource, Maps.newHashMap());
+
+        // The files are read again all at once
+        assertEquals(4, strategy.fetches.size());
+        assertEquals(900000L, results.getStep());
+        assertSameResults(strategy.fetchMeasurements(0, 3000000, 300000, 0, rrdsBySource, Maps.newHashMap()), results);
+    }
+
+    @Test
+    public void canFetchSourcesWithoutAggregation() throws Exception {
+        final MockFetchStrategy strategy = new MockFetchStrategy();
+        final Map<Source, String> rrdsBySource = rrdsBySource();
+        final Source source = new Source("out", "node[1].interfaceSnmp[eth0]", "ifHCOutOctets", null, false);
+        source.setAggregation(null);
+        rrdsBySource.put(source, "/a.rrd");
+
+        final FetchResults results = strategy.fetchMeasurementsByFile(0, 3000000, 300000, 0, rrdsBySource, Maps.newHashMap());
+        assertSameResults(strategy.fetchMeasurements(0, 3000000, 300000, 0, rrdsBySource, Maps.newHashMap()), results);
+    }
+
+    private static Map<Source, String> rrdsBySource() {
+        final Map<Source, String> rrdsBySource = Maps.newHashMap();
+        rrdsBySource.put(new Source("octIn", "node[1].interfaceSnmp[eth0]", "ifHCInOctets", null, false), "/a.rrd");
+        rrdsBySource.put(new Source("octOut", "node[1].interfaceSnmp[eth0]", "ifHCOutOctets", null, false), "/a.rrd");
+        rrdsBySource.put(new Source("in", "node[1].interfaceSnmp[eth0]", "ifHCInOctets", null, false), "/a.rrd");
+        rrdsBySource.put(new Source("errIn", "node[1].interfaceSnmp[eth1]", "ifInErrors", null, false), "/b.rrd");
+        rrdsBySource.put(new Source("load", "node[1].nodeSnmp[]", "loadavg1", null, false), "/c.rrd");
+        return rrdsBySource;
+    }
+
+    private static void assertSameResults(final FetchResults expected, final FetchResults actual) {
+        assertArrayEquals(expected.getTimestamps(), actual.getTimestamps());
+        assertEquals(expected.getStep(), actual.getStep());
+        assertEquals(expected.getColumns().keySet(), actual.getColumns().keySet());
+        for (final String label : expected.getColumns().keySet()) {
+            assertArrayEquals(label, expected.getColumns().get(label), actual.getColumns().get(label), 0);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class ColumnarExpressionEvaluatorTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarExpressionEvaluatorTest.class);
+
+    /**
+     * Expressions of the graphs defined in snmp-graph.properties, as converted from RPN.
+     */
+    private static final String[][] GRAPH_EXPRESSIONS = {
+            { "rawbitsIn", "octIn * 8" },
+            { "rawbitsOut", "octOut * 8" },
+            { "rawbitsOutNeg", "0 - rawbitsOut" },
+            { "rawtotBits", "(octIn + octOut) * 8" },
+            { "bitsIn", "((rawbitsIn == NaN ? 1 : 0) != 0 ? 0 : rawbitsIn)" },
+            { "bitsOut", "((rawbitsOut == NaN ? 1 : 0) != 0 ? 0 : rawbitsOut)" },
+            { "totBits", "((rawtotBits == NaN ? 1 : 0) != 0 ? 0 : rawtotBits)" },
+            { "outSum", "bitsOut * __diff_time" },
+            { "inSum", "bitsIn * __diff_time" },
+            { "percentIn", "discardsIn / (upktsIn + mcpktsIn + bcpktsIn) * 100" },
+            { "percentOut", "discardsOut / ((upktsOut + mcpktsOut) + bcpktsOut - discardsOut) * 100" },
+            { "percentOutNeg", "0 - percentOut" },
+            { "util", "octIn.ifHighSpeed > 0 ? rawbitsIn / (octIn.ifHighSpeed * 1000000) * 100 : NaN" },
+            { "limited", "(rawbitsIn < 0.1 || rawbitsIn > speed) ? NaN : rawbitsIn" },
+            { "peak", "math:max(rawbitsIn, rawbitsOut) / -8" },
+            { "log", "math:log10(octIn + 1) + strictmath:pow(2, octOut / 1000) % 7" },
+            { "negated", "!(octIn >= octOut) && octIn != 0.0 ? -octIn : octOut - 0.1" },
+            { "avg", "(octIn + octOut) / 2 + A - B * 2.5 + 1 / 3" }
+    };
+
+    @Test
+    public void canEvaluateGraphExpressions() throws ExpressionException {
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("octIn.ifHighSpeed", 1000d);
+        constants.put("speed", 65);
+        constants.put("A", 1);
+        constants.put("B", 0.2d);
+
+        final QueryRequest request = request(GRAPH_EXPRESSIONS);
+        assertNotNull(compile(request, constants));
+        assertSameResults(request, 1000, constants);
+    }
+
+    @Test
+    public void fallsBackToJexl() throws ExpressionException {
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("name", "eth0");
+        constants.put("speed", 65);
+
+        final String[] unsupported = {
+                // Integer arithmetic
+                "timestamp / 1000 + octIn",
+                "speed * 2 - __i",
+                "-__i + octIn",
+                // Samples
+                "__octIn[0] + octIn",
+                "fn:arrayNaN('octIn', 1)",
+                // Reference to the value of the previous row
+                "y + octIn",
+                // Unsupported constants, operators and functions
+                "name == 'eth0' ? octIn : octOut",
+                "octIn =~ [1, 2] ? 1.0 : 0.0",
+                "math:round(octIn)",
+                "math:max(octIn, __i)",
+                "x = octIn * 2",
+                "size(name) + octIn",
+                "octIn.infinite ? 0.0 : octIn"
+        };
+
+        for (final String expression : unsupported) {
+            final QueryRequest request = request(new String[][] { { "y", expression } });
+            assertNull(expression, compile(request, constants));
+            assertSameResults(request, 100, constants);
+        }
+    }
+
+    @Test
+    public void canReferencePreviousExpressions() throws ExpressionException {
+        final QueryRequest request = request(new String[][] {
+            { "octIn", "octIn * 2" },
+            { "y", "octIn + octOut" },
+            { "z", "y + octIn" }
+        });
+        request.getExpressions().get(0).setTransient(true);
+        assertNotNull(compile(request, Maps.newHashMap()));
+        assertSameResults(request, 100, Maps.newHashMap());
+
+        final FetchResults results = results(100, Maps.newHashMap());
+        final double[] octIn = results.getColumns().get("octIn").clone();
+        final double[] octOut = results.getColumns().get("octOut");
+        new JEXLExpressionEngine().applyExpressions(request, results);
+
+        for (int i = 0; i < 100; i++) {
+            // The values of the source are used over the ones of the expression with the same label
+            assertEquals(octIn[i] + octOut[i], results.getColumns().get("y")[i], 0);
+            assertEquals(octIn[i] + octOut[i] + octIn[i], results.getColumns().get("z")[i], 0);
+        }
+        // The transient expression does not replace the source
+        assertArrayEquals(octIn, results.getColumns().get("octIn"), 0);
+    }
+
+    @Test
+    public void canShadowConstantsWithPreviousExpressions() throws ExpressionException {
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("speed", 65);
+
+        final QueryRequest request = request(new String[][] {
+            { "speed", "octIn * 2" },
+            { "y", "speed + octOut" },
+            { "timestamp", "octOut * 3" },
+            { "z", "timestamp / 1000 + octIn" }
+        });
+        assertNull(compile(request, constants));
+        assertSameResults(request, 100, constants);
+
+        request.getExpressions().remove(3);
+        assertNotNull(compile(request, constants));
+        assertSameResults(request, 100, constants);
+    }
+
+    @Test
+    public void evaluatesImpureFunctionsForEveryRow() throws ExpressionException {
+        // Functions without arguments are not folded into a single value
+        final QueryRequest request = request(new String[][] {
+            { "y", "octIn * 0 + math:random()" }
+        });
+        assertNull(compile(request, Maps.newHashMap()));
+
+        final JEXLExpressionEngine columnar = new JEXLExpressionEngine();
+        columnar.setColumnarExpressions(true);
+        final FetchResults results = results(100, Maps.newHashMap());
+        columnar.applyExpressions(request, results);
+        final double[] y = results.getColumns().get("y");
+        assertTrue(Arrays.stream(y).filter(v -> !Double.isNaN(v)).distinct().count() > 1);
+
+        // The known pure functions still are
+        final QueryRequest pure = request(new String[][] {
+            { "y", "octIn + math:abs(-2) * strictmath:pow(2, 3)" }
+        });
+        assertNotNull(compile(pure, Maps.newHashMap()));
+        assertSameResults(pure, 100, Maps.newHashMap());
+    }
+
+    /**
+     * Compares the time spent evaluating the graph expressions by columns and by rows.
+     */
+    @Test(timeout = 60000)
+    public void benchmarkGraphExpressions() throws ExpressionException {
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("octIn.ifHighSpeed", 1000d);
+        constants.put("speed", 65);
+        constants.put("A", 1);
+        constants.put("B", 0.2d);
+        final QueryRequest request = request(GRAPH_EXPRESSIONS);
+        final int numRows = 10000;
+
+        final JEXLExpressionEngine columnar = new JEXLExpressionEngine();
+        columnar.setColumnarExpressions(true);
+        final JEXLExpressionEngine jexl = new JEXLExpressionEngine();
+        jexl.setColumnarExpressions(false);
+
+        for (int iteration = 0; iteration < 3; iteration++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                columnar.applyExpressions(request, results(numRows, constants));
+            }
+            final long columnarNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                jexl.applyExpressions(request, results(numRows, constants));
+            }
+            final long jexlNanos = System.nanoTime() - start;
+
+            LOG.info("Evaluated {} expressions over {} rows in {}ms by columns and in {}ms by rows.", GRAPH_EXPRESSIONS.length,
+                    numRows, columnarNanos / 10000000, jexlNanos / 10000000);
+        }
+    }
+
+    private static ColumnarExpressionEvaluator compile(final QueryRequest request, final Map<String, Object> constants) {
+        // Add the constants and functions of the engine
+        final Map<String, Object> values = Maps.newHashMap(constants);
+        values.put("NaN", Double.NaN);
+        values.put("__diff_time", 1000d);
+        final Map<String, Object> functions = Maps.newHashMap();
+        functions.put("math", Math.class);
+        functions.put("strictmath", StrictMath.class);
+        final ColumnarExpressionEvaluator.Engine jexl = new ColumnarExpressionEvaluator.Engine();
+        jexl.setFunctions(functions);
+
+        return ColumnarExpressionEvaluator.compile(jexl, request.getExpressions(), results(100, constants), values);
+    }
+
+    private static void assertSameResults(final QueryRequest request, final int numRows, final Map<String, Object> constants) throws ExpressionException {
+        final JEXLExpressionEngine columnar = new JEXLExpressionEngine();
+        columnar.setColumnarExpressions(true);
+        final FetchResults actual = results(numRows, constants);
+        columnar.applyExpressions(request, actual);
+
+        final JEXLExpressionEngine jexl = new JEXLExpressionEngine();
+        jexl.setColumnarExpressions(false);
+        final FetchResults expected = results(numRows, constants);
+        jexl.applyExpressions(request, expected);
+
+        assertEquals(expected.getColumns().keySet(), actual.getColumns().keySet());
+        for (final String column : expected.getColumns().keySet()) {
+            final double[] e = expected.getColumns().get(column);
+            final double[] a = actual.getColumns().get(column);
+            for (int i = 0; i < numRows; i++) {
+                assertEquals(column + "[" + i + "]", Double.doubleToLongBits(e[i]), Double.doubleToLongBits(a[i]));
+            }
+        }
+    }
+
+    private static QueryRequest request(final String[][] expressions) {
+        final List<Expression> list = Lists.newArrayList();
+        for (final String[] expression : expressions) {
+            final Expression e = new Expression();
+            e.setLabel(expression[0]);
+            e.setExpression(expression[1]);
+            list.add(e);
+        }
+        final QueryRequest request = new QueryRequest();
+        request.setExpressions(list);
+        return request;
+    }
+
+    /**
+     * Builds the results of a fetch with random values, including unknown and infinite values.
+     */
+    private static FetchResults results(final int numRows, final Map<String, Object> constants) {
+        final Random random = new Random(42);
+        final String[] sources = { "octIn", "octOut", "discardsIn", "discardsOut", "upktsIn", "upktsOut",
+                "mcpktsIn", "mcpktsOut", "bcpktsIn", "bcpktsOut" };
+        final long[] timestamps = new long[numRows];
+        final Map<String, double[]> columns = Maps.newHashMap();
+        for (final String source : sources) {
+            columns.put(source, new double[numRows]);
+        }
+        for (int i = 0; i < numRows; i++) {
+            timestamps[i] = 1500000000000L + i * 300000L;
+            for (final String source : sources) {
+                final double value;
+                switch (random.nextInt(20)) {
+                    case 0: value = Double.NaN; break;
+                    case 1: value = 0; break;
+                    case 2: value = Double.POSITIVE_INFINITY; break;
+                    case 3: value = -random.nextDouble(); break;
+                    default: value = random.nextDouble() * 10000; break;
+                }
+                columns.get(source)[i] = value;
+            }
+        }
+        return new FetchResults(timestamps, columns, 300000L, Maps.newHashMap(constants));
+    }
+}
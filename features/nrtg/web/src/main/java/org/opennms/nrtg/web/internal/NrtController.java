@@ -338,6 +338,12 @@ public class NrtController {
                     path = path.substring(1);
                 }
                 pathToMetaFile = ResourcePath.get(path.split(":"));
+            } else if (TimeSeries.getTimeseriesStrategy() == Strategy.LOCAL) {
+                String path = attr.getRrdRelativePath();
+                if (path.startsWith("/")) {
+                    path = path.substring(1);
+                }
+                pathToMetaFile = ResourcePath.get(path.split("/"));
             } else {
                 final String knownExtensions[] = new String[]{".rrd", ".jrb"};
                 String metaFileNameWithoutExtension = attr.getRrdFile();
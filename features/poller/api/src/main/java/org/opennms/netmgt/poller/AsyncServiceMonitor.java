@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} which polls without holding a thread while waiting
+ * for the monitored service, i.e. using non-blocking I/O.
+ * </p>
+ *
+ * <p>
+ * The poller framework invokes {@link #pollAsync(MonitoredService, Map)} instead of
+ * {@link ServiceMonitor#poll(MonitoredService, Map)} when the monitor implements
+ * this interface, which allows a small number of threads to keep many polls in flight.
+ * </p>
+ *
+ * <P>
+ * <STRONG>NOTE: </STRONG> The returned future may be completed by an I/O thread
+ * which is shared by all of the monitors, so callers must not perform blocking
+ * operations in the stages that depend on it.
+ * </P>
+ *
+ * @see org.opennms.netmgt.poller.support.AbstractAsyncServiceMonitor
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * Polls the service, as {@link ServiceMonitor#poll(MonitoredService, Map)} does.
+     *
+     * @param svc
+     *            Includes details about to the service being monitored.
+     * @param parameters
+     *            Includes the service parameters defined in <EM>poller-configuration.xml</EM> and those
+     *            returned by {@link #getRuntimeAttributes(MonitoredService, Map)}.
+     * @return A future which completes with the availability of the service, or
+     *         exceptionally if an unrecoverable error prevents the service from being monitored.
+     */
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters);
+
+}
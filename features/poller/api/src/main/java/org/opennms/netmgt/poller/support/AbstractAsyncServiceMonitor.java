@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.poller.support;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+
+/**
+ * <p>
+ * This class provides a basic implementation of the <code>AsyncServiceMonitor</code>
+ * interface, implementing the blocking <code>poll</code> by waiting for the
+ * result of <code>pollAsync</code>.
+ * </p>
+ *
+ * @see NioEventLoop
+ */
+public abstract class AbstractAsyncServiceMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+
+    @Override
+    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+        try {
+            return pollAsync(svc, parameters).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while polling " + svc, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * <p>
+     * Performs the attempts of a poll, as the blocking monitors do with:
+     * </p>
+     *
+     * <pre>
+     * for (tracker.reset(); tracker.shouldRetry() &amp;&amp; !serviceStatus.isAvailable(); tracker.nextAttempt()) {
+     *     try {
+     *         tracker.startAttempt();
+     *         serviceStatus = ...;
+     *     } catch (Exception e) {
+     *         serviceStatus = onError.apply(e);
+     *         if (isFinal.test(e)) break;
+     *     }
+     * }
+     * </pre>
+     *
+     * <p>
+     * The next attempt is started by the {@link NioEventLoop}, without sleeping when strict timeouts are used.
+     * </p>
+     *
+     * @param attempt performs an attempt, once it has been started
+     * @param onError maps the exceptions of an attempt to the status of the service, or to null for
+     *                the exceptions which should fail the poll
+     * @param isFinal whether no further attempts should be made after the given exception
+     */
+    protected static CompletableFuture<PollStatus> pollWithRetries(final TimeoutTracker tracker,
+            final Supplier<CompletableFuture<PollStatus>> attempt,
+            final Function<Throwable, PollStatus> onError,
+            final Predicate<Throwable> isFinal) {
+        final CompletableFuture<PollStatus> result = new CompletableFuture<>();
+        tracker.reset();
+        nextAttempt(tracker, attempt, onError, isFinal, PollStatus.unavailable(), result);
+        return result;
+    }
+
+    private static void nextAttempt(final TimeoutTracker tracker,
+            final Supplier<CompletableFuture<PollStatus>> attempt,
+            final Function<Throwable, PollStatus> onError,
+            final Predicate<Throwable> isFinal,
+            final PollStatus serviceStatus,
+            final CompletableFuture<PollStatus> result) {
+        if (!tracker.shouldRetry() || serviceStatus.isAvailable()) {
+            result.complete(serviceStatus);
+            return;
+        }
+
+        final Runnable task = () -> {
+            final CompletableFuture<PollStatus> future;
+            try {
+                tracker.startAttempt();
+                future = attempt.get();
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            future.whenComplete((status, t) -> {
+                if (t == null) {
+                    tracker.nextAttempt();
+                    nextAttempt(tracker, attempt, onError, isFinal, status, result);
+                    return;
+                }
+
+                final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                final PollStatus errorStatus = onError.apply(cause);
+                if (errorStatus == null) {
+                    result.completeExceptionally(cause);
+                } else if (isFinal.test(cause)) {
+                    result.complete(errorStatus);
+                } else {
+                    tracker.nextAttempt();
+                    nextAttempt(tracker, attempt, onError, isFinal, errorStatus, result);
+                }
+            });
+        };
+
+        final long delay = tracker.getNanosUntilNextAttempt();
+        if (delay > 0) {
+            final NioEventLoop loop = NioEventLoop.getInstance();
+            try {
+                loop.schedule(delay, TimeUnit.NANOSECONDS, () -> {
+                    // The pending timers are run when the loop is shut down
+                    if (loop.isShutdown()) {
+                        result.completeExceptionally(new RejectedExecutionException("The event loop was shut down."));
+                    } else {
+                        task.run();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        } else {
+            task.run();
+        }
+    }
+}
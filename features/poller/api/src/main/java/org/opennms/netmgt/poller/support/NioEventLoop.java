@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.poller.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single thread which performs the non-blocking socket operations of the
+ * {@link org.opennms.netmgt.poller.AsyncServiceMonitor}s, using a shared {@link Selector},
+ * and runs their timers.
+ *
+ * The tasks and the callbacks which are run by the loop must not block.
+ *
+ * The loop is started on first use and stopped with the bundle of the poller API, which owns it.
+ * A new loop is started if it is used again afterwards.
+ *
+ * @see NioLineConnection
+ */
+public final class NioEventLoop {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioEventLoop.class);
+
+    private static NioEventLoop instance;
+
+    private final Selector selector;
+
+    private final Thread thread;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The pending timers, only accessed by the loop thread.
+     */
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+
+    private final AtomicLong timerSequence = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    /**
+     * Whether the selector was closed, after which the tasks are run by the submitting threads.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * A task which is run once its deadline is reached, unless it is cancelled.
+     */
+    public static final class Timer implements Comparable<Timer> {
+        private final long deadlineNanos;
+        private final long sequence;
+        private final Runnable task;
+        private volatile boolean cancelled = false;
+
+        private Timer(final long deadlineNanos, final long sequence, final Runnable task) {
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        @Override
+        public int compareTo(final Timer other) {
+            final int c = Long.compare(deadlineNanos - other.deadlineNanos, 0L);
+            return c != 0 ? c : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private NioEventLoop() throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, "NioEventLoop");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Returns the loop shared by all of the monitors, starting it if needed.
+     */
+    public static synchronized NioEventLoop getInstance() {
+        if (instance == null) {
+            try {
+                instance = new NioEventLoop();
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Failed to open the selector.", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the loop. The connections are closed, failing their pending operations, and
+     * the pending timers are run.
+     */
+    public void shutdown() {
+        synchronized (NioEventLoop.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        if (running) {
+            running = false;
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Whether {@link #shutdown()} was called.
+     */
+    public boolean isShutdown() {
+        return !running;
+    }
+
+    /**
+     * Whether the current thread is the thread of the loop.
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the given task on the loop thread, immediately if called from the loop thread.
+     */
+    public void execute(final Runnable task) {
+        if (inLoop()) {
+            task.run();
+        } else {
+            tasks.add(task);
+            if (closed) {
+                runTasks();
+            } else {
+                selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Runs the given task on the loop thread once the given delay has elapsed.
+     *
+     * @return the timer, which can be used to cancel the task
+     * @throws RejectedExecutionException if the loop was shut down
+     */
+    public Timer schedule(final long delay, final TimeUnit unit, final Runnable task) {
+        if (!running) {
+            throw new RejectedExecutionException("The event loop was shut down.");
+        }
+        final Timer timer = new Timer(System.nanoTime() + unit.toNanos(delay), timerSequence.incrementAndGet(), task);
+        execute(() -> {
+            if (!closed) {
+                timers.add(timer);
+            } else if (!timer.cancelled) {
+                run(timer.task);
+            }
+        });
+        return timer;
+    }
+
+    /**
+     * Opens a connection to the given address.
+     *
+     * @param timeout the number of milliseconds after which the attempt fails with
+     *                a {@link SocketTimeoutException}
+     * @return a future which completes once the connection is established, or exceptionally
+     *         with the same exceptions as {@link java.net.Socket#connect(java.net.SocketAddress, int)}
+     */
+    public CompletableFuture<NioLineConnection> connect(final InetSocketAddress address, final int timeout) {
+        final CompletableFuture<NioLineConnection> future = new CompletableFuture<>();
+        execute(() -> {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                final NioLineConnection connection = new NioLineConnection(this, channel);
+                if (channel.connect(address)) {
+                    connection.register(0);
+                    future.complete(connection);
+                } else {
+                    connection.awaitConnect(future, timeout);
+                }
+            } catch (final IOException|RuntimeException e) {
+                closeQuietly(channel);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    SelectionKey register(final SocketChannel channel, final int ops, final NioLineConnection connection) throws IOException {
+        return channel.register(selector, ops, connection);
+    }
+
+    static void closeQuietly(final SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                LOG.debug("Error closing socket.", e);
+            }
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                final long timeoutMillis = runTimers();
+                if (timeoutMillis > 0) {
+                    selector.select(timeoutMillis);
+                } else {
+                    selector.select();
+                }
+
+                runTasks();
+
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    final NioLineConnection connection = (NioLineConnection) key.attachment();
+                    run(() -> connection.ready(key));
+                }
+            } catch (final Throwable t) {
+                LOG.error("Unexpected error in the event loop.", t);
+            }
+        }
+        close();
+    }
+
+    private void close() {
+        LOG.debug("Stopping the event loop.");
+        for (final SelectionKey key : selector.keys()) {
+            final NioLineConnection connection = (NioLineConnection) key.attachment();
+            run(connection::close);
+        }
+        try {
+            selector.close();
+        } catch (final IOException e) {
+            LOG.debug("Error closing the selector.", e);
+        }
+        closed = true;
+        runTasks();
+        Timer timer;
+        while ((timer = timers.poll()) != null) {
+            if (!timer.cancelled) {
+                run(timer.task);
+            }
+        }
+    }
+
+    private synchronized void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            run(task);
+        }
+    }
+
+    /**
+     * Runs the expired timers.
+     *
+     * @return the number of milliseconds until the next timer expires, or 0 if there are no timers
+     */
+    private long runTimers() {
+        Timer timer;
+        while ((timer = timers.peek()) != null) {
+            if (timer.cancelled) {
+                timers.poll();
+                continue;
+            }
+            final long remainingNanos = timer.deadlineNanos - System.nanoTime();
+            if (remainingNanos > 0) {
+                // Round up, so that the timer has expired when the selector returns
+                return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remainingNanos + 999999L));
+            }
+            timers.poll();
+            run(timer.task);
+        }
+        return 0L;
+    }
+
+    private static void run(final Runnable task) {
+        try {
+            task.run();
+        } catch (final Throwable t) {
+            LOG.error("Unexpected error while running task {}.", task, t);
+        }
+    }
+}
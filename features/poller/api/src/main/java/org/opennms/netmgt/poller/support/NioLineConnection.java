@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.poller.support;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking client connection which reads and writes lines of text, as the
+ * blocking monitors do using a {@link java.io.BufferedReader} over a {@link java.net.Socket}.
+ *
+ * All of the I/O is performed by the {@link NioEventLoop}, which also completes the
+ * returned futures. At most one read and one write may be pending at any time.
+ */
+public final class NioLineConnection implements AutoCloseable {
+
+    /**
+     * The maximum length of a line, in bytes.
+     */
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private SelectionKey key;
+
+    private ByteBuffer input = ByteBuffer.allocate(1024);
+    private boolean eof = false;
+    /** Whether a line feed following a carriage return must be skipped */
+    private boolean skipLF = false;
+
+    private CompletableFuture<NioLineConnection> pendingConnect;
+    private CompletableFuture<String> pendingRead;
+    private Charset readCharset;
+    private boolean readCrlfOnly;
+    private CompletableFuture<Void> pendingWrite;
+    private ByteBuffer output;
+    private NioEventLoop.Timer connectTimer;
+    private NioEventLoop.Timer readTimer;
+    private NioEventLoop.Timer writeTimer;
+
+    NioLineConnection(final NioEventLoop loop, final SocketChannel channel) {
+        this.loop = loop;
+        this.channel = channel;
+    }
+
+    /**
+     * Reads a line terminated by a line feed, a carriage return or both, as {@link java.io.BufferedReader#readLine()} does.
+     *
+     * @param timeout the number of milliseconds after which the read fails with a {@link SocketTimeoutException}
+     * @return a future which completes with the line, without the line terminator, or with null if the end
+     *         of the stream was reached
+     */
+    public CompletableFuture<String> readLine(final Charset charset, final int timeout) {
+        return read(charset, false, timeout);
+    }
+
+    /**
+     * Reads a line terminated by a carriage return followed by a line feed, as
+     * {@code org.apache.commons.net.io.CRLFLineReader#readLine()} does.
+     *
+     * @param timeout the number of milliseconds after which the read fails with a {@link SocketTimeoutException}
+     * @return a future which completes with the line, without the line terminator, or with null if the end
+     *         of the stream was reached
+     */
+    public CompletableFuture<String> readCrlfLine(final Charset charset, final int timeout) {
+        return read(charset, true, timeout);
+    }
+
+    /**
+     * Writes the given bytes.
+     *
+     * @param timeout the number of milliseconds after which the write fails with a {@link SocketTimeoutException}
+     * @return a future which completes once all of the bytes are written
+     */
+    public CompletableFuture<Void> write(final byte[] data, final int timeout) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        loop.execute(() -> {
+            if (pendingWrite != null) {
+                future.completeExceptionally(new IllegalStateException("A write is already pending."));
+                return;
+            }
+            if (!channel.isOpen()) {
+                future.completeExceptionally(new ClosedChannelException());
+                return;
+            }
+            pendingWrite = future;
+            output = ByteBuffer.wrap(data);
+            if (!tryWrite()) {
+                writeTimer = loop.schedule(timeout, TimeUnit.MILLISECONDS, () -> failWrite(new SocketTimeoutException("Write timed out")));
+                interest(SelectionKey.OP_WRITE, true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Closes the connection, failing the pending operations.
+     */
+    @Override
+    public void close() {
+        loop.execute(() -> {
+            if (key != null) {
+                key.cancel();
+            }
+            NioEventLoop.closeQuietly(channel);
+            final AsynchronousCloseException e = new AsynchronousCloseException();
+            failConnect(e);
+            failRead(e);
+            failWrite(e);
+        });
+    }
+
+    void register(final int ops) throws IOException {
+        key = loop.register(channel, ops, this);
+    }
+
+    void awaitConnect(final CompletableFuture<NioLineConnection> future, final int timeout) throws IOException {
+        pendingConnect = future;
+        register(SelectionKey.OP_CONNECT);
+        connectTimer = loop.schedule(timeout, TimeUnit.MILLISECONDS, () -> {
+            if (pendingConnect != null) {
+                NioEventLoop.closeQuietly(channel);
+                failConnect(new SocketTimeoutException("connect timed out"));
+            }
+        });
+    }
+
+    /**
+     * Handles the readiness of the channel, on the loop thread.
+     */
+    void ready(final SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isConnectable() && pendingConnect != null) {
+                try {
+                    if (channel.finishConnect()) {
+                        interest(SelectionKey.OP_CONNECT, false);
+                        connectTimer.cancel();
+                        final CompletableFuture<NioLineConnection> future = pendingConnect;
+                        pendingConnect = null;
+                        future.complete(this);
+                    }
+                } catch (final IOException e) {
+                    NioEventLoop.closeQuietly(channel);
+                    failConnect(e);
+                }
+                return;
+            }
+            if (key.isValid() && key.isReadable() && pendingRead != null) {
+                try {
+                    fill();
+                } catch (final IOException e) {
+                    failRead(e);
+                }
+                tryRead();
+            }
+            if (key.isValid() && key.isWritable() && pendingWrite != null) {
+                tryWrite();
+            }
+        } catch (final CancelledKeyException e) {
+            // The connection was closed
+        }
+    }
+
+    private CompletableFuture<String> read(final Charset charset, final boolean crlfOnly, final int timeout) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        loop.execute(() -> {
+            if (pendingRead != null) {
+                future.completeExceptionally(new IllegalStateException("A read is already pending."));
+                return;
+            }
+            if (!channel.isOpen()) {
+                future.completeExceptionally(new ClosedChannelException());
+                return;
+            }
+            pendingRead = future;
+            readCharset = charset;
+            readCrlfOnly = crlfOnly;
+            if (!tryRead()) {
+                readTimer = loop.schedule(timeout, TimeUnit.MILLISECONDS, () -> failRead(new SocketTimeoutException("Read timed out")));
+                interest(SelectionKey.OP_READ, true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reads the available bytes from the channel.
+     */
+    private void fill() throws IOException {
+        while (!eof) {
+            if (!input.hasRemaining()) {
+                if (input.capacity() >= MAX_LINE_LENGTH) {
+                    throw new IOException("Line exceeds " + MAX_LINE_LENGTH + " bytes.");
+                }
+                final ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+                input.flip();
+                larger.put(input);
+                input = larger;
+            }
+            final int n = channel.read(input);
+            if (n < 0) {
+                eof = true;
+            } else if (n == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Completes the pending read if a line, or the end of the stream, was received.
+     *
+     * @return true if the read was completed
+     */
+    private boolean tryRead() {
+        if (pendingRead == null) {
+            return true;
+        }
+
+        // The received bytes are those between 0 and the position of the buffer
+        final byte[] bytes = input.array();
+        int start = 0;
+        if (skipLF && input.position() > 0) {
+            skipLF = false;
+            if (bytes[0] == '\n') {
+                start = 1;
+            }
+        }
+
+        int end = -1;
+        int consumed = -1;
+        for (int i = start; i < input.position(); i++) {
+            if (readCrlfOnly) {
+                if (bytes[i] == '\n' && i > start && bytes[i - 1] == '\r') {
+                    end = i - 1;
+                    consumed = i + 1;
+                    break;
+                }
+            } else if (bytes[i] == '\n' || bytes[i] == '\r') {
+                end = i;
+                consumed = i + 1;
+                skipLF = bytes[i] == '\r';
+                break;
+            }
+        }
+
+        final String line;
+        if (end >= 0) {
+            line = new String(bytes, start, end - start, readCharset);
+        } else if (eof) {
+            // Return what is left, as the readers do
+            consumed = input.position();
+            line = consumed > start ? new String(bytes, start, consumed - start, readCharset) : null;
+        } else {
+            if (start > 0) {
+                consume(start);
+            }
+            return false;
+        }
+        consume(consumed);
+
+        final CompletableFuture<String> future = pendingRead;
+        pendingRead = null;
+        if (readTimer != null) {
+            readTimer.cancel();
+            readTimer = null;
+        }
+        interest(SelectionKey.OP_READ, false);
+        future.complete(line);
+        return true;
+    }
+
+    private void consume(final int n) {
+        input.flip();
+        input.position(n);
+        input.compact();
+    }
+
+    /**
+     * Writes the pending bytes.
+     *
+     * @return true if the write was completed
+     */
+    private boolean tryWrite() {
+        try {
+            channel.write(output);
+        } catch (final IOException e) {
+            failWrite(e);
+            return true;
+        }
+        if (output.hasRemaining()) {
+            return false;
+        }
+
+        final CompletableFuture<Void> future = pendingWrite;
+        pendingWrite = null;
+        output = null;
+        if (writeTimer != null) {
+            writeTimer.cancel();
+            writeTimer = null;
+        }
+        interest(SelectionKey.OP_WRITE, false);
+        future.complete(null);
+        return true;
+    }
+
+    private void interest(final int op, final boolean enabled) {
+        if (key != null && key.isValid()) {
+            key.interestOps(enabled ? key.interestOps() | op : key.interestOps() & ~op);
+        }
+    }
+
+    private void failConnect(final Throwable t) {
+        if (pendingConnect != null) {
+            final CompletableFuture<NioLineConnection> future = pendingConnect;
+            pendingConnect = null;
+            if (connectTimer != null) {
+                connectTimer.cancel();
+            }
+            future.completeExceptionally(t);
+        }
+    }
+
+    private void failRead(final Throwable t) {
+        if (pendingRead != null) {
+            final CompletableFuture<String> future = pendingRead;
+            pendingRead = null;
+            if (readTimer != null) {
+                readTimer.cancel();
+                readTimer = null;
+            }
+            interest(SelectionKey.OP_READ, false);
+            future.completeExceptionally(t);
+        }
+    }
+
+    private void failWrite(final Throwable t) {
+        if (pendingWrite != null) {
+            final CompletableFuture<Void> future = pendingWrite;
+            pendingWrite = null;
+            output = null;
+            if (writeTimer != null) {
+                writeTimer.cancel();
+                writeTimer = null;
+            }
+            interest(SelectionKey.OP_WRITE, false);
+            future.completeExceptionally(t);
+        }
+    }
+}
@@ -28,17 +28,16 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
+import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
@@ -46,7 +45,8 @@ import org.opennms.core.utils.TimeoutTracker;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
-import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+import org.opennms.netmgt.poller.support.AbstractAsyncServiceMonitor;
+import org.opennms.netmgt.poller.support.NioEventLoop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,7 +62,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="mailto:mike@opennms.org">Mike </A>
  */
 @Distributable
-final public class Pop3Monitor extends AbstractServiceMonitor {
+final public class Pop3Monitor extends AbstractAsyncServiceMonitor {
 
     public static final Logger LOG = LoggerFactory.getLogger(Pop3Monitor.class);
 
@@ -100,112 +100,88 @@ final public class Pop3Monitor extends AbstractServiceMonitor {
      * </P>
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
         // Process parameters
         //
-        TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
 
-        int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+        final int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
 
-        InetAddress ipAddr = svc.getAddress();
+        final InetAddress ipAddr = svc.getAddress();
 
         LOG.debug("poll: address = {}, port = {}, {}", ipAddr, port, tracker);
 
-        PollStatus serviceStatus = PollStatus.unavailable();
+        final String hostAddress = InetAddressUtils.str(ipAddr);
 
-        for (tracker.reset(); tracker.shouldRetry() && !serviceStatus.isAvailable(); tracker.nextAttempt()) {
-            Socket socket = null;
-            final String hostAddress = InetAddressUtils.str(ipAddr);
-			try {
-                //
-                // create a connected socket
-                //
-                tracker.startAttempt();
-
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout());
-                socket.setSoTimeout(tracker.getSoTimeout());
+        return pollWithRetries(tracker, () -> {
+            //
+            // create a connected socket
+            //
+            return NioEventLoop.getInstance().connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout()).thenCompose(connection -> {
                 LOG.debug("Pop3Monitor: connected to host: {} on port: {}", ipAddr, port);
 
-                // We're connected, so upgrade status to unresponsive
-                serviceStatus = PollStatus.unresponsive();
-                BufferedReader rdr = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
                 //
                 // Tokenize the Banner Line, and check the first
                 // line for a valid return.
                 //
                 // Server response should start with: "+OK"
                 //
-                String banner = rdr.readLine();
-                double responseTime = tracker.elapsedTimeInMillis();
+                return connection.readLine(Charset.defaultCharset(), tracker.getSoTimeout()).thenCompose(banner -> {
+                    double responseTime = tracker.elapsedTimeInMillis();
 
-                if (banner == null)
-                    continue;
-                StringTokenizer t = new StringTokenizer(banner);
+                    if (banner == null) {
+                        // We're connected, so the service is unresponsive
+                        return CompletableFuture.completedFuture(PollStatus.unresponsive());
+                    }
+                    StringTokenizer t = new StringTokenizer(banner);
+
+                    if (!t.nextToken().equals("+OK")) {
+                        return CompletableFuture.completedFuture(PollStatus.unavailable());
+                    }
 
-                if (t.nextToken().equals("+OK")) {
                     //
                     // POP3 server should recoginize the QUIT command
                     //
                     String cmd = "QUIT\r\n";
-                    socket.getOutputStream().write(cmd.getBytes());
-
-                    //
-                    // Parse the response to the QUIT command
-                    //
-                    // Server response should start with: "+OK"
-                    //
-                    t = new StringTokenizer(rdr.readLine());
-                    if (t.nextToken().equals("+OK")) {
-                        serviceStatus = PollStatus.available(responseTime);
-                    }
-                }
-
-                // If we get this far and the status has not been set
-                // to available, then something didn't verify during
-                // the banner checking or QUIT command process.
-                if (!serviceStatus.isAvailable()) {
-                    serviceStatus = PollStatus.unavailable();
-                }
-            } catch (NoRouteToHostException e) {
-            	
-            	String reason = "No route to host exception for address " + hostAddress;
+                    return connection.write(cmd.getBytes(), tracker.getSoTimeout())
+                            .thenCompose(v -> connection.readLine(Charset.defaultCharset(), tracker.getSoTimeout()))
+                            .thenApply(response -> {
+                                //
+                                // Parse the response to the QUIT command
+                                //
+                                // Server response should start with: "+OK"
+                                //
+                                if (new StringTokenizer(response).nextToken().equals("+OK")) {
+                                    return PollStatus.available(responseTime);
+                                }
+
+                                // If we get this far and the status has not been set
+                                // to available, then something didn't verify during
+                                // the banner checking or QUIT command process.
+                                return PollStatus.unavailable();
+                            });
+                }).whenComplete((status, t) -> connection.close());
+            });
+        }, e -> {
+            if (e instanceof NoRouteToHostException) {
+                String reason = "No route to host exception for address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-                
-            } catch (InterruptedIOException e) {
-            	
-            	String reason = "did not connect to host with " + tracker;
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof InterruptedIOException) {
+                String reason = "did not connect to host with " + tracker;
                 LOG.debug(reason);
-                serviceStatus = PollStatus.unavailable(reason);
-            	
-            } catch (ConnectException e) {
-            	
-            	String reason = "Connection exception for address " + hostAddress;
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof ConnectException) {
+                String reason = "Connection exception for address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (IOException e) {
-            	
-            	String reason = "IOException while polling address " + hostAddress;
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof IOException) {
+                String reason = "IOException while polling address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } finally {
-                try {
-                    // Close the socket
-                    if (socket != null)
-                        socket.close();
-
-                } catch (IOException e) {
-                    LOG.debug("poll: Error closing socket.", e);
-                }
+                return PollStatus.unavailable(reason);
             }
-        }
-
-        //
-        // return the status of the service
-        //
-        return serviceStatus;
+            return null;
+        }, e -> false);
     }
 
 }
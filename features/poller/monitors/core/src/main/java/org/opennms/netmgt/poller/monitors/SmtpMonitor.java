@@ -28,28 +28,28 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import org.apache.commons.net.io.CRLFLineReader;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
-import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+import org.opennms.netmgt.poller.support.AbstractAsyncServiceMonitor;
+import org.opennms.netmgt.poller.support.NioEventLoop;
+import org.opennms.netmgt.poller.support.NioLineConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,7 +65,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
 @Distributable
-public final class SmtpMonitor extends AbstractServiceMonitor {
+public final class SmtpMonitor extends AbstractAsyncServiceMonitor {
 
     public static final Logger LOG = LoggerFactory.getLogger(SmtpMonitor.class);
 
@@ -127,68 +127,91 @@ public final class SmtpMonitor extends AbstractServiceMonitor {
      * </P>
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
 
-        int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
-        InetAddress ipAddr = svc.getAddress();
+        final int port = ParameterMap.getKeyedInteger(parameters, "port", DEFAULT_PORT);
+        final InetAddress ipAddr = svc.getAddress();
 
         final String hostAddress = InetAddressUtils.str(ipAddr);
         LOG.debug("poll: address = {}, port = {}, {}", hostAddress, port, tracker);
 
-        PollStatus serviceStatus = PollStatus.unavailable();
-
-        for (tracker.reset(); tracker.shouldRetry() && !serviceStatus.isAvailable(); tracker.nextAttempt()) {
-            Socket socket = null;
-            try {
-                // create a connected socket
-                //
-                tracker.startAttempt();
-
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout());
-                socket.setSoTimeout(tracker.getSoTimeout());
-
+        return pollWithRetries(tracker, () -> {
+            // create a connected socket
+            return NioEventLoop.getInstance().connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout()).thenCompose(connection -> {
                 LOG.debug("SmtpMonitor: connected to host: {} on port: {}", ipAddr, port);
 
-                // We're connected, so upgrade status to unresponsive
-                serviceStatus = PollStatus.unresponsive();
-                // Forcing to check for CRLF instead of any other line terminator as per RFC specification
-                CRLFLineReader rdr = new CRLFLineReader(new InputStreamReader(socket.getInputStream(), "ASCII"));
-
-                //
                 // Tokenize the Banner Line, and check the first
                 // line for a valid return.
-                //
-                String banner = sendMessage(socket, rdr, null);
-                LOG.debug("poll: banner = {}", banner);
+                return sendMessage(connection, tracker, null).thenCompose(banner -> {
+                    LOG.debug("poll: banner = {}", banner);
+
+                    StringTokenizer t = new StringTokenizer(banner);
+                    int rc = Integer.parseInt(t.nextToken());
+                    if (rc == 220) {
+                        return helo(connection, tracker);
+                    } else if (rc == 554) {
+                        return sendMessage(connection, tracker, "QUIT\r\n")
+                                .thenApply(response -> PollStatus.unavailable("Server rejecting transactions with 554"));
+                    }
 
-                StringTokenizer t = new StringTokenizer(banner);
-                int rc = Integer.parseInt(t.nextToken());
-                if (rc == 220) {
-                    //
-                    // Send the HELO command
-                    //
-                    String cmd = "HELO " + LOCALHOST_NAME + "\r\n";
-                    socket.getOutputStream().write(cmd.getBytes());
+                    // If we get this far and the status has not been set to
+                    // available, then something didn't verify during the banner
+                    // checking or HELO/QUIT comand process.
+                    return CompletableFuture.completedFuture(PollStatus.unavailable());
+                }).whenComplete((status, t) -> connection.close());
+            });
+        }, e -> {
+            if (e instanceof NumberFormatException) {
+                String reason = "NumberFormatException while polling address " + hostAddress;
+                LOG.debug(reason, e);
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof NoRouteToHostException) {
+                String reason = "No route to host exception for address " + hostAddress;
+                LOG.debug(reason, e);
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof InterruptedIOException) {
+                String reason = "Did not receive expected response within timeout " + tracker;
+                LOG.debug(reason);
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof ConnectException) {
+                String reason = "Unable to connect to address " + hostAddress;
+                LOG.debug(reason, e);
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof IOException) {
+                String reason = "IOException while polling address " + hostAddress;
+                LOG.debug(reason, e);
+                return PollStatus.unavailable(reason);
+            }
+            return null;
+        }, e -> e instanceof NoRouteToHostException);
+    }
 
-                    //
+    /**
+     * Sends the HELO command, followed by the QUIT command if the server accepts it.
+     */
+    private CompletableFuture<PollStatus> helo(NioLineConnection connection, TimeoutTracker tracker) {
+        // Send the HELO command
+        String cmd = "HELO " + LOCALHOST_NAME + "\r\n";
+        return connection.write(cmd.getBytes(), tracker.getSoTimeout())
+                .thenCompose(v -> connection.readCrlfLine(StandardCharsets.US_ASCII, tracker.getSoTimeout()))
+                .thenCompose(firstLine -> {
                     // get the returned string, tokenize, and
                     // verify the correct output.
-                    //
-                    String response = rdr.readLine();
                     double responseTime = tracker.elapsedTimeInMillis();
 
-                    if (response == null) {
-                        continue;
+                    if (firstLine == null) {
+                        // We're connected, so the service is unresponsive
+                        return CompletableFuture.completedFuture(PollStatus.unresponsive());
                     }
 
-                    if (MULTILINE.matcher(response).find()) {
+                    CompletableFuture<String> lastLine = CompletableFuture.completedFuture(firstLine);
+                    if (MULTILINE.matcher(firstLine).find()) {
                         // Ok we have a multi-line response...first three
                         // chars of the response line are the return code.
                         // The last line of the response will start with
                         // return code followed by a space.
-                        String multiLineRC = new String(response.getBytes("ASCII"), 0, 3, "ASCII");
+                        String multiLineRC = new String(firstLine.getBytes(StandardCharsets.US_ASCII), 0, 3, StandardCharsets.US_ASCII);
 
                         // Create new regExp to look for last line
                         // of this multi line response
@@ -201,116 +224,78 @@ public final class SmtpMonitor extends AbstractServiceMonitor {
 
                         // read until we hit the last line of the multi-line
                         // response
-                        do {
-                            response = rdr.readLine();
-                        } while (response != null && !endMultiline.matcher(response).find());
-                        if (response == null) {
-                            continue;
-                        }
+                        lastLine = readUntil(connection, tracker, endMultiline);
                     }
 
-                    t = new StringTokenizer(response);
-                    rc = Integer.parseInt(t.nextToken());
-                    if (rc == 250) {
-                        response = sendMessage(socket, rdr, "QUIT\r\n");
-
-                        t = new StringTokenizer(response);
-                        rc = Integer.parseInt(t.nextToken());
-
-                        if (rc == 221) {
-                            serviceStatus = PollStatus.available(responseTime);
+                    return lastLine.thenCompose(response -> {
+                        if (response == null) {
+                            return CompletableFuture.completedFuture(PollStatus.unresponsive());
                         }
-                    }
-                } else if (rc == 554) {
-                    String response = sendMessage(socket, rdr, "QUIT\r\n");
-                    serviceStatus = PollStatus.unavailable("Server rejecting transactions with 554");
-                }
 
-                // If we get this far and the status has not been set to
-                // available, then something didn't verify during the banner
-                // checking or HELO/QUIT comand process.
-                if (!serviceStatus.isAvailable()) {
-                    serviceStatus = PollStatus.unavailable(serviceStatus.getReason());
-                }
-            } catch (NumberFormatException e) {
-                String reason = "NumberFormatException while polling address " + hostAddress;
-                LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (NoRouteToHostException e) {
-                String reason = "No route to host exception for address " + hostAddress;
-                LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-                break; // Break out of for(;;)
-            } catch (InterruptedIOException e) {
-                String reason = "Did not receive expected response within timeout " + tracker;
-                LOG.debug(reason);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (ConnectException e) {
-                String reason = "Unable to connect to address " + hostAddress;
-                LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (IOException e) {
-                String reason = "IOException while polling address " + hostAddress;
-                LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } finally {
-                try {
-                    // Close the socket
-                    if (socket != null) {
-                        socket.close();
-                    }
-                } catch (IOException e) {
-                    e.fillInStackTrace();
-                    LOG.debug("poll: Error closing socket.", e);
-                }
-            }
-        }
-
-        //
-        // return the status of the service
-        //
-        return serviceStatus;
+                        StringTokenizer t = new StringTokenizer(response);
+                        int rc = Integer.parseInt(t.nextToken());
+                        if (rc == 250) {
+                            return sendMessage(connection, tracker, "QUIT\r\n").thenApply(quitResponse -> {
+                                StringTokenizer q = new StringTokenizer(quitResponse);
+                                if (Integer.parseInt(q.nextToken()) == 221) {
+                                    return PollStatus.available(responseTime);
+                                }
+                                return PollStatus.unavailable();
+                            });
+                        }
+                        return CompletableFuture.completedFuture(PollStatus.unavailable());
+                    });
+                });
     }
 
-    private String sendMessage(Socket socket, BufferedReader rdr, String command) throws IOException {
+    private CompletableFuture<String> sendMessage(NioLineConnection connection, TimeoutTracker tracker, String command) {
+        CompletableFuture<Void> sent = CompletableFuture.completedFuture(null);
         if (command != null && !"".equals(command)) {
-            socket.getOutputStream().write(command.getBytes("ASCII"));
+            sent = connection.write(command.getBytes(StandardCharsets.US_ASCII), tracker.getSoTimeout());
         }
 
-        //
         // get the returned string, tokenize, and
         // verify the correct output.
-        //
-        String response = rdr.readLine();
-        if (response == null) {
-            return "";
-        }
-        if (MULTILINE.matcher(response).find()) {
-            // Ok we have a multi-line response...first three
-            // chars of the response line are the return code.
-            // The last line of the response will start with
-            // return code followed by a space.
-            String multiLineRC = new String(response.getBytes("ASCII"), 0, 3, "ASCII") + " ";
+        return sent.thenCompose(v -> connection.readCrlfLine(StandardCharsets.US_ASCII, tracker.getSoTimeout())).thenCompose(response -> {
+            if (response == null) {
+                return CompletableFuture.completedFuture("");
+            }
+            if (MULTILINE.matcher(response).find()) {
+                // Ok we have a multi-line response...first three
+                // chars of the response line are the return code.
+                // The last line of the response will start with
+                // return code followed by a space.
+                String multiLineRC = new String(response.getBytes(StandardCharsets.US_ASCII), 0, 3, StandardCharsets.US_ASCII) + " ";
+
+                // Create new regExp to look for last line
+                // of this multi line response
+                Pattern endMultiline = null;
+                try {
+                    endMultiline = Pattern.compile(multiLineRC);
+                } catch (PatternSyntaxException ex) {
+                    throw new java.lang.reflect.UndeclaredThrowableException(ex);
+                }
 
-            // Create new regExp to look for last line
-            // of this multi line response
-            Pattern endMultiline = null;
-            try {
-                endMultiline = Pattern.compile(multiLineRC);
-            } catch (PatternSyntaxException ex) {
-                throw new java.lang.reflect.UndeclaredThrowableException(ex);
+                // read until we hit the last line of the multi-line
+                // response
+                return readUntil(connection, tracker, endMultiline).thenApply(line -> line == null ? "" : line);
             }
+            return CompletableFuture.completedFuture(response);
+        });
+    }
 
-            // read until we hit the last line of the multi-line
-            // response
-            do {
-                response = rdr.readLine();
-            } while (response != null && !endMultiline.matcher(response).find());
-            if (response == null) {
-                return "";
+    /**
+     * Reads lines until one matches the given pattern.
+     *
+     * @return the matching line, or null if the end of the stream is reached
+     */
+    private CompletableFuture<String> readUntil(NioLineConnection connection, TimeoutTracker tracker, Pattern endMultiline) {
+        return connection.readCrlfLine(StandardCharsets.US_ASCII, tracker.getSoTimeout()).thenCompose(response -> {
+            if (response == null || endMultiline.matcher(response).find()) {
+                return CompletableFuture.completedFuture(response);
             }
-        }
-        return response;
+            return readUntil(connection, tracker, endMultiline);
+        });
     }
 
 }
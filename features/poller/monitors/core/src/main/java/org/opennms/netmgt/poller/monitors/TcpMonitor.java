@@ -28,16 +28,15 @@
 
 package org.opennms.netmgt.poller.monitors;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
-import java.net.Socket;
+import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
@@ -45,7 +44,8 @@ import org.opennms.core.utils.TimeoutTracker;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
-import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+import org.opennms.netmgt.poller.support.AbstractAsyncServiceMonitor;
+import org.opennms.netmgt.poller.support.NioEventLoop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,7 +61,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
 @Distributable
-final public class TcpMonitor extends AbstractServiceMonitor {
+final public class TcpMonitor extends AbstractAsyncServiceMonitor {
 
     public static final Logger LOG = LoggerFactory.getLogger(TcpMonitor.class);
 
@@ -97,7 +97,7 @@ final public class TcpMonitor extends AbstractServiceMonitor {
      * status to SERVICE_AVAILABLE and return.
      */
     @Override
-    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
         //
         // Process parameters
         //
@@ -105,112 +105,88 @@ final public class TcpMonitor extends AbstractServiceMonitor {
         //
         // Get interface address from NetworkInterface
         //
-        TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
 
         // Port
         //
-        int port = ParameterMap.getKeyedInteger(parameters, PARAMETER_PORT, DEFAULT_PORT);
+        final int port = ParameterMap.getKeyedInteger(parameters, PARAMETER_PORT, DEFAULT_PORT);
         if (port == DEFAULT_PORT) {
             throw new RuntimeException("TcpMonitor: required parameter 'port' is not present in supplied properties.");
         }
 
         // BannerMatch
         //
-        String strBannerMatch = ParameterMap.getKeyedString(parameters, PARAMETER_BANNER, null);
+        final String strBannerMatch = ParameterMap.getKeyedString(parameters, PARAMETER_BANNER, null);
 
         // Get the address instance.
         //
-        InetAddress ipAddr = svc.getAddress();
+        final InetAddress ipAddr = svc.getAddress();
 
         final String hostAddress = InetAddressUtils.str(ipAddr);
-	LOG.debug("poll: address = {}, port = {}, {}", hostAddress, port, tracker);
+        LOG.debug("poll: address = {}, port = {}, {}", hostAddress, port, tracker);
 
         // Give it a whirl
         //
-        PollStatus serviceStatus = PollStatus.unavailable();
-
-        for (tracker.reset(); tracker.shouldRetry() && !serviceStatus.isAvailable(); tracker.nextAttempt()) {
-            Socket socket = null;
-            try {
-                
-                tracker.startAttempt();
-
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout());
-                socket.setSoTimeout(tracker.getSoTimeout());
+        return pollWithRetries(tracker, () -> {
+            return NioEventLoop.getInstance().connect(new InetSocketAddress(ipAddr, port), tracker.getConnectionTimeout()).thenCompose(connection -> {
                 LOG.debug("TcpMonitor: connected to host: {} on port: {}", ipAddr, port);
 
-                // We're connected, so upgrade status to unresponsive
-                serviceStatus = PollStatus.unresponsive();
-
                 if (strBannerMatch == null || strBannerMatch.length() == 0 || strBannerMatch.equals("*")) {
-                    serviceStatus = PollStatus.available(tracker.elapsedTimeInMillis());
-                    break;
+                    connection.close();
+                    return CompletableFuture.completedFuture(PollStatus.available(tracker.elapsedTimeInMillis()));
                 }
 
-                BufferedReader rdr = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
                 //
                 // Tokenize the Banner Line, and check the first
                 // line for a valid return.
                 //
-                String response = rdr.readLine();
-                double responseTime = tracker.elapsedTimeInMillis();
-
-                if (response == null)
-                    continue;
-                LOG.debug("poll: banner = {}", response);
-                LOG.debug("poll: responseTime= {}ms", responseTime);
-
-                //Could it be a regex?
-                if (strBannerMatch.charAt(0)=='~'){
-                  if (!response.matches(strBannerMatch.substring(1)))
-                    serviceStatus = PollStatus.unavailable("Banner does not match Regex '"+strBannerMatch+"'");
-                  else
-                    serviceStatus = PollStatus.available(responseTime);
-                }
-                else {
-                  if (response.indexOf(strBannerMatch) > -1) {
-                    serviceStatus = PollStatus.available(responseTime);
-                  }
-                  else {
-                    serviceStatus = PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+strBannerMatch+"'");
-                  }
-                }
-
-            } catch (NoRouteToHostException e) {
-            	String reason = "No route to host exception for address " + hostAddress;
+                return connection.readLine(Charset.defaultCharset(), tracker.getSoTimeout()).thenApply(response -> {
+                    double responseTime = tracker.elapsedTimeInMillis();
+
+                    if (response == null) {
+                        // We're connected, so the service is unresponsive
+                        return PollStatus.unresponsive();
+                    }
+                    LOG.debug("poll: banner = {}", response);
+                    LOG.debug("poll: responseTime= {}ms", responseTime);
+
+                    //Could it be a regex?
+                    if (strBannerMatch.charAt(0)=='~'){
+                        if (!response.matches(strBannerMatch.substring(1)))
+                            return PollStatus.unavailable("Banner does not match Regex '"+strBannerMatch+"'");
+                        else
+                            return PollStatus.available(responseTime);
+                    }
+                    else {
+                        if (response.indexOf(strBannerMatch) > -1) {
+                            return PollStatus.available(responseTime);
+                        }
+                        else {
+                            return PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+strBannerMatch+"'");
+                        }
+                    }
+                }).whenComplete((status, t) -> connection.close());
+            });
+        }, e -> {
+            if (e instanceof NoRouteToHostException) {
+                String reason = "No route to host exception for address " + hostAddress;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-                break; // Break out of for(;;)
-            } catch (InterruptedIOException e) {
-            	String reason = "did not connect to host with " + tracker;
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof InterruptedIOException) {
+                String reason = "did not connect to host with " + tracker;
                 LOG.debug(reason);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (ConnectException e) {
-            	String reason = "Connection exception for address: " + ipAddr;
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof ConnectException) {
+                String reason = "Connection exception for address: " + ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } catch (IOException e) {
-            	String reason = "IOException while polling address: " + ipAddr;
+                return PollStatus.unavailable(reason);
+            } else if (e instanceof IOException) {
+                String reason = "IOException while polling address: " + ipAddr;
                 LOG.debug(reason, e);
-                serviceStatus = PollStatus.unavailable(reason);
-            } finally {
-                try {
-                    // Close the socket
-                    if (socket != null)
-                        socket.close();
-                } catch (IOException e) {
-                    e.fillInStackTrace();
-                    LOG.debug("poll: Error closing socket.", e);
-                }
+                return PollStatus.unavailable(reason);
             }
-        }
-
-        //
-        // return the status of the service
-        //
-        return serviceStatus;
+            return null;
+        }, e -> e instanceof NoRouteToHostException);
     }
 
 }
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MockMonitoredService;
+import org.opennms.netmgt.poller.support.NioEventLoop;
+
+/**
+ * Verifies the socket based monitors which poll using the shared event loop.
+ */
+public class AsyncSocketMonitorTest {
+
+    private interface Dialog {
+        void handle(Socket s, BufferedReader r, OutputStream out) throws Exception;
+    }
+
+    private ServerSocket m_serverSocket;
+    private ExecutorService m_executor;
+    private List<Socket> m_sockets = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        m_serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        m_executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_serverSocket.close();
+        synchronized (m_sockets) {
+            for (Socket s : m_sockets) {
+                s.close();
+            }
+        }
+        m_executor.shutdownNow();
+        m_executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void serve(final Dialog dialog) {
+        m_executor.execute(() -> {
+            while (!m_serverSocket.isClosed()) {
+                final Socket s;
+                try {
+                    s = m_serverSocket.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                synchronized (m_sockets) {
+                    m_sockets.add(s);
+                }
+                m_executor.execute(() -> {
+                    try {
+                        dialog.handle(s, new BufferedReader(new InputStreamReader(s.getInputStream(), "ASCII")), s.getOutputStream());
+                    } catch (Exception e) {
+                        // The client went away
+                    }
+                });
+            }
+        });
+    }
+
+    private MockMonitoredService getService(String svcName) {
+        return new MockMonitoredService(1, "Node One", m_serverSocket.getInetAddress(), svcName);
+    }
+
+    private Map<String, Object> getParameters(int timeout) {
+        Map<String, Object> m = new HashMap<String, Object>();
+        m.put("port", m_serverSocket.getLocalPort());
+        m.put("retry", 0);
+        m.put("timeout", timeout);
+        return m;
+    }
+
+    @Test
+    public void testSmtpMultilineResponses() throws Exception {
+        serve((s, r, out) -> {
+            out.write("220-smtp.example.com ESMTP\r\n220 ready\r\n".getBytes());
+            if (r.readLine().startsWith("HELO ")) {
+                out.write("250-smtp.example.com\r\n250 8BITMIME\r\n".getBytes());
+            }
+            if ("QUIT".equals(r.readLine())) {
+                out.write("221 Bye\r\n".getBytes());
+            }
+        });
+
+        PollStatus status = new SmtpMonitor().poll(getService("SMTP"), getParameters(2000));
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+    }
+
+    @Test
+    public void testSmtpRejectingTransactions() throws Exception {
+        serve((s, r, out) -> {
+            out.write("554 No SMTP service here\r\n".getBytes());
+            r.readLine();
+            out.write("221 Bye\r\n".getBytes());
+        });
+
+        PollStatus status = new SmtpMonitor().poll(getService("SMTP"), getParameters(2000));
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+        assertEquals("Server rejecting transactions with 554", status.getReason());
+    }
+
+    @Test
+    public void testPop3Success() throws Exception {
+        serve((s, r, out) -> {
+            out.write("+OK POP3 server ready\r\n".getBytes());
+            if ("QUIT".equals(r.readLine())) {
+                out.write("+OK bye\r\n".getBytes());
+            }
+        });
+
+        PollStatus status = new Pop3Monitor().poll(getService("POP3"), getParameters(2000));
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+    }
+
+    @Test
+    public void testTcpBannerMatch() throws Exception {
+        serve((s, r, out) -> {
+            out.write("SSH-2.0-OpenSSH_7.4\n".getBytes());
+            r.readLine();
+        });
+
+        Map<String, Object> parameters = getParameters(2000);
+        parameters.put("banner", "~^SSH-2\\.0-.*");
+        PollStatus status = new TcpMonitor().poll(getService("TCP"), parameters);
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+
+        parameters.put("banner", "Telnet");
+        status = new TcpMonitor().poll(getService("TCP"), parameters);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+    }
+
+    @Test
+    public void testTcpBannerTimeout() throws Exception {
+        serve((s, r, out) -> r.readLine());
+
+        Map<String, Object> parameters = getParameters(500);
+        parameters.put("banner", "*OK*");
+        PollStatus status = new TcpMonitor().poll(getService("TCP"), parameters);
+        assertTrue("status should be unavailable (Down), but is: " + status, status.isUnavailable());
+        assertTrue(status.getReason(), status.getReason().startsWith("did not connect to host with "));
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentPollsDoNotHoldThreads() throws Exception {
+        // The server never answers, so each poll waits for the full timeout
+        serve((s, r, out) -> r.readLine());
+
+        final int numPolls = 200;
+        final Map<String, Object> parameters = getParameters(1000);
+        parameters.put("banner", "*OK*");
+        final AsyncServiceMonitor monitor = new TcpMonitor();
+
+        final long start = System.currentTimeMillis();
+        final List<CompletableFuture<PollStatus>> futures = new ArrayList<>();
+        for (int i = 0; i < numPolls; i++) {
+            futures.add(monitor.pollAsync(getService("TCP"), parameters));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        final long elapsed = System.currentTimeMillis() - start;
+
+        for (CompletableFuture<PollStatus> future : futures) {
+            assertTrue(future.get().isUnavailable());
+        }
+        // Polling one after another would take numPolls times the timeout
+        assertTrue("polls took " + elapsed + "ms", elapsed < 10000);
+    }
+
+    @Test(timeout = 10000)
+    public void testShutdownCompletesPendingPolls() throws Exception {
+        // The server only answers once the loop was shut down
+        final AtomicBoolean answer = new AtomicBoolean(false);
+        serve((s, r, out) -> {
+            if (answer.get()) {
+                out.write("+OK\n".getBytes());
+            }
+            r.readLine();
+        });
+
+        final int numPolls = 5;
+        final Map<String, Object> parameters = getParameters(30000);
+        parameters.put("banner", "OK");
+        final AsyncServiceMonitor monitor = new TcpMonitor();
+
+        final List<CompletableFuture<PollStatus>> futures = new ArrayList<>();
+        for (int i = 0; i < numPolls; i++) {
+            futures.add(monitor.pollAsync(getService("TCP"), parameters));
+        }
+        while (true) {
+            synchronized (m_sockets) {
+                if (m_sockets.size() == numPolls) {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+
+        // The pending reads fail instead of waiting for the timeout
+        NioEventLoop.getInstance().shutdown();
+        for (CompletableFuture<PollStatus> future : futures) {
+            assertTrue(future.get().isUnavailable());
+        }
+
+        // A new loop is started by the next poll
+        answer.set(true);
+        final PollStatus status = monitor.pollAsync(getService("TCP"), parameters).get();
+        assertTrue("status should be available (Up), but is: " + status, status.isAvailable());
+    }
+}
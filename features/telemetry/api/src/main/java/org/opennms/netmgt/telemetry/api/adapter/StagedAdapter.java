@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.telemetry.api.adapter;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Adapters implementing this interface split the handling of a message log
+ * into consecutive stages.
+ *
+ * If the queue of the adapter is configured to use a pipeline, the stages of
+ * successive message logs are executed overlapped, each by its own thread.
+ * Otherwise {@link #handleMessageLog} is used.
+ */
+public interface StagedAdapter extends Adapter {
+
+    /**
+     * A single stage of the handling of a message log.
+     *
+     * The first stage receives the {@link TelemetryMessageLog}, all other stages
+     * receive the result of the previous stage.
+     *
+     * @param <I> the input of the stage
+     * @param <O> the result of the stage
+     */
+    interface Stage<I, O> {
+
+        String getName();
+
+        /**
+         * Handle the input.
+         *
+         * IMPORTANT: Implementations of this method MUST be thread-safe.
+         *
+         * @param input the result of the previous stage
+         * @return the input of the next stage, or {@code null} if there is nothing left to do
+         */
+        O process(I input);
+
+        static <I, O> Stage<I, O> of(final String name, final Function<I, O> function) {
+            Objects.requireNonNull(name);
+            Objects.requireNonNull(function);
+            return new Stage<I, O>() {
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+                @Override
+                public O process(final I input) {
+                    return function.apply(input);
+                }
+            };
+        }
+    }
+
+    /**
+     * @return the stages in order of execution
+     */
+    List<Stage<?, ?>> getStages();
+
+}
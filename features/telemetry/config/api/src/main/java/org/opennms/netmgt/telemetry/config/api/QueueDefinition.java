@@ -76,4 +76,21 @@ public interface QueueDefinition {
      * @return the queue size
      */
     Optional<Integer> getQueueSize();
+
+    /**
+     * Number of lanes used to process the messages with the adapters.
+     * Messages from the same exporter are always processed by the same lane.
+     * When unset, the messages are processed by the consuming thread.
+     *
+     * @return the number of lanes
+     */
+    Optional<Integer> getPipelineLanes();
+
+    /**
+     * Maximum number of messages buffered in front of each stage of a lane
+     * before the consuming thread is blocked.
+     *
+     * @return the buffer size
+     */
+    Optional<Integer> getPipelineBufferSize();
 }
@@ -63,6 +63,12 @@ public class QueueConfig implements QueueDefinition {
     @XmlAttribute(name="queue-size")
     private Integer queueSize;
 
+    @XmlAttribute(name="pipeline-lanes")
+    private Integer pipelineLanes;
+
+    @XmlAttribute(name="pipeline-buffer-size")
+    private Integer pipelineBufferSize;
+
     @XmlElement(name="adapter")
     private List<AdapterConfig> adapters = new ArrayList<>();
 
@@ -111,6 +117,24 @@ public class QueueConfig implements QueueDefinition {
         this.queueSize = queueSize;
     }
 
+    @Override
+    public Optional<Integer> getPipelineLanes() {
+        return Optional.ofNullable(this.pipelineLanes);
+    }
+
+    public void setPipelineLanes(final Integer pipelineLanes) {
+        this.pipelineLanes = pipelineLanes;
+    }
+
+    @Override
+    public Optional<Integer> getPipelineBufferSize() {
+        return Optional.ofNullable(this.pipelineBufferSize);
+    }
+
+    public void setPipelineBufferSize(final Integer pipelineBufferSize) {
+        this.pipelineBufferSize = pipelineBufferSize;
+    }
+
     public List<AdapterConfig> getAdapters() {
         return this.adapters;
     }
@@ -129,6 +153,8 @@ public class QueueConfig implements QueueDefinition {
                 Objects.equals(this.batchSize, that.batchSize) &&
                 Objects.equals(this.batchIntervalMs, that.batchIntervalMs) &&
                 Objects.equals(this.queueSize, that.queueSize) &&
+                Objects.equals(this.pipelineLanes, that.pipelineLanes) &&
+                Objects.equals(this.pipelineBufferSize, that.pipelineBufferSize) &&
                 Objects.equals(this.adapters, that.adapters);
     }
 
@@ -140,6 +166,8 @@ public class QueueConfig implements QueueDefinition {
                 this.batchSize,
                 this.batchIntervalMs,
                 this.queueSize,
+                this.pipelineLanes,
+                this.pipelineBufferSize,
                 this.adapters);
     }
 
@@ -151,6 +179,8 @@ public class QueueConfig implements QueueDefinition {
                 .add("batch-size", this.batchSize)
                 .add("batch-interval-ms", this.batchIntervalMs)
                 .add("queue-size", this.queueSize)
+                .add("pipeline-lanes", this.pipelineLanes)
+                .add("pipeline-buffer-size", this.pipelineBufferSize)
                 .addValue(this.adapters)
                 .toString();
     }
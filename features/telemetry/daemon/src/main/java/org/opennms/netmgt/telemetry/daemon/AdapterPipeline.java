@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.telemetry.daemon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.telemetry.api.adapter.Adapter;
+import org.opennms.netmgt.telemetry.api.adapter.StagedAdapter;
+import org.opennms.netmgt.telemetry.api.adapter.TelemetryMessageLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Executes the adapters of a queue on a fixed number of lanes.
+ *
+ * Message logs are assigned to a lane by the address of the exporter, so that
+ * the messages of a single exporter are always handled in order. Within a lane,
+ * each stage of each adapter is executed by its own thread and the stages are
+ * connected by bounded buffers. Once the buffer in front of a lane is full,
+ * {@link #submit} blocks, which in turn throttles the consumer of the queue.
+ * Once the pipeline is closed, {@link #submit} rejects further message logs.
+ *
+ * The time spent in each stage is tracked by a timer named
+ * {@code <queue>.<adapter>.<stage>}.
+ */
+public class AdapterPipeline implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(AdapterPipeline.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 64;
+
+    /**
+     * Marks the end of the input of a stage.
+     */
+    private static final Object POISON = new Object();
+
+    private final List<Lane> lanes;
+
+    private final MetricRegistry metricRegistry;
+
+    private final List<String> gaugeNames = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * Held for reading while a message log is handed to a lane and for writing while closing,
+     * so that no message log is buffered behind the end of the input of a lane.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    /**
+     * @param name the name of the queue
+     * @param adapters the adapters by name, in order of execution
+     * @param numLanes the number of lanes
+     * @param bufferSize the maximum number of elements buffered in front of each stage
+     * @param metricRegistry the registry in which the timers of the stages are registered
+     */
+    public AdapterPipeline(final String name,
+                           final Map<String, Adapter> adapters,
+                           final int numLanes,
+                           final int bufferSize,
+                           final MetricRegistry metricRegistry) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(adapters);
+        Objects.requireNonNull(metricRegistry);
+        if (numLanes < 1) {
+            throw new IllegalArgumentException("Number of lanes must be positive: " + numLanes);
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+
+        // The timers are shared by all lanes
+        final List<List<TimedStage>> stages = new ArrayList<>(adapters.size());
+        for (final Map.Entry<String, Adapter> adapter : adapters.entrySet()) {
+            stages.add(stagesOf(name, adapter.getKey(), adapter.getValue(), metricRegistry));
+        }
+
+        final ImmutableList.Builder<Lane> lanes = ImmutableList.builder();
+        for (int i = 0; i < numLanes; i++) {
+            final Lane lane = new Lane(name, i, stages, bufferSize);
+            final String gaugeName = MetricRegistry.name(name, "lane", Integer.toString(i), "buffered");
+            metricRegistry.register(gaugeName, (Gauge<Integer>) lane::getBuffered);
+            gaugeNames.add(gaugeName);
+            lanes.add(lane);
+        }
+        this.lanes = lanes.build();
+        this.metricRegistry = metricRegistry;
+    }
+
+    private static List<TimedStage> stagesOf(final String queueName,
+                                             final String adapterName,
+                                             final Adapter adapter,
+                                             final MetricRegistry metricRegistry) {
+        final List<? extends StagedAdapter.Stage<?, ?>> stages;
+        if (adapter instanceof StagedAdapter) {
+            stages = ((StagedAdapter) adapter).getStages();
+        } else {
+            stages = Collections.singletonList(StagedAdapter.Stage.<TelemetryMessageLog, Void>of("handle", messageLog -> {
+                adapter.handleMessageLog(messageLog);
+                return null;
+            }));
+        }
+
+        final List<TimedStage> timedStages = new ArrayList<>(stages.size());
+        for (final StagedAdapter.Stage<?, ?> stage : stages) {
+            timedStages.add(new TimedStage(adapterName, stage,
+                    metricRegistry.timer(MetricRegistry.name(queueName, adapterName, stage.getName()))));
+        }
+        return timedStages;
+    }
+
+    public void start() {
+        lanes.forEach(Lane::start);
+    }
+
+    /**
+     * Hands the message log to the lane of its exporter, blocking while the lane is full.
+     *
+     * @param messageLog the message log to handle
+     * @throws InterruptedException if interrupted while waiting for the lane
+     * @throws IllegalStateException if the pipeline is closed
+     */
+    public void submit(final TelemetryMessageLog messageLog) throws InterruptedException {
+        closeLock.readLock().lockInterruptibly();
+        try {
+            if (!running) {
+                throw new IllegalStateException("The pipeline is closed.");
+            }
+            final int hash = Objects.hash(messageLog.getLocation(), messageLog.getSourceAddress());
+            lanes.get(Math.floorMod(hash, lanes.size())).submit(messageLog);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops accepting new message logs and waits until all buffered ones have been handled.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        // Wait for the message logs being handed over, the lanes keep draining meanwhile
+        closeLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+            for (final Lane lane : lanes) {
+                lane.stop();
+            }
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        for (final Lane lane : lanes) {
+            lane.join();
+        }
+        // Allows a new pipeline of the same queue to register its gauges
+        gaugeNames.forEach(metricRegistry::remove);
+    }
+
+    private static class TimedStage {
+        private final String adapterName;
+        private final StagedAdapter.Stage<Object, Object> stage;
+        private final Timer timer;
+
+        @SuppressWarnings("unchecked")
+        private TimedStage(final String adapterName, final StagedAdapter.Stage<?, ?> stage, final Timer timer) {
+            this.adapterName = adapterName;
+            this.stage = (StagedAdapter.Stage<Object, Object>) stage;
+            this.timer = timer;
+        }
+
+        private Object process(final Object input) {
+            try (Timer.Context ctx = timer.time()) {
+                return stage.process(input);
+            } catch (RuntimeException e) {
+                LOG.warn("Adapter: {} failed to handle message log in stage: {}. Skipping.", adapterName, stage.getName(), e);
+                return null;
+            }
+        }
+    }
+
+    private static class Lane {
+        private final List<BlockingQueue<Object>> inputs = new ArrayList<>();
+        private final List<Thread> threads = new ArrayList<>();
+
+        private Lane(final String name, final int index, final List<List<TimedStage>> adapters, final int bufferSize) {
+            for (final List<TimedStage> stages : adapters) {
+                BlockingQueue<Object> input = new ArrayBlockingQueue<>(bufferSize);
+                this.inputs.add(input);
+
+                for (int i = 0; i < stages.size(); i++) {
+                    final BlockingQueue<Object> output = i < stages.size() - 1
+                            ? new ArrayBlockingQueue<>(bufferSize)
+                            : null;
+
+                    final Worker worker = new Worker(stages.get(i), input, output);
+                    final Thread thread = new Thread(worker, String.format("telemetryd-%s-lane-%d-%s-%s",
+                            name, index, stages.get(i).adapterName, stages.get(i).stage.getName()));
+                    thread.setDaemon(true);
+                    this.threads.add(thread);
+
+                    input = output;
+                }
+            }
+        }
+
+        private void start() {
+            threads.forEach(Thread::start);
+        }
+
+        private void submit(final TelemetryMessageLog messageLog) throws InterruptedException {
+            for (final BlockingQueue<Object> input : inputs) {
+                input.put(messageLog);
+            }
+        }
+
+        private void stop() throws InterruptedException {
+            for (final BlockingQueue<Object> input : inputs) {
+                input.put(POISON);
+            }
+        }
+
+        private void join() throws InterruptedException {
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        private int getBuffered() {
+            return inputs.stream().mapToInt(BlockingQueue::size).sum();
+        }
+    }
+
+    private static class Worker implements Runnable {
+        private final TimedStage stage;
+        private final BlockingQueue<Object> input;
+        private final BlockingQueue<Object> output;
+
+        private Worker(final TimedStage stage, final BlockingQueue<Object> input, final BlockingQueue<Object> output) {
+            this.stage = stage;
+            this.input = input;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            Logging.putPrefix(Telemetryd.LOG_PREFIX);
+            // The worker only stops at the end of its input, so that the buffered elements
+            // are not lost and the stages behind it are stopped as well
+            while (true) {
+                final Object element;
+                try {
+                    element = input.take();
+                } catch (InterruptedException e) {
+                    LOG.warn("Interrupted while waiting for input of stage: {}. Ignoring.", stage.stage.getName());
+                    continue;
+                }
+                if (element == POISON) {
+                    if (output != null) {
+                        put(POISON);
+                    }
+                    return;
+                }
+
+                final Object result = stage.process(element);
+                if (result != null && output != null) {
+                    put(result);
+                }
+            }
+        }
+
+        private void put(final Object element) {
+            while (true) {
+                try {
+                    output.put(element);
+                    return;
+                } catch (InterruptedException e) {
+                    LOG.warn("Interrupted while handing over output of stage: {}. Retrying.", stage.stage.getName());
+                }
+            }
+        }
+    }
+}
@@ -30,7 +30,9 @@ package org.opennms.netmgt.telemetry.daemon;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -52,6 +54,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Sets;
 
 
@@ -68,6 +71,11 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
     // Actual adapters implementing the logic
     private final Set<Adapter> adapters = Sets.newHashSet();
 
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    // Executes the adapters on multiple lanes, if configured
+    private volatile AdapterPipeline pipeline;
+
     public TelemetryMessageConsumer(QueueConfig queueConfig, TelemetrySinkModule sinkModule) throws Exception {
         this(queueConfig,
                 queueConfig.getAdapters(),
@@ -85,6 +93,7 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
     @PostConstruct
     public void init() throws Exception {
         // Pre-emptively instantiate the adapters
+        final Map<String, Adapter> adaptersByName = new LinkedHashMap<>();
         for (AdapterDefinition adapterDef : adapterDefs) {
             final Adapter adapter;
             try {
@@ -97,6 +106,18 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
                 throw new Exception("No adapter found for class: " + adapterDef.getClassName());
             }
             adapters.add(adapter);
+            adaptersByName.put(adapterDef.getName(), adapter);
+        }
+
+        final int lanes = queueDef.getPipelineLanes().orElse(0);
+        if (lanes > 0) {
+            LOG.info("Handling messages of queue: {} with {} lanes.", queueDef.getName(), lanes);
+            pipeline = new AdapterPipeline(queueDef.getName(),
+                    adaptersByName,
+                    lanes,
+                    queueDef.getPipelineBufferSize().orElse(AdapterPipeline.DEFAULT_BUFFER_SIZE),
+                    metricRegistry);
+            pipeline.start();
         }
     }
 
@@ -104,6 +125,19 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
     public void handleMessage(TelemetryProtos.TelemetryMessageLog messageLog) {
         try (Logging.MDCCloseable mdc = Logging.withPrefixCloseable(Telemetryd.LOG_PREFIX)) {
             LOG.trace("Received message log: {}", messageLog);
+            final AdapterPipeline pipeline = this.pipeline;
+            if (pipeline != null) {
+                try {
+                    pipeline.submit(messageLog);
+                } catch (InterruptedException e) {
+                    LOG.warn("Interrupted while handing over message log: {}. Dropping.", messageLog);
+                    Thread.currentThread().interrupt();
+                } catch (IllegalStateException e) {
+                    LOG.warn("Pipeline of queue: {} is closed. Dropping message log: {}.", queueDef.getName(), messageLog);
+                }
+                return;
+            }
+
             // Handle the message with all of the adapters
             for (Adapter adapter : adapters) {
                 try {
@@ -116,8 +150,22 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
         }
     }
 
+    /**
+     * Stops the adapters. The consumer must be unregistered first, so that no more
+     * message logs are handed to the closing pipeline.
+     */
     @PreDestroy
     public void destroy() {
+        final AdapterPipeline pipeline = this.pipeline;
+        if (pipeline != null) {
+            try {
+                pipeline.close();
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while waiting for the pipeline of queue: {} to drain.", queueDef.getName());
+                Thread.currentThread().interrupt();
+            }
+            this.pipeline = null;
+        }
         adapters.forEach((adapter) -> adapter.destroy());
     }
 
@@ -133,4 +181,8 @@ public class TelemetryMessageConsumer implements MessageConsumer<TelemetryMessag
     public void setRegistry(TelemetryRegistry telemetryRegistry) {
         this.telemetryRegistry = telemetryRegistry;
     }
+
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = Objects.requireNonNull(metricRegistry);
+    }
 }
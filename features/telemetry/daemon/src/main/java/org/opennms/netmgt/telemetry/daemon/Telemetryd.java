@@ -57,6 +57,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ApplicationContext;
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * telemetryd is responsible for managing the life cycle of
  * {@link Listener}s and {@link Adapter}s as well as connecting
@@ -90,6 +93,9 @@ public class Telemetryd implements SpringServiceDaemon {
     private List<TelemetryMessageConsumer> consumers = new ArrayList<>();
     private List<Listener> listeners = new ArrayList<>();
 
+    // Tracks the stages of the adapter pipelines
+    private MetricRegistry metricRegistry;
+    private JmxReporter jmxReporter;
 
     @Override
     public synchronized void start() throws Exception {
@@ -100,6 +106,12 @@ public class Telemetryd implements SpringServiceDaemon {
         final TelemetrydConfig config = telemetrydConfigDao.getContainer().getObject();
         final AutowireCapableBeanFactory beanFactory = applicationContext.getAutowireCapableBeanFactory();
 
+        metricRegistry = new MetricRegistry();
+        jmxReporter = JmxReporter.forRegistry(metricRegistry)
+                .inDomain("org.opennms.netmgt.telemetry.pipeline")
+                .build();
+        jmxReporter.start();
+
         // First we create the queues as parsers may reference them
         for (final QueueConfig queueConfig : config.getQueues()) {
             // Create a Sink module using the queue definition.
@@ -114,6 +126,7 @@ public class Telemetryd implements SpringServiceDaemon {
             if (!enabledAdapters.isEmpty()) {
                 final TelemetryMessageConsumer consumer = new TelemetryMessageConsumer(queueConfig, enabledAdapters, sinkModule);
                 beanFactory.autowireBean(consumer);
+                consumer.setMetricRegistry(metricRegistry);
                 beanFactory.initializeBean(consumer, "consumer");
                 consumers.add(consumer);
             } else {
@@ -193,6 +206,12 @@ public class Telemetryd implements SpringServiceDaemon {
         }
         consumers.clear();
 
+        if (jmxReporter != null) {
+            jmxReporter.stop();
+            jmxReporter = null;
+        }
+        metricRegistry = null;
+
         LOG.info("{} is stopped.", NAME);
     }
 
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.telemetry.daemon;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.opennms.netmgt.telemetry.api.adapter.Adapter;
+import org.opennms.netmgt.telemetry.api.adapter.StagedAdapter;
+import org.opennms.netmgt.telemetry.api.adapter.TelemetryMessageLog;
+import org.opennms.netmgt.telemetry.api.adapter.TelemetryMessageLogEntry;
+import org.opennms.netmgt.telemetry.config.api.AdapterDefinition;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class AdapterPipelineTest {
+
+    @Test
+    public void verifyOrderPerExporter() throws Exception {
+        final RecordingAdapter adapter = new RecordingAdapter();
+        final MetricRegistry metricRegistry = new MetricRegistry();
+
+        final AdapterPipeline pipeline = new AdapterPipeline("test", ImmutableMap.of("recording", adapter), 3, 2, metricRegistry);
+        pipeline.start();
+        for (int i = 0; i < 100; i++) {
+            for (int exporter = 0; exporter < 5; exporter++) {
+                pipeline.submit(new MessageLog("10.0.0." + exporter, i));
+            }
+        }
+        pipeline.close();
+
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i * 2 + 1);
+        }
+        for (int exporter = 0; exporter < 5; exporter++) {
+            assertThat(adapter.persisted.get("10.0.0." + exporter), contains(expected.toArray()));
+        }
+
+        // Every stage is timed
+        assertThat(metricRegistry.getTimers(), hasKey("test.recording.convert"));
+        assertThat(metricRegistry.getTimers(), hasKey("test.recording.persist"));
+        assertThat(metricRegistry.timer("test.recording.persist").getCount(), equalTo(500L));
+    }
+
+    @Test
+    public void verifyStagesAreSkippedOnNullAndFailure() throws Exception {
+        final RecordingAdapter adapter = new RecordingAdapter();
+
+        final AdapterPipeline pipeline = new AdapterPipeline("test", ImmutableMap.of("recording", adapter), 1, 1, new MetricRegistry());
+        pipeline.start();
+        pipeline.submit(new MessageLog("10.0.0.1", -1)); // dropped by convert
+        pipeline.submit(new MessageLog("10.0.0.1", -2)); // fails in convert
+        pipeline.submit(new MessageLog("10.0.0.1", 1));
+        pipeline.close();
+
+        assertThat(adapter.persisted.get("10.0.0.1"), contains(3));
+    }
+
+    @Test
+    public void verifyUnstagedAdapters() throws Exception {
+        final List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        final Adapter adapter = new Adapter() {
+            @Override
+            public void setConfig(AdapterDefinition adapterConfig) {
+            }
+
+            @Override
+            public void handleMessageLog(TelemetryMessageLog messageLog) {
+                handled.add(((MessageLog) messageLog).sequence);
+            }
+
+            @Override
+            public void destroy() {
+            }
+        };
+
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final AdapterPipeline pipeline = new AdapterPipeline("test", ImmutableMap.of("plain", adapter), 2, 4, metricRegistry);
+        pipeline.start();
+        for (int i = 0; i < 10; i++) {
+            pipeline.submit(new MessageLog("10.0.0.1", i));
+        }
+        pipeline.close();
+
+        assertThat(handled, contains(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+        assertThat(metricRegistry.timer("test.plain.handle").getCount(), equalTo(10L));
+    }
+
+    @Test
+    public void verifyWorkersSurviveInterrupts() throws Exception {
+        final RecordingAdapter adapter = new RecordingAdapter();
+
+        final AdapterPipeline pipeline = new AdapterPipeline("test", ImmutableMap.of("recording", adapter), 2, 2, new MetricRegistry());
+        pipeline.start();
+        for (int i = 0; i < 50; i++) {
+            pipeline.submit(new MessageLog("10.0.0.1", i));
+        }
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("telemetryd-test-lane-")) {
+                thread.interrupt();
+            }
+        }
+        for (int i = 50; i < 100; i++) {
+            pipeline.submit(new MessageLog("10.0.0.1", i));
+        }
+        pipeline.close();
+
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i * 2 + 1);
+        }
+        assertThat(adapter.persisted.get("10.0.0.1"), contains(expected.toArray()));
+    }
+
+    @Test
+    public void verifySubmitIsRejectedOnceClosed() throws Exception {
+        final RecordingAdapter adapter = new RecordingAdapter();
+        final MetricRegistry metricRegistry = new MetricRegistry();
+
+        final AdapterPipeline pipeline = new AdapterPipeline("test", ImmutableMap.of("recording", adapter), 1, 1, metricRegistry);
+        pipeline.start();
+        pipeline.submit(new MessageLog("10.0.0.1", 1));
+        pipeline.close();
+
+        try {
+            pipeline.submit(new MessageLog("10.0.0.1", 2));
+            fail("Expected the closed pipeline to reject the message log");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertThat(adapter.persisted.get("10.0.0.1"), contains(3));
+
+        // The gauges are released, so the queue can be started again
+        assertThat(metricRegistry.getGauges().keySet(), empty());
+        final AdapterPipeline restarted = new AdapterPipeline("test", ImmutableMap.of("recording", adapter), 1, 1, metricRegistry);
+        restarted.start();
+        restarted.submit(new MessageLog("10.0.0.1", 2));
+        restarted.close();
+        assertThat(adapter.persisted.get("10.0.0.1"), contains(3, 5));
+    }
+
+    private static class RecordingAdapter implements StagedAdapter {
+        private final Map<String, List<Integer>> persisted = new ConcurrentHashMap<>();
+
+        @Override
+        public List<Stage<?, ?>> getStages() {
+            return ImmutableList.of(
+                    Stage.<MessageLog, MessageLog>of("convert", messageLog -> {
+                        if (messageLog.sequence == -2) {
+                            throw new IllegalStateException("failed");
+                        }
+                        return messageLog.sequence < 0 ? null : messageLog;
+                    }),
+                    Stage.<MessageLog, MessageLog>of("enrich", messageLog ->
+                            new MessageLog(messageLog.sourceAddress, messageLog.sequence * 2 + 1)),
+                    Stage.<MessageLog, Void>of("persist", messageLog -> {
+                        persisted.computeIfAbsent(messageLog.sourceAddress, k -> Collections.synchronizedList(new ArrayList<>()))
+                                .add(messageLog.sequence);
+                        return null;
+                    }));
+        }
+
+        @Override
+        public void setConfig(AdapterDefinition adapterConfig) {
+        }
+
+        @Override
+        public void handleMessageLog(TelemetryMessageLog messageLog) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    private static class MessageLog implements TelemetryMessageLog {
+        private final String sourceAddress;
+        private final int sequence;
+
+        private MessageLog(final String sourceAddress, final int sequence) {
+            this.sourceAddress = sourceAddress;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public String getLocation() {
+            return "Default";
+        }
+
+        @Override
+        public String getSystemId() {
+            return "test";
+        }
+
+        @Override
+        public int getSourcePort() {
+            return 4738;
+        }
+
+        @Override
+        public String getSourceAddress() {
+            return sourceAddress;
+        }
+
+        @Override
+        public List<? extends TelemetryMessageLogEntry> getMessageList() {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -52,6 +52,8 @@ import org.osgi.service.cm.ManagedServiceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 
 /**
  * This {@link ManagedServiceFactory} for service pids that contain
@@ -76,6 +78,8 @@ public class AdapterManager implements ManagedServiceFactory {
 
     private BundleContext bundleContext;
 
+    private MetricRegistry metricRegistry;
+
     @Override
     public String getName() {
         return "Manages telemetry adapter lifecycle.";
@@ -115,6 +119,9 @@ public class AdapterManager implements ManagedServiceFactory {
             // Create the consumer
             final TelemetryMessageConsumer consumer = new TelemetryMessageConsumer(queueDefinition, adapterDefinitions, sinkModule);
             consumer.setRegistry(telemetryRegistry);
+            if (metricRegistry != null) {
+                consumer.setMetricRegistry(metricRegistry);
+            }
             consumer.init();
             messageConsumerManager.registerConsumer(consumer);
             consumersById.put(pid, consumer);
@@ -133,18 +140,19 @@ public class AdapterManager implements ManagedServiceFactory {
         healthChecksById.get(pid).forEach(ServiceRegistration::unregister);
         final TelemetryMessageConsumer existingConsumer = consumersById.remove(pid);
         if (existingConsumer != null) {
-            try {
-                LOG.info("Stopping consumer for pid: {}", pid);
-                existingConsumer.destroy();
-            } catch (Exception e) {
-                LOG.error("Error occurred while stopping consumer for pid: {}", pid, e);
-            }
+            // Stop receiving messages before the adapters are stopped
             try {
                 LOG.info("Unregistering consumer for pid: {}", pid);
                 messageConsumerManager.unregisterConsumer(existingConsumer);
             } catch (Exception e) {
                 LOG.error("Error occurred while unregisterung consumer for pid: {}", pid, e);
             }
+            try {
+                LOG.info("Stopping consumer for pid: {}", pid);
+                existingConsumer.destroy();
+            } catch (Exception e) {
+                LOG.error("Error occurred while stopping consumer for pid: {}", pid, e);
+            }
         }
     }
 
@@ -172,4 +180,8 @@ public class AdapterManager implements ManagedServiceFactory {
     public void setBundleContext(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
     }
+
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
 }
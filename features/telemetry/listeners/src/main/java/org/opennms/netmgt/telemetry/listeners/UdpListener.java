@@ -29,8 +29,11 @@
 package org.opennms.netmgt.telemetry.listeners;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.opennms.netmgt.telemetry.api.receiver.Dispatchable;
 import org.opennms.netmgt.telemetry.api.receiver.Listener;
@@ -38,10 +41,15 @@ import org.opennms.netmgt.telemetry.common.utils.BufferUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Lists;
 
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
@@ -49,6 +57,10 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.FixedRecvByteBufAllocator;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.DatagramPacket;
@@ -56,26 +68,44 @@ import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.internal.SocketUtils;
 
+/**
+ * Receives datagrams and hands them to the parsers.
+ *
+ * By default a single socket is bound. When threads is greater than one and the native epoll
+ * transport is available, the given number of sockets are bound to the same address using
+ * SO_REUSEPORT, each one served by its own event loop, letting the kernel spread the load across them.
+ *
+ * The received buffers are pooled and handed to the parsers without being copied. They are
+ * released once the future returned by the parser completes.
+ */
 public class UdpListener implements Listener {
     private static final Logger LOG = LoggerFactory.getLogger(UdpListener.class);
 
     private final String name;
     private final List<UdpParser> parsers;
+    private final MetricRegistry metricRegistry;
 
     private EventLoopGroup bossGroup;
-    private ChannelFuture socketFuture;
+    private final List<Channel> channels = new ArrayList<>();
 
     private String host = null;
     private int port = 50000;
     private int maxPacketSize = 8096;
+    private int threads = 1;
+    private boolean useEpoll = true;
 
     public UdpListener(final String name, final UdpParser parser) {
         this(name, Lists.newArrayList(Objects.requireNonNull(parser)));
     }
 
     public UdpListener(final String name, final List<UdpParser> parsers) {
+        this(name, parsers, new MetricRegistry());
+    }
+
+    public UdpListener(final String name, final List<UdpParser> parsers, final MetricRegistry metricRegistry) {
         this.name = Objects.requireNonNull(name);
         this.parsers = Objects.requireNonNull(parsers);
+        this.metricRegistry = Objects.requireNonNull(metricRegistry);
 
         if (this.parsers.isEmpty()) {
             throw new IllegalArgumentException("At least 1 parsers must be defined");
@@ -88,7 +118,18 @@ public class UdpListener implements Listener {
     }
 
     public void start() throws InterruptedException {
-        this.bossGroup = new NioEventLoopGroup();
+        final boolean epoll = this.useEpoll && Epoll.isAvailable();
+
+        int sockets = Math.max(1, this.threads);
+        if (sockets > 1 && !epoll) {
+            // Binding multiple sockets to the same port requires SO_REUSEPORT, which is only exposed by the epoll transport
+            LOG.warn("Native epoll transport is not available for listener {}, falling back to a single socket.", this.name);
+            sockets = 1;
+        }
+
+        this.bossGroup = epoll
+                ? new EpollEventLoopGroup(sockets)
+                : new NioEventLoopGroup(sockets);
 
         this.parsers.forEach(parser -> parser.start(this.bossGroup));
 
@@ -96,25 +137,43 @@ public class UdpListener implements Listener {
                 ? SocketUtils.socketAddress(this.host, this.port)
                 : new InetSocketAddress(this.port);
 
-        this.socketFuture = new Bootstrap()
+        final Bootstrap bootstrap = new Bootstrap()
                 .group(this.bossGroup)
-                .channel(NioDatagramChannel.class)
+                .channel(epoll ? EpollDatagramChannel.class : NioDatagramChannel.class)
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .option(ChannelOption.SO_RCVBUF, Integer.MAX_VALUE)
-                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxPacketSize))
-                .handler(new DefaultChannelInitializer())
-                .bind(address)
-                .sync();
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(this.maxPacketSize));
+        if (sockets > 1) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+
+        // Each socket is registered with the next event loop of the group, so each one gets its own thread
+        for (int i = 0; i < sockets; i++) {
+            final SocketMetrics metrics = new SocketMetrics(i);
+            this.channels.add(bootstrap.clone()
+                    .handler(new DefaultChannelInitializer(metrics))
+                    .bind(address)
+                    .sync()
+                    .channel());
+        }
+
+        LOG.info("Listener {} bound {} socket(s) to {} using the {} transport.", this.name, sockets, address, epoll ? "epoll" : "nio");
     }
 
     public void stop() throws InterruptedException {
         LOG.info("Closing channel...");
-        this.socketFuture.channel().close().sync();
+        for (final Channel channel : this.channels) {
+            channel.close().sync();
+        }
+        this.channels.clear();
 
         this.parsers.forEach(parser -> parser.stop());
 
         LOG.info("Closing boss group...");
         this.bossGroup.shutdownGracefully().sync();
+
+        this.metricRegistry.removeMatching((metricName, metric) -> metricName.startsWith(MetricRegistry.name(this.name, "socket")));
     }
 
     public String getHost() {
@@ -141,32 +200,77 @@ public class UdpListener implements Listener {
         this.maxPacketSize = maxPacketSize;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isUseEpoll() {
+        return useEpoll;
+    }
+
+    public void setUseEpoll(boolean useEpoll) {
+        this.useEpoll = useEpoll;
+    }
+
     @Override
     public String getName() {
         return name;
     }
 
+    /**
+     * Metrics tracked for a single socket.
+     */
+    private class SocketMetrics {
+        // Packets received from the socket
+        private final Meter packetsReceived;
+        // Packets which were not handled by any parser, or which failed to parse
+        private final Counter packetsDropped;
+        // Packets handed to a parser which have not been completely processed yet
+        private final AtomicInteger backlog = new AtomicInteger(0);
+
+        private SocketMetrics(final int index) {
+            final String prefix = MetricRegistry.name(name, "socket" + index);
+            this.packetsReceived = metricRegistry.meter(MetricRegistry.name(prefix, "packetsReceived"));
+            this.packetsDropped = metricRegistry.counter(MetricRegistry.name(prefix, "packetsDropped"));
+            metricRegistry.register(MetricRegistry.name(prefix, "backlog"), (Gauge<Integer>) backlog::get);
+        }
+    }
 
     private class DefaultChannelInitializer extends ChannelInitializer<DatagramChannel> {
 
+        private final SocketMetrics metrics;
+
+        private DefaultChannelInitializer(final SocketMetrics metrics) {
+            this.metrics = metrics;
+        }
+
         @Override
         protected void initChannel(DatagramChannel ch) throws Exception {
 
             if (parsers.size() == 1) {
                 final UdpParser parser = parsers.get(0);
                 // If only one parser is defined, we can directly use the handler
-                ch.pipeline().addLast(new SingleDatagramPacketParserHandler(parser));
+                ch.pipeline().addLast(new SingleDatagramPacketParserHandler(parser, metrics));
             } else {
                 // Otherwise dispatch
+                final List<SingleDatagramPacketParserHandler> handlers = parsers.stream()
+                        .map(parser -> new SingleDatagramPacketParserHandler(parser, metrics))
+                        .collect(Collectors.toList());
                 ch.pipeline().addLast(new SimpleChannelInboundHandler<DatagramPacket>() {
                     @Override
                     protected void channelRead0(final ChannelHandlerContext ctx, final DatagramPacket msg) throws Exception {
-                        for (final UdpParser parser : parsers) {
-                            if (BufferUtils.peek(msg.content().nioBuffer(), ((Dispatchable) parser)::handles)) {
-                                new SingleDatagramPacketParserHandler(parser).channelRead0(ctx, msg);
-                                break;
+                        for (final SingleDatagramPacketParserHandler handler : handlers) {
+                            if (BufferUtils.peek(msg.content().nioBuffer(), ((Dispatchable) handler.parser)::handles)) {
+                                handler.channelRead0(ctx, msg);
+                                return;
                             }
                         }
+                        metrics.packetsReceived.mark();
+                        metrics.packetsDropped.inc();
                         LOG.warn("Unhandled packet from {}", msg.sender());
                     }
                 });
@@ -187,23 +291,38 @@ public class UdpListener implements Listener {
     private static class SingleDatagramPacketParserHandler extends SimpleChannelInboundHandler<DatagramPacket> {
 
         final UdpParser parser;
+        final SocketMetrics metrics;
 
-        private SingleDatagramPacketParserHandler(UdpParser parser) {
+        private SingleDatagramPacketParserHandler(UdpParser parser, SocketMetrics metrics) {
             this.parser = parser;
+            this.metrics = metrics;
         }
 
         @Override
         protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket msg) throws Exception {
-            parser.parse(
-                    ReferenceCountUtil.retain(msg.content()).nioBuffer(),
-                    msg.sender(), msg.recipient()
-                ).handle((result, ex) -> {
-                    ReferenceCountUtil.release(msg.content());
-                    if (ex != null) {
-                        ctx.fireExceptionCaught(ex);
-                    }
-                    return result;
-                });
+            metrics.packetsReceived.mark();
+            metrics.backlog.incrementAndGet();
+
+            // The parser works on a view of the pooled buffer, which is retained until the parser is done with it
+            try {
+                parser.parse(
+                        ReferenceCountUtil.retain(msg.content()).nioBuffer(),
+                        msg.sender(), msg.recipient()
+                    ).handle((result, ex) -> {
+                        ReferenceCountUtil.release(msg.content());
+                        metrics.backlog.decrementAndGet();
+                        if (ex != null) {
+                            metrics.packetsDropped.inc();
+                            ctx.fireExceptionCaught(ex);
+                        }
+                        return result;
+                    });
+            } catch (final Exception e) {
+                ReferenceCountUtil.release(msg.content());
+                metrics.backlog.decrementAndGet();
+                metrics.packetsDropped.inc();
+                throw e;
+            }
         }
     }
 
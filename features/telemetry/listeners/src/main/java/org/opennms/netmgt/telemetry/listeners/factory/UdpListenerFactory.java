@@ -41,9 +41,12 @@ import org.opennms.netmgt.telemetry.listeners.UdpParser;
 import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.PropertyAccessorFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 public class UdpListenerFactory implements ListenerFactory {
 
     private TelemetryRegistry telemetryRegistry;
+    private MetricRegistry metricRegistry = new MetricRegistry();
 
     public UdpListenerFactory(TelemetryRegistry telemetryRegistry) {
         this.telemetryRegistry = Objects.requireNonNull(telemetryRegistry);
@@ -64,9 +67,13 @@ public class UdpListenerFactory implements ListenerFactory {
         if (parsers.size() != listenerDefinition.getParsers().size()) {
             throw new IllegalArgumentException("Each parser must be of type UdpParser but was not.");
         }
-        final Listener listener = new UdpListener(listenerDefinition.getName(), parsers);
+        final Listener listener = new UdpListener(listenerDefinition.getName(), parsers, metricRegistry);
         final BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(listener);
         wrapper.setPropertyValues(listenerDefinition.getParameterMap());
         return listener;
     }
+
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = Objects.requireNonNull(metricRegistry);
+    }
 }
@@ -37,7 +37,8 @@ import org.opennms.netmgt.flows.api.Flow;
 import org.opennms.netmgt.flows.api.FlowException;
 import org.opennms.netmgt.flows.api.FlowRepository;
 import org.opennms.netmgt.flows.api.FlowSource;
-import org.opennms.netmgt.telemetry.api.adapter.Adapter;
+import org.opennms.netmgt.flows.api.PreparedFlows;
+import org.opennms.netmgt.telemetry.api.adapter.StagedAdapter;
 import org.opennms.netmgt.telemetry.api.adapter.TelemetryMessageLog;
 import org.opennms.netmgt.telemetry.api.adapter.TelemetryMessageLogEntry;
 import org.opennms.netmgt.telemetry.config.api.AdapterDefinition;
@@ -47,8 +48,9 @@ import org.slf4j.LoggerFactory;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
 
-public abstract class AbstractFlowAdapter<P> implements Adapter {
+public abstract class AbstractFlowAdapter<P> implements StagedAdapter {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractFlowAdapter.class);
 
@@ -66,6 +68,14 @@ public abstract class AbstractFlowAdapter<P> implements Adapter {
      */
     private final Histogram packetsPerLogHistogram;
 
+    /**
+     * Parses and converts the log, enriches the flows and persists them
+     */
+    private final List<Stage<?, ?>> stages = ImmutableList.of(
+            Stage.of("convert", this::convert),
+            Stage.of("enrich", this::enrich),
+            Stage.of("persist", this::persist));
+
     public AbstractFlowAdapter(final MetricRegistry metricRegistry,
                            final FlowRepository flowRepository,
                            final Converter<P> converter) {
@@ -83,32 +93,57 @@ public abstract class AbstractFlowAdapter<P> implements Adapter {
 
     @Override
     public void handleMessageLog(TelemetryMessageLog messageLog) {
+        final PreparedFlows preparedFlows = enrich(convert(messageLog));
+        if (preparedFlows != null) {
+            persist(preparedFlows);
+        }
+
+        LOG.debug("Completed processing {} telemetry messages.",
+                messageLog.getMessageList().size());
+    }
+
+    @Override
+    public List<Stage<?, ?>> getStages() {
+        return stages;
+    }
+
+    private FlowLog convert(TelemetryMessageLog messageLog) {
         LOG.debug("Received {} telemetry messages", messageLog.getMessageList().size());
 
-        final List<P> flowPackets = new LinkedList<>();
+        int packetCount = 0;
         final List<Flow> flows = new LinkedList<>();
         try (Timer.Context ctx = logParsingTimer.time()) {
             for (TelemetryMessageLogEntry eachMessage : messageLog.getMessageList()) {
                 LOG.trace("Parsing packet: {}", eachMessage);
                 final P flowPacket = parse(eachMessage);
                 if (flowPacket != null) {
-                    flowPackets.add(flowPacket);
+                    packetCount++;
                     flows.addAll(converter.convert(flowPacket));
                 }
             }
-            packetsPerLogHistogram.update(flowPackets.size());
+            packetsPerLogHistogram.update(packetCount);
         }
 
+        LOG.debug("Persisting {} packets, {} flows.", packetCount, flows.size());
+        return new FlowLog(flows, new FlowSource(messageLog.getLocation(), messageLog.getSourceAddress()));
+    }
+
+    private PreparedFlows enrich(FlowLog flowLog) {
         try {
-            LOG.debug("Persisting {} packets, {} flows.", flowPackets.size(), flows.size());
-            final FlowSource source = new FlowSource(messageLog.getLocation(), messageLog.getSourceAddress());
-            flowRepository.persist(flows, source);
+            return flowRepository.prepare(flowLog.flows, flowLog.source);
         } catch (FlowException ex) {
             LOG.error("Failed to persist one or more packets: {}", ex.getMessage());
+            return null;
         }
+    }
 
-        LOG.debug("Completed processing {} telemetry messages.",
-                messageLog.getMessageList().size());
+    private Void persist(PreparedFlows preparedFlows) {
+        try {
+            preparedFlows.persist();
+        } catch (FlowException ex) {
+            LOG.error("Failed to persist one or more packets: {}", ex.getMessage());
+        }
+        return null;
     }
 
     protected abstract P parse(TelemetryMessageLogEntry message);
@@ -116,4 +151,14 @@ public abstract class AbstractFlowAdapter<P> implements Adapter {
     public void destroy() {
         // not needed
     }
+
+    private static class FlowLog {
+        private final List<Flow> flows;
+        private final FlowSource source;
+
+        private FlowLog(final List<Flow> flows, final FlowSource source) {
+            this.flows = flows;
+            this.source = source;
+        }
+    }
 }
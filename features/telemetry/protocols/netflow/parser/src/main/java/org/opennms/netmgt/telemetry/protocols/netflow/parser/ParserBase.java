@@ -30,6 +30,8 @@ package org.opennms.netmgt.telemetry.protocols.netflow.parser;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.IntFunction;
@@ -40,7 +42,9 @@ import org.bson.BsonWriter;
 import org.bson.io.BasicOutputBuffer;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
 import org.opennms.netmgt.telemetry.api.receiver.TelemetryMessage;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlowRecord;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordVisitor;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.BooleanValue;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.DateTimeValue;
@@ -82,17 +86,33 @@ public class ParserBase {
     protected CompletableFuture<?> transmit(final RecordProvider packet, final InetSocketAddress remoteAddress) throws Exception {
         LOG.trace("Got packet: {}", packet);
 
-        // Return a future which completes when message is parsed and all records are transmitted
-        return CompletableFuture.allOf(packet.getRecords().map(record -> {
-            final ByteBuffer buffer = serialize(this.protocol, record);
+        // Serialize all records of the packet, reusing the output buffer
+        final BasicOutputBuffer output = new BasicOutputBuffer();
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+
+        packet.visitRecords(new RecordVisitor() {
+            @Override
+            public void accept(final Iterable<Value<?>> record) {
+                futures.add(send(serialize(protocol, record)));
+            }
+
+            @Override
+            public void accept(final FlowRecord record) {
+                futures.add(send(serialize(protocol, record, output)));
+            }
+
+            private CompletableFuture<?> send(final ByteBuffer buffer) {
+                // Build the message to dispatch
+                final TelemetryMessage msg = new TelemetryMessage(remoteAddress, buffer);
 
-            // Build the message to dispatch
-            final TelemetryMessage msg = new TelemetryMessage(remoteAddress, buffer);
+                // Dispatch and retain a reference to the packet
+                // in the case that we are sharing the underlying byte array
+                return dispatcher.send(msg);
+            }
+        });
 
-            // Dispatch and retain a reference to the packet
-            // in the case that we are sharing the underlying byte array
-            return dispatcher.send(msg);
-        }).toArray(CompletableFuture[]::new));
+        // Return a future which completes when message is parsed and all records are transmitted
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
     }
 
     public static ByteBuffer serialize(final Protocol protocol, final Iterable<Value<?>> record) {
@@ -113,6 +133,21 @@ public class ParserBase {
         return output.getByteBuffers().get(0).asNIO();
     }
 
+    public static ByteBuffer serialize(final Protocol protocol, final FlowRecord record, final BasicOutputBuffer output) {
+        // Build BSON document from flow using the given output buffer
+        output.truncateToPosition(0);
+        try (final BsonBinaryWriter writer = new BsonBinaryWriter(output)) {
+            writer.writeStartDocument();
+            writer.writeInt32("@version", protocol.version);
+
+            record.write(writer);
+
+            writer.writeEndDocument();
+        }
+
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+
     private static class FlowBuilderVisitor implements Value.Visitor {
         // TODO: Really use ordinal for enums?
 
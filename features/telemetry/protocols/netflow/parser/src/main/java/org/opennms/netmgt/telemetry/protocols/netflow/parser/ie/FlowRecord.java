@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.ie;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import org.bson.BsonWriter;
+
+/**
+ * A data record decoded by a {@link RecordPlan}.
+ *
+ * The record keeps the values of numeric fields as primitives and references all other fields by their offset in the
+ * packet buffer. A single instance is reused for all records of a set and is therefore only valid until the next
+ * record is read.
+ */
+public final class FlowRecord {
+    private final RecordPlan plan;
+
+    final String[] headerNames;
+    final long[] headerValues;
+
+    ByteBuffer buffer;
+
+    final int[] offsets;
+    final int[] lengths;
+
+    final long[] values;
+    final long[] extras;
+
+    final StringBuilder text = new StringBuilder(39);
+
+    public FlowRecord(final RecordPlan plan, final String[] headerNames, final long[] headerValues) {
+        this.plan = Objects.requireNonNull(plan);
+
+        this.headerNames = Objects.requireNonNull(headerNames);
+        this.headerValues = Objects.requireNonNull(headerValues);
+
+        this.offsets = new int[plan.getFieldCount()];
+        this.lengths = new int[plan.getFieldCount()];
+        this.values = new long[plan.getFieldCount()];
+        this.extras = new long[plan.getFieldCount()];
+    }
+
+    /**
+     * Reads the next record from the buffer and advances its position.
+     */
+    public void read(final ByteBuffer buffer) {
+        this.plan.read(buffer, this);
+    }
+
+    /**
+     * Writes the header values and fields of the record to the current BSON document.
+     */
+    public void write(final BsonWriter writer) {
+        this.plan.write(this, writer);
+    }
+}
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.ie;
 
 import java.nio.ByteBuffer;
+import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
@@ -43,4 +44,16 @@ public interface InformationElement {
     int getMinimumFieldLength();
 
     int getMaximumFieldLength();
+
+    /**
+     * The kind of value this element is parsed into, which allows {@link RecordPlan} to decode it
+     * without creating a {@link Value}. Elements without a kind are always parsed using {@link #parse}.
+     */
+    default Optional<RecordPlan.Kind> getKind() {
+        return Optional.empty();
+    }
+
+    default Optional<Semantics> getSemantics() {
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,432 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser.ie;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.BsonBinary;
+import org.bson.BsonWriter;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.DateTimeValue;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Field;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
+
+/**
+ * A decoding plan compiled from a {@link Template}.
+ *
+ * The plan reads the fields of the data records straight from the packet buffer into a reused
+ * {@link FlowRecord}, without creating a {@link Value} for each field, and writes them in the same
+ * BSON format as the one used for the {@link Value}s.
+ *
+ * Templates are only compiled if all of their fields have a known {@link Kind}. All other templates
+ * are handled by parsing each field into its {@link Value}.
+ */
+public final class RecordPlan {
+
+    public enum Kind {
+        NULL,
+        UNSIGNED,
+        SIGNED,
+        FLOAT32,
+        FLOAT64,
+        BOOLEAN,
+        IPV4,
+        IPV6,
+        MAC,
+        DATETIME_SECONDS,
+        DATETIME_MILLISECONDS,
+        DATETIME_MICROSECONDS,
+        DATETIME_NANOSECONDS,
+        OCTETS,
+        STRING,
+    }
+
+    // Field length used by IPFIX to denote variable length fields
+    public static final int VARIABLE_SIZED = 0xFFFF;
+    private static final int VARIABLE_SIZED_EXTENDED = 0xFF;
+
+    private final String[] names;
+    private final Kind[] kinds;
+    private final int[] lengths;
+    private final Optional<Semantics>[] semantics;
+
+    // The length of each record, or -1 if the template contains variable length fields
+    private final int recordLength;
+    private final int minimumRecordLength;
+
+    // Whether decoding may fail, which requires to validate the records before accepting the packet
+    private final boolean validating;
+
+    @SuppressWarnings("unchecked")
+    private RecordPlan(final List<Field> fields) {
+        final int count = fields.size();
+        this.names = new String[count];
+        this.kinds = new Kind[count];
+        this.lengths = new int[count];
+        this.semantics = new Optional[count];
+
+        int recordLength = 0;
+        int minimumRecordLength = 0;
+        boolean validating = false;
+        for (int i = 0; i < count; i++) {
+            final InformationElement informationElement = fields.get(i).getInformationElement().get();
+            this.names[i] = informationElement.getName();
+            this.kinds[i] = informationElement.getKind().get();
+            this.lengths[i] = fields.get(i).length();
+            this.semantics[i] = informationElement.getSemantics();
+
+            if (this.lengths[i] == VARIABLE_SIZED) {
+                recordLength = -1;
+                minimumRecordLength += 1;
+            } else {
+                if (recordLength >= 0) {
+                    recordLength += this.lengths[i];
+                }
+                minimumRecordLength += this.lengths[i];
+            }
+
+            validating |= this.kinds[i] == Kind.BOOLEAN || this.kinds[i] == Kind.IPV6;
+        }
+
+        this.recordLength = recordLength;
+        this.minimumRecordLength = minimumRecordLength;
+        this.validating = validating;
+    }
+
+    /**
+     * Compiles a plan for the data records of the given template.
+     *
+     * @return the plan, or {@link Optional#empty()} if the template contains scopes or fields which can only be
+     *         parsed into {@link Value}s
+     */
+    public static Optional<RecordPlan> compile(final Template template) {
+        if (template.type != Template.Type.TEMPLATE || !template.scopes.isEmpty() || template.fields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        for (final Field field : template.fields) {
+            final Optional<InformationElement> informationElement = field.getInformationElement();
+            if (!informationElement.isPresent() || !informationElement.get().getKind().isPresent()) {
+                return Optional.empty();
+            }
+            if (!isSupported(informationElement.get(), field.length())) {
+                return Optional.empty();
+            }
+        }
+
+        return Optional.of(new RecordPlan(template.fields));
+    }
+
+    private static boolean isSupported(final InformationElement informationElement, final int length) {
+        switch (informationElement.getKind().get()) {
+            case NULL:
+                return length != VARIABLE_SIZED;
+            case UNSIGNED:
+            case SIGNED:
+                // Reduced size encoding is only allowed up to the size of the information element
+                return length >= 1 && length <= informationElement.getMaximumFieldLength();
+            case FLOAT32:
+            case IPV4:
+            case DATETIME_SECONDS:
+                return length == 4;
+            case FLOAT64:
+            case DATETIME_MILLISECONDS:
+            case DATETIME_MICROSECONDS:
+            case DATETIME_NANOSECONDS:
+                return length == 8;
+            case BOOLEAN:
+                return length == 1;
+            case IPV6:
+                return length == 16;
+            case MAC:
+                return length == 6;
+            case OCTETS:
+            case STRING:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public int getFieldCount() {
+        return this.names.length;
+    }
+
+    public int getMinimumRecordLength() {
+        return this.minimumRecordLength;
+    }
+
+    public boolean hasVariableSizedFields() {
+        return this.recordLength < 0;
+    }
+
+    /**
+     * Counts the records contained in the remaining bytes of the buffer and validates their values.
+     * The position of the buffer is left untouched.
+     */
+    public int count(final ByteBuffer buffer) throws InvalidPacketException {
+        if (!this.validating && this.recordLength > 0) {
+            return buffer.remaining() / this.recordLength;
+        }
+
+        int count = 0;
+        int position = buffer.position();
+        while (buffer.limit() - position >= this.minimumRecordLength) {
+            for (int i = 0; i < this.kinds.length; i++) {
+                int length = this.lengths[i];
+                if (length == VARIABLE_SIZED) {
+                    length = buffer.get(position++) & 0xFF;
+                    if (length == VARIABLE_SIZED_EXTENDED) {
+                        length = ((buffer.get(position) & 0xFF) << 8) | (buffer.get(position + 1) & 0xFF);
+                        position += 2;
+                    }
+                }
+                if (position + length > buffer.limit()) {
+                    throw new InvalidPacketException(buffer, "Field '%s' exceeds the record boundaries", this.names[i]);
+                }
+                validate(buffer, i, position);
+                position += length;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private void validate(final ByteBuffer buffer, final int field, final int position) throws InvalidPacketException {
+        switch (this.kinds[field]) {
+            case BOOLEAN: {
+                final int value = buffer.get(position) & 0xFF;
+                if (value != 1 && value != 2) {
+                    throw new InvalidPacketException(buffer, "Illegal value '%d' for boolean type (only 1/true and 2/false allowed)", value);
+                }
+                break;
+            }
+            case IPV6: {
+                // IPv4-mapped addresses are not representable as IPv6 address values
+                boolean mapped = buffer.get(position + 10) == (byte) 0xFF && buffer.get(position + 11) == (byte) 0xFF;
+                for (int j = 0; j < 10 && mapped; j++) {
+                    mapped = buffer.get(position + j) == 0;
+                }
+                if (mapped) {
+                    throw new InvalidPacketException(buffer, "Error parsing IPv6 value");
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads the next record from the buffer into the given record and advances the position of the buffer.
+     */
+    public void read(final ByteBuffer buffer, final FlowRecord record) {
+        int position = buffer.position();
+        record.buffer = buffer;
+
+        for (int i = 0; i < this.kinds.length; i++) {
+            int length = this.lengths[i];
+            if (length == VARIABLE_SIZED) {
+                length = buffer.get(position++) & 0xFF;
+                if (length == VARIABLE_SIZED_EXTENDED) {
+                    length = ((buffer.get(position) & 0xFF) << 8) | (buffer.get(position + 1) & 0xFF);
+                    position += 2;
+                }
+            }
+
+            record.offsets[i] = position;
+            record.lengths[i] = length;
+
+            switch (this.kinds[i]) {
+                case UNSIGNED:
+                case FLOAT32:
+                case FLOAT64:
+                case BOOLEAN:
+                case IPV4:
+                case DATETIME_SECONDS:
+                case DATETIME_MILLISECONDS:
+                    record.values[i] = unsigned(buffer, position, length);
+                    break;
+                case SIGNED:
+                    record.values[i] = signed(buffer, position, length);
+                    break;
+                case IPV6:
+                    record.values[i] = unsigned(buffer, position, 8);
+                    record.extras[i] = unsigned(buffer, position + 8, 8);
+                    break;
+                case MAC:
+                    record.values[i] = unsigned(buffer, position, 6);
+                    break;
+                case DATETIME_MICROSECONDS: {
+                    final long seconds = unsigned(buffer, position, 4);
+                    final long fraction = unsigned(buffer, position + 4, 4) & (0xFFFFFFFF << 11);
+                    record.values[i] = seconds - DateTimeValue.SECONDS_TO_EPOCH;
+                    record.extras[i] = fraction * 1_000_000_000L / (1L << 32);
+                    break;
+                }
+                case DATETIME_NANOSECONDS: {
+                    final long seconds = unsigned(buffer, position, 4);
+                    final long fraction = unsigned(buffer, position + 4, 4);
+                    record.values[i] = seconds - DateTimeValue.SECONDS_TO_EPOCH;
+                    record.extras[i] = fraction * 1_000_000_000L / (1L << 32);
+                    break;
+                }
+                default:
+                    // Octets, strings and nulls are written straight from the buffer
+                    break;
+            }
+
+            position += length;
+        }
+
+        buffer.position(position);
+    }
+
+    /**
+     * Writes the header values and the fields of the record, in the same format as the corresponding {@link Value}s.
+     */
+    public void write(final FlowRecord record, final BsonWriter writer) {
+        for (int i = 0; i < record.headerNames.length; i++) {
+            writer.writeInt64(record.headerNames[i], record.headerValues[i]);
+        }
+
+        for (int i = 0; i < this.kinds.length; i++) {
+            final String name = this.names[i];
+            final long value = record.values[i];
+
+            switch (this.kinds[i]) {
+                case NULL:
+                    writer.writeNull(name);
+                    break;
+                case UNSIGNED:
+                case SIGNED:
+                    writer.writeInt64(name, value);
+                    break;
+                case FLOAT32:
+                    writer.writeDouble(name, Float.intBitsToFloat((int) value));
+                    break;
+                case FLOAT64:
+                    writer.writeDouble(name, Double.longBitsToDouble(value));
+                    break;
+                case BOOLEAN:
+                    writer.writeBoolean(name, value == 1);
+                    break;
+                case IPV4:
+                    writer.writeString(name, formatIPv4(record.text, value));
+                    break;
+                case IPV6:
+                    writer.writeString(name, formatIPv6(record.text, value, record.extras[i]));
+                    break;
+                case MAC:
+                    writer.writeStartDocument(name);
+                    if (this.semantics[i].isPresent()) {
+                        writer.writeInt32("s", this.semantics[i].get().ordinal());
+                    }
+                    writer.writeBinaryData("v", new BsonBinary(bytes(record, i)));
+                    writer.writeEndDocument();
+                    break;
+                case DATETIME_SECONDS:
+                    writeDateTime(writer, name, value, 0);
+                    break;
+                case DATETIME_MILLISECONDS:
+                    writeDateTime(writer, name, Math.floorDiv(value, 1000L), Math.floorMod(value, 1000L) * 1_000_000L);
+                    break;
+                case DATETIME_MICROSECONDS:
+                case DATETIME_NANOSECONDS:
+                    writeDateTime(writer, name, value, record.extras[i]);
+                    break;
+                case OCTETS:
+                    writer.writeBinaryData(name, new BsonBinary(bytes(record, i)));
+                    break;
+                case STRING:
+                    writer.writeString(name, new String(bytes(record, i), StandardCharsets.UTF_8));
+                    break;
+            }
+        }
+    }
+
+    private static void writeDateTime(final BsonWriter writer, final String name, final long epoch, final long nanos) {
+        writer.writeStartDocument(name);
+        writer.writeInt64("epoch", epoch);
+        if (nanos != 0) {
+            writer.writeInt64("nanos", nanos);
+        }
+        writer.writeEndDocument();
+    }
+
+    private static byte[] bytes(final FlowRecord record, final int field) {
+        final byte[] bytes = new byte[record.lengths[field]];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = record.buffer.get(record.offsets[field] + i);
+        }
+        return bytes;
+    }
+
+    private static long unsigned(final ByteBuffer buffer, final int position, final int length) {
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            result = (result << 8) | (buffer.get(position + i) & 0xFFL);
+        }
+        return result;
+    }
+
+    private static long signed(final ByteBuffer buffer, final int position, final int length) {
+        long result = buffer.get(position);
+        for (int i = 1; i < length; i++) {
+            result = (result << 8) | (buffer.get(position + i) & 0xFFL);
+        }
+        return result;
+    }
+
+    // Same format as Inet4Address.getHostAddress()
+    private static String formatIPv4(final StringBuilder text, final long address) {
+        text.setLength(0);
+        text.append((address >> 24) & 0xFF).append('.')
+            .append((address >> 16) & 0xFF).append('.')
+            .append((address >> 8) & 0xFF).append('.')
+            .append(address & 0xFF);
+        return text.toString();
+    }
+
+    // Same format as Inet6Address.getHostAddress()
+    private static String formatIPv6(final StringBuilder text, final long high, final long low) {
+        text.setLength(0);
+        for (int i = 0; i < 8; i++) {
+            final long word = i < 4 ? high >>> (48 - 16 * i) : low >>> (48 - 16 * (i - 4));
+            if (i > 0) {
+                text.append(':');
+            }
+            text.append(Integer.toHexString((int) (word & 0xFFFF)));
+        }
+        return text.toString();
+    }
+}
@@ -32,4 +32,14 @@ import java.util.stream.Stream;
 
 public interface RecordProvider {
     Stream<Iterable<Value<?>>> getRecords();
+
+    /**
+     * Visits all records of the packet.
+     *
+     * Records decoded by a {@link RecordPlan} are passed as a reused {@link FlowRecord} instead of a list of
+     * {@link Value}s. The record must not be retained after the visitor returns.
+     */
+    default void visitRecords(final RecordVisitor visitor) {
+        getRecords().forEach(record -> visitor.accept(record));
+    }
 }
@@ -35,6 +35,7 @@ import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Semantics;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
@@ -72,6 +73,16 @@ public class BooleanValue extends Value<Boolean> {
                 return new BooleanValue(name, semantics, value == 1);
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.BOOLEAN);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -36,6 +36,7 @@ import java.time.Instant;
 import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Semantics;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
@@ -73,6 +74,16 @@ public class DateTimeValue extends Value<Instant> {
                 return new DateTimeValue(name, semantics, Instant.ofEpochSecond(uint32(buffer)));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.DATETIME_SECONDS);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -97,6 +108,16 @@ public class DateTimeValue extends Value<Instant> {
                 return new DateTimeValue(name, semantics, Instant.ofEpochMilli(uint64(buffer).longValue()));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.DATETIME_MILLISECONDS);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -126,6 +147,16 @@ public class DateTimeValue extends Value<Instant> {
                 return new DateTimeValue(name, semantics, value);
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.DATETIME_MICROSECONDS);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -155,6 +186,16 @@ public class DateTimeValue extends Value<Instant> {
                 return new DateTimeValue(name, semantics, value);
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.DATETIME_NANOSECONDS);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -34,6 +34,7 @@ import java.nio.ByteBuffer;
 import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Semantics;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
@@ -65,6 +66,16 @@ public class FloatValue extends Value<Double> {
                 return new FloatValue(name, semantics, Float.intBitsToFloat(uint(buffer, buffer.remaining()).intValue()));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.FLOAT32);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -89,6 +100,16 @@ public class FloatValue extends Value<Double> {
                 return new FloatValue(name, semantics, Double.longBitsToDouble(uint(buffer, buffer.remaining()).longValue()));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.FLOAT64);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -37,6 +37,7 @@ import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Semantics;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
@@ -72,6 +73,16 @@ public class IPv4AddressValue extends Value<Inet4Address> {
                 }
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.IPV4);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
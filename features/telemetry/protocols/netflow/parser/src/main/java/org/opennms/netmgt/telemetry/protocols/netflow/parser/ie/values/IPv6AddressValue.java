@@ -38,6 +38,7 @@ import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Semantics;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
@@ -73,6 +74,16 @@ public class IPv6AddressValue extends Value<Inet6Address> {
                 }
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.IPV6);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
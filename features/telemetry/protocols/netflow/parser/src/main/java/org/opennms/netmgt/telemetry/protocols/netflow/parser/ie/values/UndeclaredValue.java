@@ -35,6 +35,7 @@ import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
 
@@ -85,6 +86,11 @@ public class UndeclaredValue extends Value<byte[]> {
                 return new UndeclaredValue(enterpriseNumber, informationElementId, bytes(buffer, buffer.remaining()));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.OCTETS);
+            }
+
             @Override
             public String getName() {
                 return nameFor(enterpriseNumber, informationElementId);
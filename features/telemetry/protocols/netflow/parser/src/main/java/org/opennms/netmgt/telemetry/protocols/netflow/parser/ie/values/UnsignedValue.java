@@ -34,6 +34,7 @@ import java.nio.ByteBuffer;
 import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Semantics;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
@@ -71,6 +72,16 @@ public class UnsignedValue extends Value<UnsignedLong> {
                 return new UnsignedValue(name, semantics, uint(buffer, 1));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.UNSIGNED);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -95,6 +106,16 @@ public class UnsignedValue extends Value<UnsignedLong> {
                 return new UnsignedValue(name, semantics, uint(buffer, buffer.remaining()));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.UNSIGNED);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -119,6 +140,16 @@ public class UnsignedValue extends Value<UnsignedLong> {
                 return new UnsignedValue(name, semantics, uint(buffer, buffer.remaining()));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.UNSIGNED);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -143,6 +174,16 @@ public class UnsignedValue extends Value<UnsignedLong> {
                 return new UnsignedValue(name, semantics, uint(buffer, buffer.remaining()));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.UNSIGNED);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -167,6 +208,16 @@ public class UnsignedValue extends Value<UnsignedLong> {
                 return new UnsignedValue(name, semantics, uint(buffer, buffer.remaining()));
             }
 
+            @Override
+            public Optional<RecordPlan.Kind> getKind() {
+                return Optional.of(RecordPlan.Kind.UNSIGNED);
+            }
+
+            @Override
+            public Optional<Semantics> getSemantics() {
+                return semantics;
+            }
+
             @Override
             public String getName() {
                 return name;
@@ -40,6 +40,7 @@ import java.util.stream.Stream;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordVisitor;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.values.UnsignedValue;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
@@ -175,25 +176,63 @@ public final class Packet implements Iterable<FlowSet<?>>, RecordProvider {
                                 this.dataSets.iterator());
     }
 
-    @Override
-    public Stream<Iterable<Value<?>>> getRecords() {
+    private static final String[] HEADER_NAMES = {
+            "@recordCount",
+            "@sequenceNumber",
+            "@exportTime",
+            "@observationDomainId"
+    };
+
+    private long[] getHeaderValues() {
         final int recordCount = this.dataSets.stream()
-                .mapToInt(s -> s.records.size())
+                .mapToInt(DataSet::getRecordCount)
                 .sum();
 
+        return new long[] {
+                recordCount,
+                this.header.sequenceNumber,
+                this.header.exportTime,
+                this.header.observationDomainId
+        };
+    }
+
+    private static List<Value<?>> buildHeader(final long[] headerValues) {
+        final ImmutableList.Builder<Value<?>> header = ImmutableList.builder();
+        for (int i = 0; i < HEADER_NAMES.length; i++) {
+            header.add(new UnsignedValue(HEADER_NAMES[i], headerValues[i]));
+        }
+        return header.build();
+    }
+
+    @Override
+    public Stream<Iterable<Value<?>>> getRecords() {
+        final List<Value<?>> header = buildHeader(this.getHeaderValues());
+
         return this.dataSets.stream()
-                .flatMap(s -> s.records.stream())
+                .flatMap(s -> s.getRecords().stream())
                 .map(r -> Iterables.concat(
-                        ImmutableList.of(
-                                new UnsignedValue("@recordCount", recordCount),
-                                new UnsignedValue("@sequenceNumber", this.header.sequenceNumber),
-                                new UnsignedValue("@exportTime", this.header.exportTime),
-                                new UnsignedValue("@observationDomainId", this.header.observationDomainId)),
+                        header,
                         r.fields,
                         r.options
                 ));
     }
 
+    @Override
+    public void visitRecords(final RecordVisitor visitor) {
+        final long[] headerValues = this.getHeaderValues();
+        final List<Value<?>> header = buildHeader(headerValues);
+
+        for (final DataSet dataSet : this.dataSets) {
+            if (dataSet.readRecords(HEADER_NAMES, headerValues, visitor::accept)) {
+                continue;
+            }
+
+            for (final DataRecord record : dataSet.getRecords()) {
+                visitor.accept(Iterables.concat(header, record.fields, record.options));
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -34,8 +34,12 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlowRecord;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Template;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
 
@@ -46,7 +50,13 @@ public final class DataSet extends FlowSet<DataRecord> {
 
     public final Template template;
 
-    public final List<DataRecord> records;
+    // Plan used to decode the records or empty if the records are parsed into values
+    private final Optional<RecordPlan> plan;
+
+    private final ByteBuffer buffer;
+    private final int recordCount;
+
+    private List<DataRecord> records;
 
     public DataSet(final Packet packet,
                    final FlowSetHeader header,
@@ -61,28 +71,80 @@ public final class DataSet extends FlowSet<DataRecord> {
         final int minimumRecordLength = template.stream()
                 .mapToInt(f -> f.length()).sum();
 
+        // Records of templates without options are not parsed into values unless requested
+        this.plan = this.template.getPlan()
+                .filter(p -> !this.resolver.hasOptions() && !p.hasVariableSizedFields());
+
+        if (this.plan.isPresent()) {
+            this.buffer = buffer;
+            this.recordCount = this.plan.get().count(buffer);
+            this.records = null;
+        } else {
+            this.buffer = null;
+            this.records = parseRecords(buffer, minimumRecordLength);
+            this.recordCount = this.records.size();
+        }
+
+        if (this.recordCount == 0) {
+            throw new InvalidPacketException(buffer, "Empty set");
+        }
+    }
+
+    private List<DataRecord> parseRecords(final ByteBuffer buffer, final int minimumRecordLength) throws InvalidPacketException {
         final List<DataRecord> records = new LinkedList();
         while (buffer.remaining() >= minimumRecordLength) {
-            records.add(new DataRecord(this, resolver, template, buffer));
+            records.add(new DataRecord(this, this.resolver, this.template, buffer));
         }
 
-        if (records.size() == 0) {
-            throw new InvalidPacketException(buffer, "Empty set");
+        return Collections.unmodifiableList(records);
+    }
+
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    public List<DataRecord> getRecords() {
+        if (this.records == null) {
+            try {
+                this.records = parseRecords(this.buffer.duplicate(), this.plan.get().getMinimumRecordLength());
+            } catch (final InvalidPacketException e) {
+                // The records have been validated while counting them
+                throw new IllegalStateException(e);
+            }
+        }
+        return this.records;
+    }
+
+    /**
+     * Reads the records of this set into a reused {@link FlowRecord} if the set is decoded by a {@link RecordPlan}.
+     *
+     * @return {@code false} if the records of this set must be parsed into values
+     */
+    public boolean readRecords(final String[] headerNames, final long[] headerValues, final Consumer<FlowRecord> consumer) {
+        if (!this.plan.isPresent()) {
+            return false;
+        }
+
+        final FlowRecord record = new FlowRecord(this.plan.get(), headerNames, headerValues);
+        final ByteBuffer buffer = this.buffer.duplicate();
+        for (int i = 0; i < this.recordCount; i++) {
+            record.read(buffer);
+            consumer.accept(record);
         }
 
-        this.records = Collections.unmodifiableList(records);
+        return true;
     }
 
     @Override
     public Iterator<DataRecord> iterator() {
-        return this.records.iterator();
+        return this.getRecords().iterator();
     }
 
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("header", header)
-                .add("records", records)
+                .add("records", getRecords())
                 .toString();
     }
 }
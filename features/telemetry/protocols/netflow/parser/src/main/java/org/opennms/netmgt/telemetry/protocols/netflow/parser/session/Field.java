@@ -29,8 +29,10 @@
 package org.opennms.netmgt.telemetry.protocols.netflow.parser.session;
 
 import java.nio.ByteBuffer;
+import java.util.Optional;
 
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.InvalidPacketException;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.InformationElement;
 import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
 
 public interface Field {
@@ -38,4 +40,8 @@ public interface Field {
 
     Value<?> parse(final Session.Resolver resolver,
                    final ByteBuffer buffer) throws InvalidPacketException;
+
+    default Optional<InformationElement> getInformationElement() {
+        return Optional.empty();
+    }
 }
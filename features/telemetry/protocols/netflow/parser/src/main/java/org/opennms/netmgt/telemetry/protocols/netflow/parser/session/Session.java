@@ -39,6 +39,12 @@ public interface Session {
     interface Resolver {
         Optional<Template> lookupTemplate(final int templateId);
         List<Value<?>> lookupOptions(final List<Value<?>> values);
+
+        /**
+         * Returns true if options were received for the observation domain, in which case
+         * {@link #lookupOptions} must be consulted for each data record.
+         */
+        boolean hasOptions();
     }
 
     void addTemplate(final long observationDomainId, final Template template);
@@ -87,6 +87,11 @@ public class TcpSession implements Session {
 
             return new ArrayList(options.values());
         }
+
+        @Override
+        public boolean hasOptions() {
+            return Iterables.any(TcpSession.this.options.keySet(), k -> k.observationDomainId == this.observationDomainId);
+        }
     }
 
     private final static class Key {
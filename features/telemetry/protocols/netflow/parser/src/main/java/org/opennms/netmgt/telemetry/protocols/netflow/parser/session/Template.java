@@ -32,9 +32,12 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan;
+
 import com.google.common.base.Preconditions;
 
 public final class Template implements Iterable<Field> {
@@ -50,6 +53,9 @@ public final class Template implements Iterable<Field> {
     public final List<Scope> scopes;
     public final List<Field> fields;
 
+    // Compiled lazily, the first time a data set referencing this template is parsed
+    private volatile Optional<RecordPlan> plan;
+
     private Template(final int id,
                      final Type type,
                      final List<Scope> scopes,
@@ -64,6 +70,14 @@ public final class Template implements Iterable<Field> {
         return this.scopes.size() + this.fields.size();
     }
 
+    public Optional<RecordPlan> getPlan() {
+        Optional<RecordPlan> plan = this.plan;
+        if (plan == null) {
+            this.plan = plan = RecordPlan.compile(this);
+        }
+        return plan;
+    }
+
     @Override
     public Iterator<Field> iterator() {
         return this.fields.iterator();
@@ -34,7 +34,6 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -77,7 +76,12 @@ public class UdpSessionManager {
                                                                                                    e -> Objects.equals(e.getKey().localAddress, UdpSession.this.localAddress) &&
                                                                                                         Objects.equals(e.getKey().remoteAddress, UdpSession.this.remoteAddress) &&
                                                                                                         Objects.equals(e.getKey().observationDomainId, this.observationDomainId))) {
-                    final Template template = UdpSessionManager.this.templates.get(e.getKey()).template;
+                    final TemplateWrapper wrapper = UdpSessionManager.this.templates.get(e.getKey());
+                    if (wrapper == null) {
+                        // Template has expired in the meantime
+                        continue;
+                    }
+                    final Template template = wrapper.template;
 
                     final Set<String> scopes = template.scopes.stream().map(Scope::getName).collect(Collectors.toSet());
 
@@ -96,6 +100,13 @@ public class UdpSessionManager {
 
                 return new ArrayList(options.values());
             }
+
+            @Override
+            public boolean hasOptions() {
+                return Iterables.any(UdpSessionManager.this.options.keySet(), k -> Objects.equals(k.localAddress, UdpSession.this.localAddress) &&
+                                                                                   Objects.equals(k.remoteAddress, UdpSession.this.remoteAddress) &&
+                                                                                   k.observationDomainId == this.observationDomainId);
+            }
         }
 
         private final InetSocketAddress remoteAddress;
@@ -133,7 +144,7 @@ public class UdpSessionManager {
             }
 
             final Key key = new Key(this.remoteAddress, this.localAddress, observationDomainId, templateId);
-            UdpSessionManager.this.options.computeIfAbsent(key, (k) -> new HashMap()).put(new HashSet(scopes), values);
+            UdpSessionManager.this.options.computeIfAbsent(key, (k) -> Maps.newConcurrentMap()).put(new HashSet(scopes), values);
         }
 
         @Override
@@ -186,8 +197,9 @@ public class UdpSessionManager {
         }
     }
 
-    private final Map<Key, TemplateWrapper> templates = Maps.newHashMap();
-    private final Map<Key, Map<Set<Value<?>>, List<Value<?>>>> options = Maps.newHashMap();
+    // Sessions are accessed concurrently when the listener binds multiple sockets
+    private final Map<Key, TemplateWrapper> templates = Maps.newConcurrentMap();
+    private final Map<Key, Map<Set<Value<?>>, List<Value<?>>>> options = Maps.newConcurrentMap();
 
     private final Duration timeout;
 
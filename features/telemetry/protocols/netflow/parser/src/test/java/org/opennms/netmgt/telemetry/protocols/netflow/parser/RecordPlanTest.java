@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.protocols.netflow.parser;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.opennms.netmgt.telemetry.common.utils.BufferUtils.slice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.io.BasicOutputBuffer;
+import org.junit.Test;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.FlowRecord;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordProvider;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordVisitor;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.Value;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.Session;
+import org.opennms.netmgt.telemetry.protocols.netflow.parser.session.TcpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies that records decoded by a {@link org.opennms.netmgt.telemetry.protocols.netflow.parser.ie.RecordPlan}
+ * serialize to the same documents as the records parsed into values.
+ */
+public class RecordPlanTest {
+    private static final Logger LOG = LoggerFactory.getLogger(RecordPlanTest.class);
+
+    private final static Path FOLDER = Paths.get("src/test/resources/flows");
+
+    private final static int BENCHMARK_ROUNDS = 200;
+
+    @FunctionalInterface
+    private interface PacketParser {
+        RecordProvider parse(Session session, ByteBuffer buffer) throws Exception;
+    }
+
+    private static final PacketParser NETFLOW9 = (session, buffer) -> {
+        final org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header header =
+                new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header(
+                        slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Header.SIZE));
+        return new org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.proto.Packet(session, header, buffer);
+    };
+
+    private static final PacketParser IPFIX = (session, buffer) -> {
+        final org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header header =
+                new org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header(
+                        slice(buffer, org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header.SIZE));
+        return new org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Packet(session, header,
+                slice(buffer, header.length - org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.proto.Header.SIZE));
+    };
+
+    @Test
+    public void testNetflow9Equivalence() throws Exception {
+        assertThat(verify(Protocol.NETFLOW9, NETFLOW9, org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.BlackboxTest.data()), greaterThan(0));
+    }
+
+    @Test
+    public void testIpfixEquivalence() throws Exception {
+        assertThat(verify(Protocol.IPFIX, IPFIX, org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.BlackboxTest.data()), greaterThan(0));
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        benchmark(Protocol.NETFLOW9, NETFLOW9, org.opennms.netmgt.telemetry.protocols.netflow.parser.netflow9.BlackboxTest.data());
+        benchmark(Protocol.IPFIX, IPFIX, org.opennms.netmgt.telemetry.protocols.netflow.parser.ipfix.BlackboxTest.data());
+    }
+
+    /**
+     * Serializes all records of the corpus using both ways and returns the number of records decoded by a plan.
+     */
+    private static int verify(final Protocol protocol, final PacketParser parser, final Iterable<Object[]> corpus) throws Exception {
+        int planned = 0;
+
+        for (final Object[] files : corpus) {
+            final Session session = new TcpSession();
+
+            for (final ByteBuffer buffer : read(files)) {
+                do {
+                    final RecordProvider packet = parser.parse(session, buffer);
+
+                    final List<byte[]> expected = packet.getRecords()
+                            .map(record -> bytes(ParserBase.serialize(protocol, record)))
+                            .collect(Collectors.toList());
+
+                    final List<byte[]> actual = new ArrayList<>();
+                    final int[] count = new int[1];
+                    final BasicOutputBuffer output = new BasicOutputBuffer();
+                    packet.visitRecords(new RecordVisitor() {
+                        @Override
+                        public void accept(final Iterable<Value<?>> record) {
+                            actual.add(bytes(ParserBase.serialize(protocol, record)));
+                        }
+
+                        @Override
+                        public void accept(final FlowRecord record) {
+                            actual.add(bytes(ParserBase.serialize(protocol, record, output)));
+                            count[0]++;
+                        }
+                    });
+
+                    assertEquals(expected.size(), actual.size());
+                    for (int i = 0; i < expected.size(); i++) {
+                        assertArrayEquals(expected.get(i), actual.get(i));
+                    }
+
+                    planned += count[0];
+                } while (buffer.hasRemaining());
+            }
+        }
+
+        return planned;
+    }
+
+    private static void benchmark(final Protocol protocol, final PacketParser parser, final Iterable<Object[]> corpus) throws Exception {
+        final List<List<ByteBuffer>> packets = new ArrayList<>();
+        for (final Object[] files : corpus) {
+            packets.add(read(files));
+        }
+
+        // Warm up both paths before measuring
+        for (int i = 0; i < BENCHMARK_ROUNDS / 4; i++) {
+            run(protocol, parser, packets, false);
+            run(protocol, parser, packets, true);
+        }
+
+        long values = 0;
+        long plans = 0;
+        int records = 0;
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            long start = System.nanoTime();
+            records = run(protocol, parser, packets, false);
+            values += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertEquals(records, run(protocol, parser, packets, true));
+            plans += System.nanoTime() - start;
+        }
+
+        LOG.info("{}: {} records per round, values: {} ns/record, plans: {} ns/record",
+                protocol, records,
+                values / BENCHMARK_ROUNDS / records,
+                plans / BENCHMARK_ROUNDS / records);
+    }
+
+    private static int run(final Protocol protocol, final PacketParser parser, final List<List<ByteBuffer>> packets, final boolean planned) throws Exception {
+        final int[] records = new int[1];
+        final BasicOutputBuffer output = new BasicOutputBuffer();
+
+        for (final List<ByteBuffer> buffers : packets) {
+            final Session session = new TcpSession();
+
+            for (final ByteBuffer original : buffers) {
+                final ByteBuffer buffer = original.duplicate();
+                do {
+                    final RecordProvider packet = parser.parse(session, buffer);
+                    if (planned) {
+                        packet.visitRecords(new RecordVisitor() {
+                            @Override
+                            public void accept(final Iterable<Value<?>> record) {
+                                ParserBase.serialize(protocol, record);
+                                records[0]++;
+                            }
+
+                            @Override
+                            public void accept(final FlowRecord record) {
+                                ParserBase.serialize(protocol, record, output);
+                                records[0]++;
+                            }
+                        });
+                    } else {
+                        packet.getRecords().forEach(record -> {
+                            ParserBase.serialize(protocol, record);
+                            records[0]++;
+                        });
+                    }
+                } while (buffer.hasRemaining());
+            }
+        }
+
+        return records[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ByteBuffer> read(final Object[] files) throws IOException {
+        final List<ByteBuffer> buffers = new ArrayList<>();
+        for (final String file : (List<String>) files[0]) {
+            try (final FileChannel channel = FileChannel.open(FOLDER.resolve(file))) {
+                final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                channel.read(buffer);
+                buffer.flip();
+                buffers.add(buffer);
+            }
+        }
+        return buffers;
+    }
+
+    private static byte[] bytes(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.collection.persistence.local;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.opennms.netmgt.collection.api.AttributeType;
+import org.opennms.netmgt.collection.api.CollectionAttributeType;
+import org.opennms.netmgt.collection.api.PersistException;
+import org.opennms.netmgt.collection.api.PersistOperationBuilder;
+import org.opennms.netmgt.collection.api.ResourceIdentifier;
+import org.opennms.netmgt.collection.api.TimeKeeper;
+import org.opennms.netmgt.collection.support.DefaultTimeKeeper;
+import org.opennms.netmgt.model.ResourcePath;
+import org.opennms.netmgt.model.ResourceTypeUtils;
+import org.opennms.netmgt.rrd.RrdRepository;
+import org.opennms.netmgt.timeseries.local.LocalTimeseriesStore;
+import org.opennms.netmgt.timeseries.local.LocalTimeseriesUtils;
+import org.opennms.netmgt.timeseries.local.MetricType;
+import org.opennms.netmgt.timeseries.local.Sample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Used to collect attribute values and meta-data for a given resource
+ * and persist these to the {@link org.opennms.netmgt.timeseries.local.LocalTimeseriesStore} on {@link #commit()}.
+ */
+public class LocalPersistOperationBuilder implements PersistOperationBuilder {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalPersistOperationBuilder.class);
+
+    private final LocalTimeseriesStore m_store;
+    private final RrdRepository m_repository;
+    private final String m_name;
+    private final ResourceIdentifier m_resource;
+
+    private final Map<CollectionAttributeType, Number> m_declarations = Maps.newLinkedHashMap();
+    private final Map<String, String> m_metaData = Maps.newLinkedHashMap();
+    private final Map<ResourcePath, Map<String, String>> m_stringAttributesByPath = Maps.newLinkedHashMap();
+
+    private TimeKeeper m_timeKeeper = new DefaultTimeKeeper();
+
+    public LocalPersistOperationBuilder(LocalTimeseriesStore store, RrdRepository repository, ResourceIdentifier resource, String name) {
+        m_store = store;
+        m_repository = repository;
+        m_resource = resource;
+        m_name = name;
+    }
+
+    @Override
+    public String getName() {
+        return m_name;
+    }
+
+    @Override
+    public void setAttributeValue(CollectionAttributeType attributeType, Number value) {
+        m_declarations.put(attributeType, value);
+    }
+
+    public void persistStringAttribute(ResourcePath path, String key, String value) {
+        m_stringAttributesByPath.computeIfAbsent(path, p -> Maps.newLinkedHashMap()).put(key, value);
+    }
+
+    @Override
+    public void setAttributeMetadata(String metricIdentifier, String name) {
+        if (metricIdentifier == null) {
+            if (name == null) {
+                LOG.warn("Cannot set attribute metadata with null key and null value");
+            } else {
+                LOG.warn("Cannot set attribute metadata with null key and value of: {}", name);
+            }
+        } else {
+            m_metaData.put(metricIdentifier, name);
+        }
+    }
+
+    @Override
+    public void commit() throws PersistException {
+        try {
+            final String resourceId = getResourceId();
+            m_store.insert(getSamplesToInsert());
+            for (Entry<String, String> entry : m_metaData.entrySet()) {
+                m_store.setMetaData(resourceId, entry.getKey(), entry.getValue());
+            }
+            for (Entry<ResourcePath, Map<String, String>> entry : m_stringAttributesByPath.entrySet()) {
+                final String pathId = toResourceId(entry.getKey());
+                for (Entry<String, String> attribute : entry.getValue().entrySet()) {
+                    m_store.setStringAttribute(pathId, attribute.getKey(), attribute.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new PersistException(e);
+        }
+    }
+
+    public List<Sample> getSamplesToInsert() {
+        final List<Sample> samples = Lists.newArrayList();
+        final String resourceId = getResourceId();
+
+        // Convert numeric attributes to samples
+        final long timestamp = m_timeKeeper.getCurrentTime();
+        for (Entry<CollectionAttributeType, Number> entry : m_declarations.entrySet()) {
+            CollectionAttributeType attrType = entry.getKey();
+            MetricType type = mapType(attrType.getType());
+            if (type == null) {
+                // Skip attributes with no type
+                continue;
+            }
+
+            Number value = entry.getValue();
+            if (value == null) {
+                // Skip attributes with no value (see NMS-8103)
+                continue;
+            }
+
+            samples.add(new Sample(resourceId, attrType.getName(), type, timestamp, value.doubleValue()));
+        }
+        return samples;
+    }
+
+    private String getResourceId() {
+        return toResourceId(ResourceTypeUtils.getResourcePathWithRepository(m_repository, ResourcePath.get(m_resource.getPath(), m_name)));
+    }
+
+    public static String toResourceId(ResourcePath path) {
+        return LocalTimeseriesUtils.toResourceId(Arrays.asList(path.elements()));
+    }
+
+    public static MetricType mapType(AttributeType type) {
+        switch(type) {
+            case COUNTER:
+                return MetricType.COUNTER;
+            case STRING:
+                return null;
+            default:
+                return MetricType.GAUGE;
+        }
+    }
+
+    /**
+     * <p>getTimeKeeper</p>
+     *
+     * @return a {@link org.opennms.netmgt.collection.api.TimeKeeper} object.
+     */
+    public TimeKeeper getTimeKeeper() {
+        return m_timeKeeper;
+    }
+
+    /**
+     * <p>setTimeKeeper</p>
+     *
+     * @param timeKeeper a {@link org.opennms.netmgt.collection.api.TimeKeeper} object.
+     */
+    public void setTimeKeeper(TimeKeeper timeKeeper) {
+        m_timeKeeper = timeKeeper;
+    }
+}
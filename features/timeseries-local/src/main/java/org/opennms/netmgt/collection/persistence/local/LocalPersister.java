@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.collection.persistence.local;
+
+import org.opennms.netmgt.collection.api.AbstractPersister;
+import org.opennms.netmgt.collection.api.AttributeGroup;
+import org.opennms.netmgt.collection.api.CollectionResource;
+import org.opennms.netmgt.collection.api.PersistException;
+import org.opennms.netmgt.collection.api.ServiceParameters;
+import org.opennms.netmgt.model.ResourcePath;
+import org.opennms.netmgt.rrd.RrdRepository;
+import org.opennms.netmgt.timeseries.local.LocalTimeseriesStore;
+
+/**
+ * Local time series persistence strategy.
+ *
+ * Both string and numeric attributes are persisted via {@link org.opennms.netmgt.collection.persistence.local.LocalPersistOperationBuilder}.
+ */
+public class LocalPersister extends AbstractPersister {
+
+    private final RrdRepository m_repository;
+    private final LocalTimeseriesStore m_store;
+    private LocalPersistOperationBuilder m_builder;
+
+    protected LocalPersister(ServiceParameters params, RrdRepository repository, LocalTimeseriesStore store) {
+        super(params, repository);
+        m_repository = repository;
+        m_store = store;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void visitGroup(AttributeGroup group) {
+        pushShouldPersist(group);
+        if (shouldPersist()) {
+            // Set the builder before any calls to persistNumericAttribute are made
+            CollectionResource resource = group.getResource();
+            m_builder = new LocalPersistOperationBuilder(m_store, m_repository, resource, group.getName());
+            if (resource.getTimeKeeper() != null) {
+                m_builder.setTimeKeeper(resource.getTimeKeeper());
+            }
+            setBuilder(m_builder);
+        }
+    }
+
+    @Override
+    protected void persistStringAttribute(ResourcePath path, String key, String value) throws PersistException {
+        m_builder.persistStringAttribute(path, key, value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void completeGroup(AttributeGroup group) {
+        if (shouldPersist()) {
+            commitBuilder();
+        }
+        popShouldPersist();
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.collection.persistence.local;
+
+import java.util.Objects;
+
+import javax.inject.Inject;
+
+import org.opennms.netmgt.collection.api.Persister;
+import org.opennms.netmgt.collection.api.PersisterFactory;
+import org.opennms.netmgt.collection.api.ServiceParameters;
+import org.opennms.netmgt.rrd.RrdRepository;
+import org.opennms.netmgt.timeseries.local.LocalTimeseriesStore;
+
+/**
+ * Factory for {@link org.opennms.netmgt.collection.persistence.local.LocalPersister}.
+ */
+public class LocalPersisterFactory implements PersisterFactory {
+
+    private final LocalTimeseriesStore m_store;
+
+    @Inject
+    public LocalPersisterFactory(LocalTimeseriesStore store) {
+        m_store = Objects.requireNonNull(store);
+    }
+
+    @Override
+    public Persister createPersister(ServiceParameters params, RrdRepository repository) {
+        return createPersister(params, repository, false, false, false);
+    }
+
+    @Override
+    public Persister createPersister(ServiceParameters params, RrdRepository repository, boolean dontPersistCounters,
+            boolean forceStoreByGroup, boolean dontReorderAttributes) {
+        // Like Newts, we always store by group and attribute order does not matter
+        LocalPersister persister = new LocalPersister(params, repository, m_store);
+        persister.setIgnorePersist(dontPersistCounters);
+        return persister;
+    }
+}
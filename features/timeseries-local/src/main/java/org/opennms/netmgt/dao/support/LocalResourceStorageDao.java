@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.support;
+
+import static org.opennms.netmgt.collection.persistence.local.LocalPersistOperationBuilder.toResourceId;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.opennms.netmgt.dao.api.ResourceStorageDao;
+import org.opennms.netmgt.model.OnmsAttribute;
+import org.opennms.netmgt.model.ResourcePath;
+import org.opennms.netmgt.model.ResourceTypeUtils;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.netmgt.model.StringPropertyAttribute;
+import org.opennms.netmgt.timeseries.local.LocalTimeseriesStore;
+import org.opennms.netmgt.timeseries.local.LocalTimeseriesUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+
+/**
+ * Resource Storage Dao implementation for the local time series store.
+ *
+ * As with Newts, the resource id of a series is split into two parts:
+ *   bucket: last element of the resource id
+ *   resource path: all the elements before the bucket
+ *
+ * The resource ids are kept sorted by the store, so the tree is walked by
+ * scanning the range of ids sharing the path as a prefix.
+ */
+public class LocalResourceStorageDao implements ResourceStorageDao {
+
+    @Autowired
+    private LocalTimeseriesStore m_store;
+
+    @Override
+    public boolean exists(ResourcePath path, int depth) {
+        Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        return existsWithin(path, depth, depth);
+    }
+
+    @Override
+    public boolean existsWithin(ResourcePath path, int depth) {
+        Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        return existsWithin(path, 0, depth);
+    }
+
+    private boolean existsWithin(ResourcePath path, int minDepth, int maxDepth) {
+        final String prefix = toResourceId(path);
+        final int length = path.elements().length;
+        for (String resourceId : LocalTimeseriesUtils.candidates(m_store.getResourceIds(), prefix)) {
+            if (!LocalTimeseriesUtils.isWithin(resourceId, prefix)) {
+                continue;
+            }
+            // The depth of the resource path, which excludes the bucket
+            final int depth = LocalTimeseriesUtils.toElements(resourceId).length - 1 - length;
+            if (depth >= minDepth && depth <= maxDepth) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<ResourcePath> children(ResourcePath path, int depth) {
+        Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        final Set<ResourcePath> matches = Sets.newTreeSet();
+
+        final String prefix = toResourceId(path);
+        final String[] parentEls = path.elements();
+        for (String resourceId : LocalTimeseriesUtils.candidates(m_store.getResourceIds(), prefix)) {
+            if (!LocalTimeseriesUtils.isWithin(resourceId, prefix)) {
+                continue;
+            }
+            final String[] childEls = LocalTimeseriesUtils.toElements(resourceId);
+            if (childEls.length != parentEls.length + depth + 1) {
+                continue;
+            }
+            matches.add(ResourcePath.get(Arrays.copyOf(childEls, parentEls.length + 1)));
+        }
+
+        return matches;
+    }
+
+    @Override
+    public boolean delete(ResourcePath path) {
+        try {
+            return m_store.delete(toResourceId(path));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public Set<OnmsAttribute> getAttributes(ResourcePath path) {
+        final Set<OnmsAttribute> attributes = Sets.newHashSet();
+
+        // Gather the list of metrics stored directly under the resource path
+        final String prefix = toResourceId(path);
+        final int length = path.elements().length;
+        for (String resourceId : LocalTimeseriesUtils.candidates(m_store.getResourceIds(), prefix)) {
+            if (!LocalTimeseriesUtils.isWithin(resourceId, prefix)
+                    || LocalTimeseriesUtils.toElements(resourceId).length != length + 1) {
+                continue;
+            }
+
+            if (ResourceTypeUtils.isResponseTime(resourceId)) {
+                // Use the last part of the resource id as the dsName
+                // Store the resource id in the rrdFile field
+                final String[] els = LocalTimeseriesUtils.toElements(resourceId);
+                attributes.add(new RrdGraphAttribute(els[els.length - 1], "", resourceId));
+            } else {
+                for (String metric : m_store.getMetrics(resourceId).keySet()) {
+                    // Use the metric name as the dsName
+                    // Store the resource id in the rrdFile field
+                    attributes.add(new RrdGraphAttribute(metric, "", resourceId));
+                }
+            }
+        }
+
+        // Add the resource level attributes to the result set
+        getStringAttributes(path).entrySet().stream()
+            .map(e -> new StringPropertyAttribute(e.getKey(), e.getValue()))
+            .forEach(attributes::add);
+
+        return attributes;
+    }
+
+    @Override
+    public void setStringAttribute(ResourcePath path, String key, String value) {
+        try {
+            m_store.setStringAttribute(toResourceId(path), key, value);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public String getStringAttribute(ResourcePath path, String key) {
+        return getStringAttributes(path).get(key);
+    }
+
+    @Override
+    public Map<String, String> getStringAttributes(ResourcePath path) {
+        return m_store.getStringAttributes(toResourceId(path));
+    }
+
+    @Override
+    public Map<String, String> getMetaData(ResourcePath path) {
+        return m_store.getMetaData(toResourceId(path));
+    }
+
+    @Override
+    public void updateMetricToResourceMappings(ResourcePath path, Map<String, String> metricsNameToResourceNames) {
+        // The metrics are already indexed by the store
+    }
+
+    public void setStore(LocalTimeseriesStore store) {
+        m_store = store;
+    }
+}
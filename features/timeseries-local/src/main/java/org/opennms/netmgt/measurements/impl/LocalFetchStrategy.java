@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
+
+import org.opennms.netmgt.dao.api.ResourceDao;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.MeasurementFetchStrategy;
+import org.opennms.netmgt.measurements.model.Source;
+import org.opennms.netmgt.measurements.utils.Utils;
+import org.opennms.netmgt.model.OnmsResource;
+import org.opennms.netmgt.model.ResourceId;
+import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.netmgt.timeseries.local.LocalTimeseriesStore;
+import org.opennms.netmgt.timeseries.local.MetricType;
+import org.opennms.netmgt.timeseries.local.SeriesData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+/**
+ * Used to retrieve measurements from the {@link org.opennms.netmgt.timeseries.local.LocalTimeseriesStore}.
+ *
+ * The samples are aggregated into buckets of the given step, aligned on multiples of the step.
+ * Counters are converted to rates per second before being aggregated. Buckets without any
+ * samples carry the last value forward, as long as it was recorded within the heartbeat.
+ *
+ * Samples read from downsampled segments are further apart than the heartbeat, so it is
+ * raised to twice the resolution of their segment for them.
+ */
+public class LocalFetchStrategy implements MeasurementFetchStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocalFetchStrategy.class);
+
+    public static final long MIN_STEP_MS = Long.getLong("org.opennms.timeseries.local.query.minimum_step", 5L * 60L * 1000L);
+
+    public static final long DEFAULT_HEARTBEAT_MS = Long.getLong("org.opennms.timeseries.local.query.heartbeat", 450L * 1000L);
+
+    protected enum Aggregation {
+        AVERAGE, MIN, MAX
+    }
+
+    @Autowired
+    private ResourceDao m_resourceDao;
+
+    @Autowired
+    private LocalTimeseriesStore m_store;
+
+    @Override
+    public FetchResults fetch(long start, long end, long step, int maxrows, Long interval, Long heartbeat, List<Source> sources, boolean relaxed) {
+        // Limit the step with a lower bound in order to prevent extremely large queries
+        final long effectiveStep = Math.max(MIN_STEP_MS, step);
+        if (effectiveStep != step) {
+            LOG.warn("Requested step size {} is too small. Using {}.", step, effectiveStep);
+        }
+        final long effectiveHeartbeat = heartbeat != null ? heartbeat : DEFAULT_HEARTBEAT_MS;
+
+        final long first = Math.floorDiv(start, effectiveStep) * effectiveStep;
+        final long last = Math.floorDiv(end, effectiveStep) * effectiveStep;
+        final int N = (int) ((last - first) / effectiveStep) + 1;
+
+        final long[] timestamps = new long[N];
+        for (int i = 0; i < N; i++) {
+            timestamps[i] = first + i * effectiveStep;
+        }
+
+        final Map<String, Object> constants = Maps.newHashMap();
+        final Map<String, double[]> columns = Maps.newHashMap();
+
+        // Group the sources by resource id to avoid calling the ResourceDao
+        // multiple times for the same resource
+        final Map<ResourceId, List<Source>> sourcesByResourceId = sources.stream()
+                .collect(Collectors.groupingBy((source) -> ResourceId.fromString(source.getResourceId())));
+
+        for (Entry<ResourceId, List<Source>> entry : sourcesByResourceId.entrySet()) {
+            final OnmsResource resource = m_resourceDao.getResourceById(entry.getKey());
+            if (resource == null) {
+                if (relaxed) continue;
+                LOG.error("No resource with id: {}", entry.getKey());
+                return null;
+            }
+
+            for (Source source : entry.getValue()) {
+                // Gather the values from strings.properties
+                Utils.convertStringAttributesToConstants(source.getLabel(), resource.getStringPropertyAttributes(), constants);
+
+                // Grab the attribute that matches the source
+                RrdGraphAttribute rrdGraphAttribute = resource.getRrdGraphAttributes().get(source.getAttribute());
+
+                if (rrdGraphAttribute == null && !Strings.isNullOrEmpty(source.getFallbackAttribute())) {
+                    LOG.error("No attribute with name '{}', using fallback-attribute with name '{}'", source.getAttribute(), source.getFallbackAttribute());
+                    source.setAttribute(source.getFallbackAttribute());
+                    source.setFallbackAttribute(null);
+                    rrdGraphAttribute = resource.getRrdGraphAttributes().get(source.getAttribute());
+                }
+
+                if (rrdGraphAttribute == null) {
+                    if (relaxed) continue;
+                    LOG.error("No attribute with name: {}", source.getAttribute());
+                    return null;
+                }
+
+                // The id of the series' resource is stored in the rrdFile attribute
+                String seriesResourceId = rrdGraphAttribute.getRrdRelativePath();
+                // Remove the file separator prefix, added by the RrdGraphAttribute class
+                if (seriesResourceId.startsWith(File.separator)) {
+                    seriesResourceId = seriesResourceId.substring(File.separator.length());
+                }
+
+                // Use the datasource as the metric name if set, otherwise use the name of the attribute
+                final String metricName = source.getDataSource() != null ? source.getDataSource() : source.getAttribute();
+
+                columns.put(source.getLabel(), fetch(m_store, seriesResourceId, metricName, timestamps, effectiveStep, effectiveHeartbeat, toAggregation(source.getAggregation())));
+            }
+        }
+
+        final FetchResults fetchResults = new FetchResults(timestamps, columns, effectiveStep, constants);
+        if (relaxed) {
+            Utils.fillMissingValues(fetchResults, sources);
+        }
+        LOG.trace("Fetch results: {}", fetchResults);
+        return fetchResults;
+    }
+
+    /**
+     * Selects the samples of the series and aggregates them into the buckets starting at the given timestamps.
+     */
+    @VisibleForTesting
+    protected static double[] fetch(final LocalTimeseriesStore store, final String resourceId, final String metric, final long[] timestamps,
+            final long step, final long heartbeat, final Aggregation aggregation) {
+        // Include the samples before the first bucket, used to compute the first rate and to carry the last value forward,
+        // which may come from a downsampled segment
+        final long lookBehind = getHeartbeat(heartbeat, store.getDownsampleStep());
+        final SeriesData data = store.select(resourceId, metric, timestamps[0] - lookBehind, timestamps[timestamps.length - 1] + step - 1);
+        return aggregate(data, timestamps, step, heartbeat, aggregation);
+    }
+
+    /**
+     * Returns the heartbeat to apply to samples of the given resolution.
+     */
+    private static long getHeartbeat(final long heartbeat, final long resolution) {
+        return Math.max(heartbeat, 2 * resolution);
+    }
+
+    /**
+     * Aggregates the samples into the buckets starting at the given timestamps.
+     */
+    @VisibleForTesting
+    protected static double[] aggregate(final SeriesData data, final long[] timestamps, final long step, final long heartbeat, final Aggregation aggregation) {
+        final double[] column = new double[timestamps.length];
+        Arrays.fill(column, Double.NaN);
+        if (data == null || data.size() == 0 || timestamps.length == 0) {
+            return column;
+        }
+
+        final boolean isCounter = data.getType() == MetricType.COUNTER;
+
+        // Skip the first sample of counters, it is only used to compute the first rate
+        int i = isCounter ? 1 : 0;
+
+        long lastTimestamp = Long.MIN_VALUE;
+        long lastHeartbeat = heartbeat;
+        double lastValue = Double.NaN;
+
+        for (int k = 0; k < timestamps.length; k++) {
+            final long bucketStart = timestamps[k];
+            final long bucketEnd = bucketStart + step;
+
+            double acc = Double.NaN;
+            int count = 0;
+            for (; i < data.size() && data.getTimestamp(i) < bucketEnd; i++) {
+                final double value = isCounter ? rate(data, i, heartbeat) : data.getValue(i);
+                if (data.getTimestamp(i) < bucketStart) {
+                    // Before the first bucket
+                    lastTimestamp = data.getTimestamp(i);
+                    lastHeartbeat = getHeartbeat(heartbeat, data.getResolution(i));
+                    lastValue = value;
+                    continue;
+                }
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                if (count == 0) {
+                    acc = value;
+                } else if (aggregation == Aggregation.MIN) {
+                    acc = Math.min(acc, value);
+                } else if (aggregation == Aggregation.MAX) {
+                    acc = Math.max(acc, value);
+                } else {
+                    acc += value;
+                }
+                count++;
+                lastTimestamp = data.getTimestamp(i);
+                lastHeartbeat = getHeartbeat(heartbeat, data.getResolution(i));
+                lastValue = value;
+            }
+
+            if (count > 0) {
+                column[k] = aggregation == Aggregation.AVERAGE ? acc / count : acc;
+            } else if (lastTimestamp != Long.MIN_VALUE && bucketStart - lastTimestamp <= lastHeartbeat) {
+                column[k] = lastValue;
+            }
+        }
+        return column;
+    }
+
+    /**
+     * Computes the rate per second between the sample at the given index and the previous one.
+     */
+    private static double rate(final SeriesData data, final int i, final long heartbeat) {
+        final long elapsed = data.getTimestamp(i) - data.getTimestamp(i - 1);
+        final double delta = data.getValue(i) - data.getValue(i - 1);
+        if (elapsed <= 0 || elapsed > getHeartbeat(heartbeat, Math.max(data.getResolution(i - 1), data.getResolution(i))) || delta < 0) {
+            // Gap in the data, or the counter was reset
+            return Double.NaN;
+        }
+        return delta * 1000d / elapsed;
+    }
+
+    private static Aggregation toAggregation(String fn) {
+        if (fn == null || "average".equalsIgnoreCase(fn) || "avg".equalsIgnoreCase(fn)) {
+            return Aggregation.AVERAGE;
+        } else if ("max".equalsIgnoreCase(fn)) {
+            return Aggregation.MAX;
+        } else if ("min".equalsIgnoreCase(fn)) {
+            return Aggregation.MIN;
+        } else {
+            throw new IllegalArgumentException("Unsupported aggregation function: " + fn);
+        }
+    }
+
+    @VisibleForTesting
+    protected void setResourceDao(ResourceDao resourceDao) {
+        m_resourceDao = resourceDao;
+    }
+
+    @VisibleForTesting
+    protected void setStore(LocalTimeseriesStore store) {
+        m_store = store;
+    }
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Holds the string attributes and the meta-data of the resources.
+ *
+ * The attributes are kept in memory, and changes are recorded in an
+ * append-only file which is rewritten when it is loaded.
+ */
+public class AttributeStore {
+
+    private static final byte STRING_ATTRIBUTE = 1;
+
+    private static final byte META_DATA = 2;
+
+    private static final byte DELETE = 3;
+
+    private final ConcurrentSkipListMap<String, ConcurrentMap<String, String>> m_stringAttributes = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentSkipListMap<String, ConcurrentMap<String, String>> m_metaData = new ConcurrentSkipListMap<>();
+
+    private DataOutputStream m_out;
+
+    public static AttributeStore load(final Path path) throws IOException {
+        final AttributeStore store = new AttributeStore();
+
+        if (Files.exists(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                while (true) {
+                    final byte op;
+                    try {
+                        op = in.readByte();
+                    } catch (final EOFException e) {
+                        break;
+                    }
+                    try {
+                        if (op == STRING_ATTRIBUTE) {
+                            put(store.m_stringAttributes, in.readUTF(), in.readUTF(), in.readUTF());
+                        } else if (op == META_DATA) {
+                            put(store.m_metaData, in.readUTF(), in.readUTF(), in.readUTF());
+                        } else if (op == DELETE) {
+                            final String prefix = in.readUTF();
+                            remove(store.m_stringAttributes, prefix);
+                            remove(store.m_metaData, prefix);
+                        } else {
+                            throw new IOException("Invalid record type " + op + " in " + path);
+                        }
+                    } catch (final EOFException e) {
+                        // A partially written record, the rest of the file is empty
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Rewrite the file with the current values only
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            write(out, STRING_ATTRIBUTE, store.m_stringAttributes);
+            write(out, META_DATA, store.m_metaData);
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        store.m_out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.APPEND)));
+        return store;
+    }
+
+    private static void write(final DataOutputStream out, final byte op, final Map<String, ConcurrentMap<String, String>> attributes) throws IOException {
+        for (final Map.Entry<String, ConcurrentMap<String, String>> resource : attributes.entrySet()) {
+            for (final Map.Entry<String, String> attribute : resource.getValue().entrySet()) {
+                out.writeByte(op);
+                out.writeUTF(resource.getKey());
+                out.writeUTF(attribute.getKey());
+                out.writeUTF(attribute.getValue());
+            }
+        }
+    }
+
+    private static boolean put(final ConcurrentSkipListMap<String, ConcurrentMap<String, String>> attributes,
+                               final String resourceId, final String key, final String value) {
+        final String previous = attributes.computeIfAbsent(resourceId, k -> new ConcurrentHashMap<>()).put(key, value);
+        return !Objects.equals(previous, value);
+    }
+
+    private static void remove(final ConcurrentSkipListMap<String, ConcurrentMap<String, String>> attributes, final String prefix) {
+        for (final Iterator<String> it = LocalTimeseriesUtils.candidates(attributes.keySet(), prefix).iterator(); it.hasNext(); ) {
+            if (LocalTimeseriesUtils.isWithin(it.next(), prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    public void setStringAttribute(final String resourceId, final String key, final String value) throws IOException {
+        set(STRING_ATTRIBUTE, m_stringAttributes, resourceId, key, value);
+    }
+
+    public void setMetaData(final String resourceId, final String key, final String value) throws IOException {
+        set(META_DATA, m_metaData, resourceId, key, value);
+    }
+
+    private synchronized void set(final byte op, final ConcurrentSkipListMap<String, ConcurrentMap<String, String>> attributes,
+                                  final String resourceId, final String key, final String value) throws IOException {
+        // Only record the changes, the same values are set over and over again on every collection
+        if (put(attributes, resourceId, key, value)) {
+            m_out.writeByte(op);
+            m_out.writeUTF(resourceId);
+            m_out.writeUTF(key);
+            m_out.writeUTF(value);
+            m_out.flush();
+        }
+    }
+
+    public Map<String, String> getStringAttributes(final String resourceId) {
+        return get(m_stringAttributes, resourceId);
+    }
+
+    public Map<String, String> getMetaData(final String resourceId) {
+        return get(m_metaData, resourceId);
+    }
+
+    private static Map<String, String> get(final Map<String, ConcurrentMap<String, String>> attributes, final String resourceId) {
+        final Map<String, String> values = attributes.get(resourceId);
+        return values != null ? Collections.unmodifiableMap(values) : Collections.emptyMap();
+    }
+
+    /**
+     * Deletes the attributes of all the resources within the given prefix.
+     */
+    public synchronized void delete(final String prefix) throws IOException {
+        remove(m_stringAttributes, prefix);
+        remove(m_metaData, prefix);
+        m_out.writeByte(DELETE);
+        m_out.writeUTF(prefix);
+        m_out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        m_out.close();
+    }
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Iterates over the samples compressed by a {@link GorillaEncoder}.
+ *
+ * The encoded samples are read using absolute positions so that the decoder
+ * can be used on a region of a shared (memory-mapped) buffer without
+ * changing its position.
+ */
+public class GorillaDecoder {
+
+    private final ByteBuffer m_buffer;
+
+    private final int m_offset;
+
+    private final int m_count;
+
+    private long m_bitPosition = 0;
+
+    private int m_read = 0;
+
+    private long m_timestamp;
+
+    private long m_delta;
+
+    private long m_value;
+
+    private int m_leadingZeros;
+
+    private int m_trailingZeros;
+
+    public GorillaDecoder(final ByteBuffer buffer, final int offset, final int count) {
+        m_buffer = buffer;
+        m_offset = offset;
+        m_count = count;
+    }
+
+    public GorillaDecoder(final byte[] bytes, final int count) {
+        this(ByteBuffer.wrap(bytes), 0, count);
+    }
+
+    public boolean hasNext() {
+        return m_read < m_count;
+    }
+
+    /**
+     * Decodes the next sample. Use {@link #getTimestamp()} and {@link #getValue()} to retrieve it.
+     */
+    public void next() {
+        if (m_read == 0) {
+            m_timestamp = readBits(64);
+            m_value = readBits(64);
+        } else {
+            m_delta += readDeltaOfDelta();
+            m_timestamp += m_delta;
+            m_value ^= readValue();
+        }
+        m_read++;
+    }
+
+    private long readDeltaOfDelta() {
+        if (!readBit()) {
+            return 0;
+        } else if (!readBit()) {
+            return readSigned(7);
+        } else if (!readBit()) {
+            return readSigned(9);
+        } else if (!readBit()) {
+            return readSigned(12);
+        } else if (!readBit()) {
+            return readSigned(32);
+        } else {
+            return readBits(64);
+        }
+    }
+
+    private long readValue() {
+        if (!readBit()) {
+            return 0;
+        }
+        if (readBit()) {
+            m_leadingZeros = (int) readBits(5);
+            final int meaningfulBits = (int) readBits(6) + 1;
+            m_trailingZeros = 64 - m_leadingZeros - meaningfulBits;
+        }
+        return readBits(64 - m_leadingZeros - m_trailingZeros) << m_trailingZeros;
+    }
+
+    private long readSigned(final int bits) {
+        final long value = readBits(bits);
+        // Sign extend
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    private long readBits(int bits) {
+        long value = 0;
+        while (bits > 0) {
+            final int available = 8 - (int) (m_bitPosition & 7);
+            final int n = Math.min(available, bits);
+            final int b = m_buffer.get(m_offset + (int) (m_bitPosition >>> 3)) & 0xFF;
+            value = (value << n) | ((b >>> (available - n)) & ((1 << n) - 1));
+
+            m_bitPosition += n;
+            bits -= n;
+        }
+        return value;
+    }
+
+    public long getTimestamp() {
+        return m_timestamp;
+    }
+
+    public double getValue() {
+        return Double.longBitsToDouble(m_value);
+    }
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.util.Arrays;
+
+/**
+ * Compresses a series of (timestamp, value) pairs using the delta-of-delta
+ * encoding for the timestamps and the XOR encoding for the values described
+ * in "Gorilla: A Fast, Scalable, In-Memory Time Series Database".
+ *
+ * Samples must be appended in strictly increasing timestamp order.
+ * Instances are not thread safe.
+ *
+ * @see GorillaDecoder
+ */
+public class GorillaEncoder {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] m_buffer = new byte[INITIAL_CAPACITY];
+
+    private long m_bitPosition = 0;
+
+    private int m_count = 0;
+
+    private long m_lastTimestamp;
+
+    private long m_lastDelta;
+
+    private long m_lastValue;
+
+    private int m_lastLeadingZeros = Integer.MAX_VALUE;
+
+    private int m_lastTrailingZeros = 0;
+
+    public void append(final long timestamp, final double value) {
+        final long valueBits = Double.doubleToRawLongBits(value);
+
+        if (m_count == 0) {
+            writeBits(timestamp, 64);
+            writeBits(valueBits, 64);
+        } else {
+            if (timestamp <= m_lastTimestamp) {
+                throw new IllegalArgumentException("Timestamp " + timestamp + " is not after the last timestamp " + m_lastTimestamp);
+            }
+            final long delta = timestamp - m_lastTimestamp;
+            writeDeltaOfDelta(delta - m_lastDelta);
+            writeValue(valueBits ^ m_lastValue);
+            m_lastDelta = delta;
+        }
+
+        m_lastTimestamp = timestamp;
+        m_lastValue = valueBits;
+        m_count++;
+    }
+
+    private void writeDeltaOfDelta(final long dod) {
+        if (dod == 0) {
+            writeBits(0b0, 1);
+        } else if (fits(dod, 7)) {
+            writeBits(0b10, 2);
+            writeBits(dod, 7);
+        } else if (fits(dod, 9)) {
+            writeBits(0b110, 3);
+            writeBits(dod, 9);
+        } else if (fits(dod, 12)) {
+            writeBits(0b1110, 4);
+            writeBits(dod, 12);
+        } else if (fits(dod, 32)) {
+            writeBits(0b11110, 5);
+            writeBits(dod, 32);
+        } else {
+            writeBits(0b11111, 5);
+            writeBits(dod, 64);
+        }
+    }
+
+    private void writeValue(final long xor) {
+        if (xor == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+
+        final int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        final int trailingZeros = Long.numberOfTrailingZeros(xor);
+
+        if (leadingZeros >= m_lastLeadingZeros && trailingZeros >= m_lastTrailingZeros) {
+            // The meaningful bits fit in the window of the previous value
+            writeBits(0b10, 2);
+            writeBits(xor >>> m_lastTrailingZeros, 64 - m_lastLeadingZeros - m_lastTrailingZeros);
+        } else {
+            final int meaningfulBits = 64 - leadingZeros - trailingZeros;
+            writeBits(0b11, 2);
+            writeBits(leadingZeros, 5);
+            writeBits(meaningfulBits - 1, 6);
+            writeBits(xor >>> trailingZeros, meaningfulBits);
+            m_lastLeadingZeros = leadingZeros;
+            m_lastTrailingZeros = trailingZeros;
+        }
+    }
+
+    private static boolean fits(final long value, final int bits) {
+        final long limit = 1L << (bits - 1);
+        return value >= -limit && value < limit;
+    }
+
+    private void writeBits(final long value, int bits) {
+        while (bits > 0) {
+            final int index = (int) (m_bitPosition >>> 3);
+            if (index >= m_buffer.length) {
+                m_buffer = Arrays.copyOf(m_buffer, m_buffer.length * 2);
+            }
+
+            final int free = 8 - (int) (m_bitPosition & 7);
+            final int n = Math.min(free, bits);
+            final int chunk = (int) ((value >>> (bits - n)) & ((1 << n) - 1));
+            m_buffer[index] |= (byte) (chunk << (free - n));
+
+            m_bitPosition += n;
+            bits -= n;
+        }
+    }
+
+    public int getCount() {
+        return m_count;
+    }
+
+    public long getLastTimestamp() {
+        return m_lastTimestamp;
+    }
+
+    /**
+     * Returns the number of bytes used by the encoded samples.
+     */
+    public int getSize() {
+        return (int) ((m_bitPosition + 7) >>> 3);
+    }
+
+    /**
+     * Returns a copy of the encoded samples.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(m_buffer, getSize());
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds the samples of a partition which has not been written to a
+ * {@link Segment} yet, compressed in memory and logged to a
+ * {@link WriteAheadLog}.
+ */
+public class HeadPartition {
+
+    public enum Result {
+        APPENDED,
+        OUT_OF_ORDER,
+        SEALED
+    }
+
+    private final long m_start;
+
+    private final long m_end;
+
+    private final WriteAheadLog m_log;
+
+    private final Map<Integer, GorillaEncoder> m_encoders = new ConcurrentHashMap<>();
+
+    /**
+     * Appends hold the read lock, sealing the partition takes the write lock.
+     */
+    private final ReadWriteLock m_sealLock = new ReentrantReadWriteLock();
+
+    private boolean m_sealed = false;
+
+    public HeadPartition(final long start, final long end, final WriteAheadLog log) {
+        m_start = start;
+        m_end = end;
+        m_log = log;
+    }
+
+    public long getStart() {
+        return m_start;
+    }
+
+    public long getEnd() {
+        return m_end;
+    }
+
+    public WriteAheadLog getLog() {
+        return m_log;
+    }
+
+    /**
+     * Appends a sample to the series.
+     *
+     * @param log whether or not to write the sample to the log, false when replaying the log
+     */
+    public Result append(final int seriesId, final long timestamp, final double value, final boolean log) throws IOException {
+        if (timestamp < m_start || timestamp >= m_end) {
+            throw new IllegalArgumentException("Timestamp " + timestamp + " is outside of the partition [" + m_start + ", " + m_end + ")");
+        }
+
+        m_sealLock.readLock().lock();
+        try {
+            if (m_sealed) {
+                return Result.SEALED;
+            }
+
+            final GorillaEncoder encoder = m_encoders.computeIfAbsent(seriesId, k -> new GorillaEncoder());
+            synchronized (encoder) {
+                if (encoder.getCount() > 0 && timestamp <= encoder.getLastTimestamp()) {
+                    return Result.OUT_OF_ORDER;
+                }
+                if (log) {
+                    m_log.append(seriesId, timestamp, value);
+                }
+                encoder.append(timestamp, value);
+            }
+            return Result.APPENDED;
+        } finally {
+            m_sealLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a decoder over a snapshot of the samples of the given series, or null if there are none.
+     */
+    public GorillaDecoder decoder(final int seriesId) {
+        final GorillaEncoder encoder = m_encoders.get(seriesId);
+        if (encoder == null) {
+            return null;
+        }
+        synchronized (encoder) {
+            return new GorillaDecoder(encoder.toByteArray(), encoder.getCount());
+        }
+    }
+
+    public boolean overlaps(final long start, final long end) {
+        return m_start <= end && m_end > start;
+    }
+
+    public int getSeriesCount() {
+        return m_encoders.size();
+    }
+
+    /**
+     * Prevents any further samples from being appended, and returns the encoded samples of all series.
+     */
+    public SortedMap<Integer, Segment.Chunk> seal() {
+        m_sealLock.writeLock().lock();
+        try {
+            m_sealed = true;
+        } finally {
+            m_sealLock.writeLock().unlock();
+        }
+
+        final SortedMap<Integer, Segment.Chunk> chunks = new TreeMap<>();
+        for (final Map.Entry<Integer, GorillaEncoder> entry : m_encoders.entrySet()) {
+            chunks.put(entry.getKey(), new Segment.Chunk(entry.getValue().getCount(), entry.getValue().toByteArray()));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,577 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * A single-node time series store.
+ *
+ * Samples are appended to in-memory, compressed {@link HeadPartition}s covering
+ * a fixed duration of time, and logged to a memory-mapped {@link WriteAheadLog}.
+ * Once a partition is over, and the grace period for late samples has elapsed,
+ * it is sealed: its samples are written to an immutable, memory-mapped
+ * {@link Segment} and its log is deleted.
+ *
+ * A background task seals the partitions, merges the segments of a day into a
+ * single, downsampled segment once they are older than the configured age, and
+ * deletes the segments which are older than the retention period.
+ *
+ * Samples which are older than the last sealed partition, or not after the last
+ * sample of their series, are dropped.
+ */
+public class LocalTimeseriesStore {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalTimeseriesStore.class);
+
+    public static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    public static final long DEFAULT_PARTITION_DURATION_MS = TimeUnit.HOURS.toMillis(2);
+
+    public static final long DEFAULT_GRACE_PERIOD_MS = TimeUnit.MINUTES.toMillis(10);
+
+    public static final int DEFAULT_LOG_FILE_SIZE = 16 * 1024 * 1024;
+
+    public static final long DEFAULT_DOWNSAMPLE_AFTER_MS = TimeUnit.DAYS.toMillis(7);
+
+    public static final long DEFAULT_DOWNSAMPLE_STEP_MS = TimeUnit.HOURS.toMillis(1);
+
+    public static final long DEFAULT_RETENTION_MS = TimeUnit.DAYS.toMillis(365);
+
+    public static final long DEFAULT_MAINTENANCE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String SERIES_FILE = "series";
+
+    private static final String ATTRIBUTES_FILE = "attributes";
+
+    private static final String SEGMENTS_DIRECTORY = "segments";
+
+    private static final String LOG_DIRECTORY = "wal";
+
+    private final Path m_directory;
+
+    private final Path m_segmentsDirectory;
+
+    private final Path m_logDirectory;
+
+    private long m_partitionDuration = DEFAULT_PARTITION_DURATION_MS;
+
+    private long m_gracePeriod = DEFAULT_GRACE_PERIOD_MS;
+
+    private int m_logFileSize = DEFAULT_LOG_FILE_SIZE;
+
+    private long m_downsampleAfter = DEFAULT_DOWNSAMPLE_AFTER_MS;
+
+    private long m_downsampleStep = DEFAULT_DOWNSAMPLE_STEP_MS;
+
+    private long m_retention = DEFAULT_RETENTION_MS;
+
+    private long m_maintenanceInterval = DEFAULT_MAINTENANCE_INTERVAL_MS;
+
+    private SeriesIndex m_series;
+
+    private AttributeStore m_attributes;
+
+    private final ConcurrentSkipListMap<Long, HeadPartition> m_heads = new ConcurrentSkipListMap<>();
+
+    /**
+     * The segments, ordered by start time. The list is replaced as a whole when segments are added or removed.
+     */
+    private volatile List<Segment> m_segments = Collections.emptyList();
+
+    private final Object m_segmentsLock = new Object();
+
+    /**
+     * Samples before this time belong to partitions which have already been sealed.
+     */
+    private volatile long m_sealedBefore = Long.MIN_VALUE;
+
+    private ScheduledExecutorService m_maintenance;
+
+    private final Meter m_samplesInserted;
+
+    private final Meter m_samplesDropped;
+
+    private final Meter m_samplesOutOfOrder;
+
+    private final Timer m_sealTimer;
+
+    private final Timer m_downsampleTimer;
+
+    public LocalTimeseriesStore(final String directory, final MetricRegistry metrics) {
+        this(Paths.get(directory), metrics);
+    }
+
+    public LocalTimeseriesStore(final Path directory, final MetricRegistry metrics) {
+        m_directory = Objects.requireNonNull(directory);
+        m_segmentsDirectory = directory.resolve(SEGMENTS_DIRECTORY);
+        m_logDirectory = directory.resolve(LOG_DIRECTORY);
+
+        m_samplesInserted = metrics.meter("samples-inserted");
+        m_samplesDropped = metrics.meter("samples-dropped");
+        m_samplesOutOfOrder = metrics.meter("samples-out-of-order");
+        m_sealTimer = metrics.timer("seal");
+        m_downsampleTimer = metrics.timer("downsample");
+        metrics.register("series", (Gauge<Integer>) () -> m_series != null ? m_series.size() : 0);
+        metrics.register("head-partitions", (Gauge<Integer>) m_heads::size);
+        metrics.register("segments", (Gauge<Integer>) () -> m_segments.size());
+    }
+
+    public synchronized void start() throws IOException {
+        if (DAY_MS % m_partitionDuration != 0) {
+            throw new IllegalArgumentException("The partition duration must evenly divide a day: " + m_partitionDuration);
+        }
+        if (m_downsampleStep <= 0 || DAY_MS % m_downsampleStep != 0) {
+            throw new IllegalArgumentException("The downsample step must evenly divide a day: " + m_downsampleStep);
+        }
+
+        Files.createDirectories(m_segmentsDirectory);
+        Files.createDirectories(m_logDirectory);
+
+        m_series = SeriesIndex.load(m_directory.resolve(SERIES_FILE));
+        m_attributes = AttributeStore.load(m_directory.resolve(ATTRIBUTES_FILE));
+
+        // Load the segments, removing the leftovers of interrupted writes
+        final List<Segment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(m_segmentsDirectory)) {
+            for (final Path path : paths) {
+                if (path.getFileName().toString().endsWith(Segment.EXTENSION)) {
+                    final Segment segment = Segment.open(path);
+                    segments.add(segment);
+                    m_sealedBefore = Math.max(m_sealedBefore, segment.getEnd());
+                } else {
+                    Files.delete(path);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(Segment::getStart));
+        m_segments = Collections.unmodifiableList(segments);
+
+        // Recover the samples of the partitions which were not sealed
+        final SortedMap<Long, List<Path>> logs = new TreeMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(m_logDirectory)) {
+            for (final Path path : paths) {
+                if (WriteAheadLog.isLog(path)) {
+                    logs.computeIfAbsent(WriteAheadLog.getPartition(path), k -> new ArrayList<>()).add(path);
+                }
+            }
+        }
+        for (final Map.Entry<Long, List<Path>> entry : logs.entrySet()) {
+            if (entry.getKey() < m_sealedBefore) {
+                // The partition was sealed, but the store stopped before its log was deleted
+                for (final Path path : entry.getValue()) {
+                    Files.delete(path);
+                }
+                continue;
+            }
+
+            entry.getValue().sort(Comparator.comparingInt(WriteAheadLog::getSequence));
+            final int nextSequence = WriteAheadLog.getSequence(entry.getValue().get(entry.getValue().size() - 1)) + 1;
+
+            final HeadPartition head = newHead(entry.getKey(), nextSequence);
+            for (final Path path : entry.getValue()) {
+                head.getLog().adopt(path);
+                WriteAheadLog.replay(path, (seriesId, timestamp, value) -> {
+                    if (m_series.get(seriesId) == null || timestamp < head.getStart() || timestamp >= head.getEnd()) {
+                        // The series was deleted, or the record was only partially written
+                        return;
+                    }
+                    try {
+                        head.append(seriesId, timestamp, value, false);
+                    } catch (final IOException e) {
+                        // Not reached, nothing is logged while replaying
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            m_heads.put(entry.getKey(), head);
+        }
+        LOG.info("Loaded {} series, {} segments and {} partitions from {}.", m_series.size(), m_segments.size(), m_heads.size(), m_directory);
+
+        m_maintenance = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "LocalTimeseriesStore-Maintenance"));
+        m_maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                maintain(System.currentTimeMillis());
+            } catch (final Throwable t) {
+                LOG.error("Maintenance of the local time series store failed.", t);
+            }
+        }, m_maintenanceInterval, m_maintenanceInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() throws IOException, InterruptedException {
+        if (m_maintenance != null) {
+            m_maintenance.shutdown();
+            m_maintenance.awaitTermination(1, TimeUnit.MINUTES);
+            m_maintenance = null;
+        }
+        for (final HeadPartition head : m_heads.values()) {
+            head.getLog().force();
+        }
+        if (m_series != null) {
+            m_series.close();
+        }
+        if (m_attributes != null) {
+            m_attributes.close();
+        }
+    }
+
+    private HeadPartition newHead(final long start, final int sequence) {
+        return new HeadPartition(start, start + m_partitionDuration, new WriteAheadLog(m_logDirectory, start, m_logFileSize, sequence));
+    }
+
+    public void insert(final Collection<Sample> samples) throws IOException {
+        for (final Sample sample : samples) {
+            final SeriesIndex.Series series = m_series.getOrCreate(sample.getResourceId(), sample.getMetric(), sample.getType());
+
+            final long partition = Math.floorDiv(sample.getTimestamp(), m_partitionDuration) * m_partitionDuration;
+            final HeadPartition head = m_heads.computeIfAbsent(partition, k -> k < m_sealedBefore ? null : newHead(k, 0));
+            if (head == null) {
+                m_samplesDropped.mark();
+                continue;
+            }
+
+            switch (head.append(series.getId(), sample.getTimestamp(), sample.getValue(), true)) {
+                case APPENDED:
+                    m_samplesInserted.mark();
+                    break;
+                case OUT_OF_ORDER:
+                    m_samplesOutOfOrder.mark();
+                    break;
+                case SEALED:
+                    m_samplesDropped.mark();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the samples of the given series within [start, end].
+     *
+     * @return the samples, or null if the series does not exist
+     */
+    public SeriesData select(final String resourceId, final String metric, final long start, final long end) {
+        final SeriesIndex.Series series = m_series.get(resourceId, metric);
+        if (series == null) {
+            return null;
+        }
+
+        final SeriesData data = new SeriesData(series.getType());
+        for (final Segment segment : m_segments) {
+            if (segment.overlaps(start, end)) {
+                final GorillaDecoder decoder = segment.decoder(series.getId());
+                if (decoder != null) {
+                    data.addAll(decoder, start, end, segment.getResolution());
+                }
+            }
+        }
+        for (final HeadPartition head : m_heads.values()) {
+            if (head.overlaps(start, end)) {
+                final GorillaDecoder decoder = head.decoder(series.getId());
+                if (decoder != null) {
+                    data.addAll(decoder, start, end, 0);
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Seals the partitions which are over, downsamples the days which are old enough and
+     * removes the segments which are past the retention period.
+     */
+    public void maintain(final long now) throws IOException {
+        seal(now);
+        downsample(now);
+        expire(now);
+    }
+
+    private void seal(final long now) throws IOException {
+        for (final HeadPartition head : m_heads.values()) {
+            if (head.getEnd() + m_gracePeriod > now) {
+                // The partitions are sorted, none of the following are over either
+                break;
+            }
+
+            try (Timer.Context ctx = m_sealTimer.time()) {
+                // Any samples for this partition which are still being inserted are dropped from now on
+                m_sealedBefore = Math.max(m_sealedBefore, head.getEnd());
+
+                final SortedMap<Integer, Segment.Chunk> chunks = head.seal();
+                if (!chunks.isEmpty()) {
+                    addSegments(Collections.singletonList(Segment.write(m_segmentsDirectory, head.getStart(), head.getEnd(), 0, chunks)),
+                            Collections.emptyList());
+                }
+                m_heads.remove(head.getStart());
+                head.getLog().delete();
+                LOG.debug("Sealed the partition starting at {} with {} series.", head.getStart(), chunks.size());
+            }
+        }
+    }
+
+    private void downsample(final long now) throws IOException {
+        // Group the raw segments of the days which are old enough
+        final SortedMap<Long, List<Segment>> days = new TreeMap<>();
+        for (final Segment segment : m_segments) {
+            final long day = Math.floorDiv(segment.getStart(), DAY_MS) * DAY_MS;
+            if (segment.getResolution() == 0 && day + DAY_MS + m_downsampleAfter <= now) {
+                days.computeIfAbsent(day, k -> new ArrayList<>()).add(segment);
+            }
+        }
+
+        for (final Map.Entry<Long, List<Segment>> entry : days.entrySet()) {
+            try (Timer.Context ctx = m_downsampleTimer.time()) {
+                final long day = entry.getKey();
+
+                // Include the segment already downsampled for this day, if any
+                final List<Segment> sources = new ArrayList<>(entry.getValue());
+                for (final Segment segment : m_segments) {
+                    if (segment.getResolution() > 0 && segment.getStart() == day) {
+                        sources.add(segment);
+                    }
+                }
+                sources.sort(Comparator.comparingLong(Segment::getStart).thenComparingLong(Segment::getResolution));
+
+                final NavigableSet<Integer> seriesIds = new TreeSet<>();
+                for (final Segment segment : sources) {
+                    for (final int seriesId : segment.getSeriesIds()) {
+                        seriesIds.add(seriesId);
+                    }
+                }
+
+                final SortedMap<Integer, Segment.Chunk> chunks = new TreeMap<>();
+                for (final int seriesId : seriesIds) {
+                    final SeriesIndex.Series series = m_series.get(seriesId);
+                    if (series == null) {
+                        // The series was deleted
+                        continue;
+                    }
+
+                    final SeriesData data = new SeriesData(series.getType());
+                    for (final Segment segment : sources) {
+                        final GorillaDecoder decoder = segment.decoder(seriesId);
+                        if (decoder != null) {
+                            data.addAll(decoder, Long.MIN_VALUE, Long.MAX_VALUE, segment.getResolution());
+                        }
+                    }
+
+                    final GorillaEncoder encoder = downsample(data, m_downsampleStep);
+                    if (encoder.getCount() > 0) {
+                        chunks.put(seriesId, new Segment.Chunk(encoder.getCount(), encoder.toByteArray()));
+                    }
+                }
+
+                final List<Segment> added = chunks.isEmpty() ? Collections.emptyList()
+                        : Collections.singletonList(Segment.write(m_segmentsDirectory, day, day + DAY_MS, m_downsampleStep, chunks));
+                addSegments(added, sources);
+                for (final Segment segment : sources) {
+                    if (!added.isEmpty() && segment.getPath().equals(added.get(0).getPath())) {
+                        // Replaced in place
+                        continue;
+                    }
+                    Files.deleteIfExists(segment.getPath());
+                }
+                LOG.debug("Downsampled {} segments of the day starting at {}.", sources.size(), day);
+            }
+        }
+    }
+
+    /**
+     * Downsamples the given samples to one sample per step. Gauges are averaged, and
+     * the last value of counters is kept, along with its timestamp, so that rates can
+     * still be derived from the downsampled values.
+     */
+    protected static GorillaEncoder downsample(final SeriesData data, final long step) {
+        final GorillaEncoder encoder = new GorillaEncoder();
+
+        int i = 0;
+        while (i < data.size()) {
+            final long bucket = Math.floorDiv(data.getTimestamp(i), step) * step;
+
+            double sum = 0;
+            int count = 0;
+            int last = i;
+            for (; i < data.size() && data.getTimestamp(i) < bucket + step; i++) {
+                if (!Double.isNaN(data.getValue(i))) {
+                    sum += data.getValue(i);
+                    count++;
+                }
+                last = i;
+            }
+
+            if (data.getType() == MetricType.COUNTER) {
+                encoder.append(data.getTimestamp(last), data.getValue(last));
+            } else {
+                encoder.append(bucket, count > 0 ? sum / count : Double.NaN);
+            }
+        }
+        return encoder;
+    }
+
+    private void expire(final long now) throws IOException {
+        final List<Segment> expired = new ArrayList<>();
+        for (final Segment segment : m_segments) {
+            if (segment.getEnd() + m_retention <= now) {
+                expired.add(segment);
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        addSegments(Collections.emptyList(), expired);
+        for (final Segment segment : expired) {
+            Files.deleteIfExists(segment.getPath());
+        }
+        LOG.debug("Removed {} expired segments.", expired.size());
+    }
+
+    private void addSegments(final List<Segment> added, final List<Segment> removed) {
+        synchronized (m_segmentsLock) {
+            final List<Segment> segments = new ArrayList<>(m_segments);
+            segments.removeAll(removed);
+            segments.addAll(added);
+            segments.sort(Comparator.comparingLong(Segment::getStart).thenComparingLong(Segment::getResolution));
+            m_segments = Collections.unmodifiableList(segments);
+        }
+    }
+
+    /**
+     * Returns the ids of all the resources having at least one series, in ascending order.
+     */
+    public NavigableSet<String> getResourceIds() {
+        return m_series.getResourceIds();
+    }
+
+    /**
+     * Returns the metrics of the given resource, along with their type.
+     */
+    public Map<String, MetricType> getMetrics(final String resourceId) {
+        final Map<String, MetricType> metrics = new TreeMap<>();
+        for (final SeriesIndex.Series series : m_series.getSeries(resourceId).values()) {
+            metrics.put(series.getMetric(), series.getType());
+        }
+        return metrics;
+    }
+
+    /**
+     * Deletes the series and the attributes of all the resources within the given prefix.
+     *
+     * The samples remain in the segments until they are downsampled or expire, but are no longer accessible.
+     *
+     * @return true if any series were deleted
+     */
+    public boolean delete(final String prefix) throws IOException {
+        final boolean deleted = m_series.delete(prefix);
+        m_attributes.delete(prefix);
+        return deleted;
+    }
+
+    public void setStringAttribute(final String resourceId, final String key, final String value) throws IOException {
+        m_attributes.setStringAttribute(resourceId, key, value);
+    }
+
+    public Map<String, String> getStringAttributes(final String resourceId) {
+        return m_attributes.getStringAttributes(resourceId);
+    }
+
+    public void setMetaData(final String resourceId, final String key, final String value) throws IOException {
+        m_attributes.setMetaData(resourceId, key, value);
+    }
+
+    public Map<String, String> getMetaData(final String resourceId) {
+        return m_attributes.getMetaData(resourceId);
+    }
+
+    public List<Segment> getSegments() {
+        return m_segments;
+    }
+
+    public Collection<HeadPartition> getHeadPartitions() {
+        return Collections.unmodifiableCollection(m_heads.values());
+    }
+
+    public void setPartitionDuration(final long partitionDuration) {
+        m_partitionDuration = partitionDuration;
+    }
+
+    public void setGracePeriod(final long gracePeriod) {
+        m_gracePeriod = gracePeriod;
+    }
+
+    public void setLogFileSize(final int logFileSize) {
+        m_logFileSize = logFileSize;
+    }
+
+    public void setDownsampleAfter(final long downsampleAfter) {
+        m_downsampleAfter = downsampleAfter;
+    }
+
+    public long getDownsampleStep() {
+        return m_downsampleStep;
+    }
+
+    public void setDownsampleStep(final long downsampleStep) {
+        m_downsampleStep = downsampleStep;
+    }
+
+    public void setRetention(final long retention) {
+        m_retention = retention;
+    }
+
+    public void setMaintenanceInterval(final long maintenanceInterval) {
+        m_maintenanceInterval = maintenanceInterval;
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.util.NavigableSet;
+
+/**
+ * Resource ids used by the local time series store are the elements of the
+ * resource path, joined with '/'.
+ */
+public abstract class LocalTimeseriesUtils {
+
+    public static final char SEPARATOR = '/';
+
+    protected LocalTimeseriesUtils() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static String toResourceId(final Iterable<String> elements) {
+        return String.join(String.valueOf(SEPARATOR), elements);
+    }
+
+    public static String[] toElements(final String resourceId) {
+        if (resourceId.isEmpty()) {
+            return new String[0];
+        }
+        return resourceId.split(String.valueOf(SEPARATOR));
+    }
+
+    /**
+     * Returns true if the given resource id is equal to the given prefix, or is a descendant of it.
+     */
+    public static boolean isWithin(final String resourceId, final String prefix) {
+        if (prefix.isEmpty()) {
+            return true;
+        }
+        return resourceId.startsWith(prefix)
+                && (resourceId.length() == prefix.length() || resourceId.charAt(prefix.length()) == SEPARATOR);
+    }
+
+    /**
+     * Returns the resource ids of the given sorted set which may be within the given prefix.
+     * The candidates must still be checked using {@link #isWithin(String, String)}.
+     */
+    public static NavigableSet<String> candidates(final NavigableSet<String> resourceIds, final String prefix) {
+        if (prefix.isEmpty()) {
+            return resourceIds;
+        }
+        // All the descendants sort between the prefix and the prefix followed by the character after the separator
+        return resourceIds.subSet(prefix, true, prefix + (char) (SEPARATOR + 1), false);
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.util.Objects;
+
+/**
+ * A single value of a metric, at a given point in time.
+ */
+public class Sample {
+    private final String m_resourceId;
+    private final String m_metric;
+    private final MetricType m_type;
+    private final long m_timestamp;
+    private final double m_value;
+
+    public Sample(final String resourceId, final String metric, final MetricType type, final long timestamp, final double value) {
+        m_resourceId = Objects.requireNonNull(resourceId);
+        m_metric = Objects.requireNonNull(metric);
+        m_type = Objects.requireNonNull(type);
+        m_timestamp = timestamp;
+        m_value = value;
+    }
+
+    public String getResourceId() {
+        return m_resourceId;
+    }
+
+    public String getMetric() {
+        return m_metric;
+    }
+
+    public MetricType getType() {
+        return m_type;
+    }
+
+    public long getTimestamp() {
+        return m_timestamp;
+    }
+
+    public double getValue() {
+        return m_value;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Sample[resourceId=%s, metric=%s, type=%s, timestamp=%d, value=%f]",
+                m_resourceId, m_metric, m_type, m_timestamp, m_value);
+    }
+}
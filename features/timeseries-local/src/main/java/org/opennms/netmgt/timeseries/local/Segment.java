@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * An immutable, memory-mapped file holding the samples of many series over
+ * a fixed time range.
+ *
+ * The samples are stored column-wise: all of the samples of a series are
+ * compressed together using a {@link GorillaEncoder}, and the series are
+ * located using an index sorted by series id.
+ *
+ * <pre>
+ * header: magic (int), version (int), start (long), end (long), resolution (long), series (int)
+ * index:  series id (int), samples (int), offset (long), length (int) - for every series
+ * data:   the encoded samples of every series
+ * </pre>
+ */
+public class Segment {
+
+    public static final String EXTENSION = ".seg";
+
+    private static final int MAGIC = 0x4F545347;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4;
+
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 8 + 4;
+
+    private final Path m_path;
+
+    private final long m_start;
+
+    private final long m_end;
+
+    private final long m_resolution;
+
+    private final int[] m_seriesIds;
+
+    private final MappedByteBuffer m_buffer;
+
+    /**
+     * The encoded samples of a single series.
+     */
+    public static class Chunk {
+        private final int m_count;
+        private final byte[] m_bytes;
+
+        public Chunk(final int count, final byte[] bytes) {
+            m_count = count;
+            m_bytes = bytes;
+        }
+
+        public int getCount() {
+            return m_count;
+        }
+
+        public byte[] getBytes() {
+            return m_bytes;
+        }
+    }
+
+    private Segment(final Path path, final MappedByteBuffer buffer) throws IOException {
+        m_path = path;
+        m_buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a segment: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported segment version " + buffer.getInt(4) + ": " + path);
+        }
+
+        m_start = buffer.getLong(8);
+        m_end = buffer.getLong(16);
+        m_resolution = buffer.getLong(24);
+
+        m_seriesIds = new int[buffer.getInt(32)];
+        for (int i = 0; i < m_seriesIds.length; i++) {
+            m_seriesIds[i] = buffer.getInt(HEADER_SIZE + i * INDEX_ENTRY_SIZE);
+        }
+    }
+
+    public static Segment open(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes a new segment to the given directory and opens it.
+     *
+     * The file is written under a temporary name first and then moved in place,
+     * so that partially written segments are never picked up.
+     */
+    public static Segment write(final Path directory, final long start, final long end, final long resolution,
+                                final SortedMap<Integer, Chunk> chunks) throws IOException {
+        final Path path = directory.resolve(String.format("%d-%d-%d%s", start, end, resolution, EXTENSION));
+        final Path tmp = directory.resolve(path.getFileName() + ".tmp");
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + chunks.size() * INDEX_ENTRY_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(start);
+        header.putLong(end);
+        header.putLong(resolution);
+        header.putInt(chunks.size());
+
+        long offset = header.capacity();
+        for (final Map.Entry<Integer, Chunk> entry : chunks.entrySet()) {
+            header.putInt(entry.getKey());
+            header.putInt(entry.getValue().getCount());
+            header.putLong(offset);
+            header.putInt(entry.getValue().getBytes().length);
+            offset += entry.getValue().getBytes().length;
+        }
+        header.flip();
+
+        if (offset > Integer.MAX_VALUE) {
+            // Mapped buffers are limited to 2GB
+            throw new IOException("Segment too large: " + offset + " bytes");
+        }
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            for (final Chunk chunk : chunks.values()) {
+                final ByteBuffer data = ByteBuffer.wrap(chunk.getBytes());
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        return open(path);
+    }
+
+    public Path getPath() {
+        return m_path;
+    }
+
+    public long getStart() {
+        return m_start;
+    }
+
+    public long getEnd() {
+        return m_end;
+    }
+
+    public long getResolution() {
+        return m_resolution;
+    }
+
+    /**
+     * Returns the ids of the series stored in this segment, in ascending order.
+     */
+    public int[] getSeriesIds() {
+        return m_seriesIds;
+    }
+
+    public boolean overlaps(final long start, final long end) {
+        return m_start <= end && m_end > start;
+    }
+
+    /**
+     * Returns a decoder for the samples of the given series, or null if the
+     * segment does not contain the series.
+     */
+    public GorillaDecoder decoder(final int seriesId) {
+        final int index = Arrays.binarySearch(m_seriesIds, seriesId);
+        if (index < 0) {
+            return null;
+        }
+        final int entry = HEADER_SIZE + index * INDEX_ENTRY_SIZE;
+        return new GorillaDecoder(m_buffer, (int) m_buffer.getLong(entry + 8), m_buffer.getInt(entry + 4));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Segment[path=%s, start=%d, end=%d, resolution=%d, series=%d]",
+                m_path, m_start, m_end, m_resolution, m_seriesIds.length);
+    }
+}
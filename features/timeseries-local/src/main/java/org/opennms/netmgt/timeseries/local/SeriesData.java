@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.util.Arrays;
+
+/**
+ * The samples of a single series, in ascending timestamp order.
+ */
+public class SeriesData {
+
+    private final MetricType m_type;
+
+    private long[] m_timestamps = new long[64];
+
+    private double[] m_values = new double[64];
+
+    private long[] m_resolutions = new long[64];
+
+    private int m_size = 0;
+
+    public SeriesData(final MetricType type) {
+        m_type = type;
+    }
+
+    /**
+     * Appends the samples of the decoder which fall within [start, end] and are
+     * after the last sample, so that samples present in more than one source are
+     * only added once.
+     *
+     * @param resolution the resolution of the source, 0 if it holds the raw samples
+     */
+    void addAll(final GorillaDecoder decoder, final long start, final long end, final long resolution) {
+        while (decoder.hasNext()) {
+            decoder.next();
+            final long timestamp = decoder.getTimestamp();
+            if (timestamp > end) {
+                break;
+            }
+            if (timestamp < start || (m_size > 0 && timestamp <= m_timestamps[m_size - 1])) {
+                continue;
+            }
+            if (m_size == m_timestamps.length) {
+                m_timestamps = Arrays.copyOf(m_timestamps, m_size * 2);
+                m_values = Arrays.copyOf(m_values, m_size * 2);
+                m_resolutions = Arrays.copyOf(m_resolutions, m_size * 2);
+            }
+            m_timestamps[m_size] = timestamp;
+            m_values[m_size] = decoder.getValue();
+            m_resolutions[m_size] = resolution;
+            m_size++;
+        }
+    }
+
+    public MetricType getType() {
+        return m_type;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public long getTimestamp(final int index) {
+        return m_timestamps[index];
+    }
+
+    public double getValue(final int index) {
+        return m_values[index];
+    }
+
+    /**
+     * Returns the resolution of the segment the sample was read from, 0 for raw samples.
+     */
+    public long getResolution(final int index) {
+        return m_resolutions[index];
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Assigns ids to the series, identified by their resource id and metric name.
+ *
+ * The series are kept in memory, and recorded in an append-only file which is
+ * rewritten without the deleted series when it is loaded.
+ *
+ * Ids are never reused: the segments and logs may still hold samples of deleted
+ * series, so the next id is recorded in the file along with the remaining series.
+ */
+public class SeriesIndex {
+
+    private static final byte ADD = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte NEXT_ID = 3;
+
+    private final ConcurrentSkipListMap<String, ConcurrentMap<String, Series>> m_byResource = new ConcurrentSkipListMap<>();
+
+    private final Map<Integer, Series> m_byId = new ConcurrentHashMap<>();
+
+    private int m_nextId = 0;
+
+    private DataOutputStream m_out;
+
+    public static class Series {
+        private final int m_id;
+        private final String m_resourceId;
+        private final String m_metric;
+        private final MetricType m_type;
+
+        public Series(final int id, final String resourceId, final String metric, final MetricType type) {
+            m_id = id;
+            m_resourceId = resourceId;
+            m_metric = metric;
+            m_type = type;
+        }
+
+        public int getId() {
+            return m_id;
+        }
+
+        public String getResourceId() {
+            return m_resourceId;
+        }
+
+        public String getMetric() {
+            return m_metric;
+        }
+
+        public MetricType getType() {
+            return m_type;
+        }
+    }
+
+    public static SeriesIndex load(final Path path) throws IOException {
+        final SeriesIndex index = new SeriesIndex();
+
+        if (Files.exists(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                while (true) {
+                    final byte op;
+                    try {
+                        op = in.readByte();
+                    } catch (final EOFException e) {
+                        break;
+                    }
+                    try {
+                        if (op == ADD) {
+                            final Series series = new Series(in.readInt(), in.readUTF(), in.readUTF(), MetricType.values()[in.readByte()]);
+                            index.put(series);
+                            index.m_nextId = Math.max(index.m_nextId, series.getId() + 1);
+                        } else if (op == DELETE) {
+                            index.remove(in.readInt());
+                        } else if (op == NEXT_ID) {
+                            index.m_nextId = Math.max(index.m_nextId, in.readInt());
+                        } else {
+                            throw new IOException("Invalid record type " + op + " in " + path);
+                        }
+                    } catch (final EOFException e) {
+                        // A partially written record, the rest of the file is empty
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Rewrite the file with the remaining series only, keeping the ids of the deleted ones reserved
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeByte(NEXT_ID);
+            out.writeInt(index.m_nextId);
+            for (final Series series : index.m_byId.values()) {
+                writeAdd(out, series);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        index.m_out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.APPEND)));
+        return index;
+    }
+
+    private static void writeAdd(final DataOutputStream out, final Series series) throws IOException {
+        out.writeByte(ADD);
+        out.writeInt(series.getId());
+        out.writeUTF(series.getResourceId());
+        out.writeUTF(series.getMetric());
+        out.writeByte(series.getType().ordinal());
+    }
+
+    private void put(final Series series) {
+        m_byResource.computeIfAbsent(series.getResourceId(), k -> new ConcurrentHashMap<>()).put(series.getMetric(), series);
+        m_byId.put(series.getId(), series);
+    }
+
+    private void remove(final int id) {
+        final Series series = m_byId.remove(id);
+        if (series != null) {
+            m_byResource.computeIfPresent(series.getResourceId(), (k, metrics) -> {
+                metrics.remove(series.getMetric());
+                return metrics.isEmpty() ? null : metrics;
+            });
+        }
+    }
+
+    public Series get(final String resourceId, final String metric) {
+        final Map<String, Series> metrics = m_byResource.get(resourceId);
+        return metrics != null ? metrics.get(metric) : null;
+    }
+
+    public Series get(final int id) {
+        return m_byId.get(id);
+    }
+
+    /**
+     * Returns the series with the given resource id and metric, creating it if it does not exist yet.
+     *
+     * The type of existing series is never changed.
+     */
+    public Series getOrCreate(final String resourceId, final String metric, final MetricType type) throws IOException {
+        final Series series = get(resourceId, metric);
+        if (series != null) {
+            return series;
+        }
+
+        synchronized (this) {
+            final Series existing = get(resourceId, metric);
+            if (existing != null) {
+                return existing;
+            }
+
+            final Series created = new Series(m_nextId++, resourceId, metric, type);
+            writeAdd(m_out, created);
+            m_out.flush();
+            put(created);
+            return created;
+        }
+    }
+
+    /**
+     * Deletes all of the series of the resources within the given prefix.
+     *
+     * @return true if any series were deleted
+     */
+    public synchronized boolean delete(final String prefix) throws IOException {
+        boolean deleted = false;
+        for (final Iterator<String> it = LocalTimeseriesUtils.candidates(m_byResource.keySet(), prefix).iterator(); it.hasNext(); ) {
+            final String resourceId = it.next();
+            if (!LocalTimeseriesUtils.isWithin(resourceId, prefix)) {
+                continue;
+            }
+            final Map<String, Series> metrics = m_byResource.get(resourceId);
+            if (metrics != null) {
+                for (final Series series : metrics.values()) {
+                    m_out.writeByte(DELETE);
+                    m_out.writeInt(series.getId());
+                    m_byId.remove(series.getId());
+                }
+            }
+            it.remove();
+            deleted = true;
+        }
+        m_out.flush();
+        return deleted;
+    }
+
+    /**
+     * Returns the ids of all the resources having at least one series, in ascending order.
+     */
+    public NavigableSet<String> getResourceIds() {
+        return m_byResource.keySet();
+    }
+
+    public Map<String, Series> getSeries(final String resourceId) {
+        final Map<String, Series> metrics = m_byResource.get(resourceId);
+        return metrics != null ? Collections.unmodifiableMap(metrics) : Collections.emptyMap();
+    }
+
+    public int size() {
+        return m_byId.size();
+    }
+
+    public synchronized void close() throws IOException {
+        m_out.close();
+    }
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logs the samples of a partition that has not been written to a {@link Segment} yet,
+ * so that they can be recovered after a restart.
+ *
+ * The samples are appended to fixed size, memory-mapped files. A new file is
+ * started when the current one is full. Each record holds the series id
+ * (plus one, so that zeroed space marks the end of the log), the timestamp
+ * and the value.
+ */
+public class WriteAheadLog {
+
+    public static final String EXTENSION = ".wal";
+
+    public static final int RECORD_SIZE = 4 + 8 + 8;
+
+    private final Path m_directory;
+
+    private final long m_partition;
+
+    private final int m_fileSize;
+
+    private final List<Path> m_files = new ArrayList<>();
+
+    private int m_sequence;
+
+    private MappedByteBuffer m_buffer;
+
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(int seriesId, long timestamp, double value);
+    }
+
+    /**
+     * @param directory the directory in which the files are created
+     * @param partition the start of the partition, used to name the files
+     * @param fileSize the size of the files in bytes
+     * @param sequence the sequence number of the first file
+     */
+    public WriteAheadLog(final Path directory, final long partition, final int fileSize, final int sequence) {
+        m_directory = directory;
+        m_partition = partition;
+        m_fileSize = Math.max(1, fileSize / RECORD_SIZE) * RECORD_SIZE;
+        m_sequence = sequence;
+    }
+
+    public synchronized void append(final int seriesId, final long timestamp, final double value) throws IOException {
+        if (m_buffer == null || !m_buffer.hasRemaining()) {
+            roll();
+        }
+        m_buffer.putInt(seriesId + 1);
+        m_buffer.putLong(timestamp);
+        m_buffer.putDouble(value);
+    }
+
+    private void roll() throws IOException {
+        if (m_buffer != null) {
+            m_buffer.force();
+        }
+
+        final Path path = m_directory.resolve(String.format("%d-%d%s", m_partition, m_sequence++, EXTENSION));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            m_buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, m_fileSize);
+        }
+        m_files.add(path);
+    }
+
+    /**
+     * Adopts existing files of the same partition, so that they are deleted along with this log.
+     */
+    public synchronized void adopt(final Path path) {
+        m_files.add(path);
+    }
+
+    /**
+     * Flushes the samples written to the current file to the disk.
+     */
+    public synchronized void force() {
+        if (m_buffer != null) {
+            m_buffer.force();
+        }
+    }
+
+    /**
+     * Deletes all of the files of this log.
+     */
+    public synchronized void delete() throws IOException {
+        m_buffer = null;
+        for (final Path path : m_files) {
+            Files.deleteIfExists(path);
+        }
+        m_files.clear();
+    }
+
+    public static boolean isLog(final Path path) {
+        return path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    public static long getPartition(final Path path) {
+        final String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('-')));
+    }
+
+    public static int getSequence(final Path path) {
+        final String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(name.indexOf('-') + 1, name.length() - EXTENSION.length()));
+    }
+
+    /**
+     * Reads all of the records of the given file.
+     */
+    public static void replay(final Path path, final RecordConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= RECORD_SIZE) {
+                final int seriesId = buffer.getInt() - 1;
+                if (seriesId < 0) {
+                    break;
+                }
+                consumer.accept(seriesId, buffer.getLong(), buffer.getDouble());
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.measurements.impl.LocalFetchStrategy.Aggregation;
+import org.opennms.netmgt.timeseries.local.LocalTimeseriesStore;
+import org.opennms.netmgt.timeseries.local.MetricType;
+import org.opennms.netmgt.timeseries.local.Sample;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class LocalFetchStrategyTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final long STEP = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long T0 = 17000 * DAY;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private LocalTimeseriesStore m_store;
+
+    @Before
+    public void setUp() throws IOException {
+        m_store = new LocalTimeseriesStore(tempFolder.newFolder("timeseries").toPath(), new MetricRegistry());
+        m_store.setMaintenanceInterval(DAY);
+        m_store.start();
+
+        // A day of samples of a counter increasing by one per second, and of a constant gauge
+        final List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 288; i++) {
+            samples.add(new Sample("snmp/1/mib2-interfaces", "ifInOctets", MetricType.COUNTER, T0 + i * STEP, i * STEP / 1000));
+            samples.add(new Sample("snmp/1/load", "load1", MetricType.GAUGE, T0 + i * STEP, 5));
+        }
+        m_store.insert(samples);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_store.stop();
+    }
+
+    private static long[] timestamps(final long start, final long step, final int count) {
+        final long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = start + i * step;
+        }
+        return timestamps;
+    }
+
+    private double[] fetch(final String resourceId, final String metric, final long[] timestamps, final long step) {
+        return LocalFetchStrategy.fetch(m_store, resourceId, metric, timestamps, step, LocalFetchStrategy.DEFAULT_HEARTBEAT_MS, Aggregation.AVERAGE);
+    }
+
+    @Test
+    public void canFetchRawCounters() {
+        final double[] rates = fetch("snmp/1/mib2-interfaces", "ifInOctets", timestamps(T0 + HOUR, STEP, 12), STEP);
+        for (double rate : rates) {
+            assertEquals(1.0d, rate, 0.0001d);
+        }
+    }
+
+    @Test
+    public void canFetchDownsampledCounters() throws Exception {
+        m_store.maintain(T0 + DAY + LocalTimeseriesStore.DEFAULT_DOWNSAMPLE_AFTER_MS);
+        assertEquals(1, m_store.getSegments().size());
+        assertTrue(m_store.getSegments().get(0).getResolution() > 0);
+
+        // One sample per hour is left, which is further apart than the default heartbeat
+        final double[] hourly = fetch("snmp/1/mib2-interfaces", "ifInOctets", timestamps(T0 + HOUR, HOUR, 23), HOUR);
+        for (double rate : hourly) {
+            assertEquals(1.0d, rate, 0.0001d);
+        }
+
+        // Finer steps carry the hourly rates forward
+        final double[] fine = fetch("snmp/1/mib2-interfaces", "ifInOctets", timestamps(T0 + 2 * HOUR, STEP, 24), STEP);
+        for (double rate : fine) {
+            assertEquals(1.0d, rate, 0.0001d);
+        }
+    }
+
+    @Test
+    public void canFetchDownsampledGauges() throws Exception {
+        m_store.maintain(T0 + DAY + LocalTimeseriesStore.DEFAULT_DOWNSAMPLE_AFTER_MS);
+
+        final double[] fine = fetch("snmp/1/load", "load1", timestamps(T0, STEP, 288), STEP);
+        for (double value : fine) {
+            assertEquals(5.0d, value, 0.0001d);
+        }
+    }
+}
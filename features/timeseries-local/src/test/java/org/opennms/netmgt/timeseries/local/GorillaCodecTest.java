@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GorillaCodecTest {
+
+    @Test
+    public void canRoundTripRegularSamples() {
+        final GorillaEncoder encoder = new GorillaEncoder();
+        for (int i = 0; i < 1000; i++) {
+            encoder.append(1500000000000L + i * 300000L, 42.0d);
+        }
+
+        // Constant deltas and values only take a couple of bits per sample
+        assertTrue(encoder.getSize() < 1000 / 2);
+
+        final GorillaDecoder decoder = new GorillaDecoder(encoder.toByteArray(), encoder.getCount());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(decoder.hasNext());
+            decoder.next();
+            assertEquals(1500000000000L + i * 300000L, decoder.getTimestamp());
+            assertEquals(42.0d, decoder.getValue(), 0.0d);
+        }
+        assertFalse(decoder.hasNext());
+    }
+
+    @Test
+    public void canRoundTripIrregularSamples() {
+        final Random random = new Random(42);
+        final long[] timestamps = new long[5000];
+        final double[] values = new double[timestamps.length];
+
+        long timestamp = -1000;
+        for (int i = 0; i < timestamps.length; i++) {
+            // Mix small jitters with the occasional very large gap
+            timestamp += i % 100 == 0 ? 1L + random.nextInt(Integer.MAX_VALUE) * 1000L : 1L + random.nextInt(600000);
+            timestamps[i] = timestamp;
+            switch (i % 5) {
+                case 0: values[i] = random.nextDouble() * 1e12; break;
+                case 1: values[i] = -random.nextGaussian(); break;
+                case 2: values[i] = i > 0 ? values[i - 1] : 0; break;
+                case 3: values[i] = Double.NaN; break;
+                default: values[i] = random.nextInt(100); break;
+            }
+        }
+
+        final GorillaEncoder encoder = new GorillaEncoder();
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        assertEquals(timestamps.length, encoder.getCount());
+        assertEquals(timestamps[timestamps.length - 1], encoder.getLastTimestamp());
+
+        final GorillaDecoder decoder = new GorillaDecoder(encoder.toByteArray(), encoder.getCount());
+        for (int i = 0; i < timestamps.length; i++) {
+            decoder.next();
+            assertEquals(timestamps[i], decoder.getTimestamp());
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.getValue()));
+        }
+        assertFalse(decoder.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOutOfOrderSamples() {
+        final GorillaEncoder encoder = new GorillaEncoder();
+        encoder.append(1000, 1.0d);
+        encoder.append(1000, 2.0d);
+    }
+}
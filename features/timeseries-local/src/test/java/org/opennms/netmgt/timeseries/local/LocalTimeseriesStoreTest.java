@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.timeseries.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class LocalTimeseriesStoreTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final long STEP = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Start of a day, used as the origin of all the samples.
+     */
+    private static final long T0 = 17000 * DAY;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path m_directory;
+
+    private LocalTimeseriesStore m_store;
+
+    @Before
+    public void setUp() throws IOException {
+        m_directory = tempFolder.newFolder("timeseries").toPath();
+        m_store = newStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_store.stop();
+    }
+
+    private LocalTimeseriesStore newStore() throws IOException {
+        final LocalTimeseriesStore store = new LocalTimeseriesStore(m_directory, new MetricRegistry());
+        store.setLogFileSize(64 * WriteAheadLog.RECORD_SIZE);
+        store.setMaintenanceInterval(TimeUnit.DAYS.toMillis(1));
+        store.start();
+        return store;
+    }
+
+    private void reopen() throws Exception {
+        m_store.stop();
+        m_store = newStore();
+    }
+
+    private static List<Sample> samples(final String resourceId, final String metric, final MetricType type, final long start, final int count) {
+        final List<Sample> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            samples.add(new Sample(resourceId, metric, type, start + i * STEP, i));
+        }
+        return samples;
+    }
+
+    private static void assertSamples(final SeriesData data, final long start, final int count) {
+        assertEquals(count, data.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(start + i * STEP, data.getTimestamp(i));
+            assertEquals(i, data.getValue(i), 0.0d);
+        }
+    }
+
+    @Test
+    public void canInsertAndSelectAcrossPartitions() throws IOException {
+        // Five hours of samples span three partitions
+        m_store.insert(samples("snmp/1/mib2-interfaces", "ifInOctets", MetricType.COUNTER, T0, 60));
+        assertEquals(3, m_store.getHeadPartitions().size());
+
+        assertSamples(m_store.select("snmp/1/mib2-interfaces", "ifInOctets", T0, T0 + DAY), T0, 60);
+
+        // The range is inclusive
+        final SeriesData data = m_store.select("snmp/1/mib2-interfaces", "ifInOctets", T0 + STEP, T0 + 3 * STEP);
+        assertEquals(3, data.size());
+        assertEquals(T0 + STEP, data.getTimestamp(0));
+        assertEquals(T0 + 3 * STEP, data.getTimestamp(2));
+
+        assertNull(m_store.select("snmp/1/mib2-interfaces", "ifOutOctets", T0, T0 + DAY));
+    }
+
+    @Test
+    public void dropsOutOfOrderSamples() throws IOException {
+        m_store.insert(samples("snmp/1/load", "load1", MetricType.GAUGE, T0, 10));
+        m_store.insert(Collections.singletonList(new Sample("snmp/1/load", "load1", MetricType.GAUGE, T0 + 2 * STEP, 99)));
+
+        assertSamples(m_store.select("snmp/1/load", "load1", T0, T0 + DAY), T0, 10);
+    }
+
+    @Test
+    public void canRecoverFromTheLog() throws Exception {
+        // More samples than fit in a single log file
+        m_store.insert(samples("snmp/1/load", "load1", MetricType.GAUGE, T0, 20));
+        m_store.insert(samples("snmp/1/load", "load5", MetricType.GAUGE, T0, 20));
+        m_store.insert(samples("snmp/2/load", "load1", MetricType.GAUGE, T0, 20));
+        m_store.insert(samples("snmp/3/load", "load1", MetricType.GAUGE, T0, 20));
+
+        reopen();
+
+        assertSamples(m_store.select("snmp/1/load", "load1", T0, T0 + DAY), T0, 20);
+        assertSamples(m_store.select("snmp/1/load", "load5", T0, T0 + DAY), T0, 20);
+        assertSamples(m_store.select("snmp/3/load", "load1", T0, T0 + DAY), T0, 20);
+
+        // Samples can still be appended to the recovered partitions
+        m_store.insert(Collections.singletonList(new Sample("snmp/1/load", "load1", MetricType.GAUGE, T0 + 20 * STEP, 20)));
+        reopen();
+        assertSamples(m_store.select("snmp/1/load", "load1", T0, T0 + DAY), T0, 21);
+    }
+
+    @Test
+    public void canSealPartitions() throws Exception {
+        m_store.insert(samples("snmp/1/load", "load1", MetricType.GAUGE, T0, 60));
+
+        // Only the first two partitions are over, once the grace period has passed
+        m_store.maintain(T0 + TimeUnit.HOURS.toMillis(4));
+        assertEquals(1, m_store.getSegments().size());
+        m_store.maintain(T0 + TimeUnit.HOURS.toMillis(4) + LocalTimeseriesStore.DEFAULT_GRACE_PERIOD_MS);
+        assertEquals(2, m_store.getSegments().size());
+        assertEquals(1, m_store.getHeadPartitions().size());
+
+        assertSamples(m_store.select("snmp/1/load", "load1", T0, T0 + DAY), T0, 60);
+
+        // Samples for the sealed partitions are dropped
+        m_store.insert(Collections.singletonList(new Sample("snmp/1/load", "load5", MetricType.GAUGE, T0, 1)));
+        assertEquals(0, m_store.select("snmp/1/load", "load5", T0, T0 + DAY).size());
+
+        reopen();
+        assertEquals(2, m_store.getSegments().size());
+        assertEquals(1, m_store.getHeadPartitions().size());
+        assertSamples(m_store.select("snmp/1/load", "load1", T0, T0 + DAY), T0, 60);
+    }
+
+    @Test
+    public void canDownsampleAndExpire() throws Exception {
+        // A full day of samples
+        m_store.insert(samples("snmp/1/load", "load1", MetricType.GAUGE, T0, 288));
+        m_store.insert(samples("snmp/1/mib2-interfaces", "ifInOctets", MetricType.COUNTER, T0, 288));
+
+        m_store.maintain(T0 + DAY + LocalTimeseriesStore.DEFAULT_GRACE_PERIOD_MS);
+        assertEquals(12, m_store.getSegments().size());
+
+        m_store.maintain(T0 + DAY + LocalTimeseriesStore.DEFAULT_DOWNSAMPLE_AFTER_MS);
+        assertEquals(1, m_store.getSegments().size());
+        assertEquals(LocalTimeseriesStore.DEFAULT_DOWNSAMPLE_STEP_MS, m_store.getSegments().get(0).getResolution());
+
+        // Gauges are averaged over each hour, and keyed by the start of the hour
+        final SeriesData gauge = m_store.select("snmp/1/load", "load1", T0, T0 + DAY);
+        assertEquals(24, gauge.size());
+        for (int i = 0; i < 24; i++) {
+            assertEquals(T0 + TimeUnit.HOURS.toMillis(i), gauge.getTimestamp(i));
+            assertEquals(12 * i + 5.5d, gauge.getValue(i), 0.0001d);
+        }
+
+        // Counters keep the last sample of each hour
+        final SeriesData counter = m_store.select("snmp/1/mib2-interfaces", "ifInOctets", T0, T0 + DAY);
+        assertEquals(24, counter.size());
+        for (int i = 0; i < 24; i++) {
+            assertEquals(T0 + TimeUnit.HOURS.toMillis(i) + 11 * STEP, counter.getTimestamp(i));
+            assertEquals(12 * i + 11, counter.getValue(i), 0.0d);
+        }
+
+        reopen();
+        assertEquals(24, m_store.select("snmp/1/load", "load1", T0, T0 + DAY).size());
+
+        m_store.maintain(T0 + DAY + LocalTimeseriesStore.DEFAULT_RETENTION_MS);
+        assertEquals(0, m_store.getSegments().size());
+        assertEquals(0, m_store.select("snmp/1/load", "load1", T0, T0 + DAY).size());
+    }
+
+    @Test
+    public void doesNotReuseTheIdsOfDeletedSeries() throws Exception {
+        m_store.insert(samples("snmp/1/load", "load1", MetricType.GAUGE, T0, 10));
+        m_store.insert(samples("snmp/2/load", "load1", MetricType.GAUGE, T0, 10));
+        assertTrue(m_store.delete("snmp/2"));
+
+        // Reopen twice, so that the index is compacted before it is read again
+        reopen();
+        reopen();
+
+        // The samples of the deleted series are still in the log, and must not show up in a new series
+        m_store.insert(samples("snmp/3/load", "load1", MetricType.GAUGE, T0 + 20 * STEP, 1));
+        reopen();
+        assertSamples(m_store.select("snmp/3/load", "load1", T0, T0 + DAY), T0 + 20 * STEP, 1);
+        assertSamples(m_store.select("snmp/1/load", "load1", T0, T0 + DAY), T0, 10);
+    }
+
+    @Test
+    public void canDeleteResources() throws Exception {
+        m_store.insert(samples("snmp/1/load", "load1", MetricType.GAUGE, T0, 10));
+        m_store.insert(samples("snmp/1/mib2-interfaces/eth0", "ifInOctets", MetricType.COUNTER, T0, 10));
+        m_store.insert(samples("snmp/10/load", "load1", MetricType.GAUGE, T0, 10));
+        m_store.setStringAttribute("snmp/1/mib2-interfaces/eth0", "ifAlias", "uplink");
+        m_store.setMetaData("snmp/10/load", "load1", "load1");
+
+        assertTrue(m_store.delete("snmp/1"));
+        assertFalse(m_store.delete("snmp/1"));
+
+        assertNull(m_store.select("snmp/1/load", "load1", T0, T0 + DAY));
+        assertTrue(m_store.getStringAttributes("snmp/1/mib2-interfaces/eth0").isEmpty());
+        assertSamples(m_store.select("snmp/10/load", "load1", T0, T0 + DAY), T0, 10);
+
+        reopen();
+        assertEquals(Collections.singleton("snmp/10/load"), m_store.getResourceIds());
+        assertEquals("load1", m_store.getMetaData("snmp/10/load").get("load1"));
+
+        // Samples of the deleted series are not replayed from the log
+        m_store.insert(samples("snmp/1/load", "load1", MetricType.GAUGE, T0 + 20 * STEP, 1));
+        assertSamples(m_store.select("snmp/1/load", "load1", T0, T0 + DAY), T0 + 20 * STEP, 1);
+    }
+}
@@ -57,6 +57,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.support.TransactionOperations;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Striped;
@@ -75,6 +80,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
     protected static final Integer NUM_STRIPE_LOCKS = Integer.getInteger("org.opennms.alarmd.stripe.locks", Alarmd.THREADS * 4);
     protected static boolean NEW_IF_CLEARED = Boolean.getBoolean("org.opennms.alarmd.newIfClearedAlarmExists");
     protected static boolean LEGACY_ALARM_STATE = Boolean.getBoolean("org.opennms.alarmd.legacyAlarmState");
+    protected static boolean INDEX_REDUCTION_KEYS = Boolean.parseBoolean(System.getProperty("org.opennms.alarmd.indexReductionKeys", "true"));
 
     @Autowired
     private AlarmDao m_alarmDao;
@@ -99,6 +105,35 @@ public class AlarmPersisterImpl implements AlarmPersister {
     
     private boolean m_legacyAlarmState = LEGACY_ALARM_STATE;
 
+    private final ReductionKeyIndex m_reductionKeyIndex;
+
+    private boolean m_indexReductionKeys = INDEX_REDUCTION_KEYS;
+
+    private final Timer persistTimer;
+
+    private final Meter indexHits;
+
+    private final Meter indexMisses;
+
+    public AlarmPersisterImpl() {
+        this(new MetricRegistry(), new ReductionKeyIndex());
+    }
+
+    public AlarmPersisterImpl(MetricRegistry registry, ReductionKeyIndex reductionKeyIndex) {
+        m_reductionKeyIndex = Objects.requireNonNull(reductionKeyIndex);
+        persistTimer = registry.timer("persist");
+        indexHits = registry.meter("reductionKeyIndex.hits");
+        indexMisses = registry.meter("reductionKeyIndex.misses");
+        registry.register("reductionKeyIndex.hitRate", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                final long hits = indexHits.getCount();
+                return Ratio.of(hits, hits + indexMisses.getCount());
+            }
+        });
+        registry.register("reductionKeyIndex.size", (Gauge<Integer>) m_reductionKeyIndex::size);
+    }
+
     @Override
     public OnmsAlarm persist(Event event) {
         Objects.requireNonNull(event, "Cannot create alarm from null event.");
@@ -115,7 +150,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
         // as the calls are made
         final Iterable<Lock> locks = lockStripes.bulkGet(getLockKeys(event));
         final OnmsAlarm alarm;
-        try {
+        try (Timer.Context ctx = persistTimer.time()) {
             locks.forEach(Lock::lock);
             // Process the alarm inside a transaction
             alarm = m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(event));
@@ -145,11 +180,11 @@ public class AlarmPersisterImpl implements AlarmPersister {
             didSwapReductionKeyWithClearKey = true;
         }
 
-        OnmsAlarm alarm = m_alarmDao.findByReductionKey(key);
+        OnmsAlarm alarm = findByReductionKey(key);
 
         if (alarm == null && didSwapReductionKeyWithClearKey) {
             // if the clearKey returns null, still need to check the reductionKey
-            alarm = m_alarmDao.findByReductionKey(reductionKey);
+            alarm = findByReductionKey(reductionKey);
         }
 
         if (alarm == null || (m_createNewAlarmIfClearedAlarmExists && OnmsSeverity.CLEARED.equals(alarm.getSeverity()))) {
@@ -160,9 +195,11 @@ public class AlarmPersisterImpl implements AlarmPersister {
             if (alarm != null) {
                 LOG.debug("addOrReduceEventAsAlarm: \"archiving\" cleared Alarm for problem: {}; " +
                         "A new alarm will be instantiated to manage the problem.", reductionKey);
+                final String previousReductionKey = alarm.getReductionKey();
                 alarm.archive();
                 m_alarmDao.save(alarm);
                 m_alarmDao.flush();
+                m_reductionKeyIndex.remove(previousReductionKey, alarm.getId());
 
                 m_alarmEntityNotifier.didArchiveAlarm(alarm, reductionKey);
             }
@@ -179,6 +216,9 @@ public class AlarmPersisterImpl implements AlarmPersister {
 
             m_alarmDao.save(alarm);
             m_eventDao.saveOrUpdate(persistedEvent);
+            if (m_indexReductionKeys) {
+                m_reductionKeyIndex.put(alarm.getReductionKey(), alarm.getId());
+            }
 
             m_alarmEntityNotifier.didCreateAlarm(alarm);
         } else {
@@ -391,7 +431,43 @@ public class AlarmPersisterImpl implements AlarmPersister {
         }
         Set<String> reductionKeys = list.stream().filter(AlarmPersisterImpl::isRelatedReductionKeyWithContent).map(p -> p.getValue().getContent()).collect(Collectors.toSet());
         // Only existing alarms are returned. Reduction Keys for non-existing alarms are dropped.
-        return reductionKeys.stream().map(reductionKey -> m_alarmDao.findByReductionKey(reductionKey)).filter(Objects::nonNull).collect(Collectors.toSet());
+        return reductionKeys.stream().map(this::findByReductionKey).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    /**
+     * Finds the current alarm with the given reduction key, using the reduction key index
+     * to avoid querying the database for keys which have no alarm.
+     *
+     * Must be called within a transaction.
+     */
+    private OnmsAlarm findByReductionKey(String reductionKey) {
+        if (!m_indexReductionKeys || reductionKey == null) {
+            return m_alarmDao.findByReductionKey(reductionKey);
+        }
+
+        m_reductionKeyIndex.load(m_alarmDao::getAlarmIdsByReductionKey);
+
+        final Integer alarmId = m_reductionKeyIndex.get(reductionKey);
+        if (alarmId == null) {
+            // The persister creates all of the alarms, so there is no alarm with this key
+            indexHits.mark();
+            return null;
+        }
+
+        final OnmsAlarm alarm = m_alarmDao.get(alarmId);
+        if (alarm != null && reductionKey.equals(alarm.getReductionKey())) {
+            indexHits.mark();
+            return alarm;
+        }
+
+        // The alarm was deleted or archived by someone else, fall back to the query
+        indexMisses.mark();
+        m_reductionKeyIndex.remove(reductionKey, alarmId);
+        final OnmsAlarm current = m_alarmDao.findByReductionKey(reductionKey);
+        if (current != null) {
+            m_reductionKeyIndex.put(reductionKey, current.getId());
+        }
+        return current;
     }
 
     private static boolean isRelatedReductionKeyWithContent(Parm param) {
@@ -502,6 +578,19 @@ public class AlarmPersisterImpl implements AlarmPersister {
         m_alarmEntityNotifier = alarmEntityNotifier;
     }
 
+    public ReductionKeyIndex getReductionKeyIndex() {
+        return m_reductionKeyIndex;
+    }
+
+    public void setIndexReductionKeys(boolean indexReductionKeys) {
+        m_indexReductionKeys = indexReductionKeys;
+        m_reductionKeyIndex.clear();
+    }
+
+    public boolean isIndexReductionKeys() {
+        return m_indexReductionKeys;
+    }
+
     public void onExtensionRegistered(final AlarmPersisterExtension ext, final Map<String,String> properties) {
         LOG.debug("onExtensionRegistered: {} with properties: {}", ext, properties);
         extensions.add(ext);
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.alarmd;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.opennms.netmgt.dao.api.DefaultAlarmEntityListener;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory index of the current alarms by reduction key.
+ *
+ * The index is loaded from the database once and is then maintained by the
+ * {@link AlarmPersisterImpl}, which is the only component that creates alarms
+ * and changes their reduction keys. A key which is not in the index is known
+ * not to exist, while an id found in the index must still be verified by the
+ * caller since alarms can be deleted by other components.
+ *
+ * Keys are only removed once the transaction which archived or deleted the alarm
+ * is committed: if it is rolled back, the alarm keeps its reduction key.
+ */
+public class ReductionKeyIndex extends DefaultAlarmEntityListener {
+    private static final Logger LOG = LoggerFactory.getLogger(ReductionKeyIndex.class);
+
+    private final Map<String, Integer> m_alarmIdsByReductionKey = new ConcurrentHashMap<>();
+
+    private volatile boolean m_loaded = false;
+
+    /**
+     * Loads the index using the given supplier, unless it was already loaded.
+     *
+     * @param loader supplies the ids of all existing alarms by reduction key
+     */
+    public void load(final Supplier<Map<String, Integer>> loader) {
+        if (m_loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (m_loaded) {
+                return;
+            }
+            final Map<String, Integer> alarmIdsByReductionKey = loader.get();
+            m_alarmIdsByReductionKey.putAll(alarmIdsByReductionKey);
+            m_loaded = true;
+            LOG.info("Loaded {} reduction keys into the index.", alarmIdsByReductionKey.size());
+        }
+    }
+
+    public boolean isLoaded() {
+        return m_loaded;
+    }
+
+    /**
+     * Returns the id of the alarm with the given reduction key, or null
+     * if no such alarm exists.
+     */
+    public Integer get(final String reductionKey) {
+        return reductionKey == null ? null : m_alarmIdsByReductionKey.get(reductionKey);
+    }
+
+    public void put(final String reductionKey, final Integer alarmId) {
+        if (reductionKey != null && alarmId != null) {
+            m_alarmIdsByReductionKey.put(reductionKey, alarmId);
+        }
+    }
+
+    /**
+     * Removes the given reduction key, but only if it still references
+     * the given alarm. Within a transaction, the key is removed after
+     * the transaction is committed.
+     */
+    public void remove(final String reductionKey, final Integer alarmId) {
+        if (reductionKey == null || alarmId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    m_alarmIdsByReductionKey.remove(reductionKey, alarmId);
+                }
+            });
+        } else {
+            m_alarmIdsByReductionKey.remove(reductionKey, alarmId);
+        }
+    }
+
+    public int size() {
+        return m_alarmIdsByReductionKey.size();
+    }
+
+    /**
+     * Forgets all keys, forcing the index to be reloaded on next use.
+     */
+    public synchronized void clear() {
+        m_loaded = false;
+        m_alarmIdsByReductionKey.clear();
+    }
+
+    @Override
+    public void onAlarmArchived(final OnmsAlarm alarm, final String previousReductionKey) {
+        remove(previousReductionKey, alarm.getId());
+    }
+
+    @Override
+    public void onAlarmDeleted(final OnmsAlarm alarm) {
+        remove(alarm.getReductionKey(), alarm.getId());
+    }
+}
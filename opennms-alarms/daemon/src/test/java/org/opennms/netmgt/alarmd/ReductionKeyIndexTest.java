@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.alarmd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import com.google.common.collect.ImmutableMap;
+
+public class ReductionKeyIndexTest {
+
+    @Test
+    public void canLoadOnlyOnce() {
+        final ReductionKeyIndex index = new ReductionKeyIndex();
+        final AtomicInteger loads = new AtomicInteger(0);
+
+        index.load(() -> {
+            loads.incrementAndGet();
+            return ImmutableMap.of("a", 1, "b", 2);
+        });
+        index.load(() -> {
+            loads.incrementAndGet();
+            return ImmutableMap.of("c", 3);
+        });
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(index.size(), equalTo(2));
+        assertThat(index.get("a"), equalTo(1));
+        assertThat(index.get("c"), nullValue());
+
+        // Reload after clearing
+        index.clear();
+        index.load(() -> ImmutableMap.of("c", 3));
+        assertThat(index.get("a"), nullValue());
+        assertThat(index.get("c"), equalTo(3));
+    }
+
+    @Test
+    public void canRemoveKeysOfArchivedAndDeletedAlarms() {
+        final ReductionKeyIndex index = new ReductionKeyIndex();
+        index.load(() -> ImmutableMap.of("a", 1, "b", 2));
+
+        // The key was re-used by another alarm, which must be retained
+        index.put("a", 3);
+        index.remove("a", 1);
+        assertThat(index.get("a"), equalTo(3));
+
+        final OnmsAlarm archived = new OnmsAlarm();
+        archived.setId(3);
+        archived.setReductionKey("a:3");
+        index.onAlarmArchived(archived, "a");
+        assertThat(index.get("a"), nullValue());
+
+        final OnmsAlarm deleted = new OnmsAlarm();
+        deleted.setId(2);
+        deleted.setReductionKey("b");
+        index.onAlarmDeleted(deleted);
+        assertThat(index.get("b"), nullValue());
+        assertThat(index.size(), equalTo(0));
+    }
+
+    @Test
+    public void canRemoveKeysOnlyOnceCommitted() {
+        final ReductionKeyIndex index = new ReductionKeyIndex();
+        index.load(() -> ImmutableMap.of("a", 1, "b", 2));
+
+        // The transaction which archived the alarm is rolled back
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.remove("a", 1);
+            assertThat(index.get("a"), equalTo(1));
+            TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+                    TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertThat(index.get("a"), equalTo(1));
+
+        // The transaction which archived the alarm is committed
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.remove("a", 1);
+            assertThat(index.get("a"), equalTo(1));
+            TransactionSynchronizationUtils.triggerAfterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertThat(index.get("a"), nullValue());
+        assertThat(index.get("b"), equalTo(2));
+    }
+}
@@ -34,6 +34,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +66,11 @@ import org.slf4j.LoggerFactory;
  */
 public class EventConfData extends Object {
     private static final Logger LOG = LoggerFactory.getLogger(EventConfData.class);
+
+    /**
+     * Compiled regular expressions for the mask values, keyed by mask value
+     */
+    private static final Map<String, Pattern> s_patterns = new ConcurrentHashMap<>();
     /**
      * The map keyed with 'EventKey's
      */
@@ -124,7 +131,7 @@ public class EventConfData extends Object {
                 if (keyvalue.equals(eventvalue)) {
                     maskMatch = true;
                 } else if (keyvalue.charAt(0) == '~'){
-                    if (eventvalue.matches(keyvalue.substring(1))) {
+                    if (compile(keyvalue).matcher(eventvalue).matches()) {
                         maskMatch = true;
                     }
                 } else if (keyvalue.charAt(len - 1) == '%') {
@@ -138,6 +145,14 @@ public class EventConfData extends Object {
         return maskMatch;
     }
 
+    /**
+     * Returns the compiled pattern for the given '~' prefixed mask value,
+     * compiling it on first use.
+     */
+    private static Pattern compile(final String keyvalue) {
+        return s_patterns.computeIfAbsent(keyvalue, k -> Pattern.compile(k.substring(1)));
+    }
+
     /**
      * Update the uei to keylist map
      */
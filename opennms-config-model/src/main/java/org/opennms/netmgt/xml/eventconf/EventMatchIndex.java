@@ -0,0 +1,377 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, precomputed index used to find the first event definition
+ * matching an event.
+ *
+ * The index is a small decision tree built from the partitions computed by
+ * {@link Events#initialize(Partition, EventOrdering)}:
+ * <ol>
+ *  <li>events with a UEI that is unique in a (sub-)configuration are resolved
+ *  with a hash lookup,</li>
+ *  <li>the remaining candidates are selected by partition key (the enterprise
+ *  id), and</li>
+ *  <li>within a partition, candidates are further narrowed down by the exact
+ *  values of their 'specific' (partitioned) or 'uei' (unpartitioned) mask
+ *  elements.</li>
+ * </ol>
+ *
+ * Every candidate is assigned a rank which reflects the order in which the
+ * recursive search over the event files used to visit it, so the first
+ * matching definition is exactly the one that would have been found by
+ * walking the configuration tree. Lookups don't lock and don't allocate
+ * any intermediate collections; a new index is built and swapped in whenever
+ * the configuration is (re-)initialized.
+ */
+public final class EventMatchIndex {
+
+    private static final Candidates NO_CANDIDATES = new Candidates(new long[0], new Event[0]);
+
+    private final Partition m_partition;
+
+    private final UeiIndex[] m_ueiIndexes;
+
+    private final Bucket m_unpartitioned;
+
+    private final Map<String, Bucket> m_partitioned;
+
+    private EventMatchIndex(final Partition partition, final UeiIndex[] ueiIndexes, final Bucket unpartitioned, final Map<String, Bucket> partitioned) {
+        m_partition = partition;
+        m_ueiIndexes = ueiIndexes;
+        m_unpartitioned = unpartitioned;
+        m_partitioned = partitioned;
+    }
+
+    /**
+     * Builds the index for the given, initialized, configuration tree.
+     */
+    public static EventMatchIndex build(final Events root, final Partition partition) {
+        final List<UeiIndex> ueiIndexes = new ArrayList<>();
+        final List<Ranked> unpartitioned = new ArrayList<>();
+        final Map<String, List<Ranked>> partitioned = new HashMap<>();
+
+        collect(root, 0, ueiIndexes, unpartitioned, partitioned);
+
+        final Map<String, Bucket> buckets = new HashMap<>(partitioned.size() * 2);
+        for (final Map.Entry<String, List<Ranked>> entry : partitioned.entrySet()) {
+            buckets.put(entry.getKey(), Bucket.build(entry.getValue(), Discriminator.SPECIFIC));
+        }
+
+        return new EventMatchIndex(partition,
+                ueiIndexes.toArray(new UeiIndex[ueiIndexes.size()]),
+                Bucket.build(unpartitioned, Discriminator.UEI),
+                Collections.unmodifiableMap(buckets));
+    }
+
+    /**
+     * Walks the configuration tree in the same (pre-)order as the recursive search does and
+     * assigns every candidate a rank of (node ordinal, position within the node).
+     *
+     * @return the next free node ordinal
+     */
+    private static int collect(final Events node, final int ordinal, final List<UeiIndex> ueiIndexes, final List<Ranked> unpartitioned, final Map<String, List<Ranked>> partitioned) {
+        final Map<String, Event> eventsByUei = node.getEventsByUei();
+        if (eventsByUei != null && !eventsByUei.isEmpty()) {
+            ueiIndexes.add(new UeiIndex(ordinal, eventsByUei));
+        }
+
+        // Order all of the candidates in this node the same way a TreeSet over them would
+        final Set<Event> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+        candidates.addAll(node.getNullPartitionedEvents());
+        node.getPartitionedEvents().values().forEach(candidates::addAll);
+        final List<Event> ordered = new ArrayList<>(candidates);
+        Collections.sort(ordered);
+        final Map<Event, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            positions.putIfAbsent(ordered.get(i), i);
+        }
+
+        for (final Event event : node.getNullPartitionedEvents()) {
+            unpartitioned.add(new Ranked(rank(ordinal, positions.get(event)), event));
+        }
+        for (final Map.Entry<String, List<Event>> entry : node.getPartitionedEvents().entrySet()) {
+            final List<Ranked> ranked = partitioned.computeIfAbsent(entry.getKey(), k -> new ArrayList<>());
+            for (final Event event : entry.getValue()) {
+                ranked.add(new Ranked(rank(ordinal, positions.get(event)), event));
+            }
+        }
+
+        int nextOrdinal = ordinal + 1;
+        for (final Events subEvents : node.getLoadedEventFiles()) {
+            nextOrdinal = collect(subEvents, nextOrdinal, ueiIndexes, unpartitioned, partitioned);
+        }
+        return nextOrdinal;
+    }
+
+    private static long rank(final int ordinal, final int position) {
+        return ((long) ordinal << 32) | (position & 0xffffffffL);
+    }
+
+    private static int ordinal(final long rank) {
+        return (int) (rank >>> 32);
+    }
+
+    public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final String uei = matchingEvent.getUei();
+        final String key = m_partition.group(matchingEvent);
+        final Bucket partition = key == null ? null : m_partitioned.get(key);
+
+        final Candidates c0 = m_unpartitioned.m_wildcard;
+        final Candidates c1 = m_unpartitioned.get(Discriminator.UEI.value(matchingEvent));
+        final Candidates c2 = partition == null ? NO_CANDIDATES : partition.m_wildcard;
+        final Candidates c3 = partition == null ? NO_CANDIDATES : partition.get(Discriminator.SPECIFIC.value(matchingEvent));
+
+        int i0 = 0, i1 = 0, i2 = 0, i3 = 0;
+        int nextUeiIndex = 0;
+        while (true) {
+            // Pick the candidate with the lowest rank from the four sorted streams
+            final long r0 = c0.rank(i0), r1 = c1.rank(i1), r2 = c2.rank(i2), r3 = c3.rank(i3);
+            final long rank = Math.min(Math.min(r0, r1), Math.min(r2, r3));
+            if (rank == Long.MAX_VALUE) {
+                break;
+            }
+
+            // Consult the UEI indexes of all of the configuration nodes visited up to this point
+            if (uei != null) {
+                final int ordinal = ordinal(rank);
+                while (nextUeiIndex < m_ueiIndexes.length && m_ueiIndexes[nextUeiIndex].m_ordinal <= ordinal) {
+                    final Event matchedEvent = m_ueiIndexes[nextUeiIndex++].m_eventsByUei.get(uei);
+                    if (matchedEvent != null) {
+                        return matchedEvent;
+                    }
+                }
+            }
+
+            final Event candidate;
+            if (r0 == rank) {
+                candidate = c0.m_events[i0];
+            } else if (r1 == rank) {
+                candidate = c1.m_events[i1];
+            } else if (r2 == rank) {
+                candidate = c2.m_events[i2];
+            } else {
+                candidate = c3.m_events[i3];
+            }
+            // The same definition can show up in more than one stream, only evaluate it once
+            if (r0 == rank) i0++;
+            if (r1 == rank) i1++;
+            if (r2 == rank) i2++;
+            if (r3 == rank) i3++;
+
+            if (candidate.matches(matchingEvent)) {
+                return candidate;
+            }
+        }
+
+        if (uei != null) {
+            while (nextUeiIndex < m_ueiIndexes.length) {
+                final Event matchedEvent = m_ueiIndexes[nextUeiIndex++].m_eventsByUei.get(uei);
+                if (matchedEvent != null) {
+                    return matchedEvent;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Used to narrow down the candidates of a bucket by the exact values
+     * of one of their mask elements.
+     */
+    private enum Discriminator {
+        UEI {
+            @Override
+            List<String> values(final Event eventConf) {
+                final Mask mask = eventConf.getMask();
+                if (mask == null || mask.getMaskelements().size() <= 0) {
+                    // Definitions without a mask only ever match on the UEI
+                    return eventConf.getUei() == null ? null : Collections.singletonList(eventConf.getUei());
+                }
+                return exactValues(mask.getMaskElement(TAG_UEI));
+            }
+
+            @Override
+            String value(final org.opennms.netmgt.xml.event.Event event) {
+                return event.getUei();
+            }
+        },
+        SPECIFIC {
+            @Override
+            List<String> values(final Event eventConf) {
+                final Mask mask = eventConf.getMask();
+                return mask == null ? null : exactValues(mask.getMaskElement(TAG_SNMP_SPECIFIC));
+            }
+
+            @Override
+            String value(final org.opennms.netmgt.xml.event.Event event) {
+                return event.getSnmp() == null || !event.getSnmp().hasSpecific()
+                        ? null
+                        : Integer.toString(event.getSnmp().getSpecific());
+            }
+        };
+
+        /**
+         * @return the values the definition requires, or null if it may match any value
+         */
+        abstract List<String> values(Event eventConf);
+
+        abstract String value(org.opennms.netmgt.xml.event.Event event);
+
+        private static List<String> exactValues(final Maskelement maskElement) {
+            if (maskElement == null) {
+                return null;
+            }
+            final List<String> values = new ArrayList<>(maskElement.getMevalues().size());
+            for (final String value : maskElement.getMevalues()) {
+                if (value == null) {
+                    continue;
+                }
+                if (value.startsWith("~") || value.endsWith("%")) {
+                    return null;
+                }
+                values.add(value);
+            }
+            return values.isEmpty() ? null : values;
+        }
+    }
+
+    private static final class Ranked implements Comparable<Ranked> {
+        private final long m_rank;
+        private final Event m_event;
+
+        private Ranked(final long rank, final Event event) {
+            m_rank = rank;
+            m_event = event;
+        }
+
+        @Override
+        public int compareTo(final Ranked o) {
+            return Long.compare(m_rank, o.m_rank);
+        }
+    }
+
+    private static final class Candidates {
+        private final long[] m_ranks;
+        private final Event[] m_events;
+
+        private Candidates(final long[] ranks, final Event[] events) {
+            m_ranks = ranks;
+            m_events = events;
+        }
+
+        private static Candidates of(final List<Ranked> ranked) {
+            if (ranked.isEmpty()) {
+                return NO_CANDIDATES;
+            }
+            Collections.sort(ranked);
+            final long[] ranks = new long[ranked.size()];
+            final Event[] events = new Event[ranked.size()];
+            int size = 0;
+            for (final Ranked r : ranked) {
+                // Prioritized definitions are rolled up, so the same one may have been added twice
+                if (size > 0 && ranks[size - 1] == r.m_rank) {
+                    continue;
+                }
+                ranks[size] = r.m_rank;
+                events[size] = r.m_event;
+                size++;
+            }
+            return new Candidates(Arrays.copyOf(ranks, size), Arrays.copyOf(events, size));
+        }
+
+        private long rank(final int i) {
+            return i < m_ranks.length ? m_ranks[i] : Long.MAX_VALUE;
+        }
+    }
+
+    private static final class Bucket {
+        private final Candidates m_wildcard;
+        private final Map<String, Candidates> m_byValue;
+
+        private Bucket(final Candidates wildcard, final Map<String, Candidates> byValue) {
+            m_wildcard = wildcard;
+            m_byValue = byValue;
+        }
+
+        private static Bucket build(final List<Ranked> ranked, final Discriminator discriminator) {
+            final List<Ranked> wildcard = new ArrayList<>();
+            final Map<String, List<Ranked>> byValue = new HashMap<>();
+            for (final Ranked r : ranked) {
+                final List<String> values = discriminator.values(r.m_event);
+                if (values == null) {
+                    wildcard.add(r);
+                } else {
+                    for (final String value : new LinkedHashSet<>(values)) {
+                        byValue.computeIfAbsent(value, v -> new ArrayList<>()).add(r);
+                    }
+                }
+            }
+
+            final Map<String, Candidates> candidatesByValue = new HashMap<>(byValue.size() * 2);
+            for (final Map.Entry<String, List<Ranked>> entry : byValue.entrySet()) {
+                candidatesByValue.put(entry.getKey(), Candidates.of(entry.getValue()));
+            }
+            return new Bucket(Candidates.of(wildcard), candidatesByValue);
+        }
+
+        private Candidates get(final String value) {
+            if (value == null) {
+                return NO_CANDIDATES;
+            }
+            final Candidates candidates = m_byValue.get(value);
+            return candidates == null ? NO_CANDIDATES : candidates;
+        }
+    }
+
+    private static final class UeiIndex {
+        private final int m_ordinal;
+        private final Map<String, Event> m_eventsByUei;
+
+        private UeiIndex(final int ordinal, final Map<String, Event> eventsByUei) {
+            m_ordinal = ordinal;
+            m_eventsByUei = eventsByUei;
+        }
+    }
+}
@@ -120,6 +120,9 @@ public class Events implements Serializable {
     @XmlTransient
     private EventOrdering m_ordering;
 
+    @XmlTransient
+    private volatile EventMatchIndex m_matchIndex;
+
     public Global getGlobal() {
         return m_global;
     }
@@ -275,6 +278,11 @@ public class Events implements Serializable {
 
 
     public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final EventMatchIndex matchIndex = m_matchIndex;
+        if (matchIndex != null) {
+            return matchIndex.findFirstMatchingEvent(matchingEvent);
+        }
+
         // Atempt to match the event definition by UEI
         final String ueiToMatch = matchingEvent.getUei();
         if (ueiToMatch != null) {
@@ -347,6 +355,14 @@ public class Events implements Serializable {
     }
 
     public void initialize(final Partition partition, final EventOrdering eventOrdering) {
+        initializeEvents(partition, eventOrdering);
+
+        // Compile the lookup structures once all of the event files have been initialized
+        // and swap them in atomically, lookups in progress keep using the previous index
+        m_matchIndex = EventMatchIndex.build(this, partition);
+    }
+
+    private void initializeEvents(final Partition partition, final EventOrdering eventOrdering) {
         m_ordering = eventOrdering;
 
         for (final Event event : m_events) {
@@ -356,7 +372,7 @@ public class Events implements Serializable {
         partitionEvents(partition);
 
         for (final Events events : m_loadedEventFiles.values()) {
-            events.initialize(partition, m_ordering.subsequence());
+            events.initializeEvents(partition, m_ordering.subsequence());
         }
 
         // roll up all prioritized events and sort all events by priority
@@ -382,7 +398,8 @@ public class Events implements Serializable {
     }
 
     private void indexEventsByUei() {
-        m_eventsByUei.clear();
+        // Build a new map instead of clearing the existing one, since it may still be referenced by the current match index
+        final Map<String, Event> eventsByUei = new HashMap<>();
 
         final Set<String> ueisWithManyEventDefinitions = new HashSet<>();
 
@@ -394,14 +411,14 @@ public class Events implements Serializable {
                 return;
             }
 
-            if (m_eventsByUei.putIfAbsent(uei, e) != null) {
+            if (eventsByUei.putIfAbsent(uei, e) != null) {
                 // Keep trap of the UEIs that have many event definitions
                 ueisWithManyEventDefinitions.add(uei);
             }
         });
 
         // Remove UEIs for which there are many event definitions
-        ueisWithManyEventDefinitions.forEach(m_eventsByUei::remove);
+        ueisWithManyEventDefinitions.forEach(eventsByUei::remove);
 
         // Now remove event definitions from the index if any
         // mask elements from any other event definitions match
@@ -429,7 +446,7 @@ public class Events implements Serializable {
         // 2) Remove event definition from the index if they are matched
         // by any of the known UEI matchers.
         if (matchers.size() >= 1) {
-            events: for(Iterator<Entry<String, Event>> it = m_eventsByUei.entrySet().iterator(); it.hasNext(); ) {
+            events: for(Iterator<Entry<String, Event>> it = eventsByUei.entrySet().iterator(); it.hasNext(); ) {
                 final Entry<String, Event> entry = it.next();
                 for (EventMatcher matcher : matchers) {
                     // Build an event instance
@@ -444,6 +461,24 @@ public class Events implements Serializable {
                 }
             }
         }
+
+        m_eventsByUei = eventsByUei;
+    }
+
+    Map<String, Event> getEventsByUei() {
+        return m_eventsByUei;
+    }
+
+    List<Event> getNullPartitionedEvents() {
+        return m_nullPartitionedEvents;
+    }
+
+    Map<String, List<Event>> getPartitionedEvents() {
+        return m_partitionedEvents;
+    }
+
+    Collection<Events> getLoadedEventFiles() {
+        return m_loadedEventFiles.values();
     }
 
     public Events getLoadEventsByFile(final String relativePath) {
@@ -150,6 +150,16 @@ public interface SyslogdConfig {
      */
     TimeZone getTimeZone();
 
+    /**
+     * Changes whenever the uei-match or hide-message rules are (re)loaded,
+     * so that anything built from these rules can tell when to rebuild.
+     *
+     * @return the generation of the uei-match and hide-message rules
+     */
+    default long getMatchesGeneration() {
+        return 0;
+    }
+
     /**
      * reload configuration
      * @throws IOException
@@ -68,6 +68,12 @@ public final class SyslogdConfigFactory implements SyslogdConfig {
 
     private ConfigReloadContainer<SyslogdConfigurationGroup> m_extContainer;
 
+    /**
+     * Incremented once the uei-match and hide-message rules are loaded,
+     * since they are edited in place while merging the included files
+     */
+    private volatile long m_matchesGeneration;
+
     /**
      * Private constructor
      *
@@ -188,6 +194,11 @@ public final class SyslogdConfigFactory implements SyslogdConfig {
     public synchronized List<HideMatch> getHideMessages() {
         return m_config.getHideMatches();
     }
+
+    @Override
+    public long getMatchesGeneration() {
+        return m_matchesGeneration;
+    }
     
     /**
      * <p>getDiscardUei</p>
@@ -273,6 +284,7 @@ public final class SyslogdConfigFactory implements SyslogdConfig {
                         .collect(Collectors.joining(",")));
             }
         }
+        m_matchesGeneration++;
     }
 
     private void initExtensions() {
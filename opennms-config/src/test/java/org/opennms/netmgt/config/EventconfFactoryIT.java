@@ -163,6 +163,45 @@ public class EventconfFactoryIT {
         assertEquals("UEI", bldr.getEvent().getUei(), eventConf.getUei());
     }
 
+    /**
+     * Builds a trap for every event definition in the shipped eventconf that
+     * uses an exact enterprise id and specific type, and verifies that each one
+     * resolves to a definition which actually matches it.
+     */
+    @Test
+    public void testFindByEventTrapsFromShippedEventConf() throws Exception {
+        final List<org.opennms.netmgt.xml.event.Event> traps = new ArrayList<>();
+        for (Event eventConf : m_eventConfDao.getAllEvents()) {
+            final List<String> ids = eventConf.getMaskElementValues("id");
+            final List<String> specifics = eventConf.getMaskElementValues("specific");
+            if (ids == null || specifics == null || ids.get(0).startsWith("~") || ids.get(0).endsWith("%")) {
+                continue;
+            }
+            final EventBuilder bldr = new EventBuilder(null, "trapd");
+            bldr.setEnterpriseId(ids.get(0));
+            bldr.setGeneric(6);
+            try {
+                bldr.setSpecific(Integer.parseInt(specifics.get(0)));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            traps.add(bldr.getEvent());
+        }
+        assertTrue("expected trap definitions in the shipped eventconf", traps.size() > 1000);
+
+        final int ROUNDS = 10;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (org.opennms.netmgt.xml.event.Event trap : traps) {
+                final Event eventConf = m_eventConfDao.findByEvent(trap);
+                assertNotNull("no event configuration found for trap " + trap.getSnmp(), eventConf);
+                assertTrue(eventConf.matches(trap));
+            }
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        LOG.info("{} Lookups: Elapsed: {} ms: events per second {}.", ROUNDS * traps.size(), elapsed, ROUNDS * traps.size() * 1000.0 / elapsed);
+    }
+
     public class EventCreator  {
         
         private EventBuilder m_eventBuilder;
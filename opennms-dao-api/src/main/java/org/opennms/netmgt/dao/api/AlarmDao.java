@@ -40,6 +40,13 @@ public interface AlarmDao extends LegacyOnmsDao<OnmsAlarm, Integer> {
 
     OnmsAlarm findByReductionKey(String reductionKey);
 
+    /**
+     * <p>Get the ids of all alarms which have a reduction key, indexed by their reduction key.</p>
+     *
+     * @return A map of reduction keys to alarm ids.
+     */
+    Map<String, Integer> getAlarmIdsByReductionKey();
+
     /**
      * <p>Get the list of current - not yet acknowledged - alarms per node with severity greater than normal,
      * reflecting the max severity, the minimum last event time and alarm count;
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.dao.mock;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -86,6 +87,17 @@ public class MockAlarmDao extends AbstractMockDao<OnmsAlarm, Integer> implements
         return null;
     }
 
+    @Override
+    public Map<String, Integer> getAlarmIdsByReductionKey() {
+        final Map<String, Integer> alarmIdsByReductionKey = new HashMap<>();
+        for (OnmsAlarm alarm : findAll()) {
+            if (alarm.getReductionKey() != null) {
+                alarmIdsByReductionKey.put(alarm.getReductionKey(), alarm.getId());
+            }
+        }
+        return alarmIdsByReductionKey;
+    }
+
     @Override
     public List<AlarmSummary> getNodeAlarmSummaries() {
         throw new UnsupportedOperationException("Not yet implemented!");
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.assemblies.karaf;
+
+import static org.junit.Assert.assertNotNull;
+import static org.ops4j.pax.exam.CoreOptions.maven;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.karaf.KarafTestCase;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerMethod;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * <p>This test checks that the features from:</p>
+ * <code>
+ * mvn:org.opennms.karaf/opennms/${currentVersion}/xml/sentinel
+ * <code>
+ * <p>load correctly in Karaf.</p>
+ */
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerMethod.class)
+public class SentinelFeatureKarafIT extends KarafTestCase {
+
+	@Before
+	public void setUp() {
+		addFeaturesUrl(maven().groupId("org.apache.karaf.features").artifactId("standard").version(getKarafVersion()).type("xml").classifier("features").getURL());
+		addFeaturesUrl(maven().groupId("org.apache.karaf.features").artifactId("spring-legacy").version(getKarafVersion()).type("xml").classifier("features").getURL());
+
+		// This artifact contains Sentinel-only Karaf features
+		final String version = getOpenNMSVersion();
+		addFeaturesUrl(maven().groupId("org.opennms.karaf").artifactId("opennms").version(version).type("xml").classifier("sentinel").getURL());
+	}
+
+	@Test
+	public void testInstallFeatureSentinelFlows() throws Exception {
+		installFeature("sentinel-flows");
+		System.out.println(executeCommand("feature:list -i"));
+
+		// Sentinel does not provide the EventSubscriptionService, the blueprint container must come up without it
+		assertNotNull("The blueprint container of the flows.elastic bundle was not created.",
+				awaitBlueprintContainer("org.opennms.features.flows.elastic", TimeUnit.MINUTES.toMillis(2)));
+	}
+
+	private ServiceReference<?> awaitBlueprintContainer(final String symbolicName, final long timeoutMillis) throws Exception {
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (System.currentTimeMillis() < deadline) {
+			final ServiceReference<?>[] references = bundleContext.getServiceReferences("org.osgi.service.blueprint.container.BlueprintContainer",
+					"(osgi.blueprint.container.symbolicname=" + symbolicName + ")");
+			if (references != null && references.length > 0) {
+				return references[0];
+			}
+			Thread.sleep(1000);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.jrobin.core.RrdDef;
+import org.opennms.netmgt.rrd.RrdDataSource;
+import org.opennms.netmgt.rrd.RrdException;
+import org.opennms.netmgt.rrd.RrdGraphDetails;
+import org.opennms.netmgt.rrd.RrdStrategy;
+
+/**
+ * A JRobin based implementation of RrdStrategy which hands the updates off to
+ * a {@link JRobinWriteEngine} instead of writing them on the calling thread.
+ *
+ * The updates made between {@link #openFile(String)} and
+ * {@link #closeFile(UpdateBatch)} are submitted to the engine together when
+ * the file is closed. Files are created synchronously, and all other
+ * operations are delegated to a {@link JRobinRrdStrategy}.
+ *
+ * Configuration properties effecting the operation:
+ *
+ * org.opennms.rrd.jrobin.writeThreads: (default 4) the number of threads
+ * writing to the files
+ *
+ * org.opennms.rrd.jrobin.maxOpenFiles: (default 1024) the maximum number of
+ * files kept open by the writer threads
+ *
+ * org.opennms.rrd.jrobin.maxPendingSamples: (default 100000) the maximum number
+ * of samples pending for each writer thread, further samples are dropped
+ */
+public class BatchingJRobinRrdStrategy implements RrdStrategy<RrdDef, BatchingJRobinRrdStrategy.UpdateBatch>, AutoCloseable {
+
+    public static final String WRITE_THREADS_PROPERTY = "org.opennms.rrd.jrobin.writeThreads";
+
+    public static final String MAX_OPEN_FILES_PROPERTY = "org.opennms.rrd.jrobin.maxOpenFiles";
+
+    public static final String MAX_PENDING_SAMPLES_PROPERTY = "org.opennms.rrd.jrobin.maxPendingSamples";
+
+    private final JRobinRrdStrategy m_delegate;
+
+    private Properties m_configurationProperties;
+
+    private JRobinWriteEngine m_engine;
+
+    public static class UpdateBatch {
+        private final String m_fileName;
+        private final List<String> m_samples = new ArrayList<>();
+
+        public UpdateBatch(final String fileName) {
+            m_fileName = fileName;
+        }
+
+        public String getFileName() {
+            return m_fileName;
+        }
+
+        public List<String> getSamples() {
+            return m_samples;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Filename: %s Samples: %s", m_fileName, m_samples);
+        }
+    }
+
+    public BatchingJRobinRrdStrategy() throws Exception {
+        m_delegate = new JRobinRrdStrategy();
+    }
+
+    /**
+     * <p>getConfigurationProperties</p>
+     *
+     * @return a {@link java.util.Properties} object.
+     */
+    public Properties getConfigurationProperties() {
+        return m_configurationProperties;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setConfigurationProperties(final Properties configurationParameters) {
+        m_configurationProperties = configurationParameters;
+        m_delegate.setConfigurationProperties(configurationParameters);
+    }
+
+    /**
+     * Returns the write engine, creating it on first use.
+     *
+     * @return the write engine
+     */
+    public synchronized JRobinWriteEngine getWriteEngine() {
+        if (m_engine == null) {
+            m_engine = new JRobinWriteEngine(getIntProperty(WRITE_THREADS_PROPERTY, JRobinWriteEngine.DEFAULT_WRITE_THREADS),
+                                             getIntProperty(MAX_OPEN_FILES_PROPERTY, JRobinWriteEngine.DEFAULT_MAX_OPEN_FILES),
+                                             getIntProperty(MAX_PENDING_SAMPLES_PROPERTY, JRobinWriteEngine.DEFAULT_MAX_PENDING_SAMPLES));
+        }
+        return m_engine;
+    }
+
+    private int getIntProperty(final String key, final int defaultValue) {
+        if (m_configurationProperties == null) {
+            return defaultValue;
+        }
+        final String value = m_configurationProperties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RrdDef createDefinition(final String creator, final String directory, final String rrdName, final int step,
+            final List<RrdDataSource> dataSources, final List<String> rraList) throws Exception {
+        return m_delegate.createDefinition(creator, directory, rrdName, step, dataSources, rraList);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void createFile(final RrdDef rrdDef) throws Exception {
+        m_delegate.createFile(rrdDef);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Starts a new batch of updates for the given file.
+     */
+    @Override
+    public UpdateBatch openFile(final String fileName) throws Exception {
+        return new UpdateBatch(fileName);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Appends the sample to the batch.
+     */
+    @Override
+    public void updateFile(final UpdateBatch batch, final String owner, final String data) throws Exception {
+        batch.getSamples().add(data);
+    }
+
+    /**
+     * Submits the batch to the write engine.
+     *
+     * @param batch a {@link UpdateBatch} object.
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public void closeFile(final UpdateBatch batch) throws Exception {
+        getWriteEngine().submit(batch.getFileName(), batch.getSamples());
+    }
+
+    /**
+     * Writes all pending updates and closes the files held open by the
+     * write engine.
+     *
+     * @throws java.lang.Exception if any.
+     */
+    @Override
+    public synchronized void close() throws Exception {
+        if (m_engine != null) {
+            m_engine.close();
+            m_engine = null;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValue(final String fileName, final String ds, final int interval) throws NumberFormatException, RrdException {
+        return m_delegate.fetchLastValue(fileName, ds, interval);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValue(final String fileName, final String ds, final String consolidationFunction, final int interval) throws NumberFormatException, RrdException {
+        return m_delegate.fetchLastValue(fileName, ds, consolidationFunction, interval);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, RrdException {
+        return m_delegate.fetchLastValueInRange(fileName, ds, interval, range);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public InputStream createGraph(final String command, final File workDir) throws IOException, RrdException {
+        return m_delegate.createGraph(command, workDir);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RrdGraphDetails createGraphReturnDetails(final String command, final File workDir) throws IOException, RrdException {
+        return m_delegate.createGraphReturnDetails(command, workDir);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void promoteEnqueuedFiles(final Collection<String> rrdFiles) {
+        // no need to do anything since the write engine does not prioritize files
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getStats() {
+        final JRobinWriteEngine engine;
+        synchronized (this) {
+            engine = m_engine;
+        }
+        if (engine == null) {
+            return "";
+        }
+        return String.format("pending samples: %d, open files: %d, dropped samples: %d", engine.getPendingSamples(),
+                engine.getOpenFiles(), engine.getMetrics().meter("dropped").getCount());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphLeftOffset() {
+        return m_delegate.getGraphLeftOffset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphRightOffset() {
+        return m_delegate.getGraphRightOffset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphTopOffsetWithText() {
+        return m_delegate.getGraphTopOffsetWithText();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDefaultFileExtension() {
+        return m_delegate.getDefaultFileExtension();
+    }
+}
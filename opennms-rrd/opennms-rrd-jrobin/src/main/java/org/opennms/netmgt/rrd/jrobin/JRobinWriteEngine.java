@@ -0,0 +1,402 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jrobin.core.RrdDb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Writes samples to JRobin files using a fixed set of writer threads.
+ *
+ * Files are assigned to the writer threads by the hash of their path, so that
+ * every file is only ever written by the same thread. Samples submitted for a
+ * file which is already waiting to be written are appended to the pending
+ * samples of that file, and are written together once the thread gets to it.
+ *
+ * Each writer thread keeps the files it has written to recently open, up to
+ * its share of the maximum number of open files. The least recently used file
+ * is closed when this limit is reached. An open file is reopened if the file
+ * at its path was deleted, renamed or replaced since it was opened.
+ *
+ * Each writer thread holds at most the given number of pending samples. Samples
+ * submitted beyond this limit are dropped and counted, so that a slow disk does
+ * not exhaust the memory.
+ */
+public class JRobinWriteEngine implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(JRobinWriteEngine.class);
+
+    public static final int DEFAULT_WRITE_THREADS = 4;
+
+    public static final int DEFAULT_MAX_OPEN_FILES = 1024;
+
+    public static final int DEFAULT_MAX_PENDING_SAMPLES = 100000;
+
+    private static final String JMX_DOMAIN = "org.opennms.netmgt.rrd.jrobin";
+
+    private final Shard[] m_shards;
+
+    private final AtomicLong m_pendingSamples = new AtomicLong(0);
+
+    private final AtomicInteger m_openFiles = new AtomicInteger(0);
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+
+    private final Timer m_flushLatency;
+
+    private final Histogram m_batchSize;
+
+    private final Meter m_errors;
+
+    private final Meter m_dropped;
+
+    private final int m_maxPendingSamples;
+
+    private final JmxReporter m_reporter;
+
+    private volatile boolean m_closed = false;
+
+    public JRobinWriteEngine(final int writeThreads, final int maxOpenFiles) {
+        this(writeThreads, maxOpenFiles, DEFAULT_MAX_PENDING_SAMPLES);
+    }
+
+    /**
+     * @param writeThreads the number of writer threads
+     * @param maxOpenFiles the maximum number of files kept open by all writer threads
+     * @param maxPendingSamples the maximum number of samples pending for each writer thread
+     */
+    public JRobinWriteEngine(final int writeThreads, final int maxOpenFiles, final int maxPendingSamples) {
+        if (writeThreads < 1) {
+            throw new IllegalArgumentException("At least one write thread is required");
+        }
+        if (maxOpenFiles < writeThreads) {
+            throw new IllegalArgumentException("The maximum number of open files must be at least the number of write threads");
+        }
+        if (maxPendingSamples < 1) {
+            throw new IllegalArgumentException("The maximum number of pending samples must be positive");
+        }
+        m_maxPendingSamples = maxPendingSamples;
+
+        m_shards = new Shard[writeThreads];
+        for (int i = 0; i < writeThreads; i++) {
+            // Split the open files evenly, handing out the remainder to the first shards
+            m_shards[i] = new Shard(i, maxOpenFiles / writeThreads + (i < maxOpenFiles % writeThreads ? 1 : 0));
+        }
+
+        m_flushLatency = m_metrics.timer("flush-latency");
+        m_batchSize = m_metrics.histogram("batch-size");
+        m_errors = m_metrics.meter("errors");
+        m_dropped = m_metrics.meter("dropped");
+        m_metrics.register("queue-depth", (Gauge<Long>) m_pendingSamples::get);
+        m_metrics.register("open-files", (Gauge<Integer>) m_openFiles::get);
+        for (final Shard shard : m_shards) {
+            m_metrics.register(MetricRegistry.name("writer", Integer.toString(shard.index), "queue-depth"),
+                    (Gauge<Long>) shard.pendingSamples::get);
+            m_metrics.register(MetricRegistry.name("writer", Integer.toString(shard.index), "queue-size"),
+                    (Gauge<Integer>) shard.pending::size);
+        }
+
+        m_reporter = JmxReporter.forRegistry(m_metrics)
+                .inDomain(JMX_DOMAIN)
+                .build();
+        m_reporter.start();
+    }
+
+    /**
+     * Submits samples to be written to the given file.
+     *
+     * @param path the path of the file
+     * @param samples the samples in rrdtool update format, in chronological order
+     * @return false if the samples were dropped, because too many samples are pending already
+     */
+    public boolean submit(final String path, final List<String> samples) {
+        Objects.requireNonNull(path);
+        if (samples.isEmpty()) {
+            return true;
+        }
+        if (m_closed) {
+            throw new IllegalStateException("The write engine is closed");
+        }
+
+        final Shard shard = m_shards[(path.hashCode() & Integer.MAX_VALUE) % m_shards.length];
+
+        // Reserve the room for the samples first, so that concurrent submits can not exceed the limit
+        if (shard.pendingSamples.addAndGet(samples.size()) > m_maxPendingSamples) {
+            shard.pendingSamples.addAndGet(-samples.size());
+            m_dropped.mark(samples.size());
+            LOG.warn("Too many samples pending for writer {}. Dropping {} samples for {}.", shard.index, samples.size(), path);
+            return false;
+        }
+
+        // Append the samples to the ones already pending for this file, if any. The file only needs to be
+        // handed to the writer thread if nothing was pending, otherwise the samples are picked up with the others.
+        final boolean[] schedule = new boolean[] { false };
+        shard.pending.compute(path, (k, pending) -> {
+            if (pending == null) {
+                pending = new Pending();
+                schedule[0] = true;
+            }
+            pending.samples.addAll(samples);
+            return pending;
+        });
+        m_pendingSamples.addAndGet(samples.size());
+
+        if (schedule[0]) {
+            shard.executor.execute(() -> shard.write(path));
+        }
+        return true;
+    }
+
+    /**
+     * Waits until all samples submitted before this call are written.
+     */
+    public void flush() throws InterruptedException {
+        for (final Shard shard : m_shards) {
+            try {
+                shard.executor.submit(() -> {}).get();
+            } catch (final ExecutionException e) {
+                // Nothing to do here, the barrier task itself can not fail
+            }
+        }
+    }
+
+    /**
+     * Writes all pending samples and closes all open files.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (m_closed) {
+            return;
+        }
+        m_closed = true;
+
+        for (final Shard shard : m_shards) {
+            shard.executor.execute(shard::closeAll);
+            shard.executor.shutdown();
+        }
+        for (final Shard shard : m_shards) {
+            shard.executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        m_reporter.stop();
+    }
+
+    public long getPendingSamples() {
+        return m_pendingSamples.get();
+    }
+
+    public int getOpenFiles() {
+        return m_openFiles.get();
+    }
+
+    public MetricRegistry getMetrics() {
+        return m_metrics;
+    }
+
+    private static class Pending {
+        private final List<String> samples = new ArrayList<>();
+        private final long since = System.nanoTime();
+    }
+
+    private static class OpenFile {
+        private final RrdDb rrd;
+
+        /**
+         * Identifies the file which was opened, i.e. the device and inode, if supported by the file system.
+         */
+        private final Object fileKey;
+
+        private OpenFile(final RrdDb rrd, final Object fileKey) {
+            this.rrd = rrd;
+            this.fileKey = fileKey;
+        }
+    }
+
+    private class Shard {
+        private final int index;
+
+        private final ExecutorService executor;
+
+        private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+        private final AtomicLong pendingSamples = new AtomicLong(0);
+
+        /**
+         * The files opened by this shard, in access order. Only ever used by the writer thread.
+         */
+        private final LinkedHashMap<String, OpenFile> files;
+
+        private Shard(final int index, final int maxOpenFiles) {
+            this.index = index;
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                final Thread thread = new Thread(r, "JRobin-Writer-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            this.files = new LinkedHashMap<String, OpenFile>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, OpenFile> eldest) {
+                    if (size() > maxOpenFiles) {
+                        closeFile(eldest.getKey(), eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private void write(final String path) {
+            // Take all the samples pending for this file - samples submitted from now on will schedule another write
+            final Pending pending = this.pending.remove(path);
+            if (pending == null) {
+                return;
+            }
+
+            try {
+                final RrdDb rrd = open(path);
+                if (rrd == null) {
+                    m_errors.mark(pending.samples.size());
+                    return;
+                }
+
+                for (final String sample : pending.samples) {
+                    try {
+                        rrd.createSample().setAndUpdate(sample);
+                    } catch (final IOException e) {
+                        // The handle may no longer be usable, re-open the file on the next write
+                        LOG.warn("Failed to update {} with {}. Closing the file.", path, sample, e);
+                        m_errors.mark();
+                        closeFile(path, this.files.remove(path));
+                        break;
+                    } catch (final Exception e) {
+                        LOG.warn("Failed to update {} with {}", path, sample, e);
+                        m_errors.mark();
+                    }
+                }
+            } finally {
+                this.pendingSamples.addAndGet(-pending.samples.size());
+                m_pendingSamples.addAndGet(-pending.samples.size());
+                m_batchSize.update(pending.samples.size());
+                m_flushLatency.update(System.nanoTime() - pending.since, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private RrdDb open(final String path) {
+            OpenFile file = this.files.get(path);
+            if (file != null && !Objects.equals(file.fileKey, getFileKey(path))) {
+                // The file was deleted, renamed or replaced, so the handle no longer refers to it
+                LOG.debug("{} changed since it was opened. Reopening it.", path);
+                closeFile(path, this.files.remove(path));
+                file = null;
+            }
+            if (file == null) {
+                final RrdDb rrd;
+                try {
+                    rrd = new RrdDb(path);
+                } catch (final Exception e) {
+                    LOG.warn("Failed to open {}. Dropping pending samples.", path, e);
+                    return null;
+                }
+                m_openFiles.incrementAndGet();
+                file = new OpenFile(rrd, getFileKey(path));
+                this.files.put(path, file);
+            }
+            return file.rrd;
+        }
+
+        private void closeFile(final String path, final OpenFile file) {
+            if (file == null) {
+                return;
+            }
+            try {
+                file.rrd.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close {}", path, e);
+            } finally {
+                m_openFiles.decrementAndGet();
+            }
+        }
+
+        private void closeAll() {
+            for (final Iterator<Map.Entry<String, OpenFile>> it = this.files.entrySet().iterator(); it.hasNext(); ) {
+                final Map.Entry<String, OpenFile> entry = it.next();
+                closeFile(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Identifies the file at the given path, falling back to its creation time where the file system has no
+     * file keys.
+     *
+     * @return the identity of the file, or null if there is no such file
+     */
+    private static Object getFileKey(final String path) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            LOG.debug("Failed to read the attributes of {}", path, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.rrd.RrdAttributeType;
+import org.opennms.netmgt.rrd.RrdDataSource;
+
+public class BatchingJRobinRrdStrategyTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private BatchingJRobinRrdStrategy m_strategy;
+
+    @Before
+    public void setUp() throws Exception {
+        final Properties props = new Properties();
+        props.setProperty(BatchingJRobinRrdStrategy.WRITE_THREADS_PROPERTY, "2");
+        props.setProperty(BatchingJRobinRrdStrategy.MAX_OPEN_FILES_PROPERTY, "2");
+
+        m_strategy = new BatchingJRobinRrdStrategy();
+        m_strategy.setConfigurationProperties(props);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_strategy.close();
+    }
+
+    @Test
+    public void canWriteBatchesWithBoundedOpenFiles() throws Exception {
+        final long start = 1000000000L;
+
+        final List<String> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(createFile("file" + i));
+        }
+
+        // Write 3 samples per file, in separate batches, interleaved across files
+        for (int step = 1; step <= 3; step++) {
+            for (int i = 0; i < files.size(); i++) {
+                final BatchingJRobinRrdStrategy.UpdateBatch batch = m_strategy.openFile(files.get(i));
+                m_strategy.updateFile(batch, "test", (start + step * 300) + ":" + (i * 10 + step));
+                m_strategy.closeFile(batch);
+            }
+        }
+
+        final JRobinWriteEngine engine = m_strategy.getWriteEngine();
+        engine.flush();
+
+        assertEquals(0, engine.getPendingSamples());
+        assertTrue("open files: " + engine.getOpenFiles(), engine.getOpenFiles() <= 2);
+        // Samples pending for the same file are written together
+        final long batches = engine.getMetrics().histogram("batch-size").getCount();
+        assertTrue("batches: " + batches, batches >= 1 && batches <= 30);
+
+        for (int i = 0; i < files.size(); i++) {
+            final RrdDb rrd = new RrdDb(files.get(i), true);
+            try {
+                assertEquals(start + 900, rrd.getLastUpdateTime());
+                assertEquals(i * 10 + 3, rrd.getLastDatasourceValue("x"), 0.0);
+            } finally {
+                rrd.close();
+            }
+        }
+    }
+
+    @Test
+    public void canCloseWithPendingSamples() throws Exception {
+        final String file = createFile("pending");
+
+        final BatchingJRobinRrdStrategy.UpdateBatch batch = m_strategy.openFile(file);
+        m_strategy.updateFile(batch, "test", "1000000300:1");
+        m_strategy.updateFile(batch, "test", "1000000600:2");
+        m_strategy.closeFile(batch);
+
+        final JRobinWriteEngine engine = m_strategy.getWriteEngine();
+        m_strategy.close();
+
+        assertEquals(0, engine.getPendingSamples());
+        assertEquals(0, engine.getOpenFiles());
+
+        final RrdDb rrd = new RrdDb(file, true);
+        try {
+            assertEquals(1000000600L, rrd.getLastUpdateTime());
+            assertEquals(2.0, rrd.getLastDatasourceValue("x"), 0.0);
+        } finally {
+            rrd.close();
+        }
+    }
+
+    @Test
+    public void canReopenReplacedFiles() throws Exception {
+        final String file = createFile("replaced");
+        write(file, "1000000300:1");
+        final JRobinWriteEngine engine = m_strategy.getWriteEngine();
+        engine.flush();
+        assertEquals(1, engine.getOpenFiles());
+
+        // Replace the file while it is held open by the engine
+        assertTrue(new File(file).delete());
+        assertEquals(file, createFile("replaced"));
+        write(file, "1000000600:2");
+        engine.flush();
+
+        final RrdDb rrd = new RrdDb(file, true);
+        try {
+            assertEquals(1000000600L, rrd.getLastUpdateTime());
+            assertEquals(2.0, rrd.getLastDatasourceValue("x"), 0.0);
+        } finally {
+            rrd.close();
+        }
+        assertEquals(1, engine.getOpenFiles());
+
+        // Samples for a deleted file are dropped instead of being written to the stale handle
+        assertTrue(new File(file).delete());
+        write(file, "1000000900:3");
+        engine.flush();
+        assertEquals(0, engine.getOpenFiles());
+        assertEquals(1, engine.getMetrics().meter("errors").getCount());
+    }
+
+    @Test
+    public void canDropSamplesBeyondTheLimit() throws Exception {
+        final Properties props = new Properties();
+        props.setProperty(BatchingJRobinRrdStrategy.WRITE_THREADS_PROPERTY, "1");
+        props.setProperty(BatchingJRobinRrdStrategy.MAX_OPEN_FILES_PROPERTY, "1");
+        props.setProperty(BatchingJRobinRrdStrategy.MAX_PENDING_SAMPLES_PROPERTY, "2");
+        m_strategy.setConfigurationProperties(props);
+
+        final String file = createFile("limited");
+        write(file, "1000000300:1", "1000000600:2", "1000000900:3");
+        write(file, "1000000300:4", "1000000600:5");
+
+        final JRobinWriteEngine engine = m_strategy.getWriteEngine();
+        engine.flush();
+        assertEquals(0, engine.getPendingSamples());
+        assertEquals(3, engine.getMetrics().meter("dropped").getCount());
+        assertEquals(0L, engine.getMetrics().getGauges().get("writer.0.queue-depth").getValue());
+
+        final RrdDb rrd = new RrdDb(file, true);
+        try {
+            assertEquals(1000000600L, rrd.getLastUpdateTime());
+            assertEquals(5.0, rrd.getLastDatasourceValue("x"), 0.0);
+        } finally {
+            rrd.close();
+        }
+    }
+
+    private void write(final String file, final String... samples) throws Exception {
+        final BatchingJRobinRrdStrategy.UpdateBatch batch = m_strategy.openFile(file);
+        for (final String sample : samples) {
+            m_strategy.updateFile(batch, "test", sample);
+        }
+        m_strategy.closeFile(batch);
+    }
+
+    private String createFile(final String name) throws Exception {
+        final File dir = tempFolder.getRoot();
+        final RrdDef def = m_strategy.createDefinition("test", dir.getAbsolutePath(), name, 300,
+                Collections.singletonList(new RrdDataSource("x", RrdAttributeType.GAUGE, 600, "U", "U")),
+                Collections.singletonList("RRA:AVERAGE:0.5:1:100"));
+        def.setStartTime(1000000000L);
+        m_strategy.createFile(def);
+        return def.getPath();
+    }
+}
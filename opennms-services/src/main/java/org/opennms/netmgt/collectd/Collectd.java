@@ -78,9 +78,9 @@ import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventUtils;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.opennms.netmgt.snmp.InetAddrUtils;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
@@ -129,6 +129,12 @@ public class Collectd extends AbstractServiceDaemon implements
      * Log4j category
      */
     static final String LOG4J_CATEGORY = "collectd";
+
+    /**
+     * System property used to set the maximum random delay (in milliseconds) before
+     * the first collection of a newly scheduled service.
+     */
+    public static final String START_JITTER_SYS_PROP = "org.opennms.collectd.scheduler.startJitter";
     
     /**
      * Instantiated service collectors specified in config file
@@ -329,7 +335,9 @@ public class Collectd extends AbstractServiceDaemon implements
             // Create a scheduler
             try {
                 LOG.debug("init: Creating collectd scheduler");
-                setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                final TimingWheelScheduler scheduler = new TimingWheelScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads());
+                scheduler.setStartJitter(Long.getLong(START_JITTER_SYS_PROP, 0L));
+                setScheduler(scheduler);
             } catch (final RuntimeException e) {
                 LOG.error("init: Failed to create collectd scheduler", e);
                 throw e;
@@ -534,8 +542,13 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Add new collectable service to the collectable service list.
                 m_collectableServices.add(cSvc);
 
-                // Schedule the collectable service for immediate collection
-                getScheduler().schedule(0, cSvc.getReadyRunnable());
+                // Schedule the collectable service for immediate collection, spreading
+                // the first collections by the start jitter when one is configured
+                if (getScheduler() instanceof TimingWheelScheduler) {
+                    ((TimingWheelScheduler)getScheduler()).scheduleStart(cSvc.getReadyRunnable());
+                } else {
+                    getScheduler().schedule(0, cSvc.getReadyRunnable());
+                }
 
                 LOG.debug("scheduleInterface: {}/{} collection, scheduled", iface, svcName);
             } catch (CollectionInitializationException e) {
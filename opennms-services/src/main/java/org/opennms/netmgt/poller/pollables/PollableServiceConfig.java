@@ -30,11 +30,15 @@ package org.opennms.netmgt.poller.pollables;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.opennms.core.rpc.api.RpcExceptionHandler;
+import org.opennms.core.rpc.api.RequestTimedOutException;
 import org.opennms.core.rpc.api.RpcExceptionUtils;
+import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.collection.api.PersisterFactory;
 import org.opennms.netmgt.config.PollOutagesConfig;
 import org.opennms.netmgt.config.PollerConfig;
@@ -45,6 +49,7 @@ import org.opennms.netmgt.config.poller.Service;
 import org.opennms.netmgt.dao.api.ResourceStorageDao;
 import org.opennms.netmgt.poller.LocationAwarePollerClient;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.PollerResponse;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.scheduler.ScheduleInterval;
 import org.opennms.netmgt.scheduler.Timer;
@@ -60,6 +65,14 @@ import org.slf4j.LoggerFactory;
 public class PollableServiceConfig implements PollConfig, ScheduleInterval {
     private static final Logger LOG = LoggerFactory.getLogger(PollableServiceConfig.class);
 
+    /**
+     * The defaults of the monitors for the retries and the timeout of a poll.
+     */
+    private static final int DEFAULT_RETRY = 0;
+    private static final int DEFAULT_TIMEOUT = 3000;
+
+    private static final long POLL_TIMEOUT_SLACK_MS = 5000;
+
     private PollerConfig m_pollerConfig;
     private PollOutagesConfig m_pollOutagesConfig;
     private PollableService m_service;
@@ -122,15 +135,25 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
             LOG.debug("Polling {} with TTL {} using pkg {}",
                     m_service, ttlInMs, packageName);
 
-            PollStatus result = m_locationAwarePollerClient.poll()
+            // The scheduler runs the polls synchronously, so this thread waits for the result
+            // even when the monitor is an AsyncServiceMonitor, but no longer than the poll may take
+            final Map<String,Object> parameters = getParameters();
+            final long timeoutInMs = getPollTimeout(parameters, ttlInMs);
+            final CompletableFuture<PollerResponse> future = m_locationAwarePollerClient.poll()
                 .withService(m_service)
                 .withMonitor(m_serviceMonitor)
                 .withTimeToLive(ttlInMs)
-                .withAttributes(getParameters())
+                .withAttributes(parameters)
                 .withAdaptor(m_latencyStoringServiceMonitorAdaptor)
                 .withAdaptor(m_invertedStatusServiceMonitorAdaptor)
-                .execute()
-                .get().getPollStatus();
+                .execute();
+            final PollStatus result;
+            try {
+                result = future.get(timeoutInMs, TimeUnit.MILLISECONDS).getPollStatus();
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                throw new RequestTimedOutException(e);
+            }
             LOG.debug("Finish polling {} using pkg {} result = {}", m_service, packageName, result);
             return result;
         } catch (Throwable e) {
@@ -165,6 +188,17 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         }
     }
 
+    /**
+     * The longest time to wait for the result of a poll: the time needed by all of the attempts
+     * of the monitor, or the time to live of the request if longer, plus some slack.
+     */
+    private static long getPollTimeout(final Map<String,Object> parameters, final Long ttlInMs) {
+        final long attempts = Math.max(0, ParameterMap.getKeyedInteger(parameters, "retry", DEFAULT_RETRY)) + 1L;
+        final long timeout = Math.max(0, ParameterMap.getKeyedInteger(parameters, "timeout", DEFAULT_TIMEOUT));
+        final long ttl = ttlInMs != null ? ttlInMs : 0L;
+        return Math.max(attempts * timeout, ttl) + POLL_TIMEOUT_SLACK_MS;
+    }
+
     /**
      * Uses the existing package name to try and re-obtain the package from the poller config factory.
      * Should be called when the poller config has been reloaded.
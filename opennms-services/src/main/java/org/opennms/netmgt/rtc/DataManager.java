@@ -33,6 +33,7 @@ import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -42,6 +43,8 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.RTCConfigFactory;
@@ -49,6 +52,7 @@ import org.opennms.netmgt.dao.api.MonitoredServiceDao;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.filter.api.FilterParseException;
+import org.opennms.netmgt.rtc.datablock.RTCAvailabilityWindow;
 import org.opennms.netmgt.rtc.datablock.RTCCategory;
 import org.opennms.netmgt.rtc.datablock.RTCHashMap;
 import org.opennms.netmgt.rtc.datablock.RTCNode;
@@ -80,6 +84,12 @@ import org.springframework.transaction.support.TransactionTemplate;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * The availability of each category is tracked incrementally by a
+ * 'RTCAvailabilityWindow', which is updated as outages are created and
+ * resolved and can be read without locking. Changes to the structure of
+ * the map require the write lock, while outage callbacks and per node
+ * queries only require the read lock.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -185,12 +195,22 @@ public class DataManager implements AvailabilityService, InitializingBean {
      */
     private Map<String, RTCCategory> m_categories;
 
+    /**
+     * The availability of the RTC categories, keyed by label
+     */
+    private Map<String, RTCAvailabilityWindow> m_availability;
+
     /**
      * map keyed using the RTCNodeKey or node ID or node ID/IP address
      */
     private RTCHashMap m_map;
 
-	private static void addOutageToRTCNode(RTCNode rtcN, Timestamp lostTimeTS, Timestamp regainedTimeTS) {
+    /**
+     * Guards the structure of the map and of the categories
+     */
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+	private void addOutageToRTCNode(RTCNode rtcN, Timestamp lostTimeTS, Timestamp regainedTimeTS) {
 		if (lostTimeTS == null) return;
 		long lostTime = lostTimeTS.getTime();
 		long regainedTime = -1;
@@ -201,14 +221,23 @@ public class DataManager implements AvailabilityService, InitializingBean {
 
 		LOG.debug("regained time for nodeid/ip/svc: {}/{}/{}: {}/{}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), regainedTimeTS, regainedTime);
 
-		rtcN.addSvcTime(lostTime, regainedTime);
+		if (rtcN.addSvcTime(lostTime, regainedTime)) {
+			for (String catlabel : rtcN.getCategories()) {
+				m_availability.get(catlabel).addOutage(lostTime, regainedTime);
+			}
+		}
 	}
 
 	private void addRTCNode(RTCNode rtcN) {
 		m_map.add(rtcN);
 	}
 
-	private static void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
+	private void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
+
+		// add the service and its outages to the availability of the category
+		if (!rtcN.belongsTo(cat.getLabel())) {
+			m_availability.get(cat.getLabel()).addService(rtcN);
+		}
 
 		// add the category info to the node
         rtcN.addCategory(cat.getLabel());
@@ -321,6 +350,14 @@ public class DataManager implements AvailabilityService, InitializingBean {
 
     	LOG.debug("Number of categories read: {}", m_categories.size());
 
+    	// create the availability accumulators
+    	final long now = System.currentTimeMillis();
+    	final Map<String, RTCAvailabilityWindow> availability = new HashMap<>();
+    	for (String catlabel : m_categories.keySet()) {
+    		availability.put(catlabel, new RTCAvailabilityWindow(m_configFactory.getRollingWindow(), now));
+    	}
+    	m_availability = availability;
+
     	// create data holder
     	m_map = new RTCHashMap(30000);
 
@@ -353,7 +390,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param svcName
      *            the service name
      */
-    public synchronized void nodeGainedService(int nodeid, InetAddress ip, String svcName) {
+    public void nodeGainedService(int nodeid, InetAddress ip, String svcName) {
         //
         // check the 'status' flag for the service
         //
@@ -414,18 +451,26 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void outageCreated(int nodeid, InetAddress ip, String svcName, long t) {
+    public void outageCreated(int nodeid, InetAddress ip, String svcName, long t) {
         RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a outageCreated event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
-
-        // inform node
-        rtcN.nodeLostService(t);
+        m_lock.readLock().lock();
+        try {
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a outageCreated event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
+            // inform node and the categories it belongs to
+            if (rtcN.nodeLostService(t)) {
+                for (String catlabel : rtcN.getCategories()) {
+                    m_availability.get(catlabel).serviceLost(t);
+                }
+            }
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -441,17 +486,26 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void outageResolved(int nodeid, InetAddress ip, String svcName, long t) {
+    public void outageResolved(int nodeid, InetAddress ip, String svcName, long t) {
         RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a outageResolved event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
+        m_lock.readLock().lock();
+        try {
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a outageResolved event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
-        // inform node
-        rtcN.nodeRegainedService(t);
+            // inform node and the categories it belongs to
+            if (rtcN.nodeRegainedService(t)) {
+                for (String catlabel : rtcN.getCategories()) {
+                    m_availability.get(catlabel).serviceRegained(t);
+                }
+            }
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -464,50 +518,58 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param svcName
      *            the service that was deleted
      */
-    public synchronized void serviceDeleted(int nodeid, InetAddress ip, String svcName) {
-        // create lookup key
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-
-        // lookup the node
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
+    public void serviceDeleted(int nodeid, InetAddress ip, String svcName) {
+        m_lock.writeLock().lock();
+        try {
+            // create lookup key
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
 
-            return;
-        }
+            // lookup the node
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
 
-        //
-        // Go through from all the categories this node belongs to
-        // and delete the service
-        //
-        List<String> categories = rtcN.getCategories();
-        ListIterator<String> catIter = categories.listIterator();
-        while (catIter.hasNext()) {
-            String catlabel = (String) catIter.next();
-
-            RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
-
-            // get nodes in this category
-            List<Integer> catNodes = cat.getNodes();
-
-            // check if the category contains this node
-            int nIndex = catNodes.indexOf(rtcN.getNodeID());
-            if (nIndex != -1) {
-                // remove from the category if it is the only service left.
-                if (m_map.getServiceCount(nodeid, catlabel) == 1) {
-                    catNodes.remove(nIndex);
-                    LOG.info("Removing node from category: {}", catlabel);
-                }
+                return;
+            }
 
-                // let the node know that this category is out
-                catIter.remove();
+            // remove the service and its outages from the availability of the categories
+            for (String catlabel : rtcN.getCategories()) {
+                m_availability.get(catlabel).removeService(rtcN);
             }
-        }
 
-        // finally remove from map
-        
-        m_map.delete(rtcN);
+            //
+            // Go through from all the categories this node belongs to
+            // and delete the service
+            //
+            List<String> categories = rtcN.getCategories();
+            ListIterator<String> catIter = categories.listIterator();
+            while (catIter.hasNext()) {
+                String catlabel = (String) catIter.next();
+
+                RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
+
+                // get nodes in this category
+                List<Integer> catNodes = cat.getNodes();
+
+                // check if the category contains this node
+                int nIndex = catNodes.indexOf(rtcN.getNodeID());
+                if (nIndex != -1) {
+                    // remove from the category if it is the only service left.
+                    if (m_map.getServiceCount(nodeid, catlabel) == 1) {
+                        catNodes.remove(nIndex);
+                        LOG.info("Removing node from category: {}", catlabel);
+                    }
+
+                    // let the node know that this category is out
+                    catIter.remove();
+                }
+            }
 
+            // finally remove from map
+            m_map.delete(rtcN);
+        } finally {
+            m_lock.writeLock().unlock();
+        }
     }
     
     /**
@@ -515,7 +577,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *
      * @param nodeid a long.
      */
-    public synchronized void assetInfoChanged(int nodeid) {
+    public void assetInfoChanged(int nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -537,7 +599,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *
      * @param nodeid a long.
      */
-    public synchronized void nodeCategoryMembershipChanged(int nodeid) {
+    public void nodeCategoryMembershipChanged(int nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -567,16 +629,26 @@ public class DataManager implements AvailabilityService, InitializingBean {
      *             if the database read or filtering the data against the
      *             category rule fails for some reason
      */
-    public synchronized void rtcNodeRescan(int nodeid) throws SQLException, FilterParseException, RTCException {
-    	
-    	for (RTCCategory cat : m_categories.values()) {
-			cat.deleteNode(nodeid);
-		}
-    	
-    	m_map.deleteNode(nodeid);
-    	
-    	populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
-    	
+    public void rtcNodeRescan(int nodeid) throws SQLException, FilterParseException, RTCException {
+        m_lock.writeLock().lock();
+        try {
+            for (RTCCategory cat : m_categories.values()) {
+                cat.deleteNode(nodeid);
+            }
+
+            // remove the services and their outages from the availability of the categories
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+                for (String catlabel : rtcN.getCategories()) {
+                    m_availability.get(catlabel).removeService(rtcN);
+                }
+            }
+
+            m_map.deleteNode(nodeid);
+
+            populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
+        } finally {
+            m_lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -599,27 +671,32 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @param newNodeId
      *            the node that the IP now belongs to
      */
-    public synchronized void interfaceReparented(InetAddress ip, int oldNodeId, int newNodeId) {
-        // get all RTCNodes with the IP/old node ID
-        for (RTCNode rtcN : m_map.getRTCNodes(oldNodeId, ip)) {
+    public void interfaceReparented(InetAddress ip, int oldNodeId, int newNodeId) {
+        m_lock.writeLock().lock();
+        try {
+            // get all RTCNodes with the IP/old node ID
+            for (RTCNode rtcN : m_map.getRTCNodes(oldNodeId, ip)) {
 
-            // remove the node with the old node id from the map
-            m_map.delete(rtcN);
+                // remove the node with the old node id from the map
+                m_map.delete(rtcN);
 
-            // change the node ID on the RTCNode
-            rtcN.setNodeID(newNodeId);
+                // change the node ID on the RTCNode
+                rtcN.setNodeID(newNodeId);
 
-            // now add the node with the new node ID
-            m_map.add(rtcN);
+                // now add the node with the new node ID
+                m_map.add(rtcN);
 
-            // remove old node ID from the categories it belonged to
-            // and the new node ID
-            for (String catlabel : rtcN.getCategories()) {
-                RTCCategory rtcCat = m_categories.get(catlabel);
-                rtcCat.deleteNode(oldNodeId);
-                rtcCat.addNode(newNodeId);
-            }
+                // remove old node ID from the categories it belonged to
+                // and the new node ID
+                for (String catlabel : rtcN.getCategories()) {
+                    RTCCategory rtcCat = m_categories.get(catlabel);
+                    rtcCat.deleteNode(oldNodeId);
+                    rtcCat.addNode(newNodeId);
+                }
 
+            }
+        } finally {
+            m_lock.writeLock().unlock();
         }
     }
 
@@ -636,8 +713,18 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(RTCCategory category, long curTime, long rollingWindow) {
-        return m_map.getValue(category.getLabel(), curTime, rollingWindow);
+    public double getValue(RTCCategory category, long curTime, long rollingWindow) {
+        final RTCAvailabilityWindow availability = m_availability.get(category.getLabel());
+        if (availability != null && availability.getRollingWindow() == rollingWindow) {
+            return availability.getValue(curTime);
+        }
+
+        m_lock.readLock().lock();
+        try {
+            return m_map.getValue(category.getLabel(), curTime, rollingWindow);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -655,8 +742,13 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the node in the last 'rollingWindow'
      *         starting at current time in the context of the passed category
      */
-    public synchronized double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
-        return m_map.getValue(nodeid, category.getLabel(), curTime, rollingWindow);
+    public double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getValue(nodeid, category.getLabel(), curTime, rollingWindow);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -670,8 +762,13 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service count for the nodeid in the context of the passed
      *         category
      */
-    public synchronized int getServiceCount(int nodeid, RTCCategory category) {
-        return m_map.getServiceCount(nodeid, category.getLabel());
+    public int getServiceCount(int nodeid, RTCCategory category) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getServiceCount(nodeid, category.getLabel());
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -685,8 +782,13 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service down count for the nodeid in the context of the
      *         passed category
      */
-    public synchronized int getServiceDownCount(int nodeid, RTCCategory category) {
-        return m_map.getServiceDownCount(nodeid, category.getLabel());
+    public int getServiceDownCount(int nodeid, RTCCategory category) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getServiceDownCount(nodeid, category.getLabel());
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -695,12 +797,17 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the categories
      */
     @Override
-    public synchronized Map<String, RTCCategory> getCategories() {
+    public Map<String, RTCCategory> getCategories() {
         return m_categories;
     }
 
     public Collection<Integer> getNodes(RTCCategory category) {
-        return category.getNodes();
+        m_lock.readLock().lock();
+        try {
+            return new ArrayList<>(category.getNodes());
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     @Override
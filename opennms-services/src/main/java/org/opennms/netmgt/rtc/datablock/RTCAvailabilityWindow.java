@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.concurrent.locks.StampedLock;
+
+import org.opennms.netmgt.rtc.RTCUtils;
+
+/**
+ * Keeps track of the down time of all the services in a category over the
+ * rolling window, so that the availability of the category can be calculated
+ * without walking the outages of every service.
+ *
+ * Every outage contributes a +1 to the number of services down at the time the
+ * service was lost and a -1 at the time it was regained. These changes are
+ * summed in time buckets covering the rolling window; buckets that fall out of
+ * the window are folded into the number of services that were down at the
+ * start of the window. The down time is then given by:
+ *
+ * <pre>
+ *   down(now) = down_at_start * window + sum(delta * (now - time))
+ * </pre>
+ *
+ * Updates are O(1) and reads do not block unless buckets need to be folded.
+ * Changes which happened before the start of the window, but still fall in the
+ * oldest bucket, are accounted for with a precision of one bucket width.
+ *
+ * @see RTCNodeSvcTime#getDownTime(long, long)
+ */
+public class RTCAvailabilityWindow {
+
+    /**
+     * The number of buckets the rolling window is divided into
+     */
+    private static final int NUM_BUCKETS = 1440;
+
+    private final long m_rollingWindow;
+
+    private final long m_bucketWidth;
+
+    /**
+     * All times are stored relative to this origin to keep the sums small
+     */
+    private final long m_origin;
+
+    private final long[] m_bucketDeltas;
+
+    private final long[] m_bucketWeightedDeltas;
+
+    private final StampedLock m_lock = new StampedLock();
+
+    /**
+     * The number of the oldest bucket that has not been folded yet
+     */
+    private long m_firstBucket;
+
+    /**
+     * The number of services that were down before the first bucket
+     */
+    private long m_downAtStart;
+
+    /**
+     * The sum of the changes in all of the buckets
+     */
+    private long m_deltas;
+
+    /**
+     * The sum of the changes in all of the buckets, weighted by their time
+     */
+    private long m_weightedDeltas;
+
+    private int m_serviceCount;
+
+    /**
+     * <p>Constructor for RTCAvailabilityWindow.</p>
+     *
+     * @param rollingWindow the length of the rolling window in milliseconds
+     * @param now the current time
+     */
+    public RTCAvailabilityWindow(long rollingWindow, long now) {
+        if (rollingWindow <= 0) {
+            throw new IllegalArgumentException("The rolling window must be positive: " + rollingWindow);
+        }
+        m_rollingWindow = rollingWindow;
+        m_bucketWidth = Math.max(1, rollingWindow / NUM_BUCKETS);
+        m_origin = now - rollingWindow;
+        // Leave room for the partially covered oldest bucket and for the current bucket
+        m_bucketDeltas = new long[NUM_BUCKETS + 2];
+        m_bucketWeightedDeltas = new long[NUM_BUCKETS + 2];
+        m_firstBucket = 0;
+    }
+
+    public long getRollingWindow() {
+        return m_rollingWindow;
+    }
+
+    /**
+     * Adds the given service, along with its outages.
+     *
+     * @param rtcN the service to add
+     */
+    public void addService(RTCNode rtcN) {
+        final long stamp = m_lock.writeLock();
+        try {
+            m_serviceCount++;
+            for (RTCNodeSvcTime svcTime : rtcN.getSvcTimes()) {
+                apply(svcTime.getLostTime(), svcTime.getRegainedTime(), 1);
+            }
+        } finally {
+            m_lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the given service, along with its outages.
+     *
+     * @param rtcN the service to remove
+     */
+    public void removeService(RTCNode rtcN) {
+        final long stamp = m_lock.writeLock();
+        try {
+            m_serviceCount--;
+            for (RTCNodeSvcTime svcTime : rtcN.getSvcTimes()) {
+                apply(svcTime.getLostTime(), svcTime.getRegainedTime(), -1);
+            }
+        } finally {
+            m_lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Records an outage of a service that already belongs to the window.
+     *
+     * @param lostTime the time at which the service was lost
+     * @param regainedTime the time at which the service was regained, or -1 if it is still down
+     */
+    public void addOutage(long lostTime, long regainedTime) {
+        final long stamp = m_lock.writeLock();
+        try {
+            apply(lostTime, regainedTime, 1);
+        } finally {
+            m_lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Records that a service lost service at the given time.
+     *
+     * @param t the time at which the service was lost
+     */
+    public void serviceLost(long t) {
+        final long stamp = m_lock.writeLock();
+        try {
+            add(t, 1);
+        } finally {
+            m_lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Records that a service regained service at the given time.
+     *
+     * @param t the time at which the service was regained
+     */
+    public void serviceRegained(long t) {
+        final long stamp = m_lock.writeLock();
+        try {
+            add(t, -1);
+        } finally {
+            m_lock.unlockWrite(stamp);
+        }
+    }
+
+    public int getServiceCount() {
+        long stamp = m_lock.tryOptimisticRead();
+        int serviceCount = m_serviceCount;
+        if (!m_lock.validate(stamp)) {
+            stamp = m_lock.readLock();
+            try {
+                serviceCount = m_serviceCount;
+            } finally {
+                m_lock.unlockRead(stamp);
+            }
+        }
+        return serviceCount;
+    }
+
+    /**
+     * Get the total down time of the services over the rolling window ending
+     * at the given time.
+     *
+     * @param curTime the current time
+     * @return the down time in milliseconds
+     */
+    public long getDownTime(long curTime) {
+        return getDownTimeAndServiceCount(curTime)[0];
+    }
+
+    /**
+     * Get the value (uptime) of the services over the rolling window ending
+     * at the given time.
+     *
+     * @param curTime the current time
+     * @return the value (uptime) as a percentage
+     */
+    public double getValue(long curTime) {
+        final long[] downTimeAndServiceCount = getDownTimeAndServiceCount(curTime);
+        return RTCUtils.getOutagePercentage(downTimeAndServiceCount[0], m_rollingWindow, downTimeAndServiceCount[1]);
+    }
+
+    private long[] getDownTimeAndServiceCount(long curTime) {
+        final long lastBucketBeforeWindow = Math.floorDiv(curTime - m_rollingWindow - m_origin, m_bucketWidth);
+
+        long stamp = m_lock.tryOptimisticRead();
+        if (m_firstBucket < lastBucketBeforeWindow) {
+            // Fold the buckets that are no longer in the window
+            stamp = m_lock.writeLock();
+            try {
+                fold(lastBucketBeforeWindow);
+                stamp = m_lock.tryConvertToOptimisticRead(stamp);
+            } finally {
+                if (StampedLock.isWriteLockStamp(stamp)) {
+                    m_lock.unlockWrite(stamp);
+                }
+            }
+        }
+
+        long downAtStart = m_downAtStart;
+        long deltas = m_deltas;
+        long weightedDeltas = m_weightedDeltas;
+        long serviceCount = m_serviceCount;
+        if (!m_lock.validate(stamp)) {
+            stamp = m_lock.readLock();
+            try {
+                downAtStart = m_downAtStart;
+                deltas = m_deltas;
+                weightedDeltas = m_weightedDeltas;
+                serviceCount = m_serviceCount;
+            } finally {
+                m_lock.unlockRead(stamp);
+            }
+        }
+
+        final long downTime = downAtStart * m_rollingWindow + deltas * (curTime - m_origin) - weightedDeltas;
+        // Changes in the oldest bucket may account for slightly more than the window
+        return new long[] { Math.max(0, Math.min(downTime, serviceCount * m_rollingWindow)), serviceCount };
+    }
+
+    private void apply(long lostTime, long regainedTime, int sign) {
+        add(lostTime, sign);
+        if (regainedTime > 0) {
+            add(regainedTime, -sign);
+        }
+    }
+
+    private void add(long t, long delta) {
+        final long bucket = Math.floorDiv(t - m_origin, m_bucketWidth);
+        if (bucket < m_firstBucket) {
+            // Happened before the window, the service was either down or up for its entirety
+            m_downAtStart += delta;
+            return;
+        }
+
+        final int numSlots = m_bucketDeltas.length;
+        if (bucket >= m_firstBucket + numSlots) {
+            // Make room by folding the buckets which are more than a window older than this change
+            fold(bucket - numSlots + 1);
+        }
+        final long relativeTime = t - m_origin;
+        final int slot = (int) Math.floorMod(bucket, (long) numSlots);
+
+        m_bucketDeltas[slot] += delta;
+        m_bucketWeightedDeltas[slot] += delta * relativeTime;
+        m_deltas += delta;
+        m_weightedDeltas += delta * relativeTime;
+    }
+
+    private void fold(long toBucket) {
+        final int numSlots = m_bucketDeltas.length;
+        final long end = Math.min(toBucket, m_firstBucket + numSlots);
+        for (long bucket = m_firstBucket; bucket < end; bucket++) {
+            final int slot = (int) Math.floorMod(bucket, (long) numSlots);
+            m_downAtStart += m_bucketDeltas[slot];
+            m_deltas -= m_bucketDeltas[slot];
+            m_weightedDeltas -= m_bucketWeightedDeltas[slot];
+            m_bucketDeltas[slot] = 0;
+            m_bucketWeightedDeltas[slot] = 0;
+        }
+        m_firstBucket = Math.max(m_firstBucket, toBucket);
+    }
+}
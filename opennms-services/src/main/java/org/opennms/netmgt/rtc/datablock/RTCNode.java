@@ -127,9 +127,19 @@ public class RTCNode {
      *            time at which service was lost
      * @param regainedtime
      *            time at which service was regained
+     * @return true if the entry was added, false if it was rejected
      */
-    public void addSvcTime(long losttime, long regainedtime) {
-        m_svcTimesList.addSvcTime(losttime, regainedtime);
+    public synchronized boolean addSvcTime(long losttime, long regainedtime) {
+        return m_svcTimesList.addSvcTime(losttime, regainedtime);
+    }
+
+    /**
+     * Get a copy of the service times of this node.
+     *
+     * @return the service times, oldest first
+     */
+    public synchronized List<RTCNodeSvcTime> getSvcTimes() {
+        return new ArrayList<>(m_svcTimesList);
     }
 
     /**
@@ -165,8 +175,9 @@ public class RTCNode {
      *
      * @param t
      *            the time at which service was lost
+     * @return true if the entry was added, false if the service was already down
      */
-    public synchronized void nodeLostService(long t) {
+    public synchronized boolean nodeLostService(long t) {
         // check if the last element in the times list is 'open'
         // i.e. is waiting for a regained service - if yes,
         // don't add anything
@@ -178,13 +189,14 @@ public class RTCNode {
             if (stime.getRegainedTime() == -1) {
                 // last event was a 'lostService'
                 // ignore this event
-                return;
+                return false;
             }
         }
 
         // create a new entry
         RTCNodeSvcTime newStime = new RTCNodeSvcTime(t);
         m_svcTimesList.add(newStime);
+        return true;
     }
 
     /**
@@ -194,8 +206,9 @@ public class RTCNode {
      *
      * @param t
      *            the time at which node regained service
+     * @return true if the entry was updated, false if the service was not down
      */
-    public synchronized void nodeRegainedService(long t) {
+    public synchronized boolean nodeRegainedService(long t) {
         int listsize = m_svcTimesList.size();
         if (listsize > 0) {
             RTCNodeSvcTime stime = (RTCNodeSvcTime) m_svcTimesList.get(listsize - 1);
@@ -203,11 +216,13 @@ public class RTCNode {
             if (stime.getRegainedTime() != -1) {
                 // last event was a 'regainedService'
                 // ignore this event
-                return;
+                return false;
             }
 
             stime.setRegainedTime(t);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -275,7 +290,7 @@ public class RTCNode {
      * @return the total outage time for this node
      * @throws NodeNotInCategoryException 
      */
-    public long getDownTime(String cat, long curTime, long rollingWindow) throws NodeNotInCategoryException {
+    public synchronized long getDownTime(String cat, long curTime, long rollingWindow) throws NodeNotInCategoryException {
         // get the down time for this node in the context of the
         // category.
         // if the service is not in 'context', throw an exception
@@ -291,7 +306,7 @@ public class RTCNode {
      *
      * @return true if the service is currently down
      */
-    public boolean isServiceCurrentlyDown() {
+    public synchronized boolean isServiceCurrentlyDown() {
         int size = m_svcTimesList.size();
         if (size == 0) {
             return false;
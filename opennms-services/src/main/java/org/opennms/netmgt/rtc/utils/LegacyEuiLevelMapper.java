@@ -88,38 +88,39 @@ public class LegacyEuiLevelMapper {
         // create the data
         EuiLevel level = new EuiLevel();
 
-        // set created in m_header and add to level
-        m_header.setCreated(EventConstants.formatToString(curDate));
-        level.setHeader(m_header);
+        // set created in the header and add to level, the mapper is no longer
+        // serialized by the data manager so each level gets its own header
+        Header header = new Header();
+        header.setVer(m_header.getVer());
+        header.setMstation(m_header.getMstation());
+        header.setCreated(EventConstants.formatToString(curDate));
+        level.setHeader(header);
 
         org.opennms.netmgt.xml.rtc.Category levelCat = new org.opennms.netmgt.xml.rtc.Category();
 
-        // get a handle to data
-        synchronized (m_dataMgr) {
-            // category label
-            levelCat.setCatlabel(rtcCat.getLabel());
+        // category label
+        levelCat.setCatlabel(rtcCat.getLabel());
 
-            // availability value for this category
-            levelCat.setCatvalue(m_dataMgr.getValue(rtcCat, curTime, rWindow));
+        // availability value for this category
+        levelCat.setCatvalue(m_dataMgr.getValue(rtcCat, curTime, rWindow));
 
-            // nodes in this category
-            for (int nodeID : m_dataMgr.getNodes(rtcCat)) {
+        // nodes in this category
+        for (int nodeID : m_dataMgr.getNodes(rtcCat)) {
 
-                Node levelNode = new Node();
-                levelNode.setNodeid(nodeID);
+            Node levelNode = new Node();
+            levelNode.setNodeid(nodeID);
 
-                // value for this node for this category
-                levelNode.setNodevalue(m_dataMgr.getValue(nodeID, rtcCat, curTime, rWindow));
+            // value for this node for this category
+            levelNode.setNodevalue(m_dataMgr.getValue(nodeID, rtcCat, curTime, rWindow));
 
-                // node service count
-                levelNode.setNodesvccount(m_dataMgr.getServiceCount(nodeID, rtcCat));
+            // node service count
+            levelNode.setNodesvccount(m_dataMgr.getServiceCount(nodeID, rtcCat));
 
-                // node service down count
-                levelNode.setNodesvcdowncount(m_dataMgr.getServiceDownCount(nodeID, rtcCat));
+            // node service down count
+            levelNode.setNodesvcdowncount(m_dataMgr.getServiceDownCount(nodeID, rtcCat));
 
-                // add the node
-                levelCat.getNode().add(levelNode);
-            }
+            // add the node
+            levelCat.getNode().add(levelNode);
         }
 
         // add category
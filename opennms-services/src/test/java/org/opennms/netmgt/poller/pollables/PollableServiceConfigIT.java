@@ -164,4 +164,48 @@ public class PollableServiceConfigIT {
         // Verify
         assertThat(pollStatus.isUnknown(), is(true));
     }
+
+    /**
+     * Verifies that the poller thread stops waiting for a poll which never completes
+     * once the attempts of the monitor and the time to live have elapsed.
+     */
+    @Test(timeout = 30000)
+    public void returnsUnknownWhenThePollNeverCompletes() throws Exception {
+        CompletableFuture<PollerResponse> future = new CompletableFuture<>();
+
+        LocationAwarePollerClient client = mock(LocationAwarePollerClient.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(
+                client.poll()
+                    .withService(any())
+                    .withMonitor(any())
+                    .withTimeToLive(any())
+                    .withAttributes(any())
+                    .withAdaptor(any())
+                    .withAdaptor(any())
+                    .execute()
+        ).thenReturn(future);
+
+        PollableService pollableSvc = mock(PollableService.class);
+        when(pollableSvc.getSvcName()).thenReturn("SVC");
+
+        Service configuredSvc = new Service();
+        configuredSvc.setName("SVC");
+        configuredSvc.setInterval(1000L);
+        configuredSvc.addParameter("retry", "1");
+        configuredSvc.addParameter("timeout", "500");
+        Package pkg = mock(Package.class);
+        when(pkg.getServices()).thenReturn(Lists.newArrayList(configuredSvc));
+
+        final PollableServiceConfig psc = new PollableServiceConfig(pollableSvc, mock(PollerConfig.class),
+                mock(PollOutagesConfig.class), pkg, mock(Timer.class),
+                mock(PersisterFactory.class), mock(ResourceStorageDao.class), client);
+
+        final long start = System.currentTimeMillis();
+        PollStatus pollStatus = psc.poll();
+
+        assertThat(pollStatus.isUnknown(), is(true));
+        assertThat(future.isCancelled(), is(true));
+        // Waited for both of the attempts, but not forever
+        assertThat(System.currentTimeMillis() - start >= 1000L, is(true));
+    }
 }
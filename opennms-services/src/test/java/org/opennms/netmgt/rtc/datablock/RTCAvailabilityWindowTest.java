@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rtc.datablock;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.rtc.RTCUtils;
+
+public class RTCAvailabilityWindowTest {
+
+    private static final long WINDOW = 24L * 60L * 60L * 1000L;
+
+    private static final long MINUTE = 60L * 1000L;
+
+    private static final InetAddress ADDR = InetAddressUtils.addr("192.168.1.1");
+
+    @Test
+    public void canTrackOutagesWithinTheWindow() {
+        final long now = 10 * WINDOW;
+        final RTCAvailabilityWindow availability = new RTCAvailabilityWindow(WINDOW, now);
+
+        final RTCNode icmp = new RTCNode(1, ADDR, "ICMP", WINDOW);
+        final RTCNode http = new RTCNode(1, ADDR, "HTTP", WINDOW);
+        icmp.addSvcTime(now - 60 * MINUTE, now - 30 * MINUTE);
+        availability.addService(icmp);
+        availability.addService(http);
+
+        assertEquals(2, availability.getServiceCount());
+        assertEquals(30 * MINUTE, availability.getDownTime(now));
+        assertEquals(RTCUtils.getOutagePercentage(30 * MINUTE, WINDOW, 2), availability.getValue(now), 0.0001);
+
+        // An open outage grows with time
+        availability.serviceLost(now);
+        assertEquals(40 * MINUTE, availability.getDownTime(now + 10 * MINUTE));
+        availability.serviceRegained(now + 20 * MINUTE);
+        assertEquals(50 * MINUTE, availability.getDownTime(now + 60 * MINUTE));
+
+        // Outages fall out of the window
+        assertEquals(20 * MINUTE, availability.getDownTime(now + WINDOW - 10 * MINUTE));
+        assertEquals(0, availability.getDownTime(now + 2 * WINDOW));
+
+        // Removing a service removes its outages
+        availability.removeService(icmp);
+        assertEquals(1, availability.getServiceCount());
+        assertEquals(100.0, availability.getValue(now + 2 * WINDOW), 0.0001);
+    }
+
+    @Test
+    public void canTrackServicesDownForTheWholeWindow() {
+        final long now = 10 * WINDOW;
+        final RTCAvailabilityWindow availability = new RTCAvailabilityWindow(WINDOW, now);
+
+        final RTCNode icmp = new RTCNode(1, ADDR, "ICMP", WINDOW);
+        icmp.addSvcTime(now - 2 * WINDOW, -1);
+        availability.addService(icmp);
+
+        assertEquals(WINDOW, availability.getDownTime(now));
+        assertEquals(WINDOW, availability.getDownTime(now + 3 * WINDOW));
+        assertEquals(0.0, availability.getValue(now + 3 * WINDOW), 0.0001);
+    }
+
+    @Test
+    public void matchesTheDownTimeOfTheServices() {
+        final Random random = new Random(42);
+        final long start = 10 * WINDOW;
+        final RTCAvailabilityWindow availability = new RTCAvailabilityWindow(WINDOW, start);
+
+        final List<RTCNode> services = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final RTCNode rtcN = new RTCNode(i, ADDR, "ICMP", WINDOW);
+            services.add(rtcN);
+            availability.addService(rtcN);
+        }
+
+        long now = start;
+        for (int i = 0; i < 2000; i++) {
+            now += random.nextInt(10) * MINUTE;
+            final RTCNode rtcN = services.get(random.nextInt(services.size()));
+            if (random.nextBoolean()) {
+                if (rtcN.nodeLostService(now)) {
+                    availability.serviceLost(now);
+                }
+            } else if (rtcN.nodeRegainedService(now)) {
+                availability.serviceRegained(now);
+            }
+
+            long expected = 0;
+            for (RTCNode service : services) {
+                for (RTCNodeSvcTime svcTime : service.getSvcTimes()) {
+                    if (!svcTime.hasExpired(now - WINDOW)) {
+                        expected += svcTime.getDownTime(now, WINDOW);
+                    }
+                }
+            }
+            // Changes in the oldest bucket are accurate to a bucket width each
+            assertEquals(expected, availability.getDownTime(now), services.size() * 2 * WINDOW / 1440);
+        }
+    }
+}
@@ -28,8 +28,14 @@
 
 package org.opennms.netmgt.threshd;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 
@@ -171,4 +177,47 @@ public class ExpressionConfigWrapperTest {
         values.put("ifSpeed", 10.0);
         Assert.assertEquals(160.0, wrapper.evaluate(values), 0.0);
     }
+
+    @Test
+    public void testAssignmentsDoNotModifyValues() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("ifInOctets = ifInOctets + ifOutOctets");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("ifInOctets", 100.0);
+        values.put("ifOutOctets", 200.0);
+        Assert.assertEquals(300.0, wrapper.evaluate(values), 0.0);
+        Assert.assertEquals(100.0, values.get("ifInOctets"), 0.0);
+        Assert.assertEquals(300.0, wrapper.evaluate(values), 0.0);
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final double octets = i * 1000.0;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int j = 0; j < 100; j++) {
+                            Map<String, Double> values = new HashMap<String,Double>();
+                            values.put("ifInOctets", octets);
+                            values.put("ifSpeed", 8000.0);
+                            if (wrapper.evaluate(values) != octets / 10.0) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }